@@ -0,0 +1,45 @@
+package com.smarttodo.app.bot;
+
+/**
+ * Разобранный payload колбэка вида "key" или "key:id".
+ * Разбирается один раз на апдейт и дальше передаётся в менеджеры целиком.
+ */
+public record CallbackData(
+        Payload payload,
+        long id         // NO_ID, если в payload нет числового id
+) {
+    public static final long NO_ID = -1L;
+
+    /**
+     * Разбор за один проход: поиск payload по таблице и разбор id без substring и Long.parseLong.
+     * @return null, если ключ payload неизвестен
+     */
+    public static CallbackData parse(String raw) {
+        if (raw == null) return null;
+
+        int colon = raw.indexOf(':');
+        Payload payload = Payload.lookup(raw, colon < 0 ? raw.length() : colon);
+        if (payload == null) return null;
+
+        long id = payload.hasId() ? parseId(raw, colon) : NO_ID;
+        return new CallbackData(payload, id);
+    }
+
+    /** Неотрицательное число после двоеточия или NO_ID, если его нет или оно некорректно */
+    static long parseId(String raw, int colon) {
+        if (colon < 0 || colon == raw.length() - 1) return NO_ID;
+
+        long id = 0;
+        for (int i = colon + 1; i < raw.length(); i++) {
+            int d = raw.charAt(i) - '0';
+            if (d < 0 || d > 9) return NO_ID;
+            if (id > (Long.MAX_VALUE - d) / 10) return NO_ID;
+            id = id * 10 + d;
+        }
+        return id;
+    }
+
+    public boolean hasId() {
+        return id != NO_ID;
+    }
+}
@@ -1,43 +1,30 @@
 package com.smarttodo.app.bot;
 
-import com.smarttodo.app.dto.WeeklySummaryDto;
-import com.smarttodo.app.entity.UserEntity;
+import com.smarttodo.app.bot.broadcast.BroadcastEngine;
+import com.smarttodo.app.client.SendPriority;
 import com.smarttodo.app.llm.motivation.MotivationService;
-import com.smarttodo.app.repository.UserRepository;
 import com.smarttodo.app.service.MetricsService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import java.util.List;
-
 @Service
 @RequiredArgsConstructor
 public class DayMotivationScheduler {
-    private final UserRepository userRepository;
+    private static final int LLM_CONCURRENCY = 4;
+
+    private final BroadcastEngine broadcastEngine;
     private final MetricsService metricsService;
     private final MotivationService motivationService;
     private final MessageSender messageSender;
 
     @Scheduled(cron = "0 0 16 * * *")
     public void sendDayMotivation() {
-        List<UserEntity> allUsers = userRepository.findAll();
-
-        if (allUsers.isEmpty()) {
-            return;
-        }
-
-        for (UserEntity user : allUsers) {
-            try {
-                int streak = metricsService.calculateCurrentStreak(user.getChatId());
-                motivationService.generateMotivation(streak)
-                        .subscribe(response -> {
-                            String text = response.message();
-                            messageSender.sendText(user.getChatId(), text);
-                        });
-
-                Thread.sleep(50);
-            } catch (Exception ignored) {}
-        }
+        // запрос к модели идёт внутри отправки, поэтому одновременно ждут не больше LLM_CONCURRENCY пользователей
+        broadcastEngine.run("day-motivation", SendPriority.BULK, LLM_CONCURRENCY, chatId -> {
+            int streak = metricsService.calculateCurrentStreak(chatId);
+            messageSender.submit(chatId, motivationService.generateMotivation(streak)
+                    .flatMap(response -> messageSender.postText(chatId, response.message())));
+        }).subscribe();
     }
 }
@@ -0,0 +1,18 @@
+package com.smarttodo.app.bot;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "bot.deferred")
+public record DeferProps(
+        int capacity,                   // отложенных отправок на ноде, сверх — ошибка отправки
+        Duration interactiveMaxAge,     // ответ на действие пользователя устаревает быстро
+        Duration maxAge                 // напоминания и рассылки
+) {
+    public DeferProps {
+        if (capacity <= 0) capacity = 10_000;
+        if (interactiveMaxAge == null || interactiveMaxAge.isNegative()) interactiveMaxAge = Duration.ofMinutes(2);
+        if (maxAge == null || maxAge.isNegative()) maxAge = Duration.ofMinutes(30);
+    }
+}
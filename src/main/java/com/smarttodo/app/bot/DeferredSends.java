@@ -0,0 +1,94 @@
+package com.smarttodo.app.bot;
+
+import com.smarttodo.app.client.MaxCallPolicy;
+import com.smarttodo.app.client.MaxCircuitBreaker;
+import com.smarttodo.app.client.SendPriority;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Вызовы MAX, не ушедшие из-за разомкнутого предохранителя.
+ * Пока MAX недоступен, они ждут здесь по порядку, а не повторяются каждый сам по себе;
+ * шаг отправки, которому принадлежит вызов, всё это время стоит в очереди своего чата.
+ * Когда предохранитель замкнулся, вызовы повторяются; в период проб — по одному за раз,
+ * он и служит пробным запросом.
+ * Устаревшие шаги (ответ на клик через несколько минут уже не нужен) отбрасываются.
+ */
+@Slf4j
+@Service
+public class DeferredSends {
+
+    /** Отложенный вызов: resend повторяет его, drop — завершает шаг ошибкой */
+    private record Entry(long chatId, SendPriority priority, long deferredAt, Runnable resend, Runnable drop) {}
+
+    private final DeferProps props;
+    private final MaxCallPolicy policy;
+    private final MeterRegistry meterRegistry;
+
+    private final Queue<Entry> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    public DeferredSends(DeferProps props, MaxCallPolicy policy, MeterRegistry meterRegistry) {
+        this.props = props;
+        this.policy = policy;
+        this.meterRegistry = meterRegistry;
+        Gauge.builder("bot.send.deferred.size", size, AtomicInteger::get)
+                .description("Отправки, ждущие восстановления MAX")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @param since когда шаг отложили впервые (System.nanoTime) — возраст не сбрасывается при повторном откладывании
+     * @return false, если очередь полна и шаг не отложен
+     */
+    public boolean defer(long chatId, SendPriority priority, long since, Runnable resend, Runnable drop) {
+        if (size.incrementAndGet() > props.capacity()) {
+            size.decrementAndGet();
+            deferred("rejected");
+            return false;
+        }
+        queue.add(new Entry(chatId, priority, since, resend, drop));
+        deferred("queued");
+        return true;
+    }
+
+    @Scheduled(fixedDelay = 1000)
+    public void drain() {
+        if (queue.isEmpty()) return;
+        MaxCircuitBreaker.State state = policy.state();
+        if (state == MaxCircuitBreaker.State.OPEN && policy.rejects()) return;
+
+        // после паузы — один шаг как пробный запрос, в замкнутом состоянии — всё накопленное
+        int budget = state == MaxCircuitBreaker.State.CLOSED ? Integer.MAX_VALUE : 1;
+        long now = System.nanoTime();
+        int resent = 0, expired = 0;
+        Entry e;
+        while (resent < budget && (e = queue.poll()) != null) {
+            size.decrementAndGet();
+            long maxAge = (e.priority() == SendPriority.INTERACTIVE ? props.interactiveMaxAge() : props.maxAge()).toNanos();
+            if (now - e.deferredAt() > maxAge) {
+                expired++;
+                deferred("expired");
+                e.drop().run();
+                continue;
+            }
+            resent++;
+            deferred("resent");
+            e.resend().run();
+        }
+        if (resent + expired > 0) {
+            log.info("Deferred sends drained: state={}, resent={}, expired={}, left={}", state, resent, expired, size.get());
+        }
+    }
+
+    private void deferred(String result) {
+        meterRegistry.counter("bot.send.deferred", "result", result).increment();
+    }
+}
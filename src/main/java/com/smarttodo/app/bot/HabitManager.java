@@ -1,15 +1,16 @@
 package com.smarttodo.app.bot;
 
-import com.smarttodo.app.client.MaxApi;
 import com.smarttodo.app.dto.HabitCheckinDto;
 import com.smarttodo.app.dto.HabitDto;
+import com.smarttodo.app.dto.PageCursor;
 import com.smarttodo.app.entity.*;
-import com.smarttodo.app.repository.LastActionRedisRepo;
-import com.smarttodo.app.repository.PendingHabitRedisRepo;
+import com.smarttodo.app.bot.outbox.Outbox;
+import com.smarttodo.app.bot.session.ChatSessionStore;
 import com.smarttodo.app.service.HabitService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.DayOfWeek;
 import java.time.LocalDate;
@@ -22,20 +23,21 @@ import java.util.Optional;
 @RequiredArgsConstructor
 public class HabitManager {
 
-    private final MaxApi maxApi;
-
     private final HabitService habitService;
-    private final PendingHabitRedisRepo habitRedisRepo;
-    private final LastActionRedisRepo lastActionRepo;
+    private final ChatSessionStore sessions;
 
     private final MessageSender messageSender;
+    private final Outbox outbox;                // подтверждения изменений — в одной транзакции с ними
+    private final TransactionTemplate tx;
+    private final UiProps ui;
 
     public void createHabit(Update u) {
         messageSender.sendHabitCreateKeyboard(u.chatId());
     }
 
     public void confirmHabitCreating(Update u) {
-        Optional<HabitCheckinDto> opt = habitRedisRepo.get(u.chatId());
+        // черновик забирается сразу: повторное нажатие «Подтвердить» его уже не найдёт
+        Optional<HabitCheckinDto> opt = sessions.takePendingHabit(u.chatId());
         if (opt.isEmpty()) {
             messageSender.sendText(u.chatId(), "Создание привычки не завершено, заполните все необходимые поля.");
             return;
@@ -43,77 +45,84 @@ public class HabitManager {
 
         HabitCheckinDto habit = opt.get();
         if (habit.title() == null || habit.title().isBlank() || habit.interval() == null || habit.goalDate() == null) {
+            sessions.savePendingHabit(u.chatId(), habit);
             messageSender.sendText(u.chatId(), "Создание привычки не завершено, заполните все необходимые поля.");
             return;
         }
 
-        if (habitService.createHabit(u.chatId(), new HabitDto(
-                habit.id(),
-                habit.title(),
-                habit.description(),
-                habit.status(),
-                habit.interval(),
-                habit.priority(),
-                habit.goalDate()
-        )) != null) {
-            habitRedisRepo.delete(u.chatId());
-            messageSender.sendText(u.chatId(), "Привычка создана.");
+        try {
+            tx.executeWithoutResult(s -> {
+                habitService.createHabit(u.chatId(), new HabitDto(
+                        habit.id(),
+                        habit.title(),
+                        habit.description(),
+                        habit.status(),
+                        habit.interval(),
+                        habit.priority(),
+                        habit.goalDate()
+                ));
+                outbox.sendText(u.chatId(), "Привычка создана.");
+            });
+        } catch (RuntimeException e) {
+            sessions.savePendingHabit(u.chatId(), habit);
+            throw e;
         }
     }
 
-    public void pickHabit(Update u) {
-        Payload payload = Payload.from(u.getPayload());
-        HabitCheckinDto habit = habitService.getHabitCheckinDtoById(payload.extractId(u.getPayload()));
+    public void pickHabit(Update u, CallbackData callback) {
+        HabitCheckinDto habit = habitService.getHabitCheckinDtoById(callback.id());
 
         log.info("picking habit payload {}", u.getPayload());
 
-        switch (payload) {
+        switch (callback.payload()) {
             case HABITS_ID -> {
                 messageSender.sendHabit(u.chatId(), habit);
             }
             case HABITS_SET_STATUS_ARCHIVED -> {
                 habitService.markHabitAsArchived(habit.id());
-                messageSender.sendHabit(u.chatId(), habitService.getHabitCheckinDtoById(payload.extractId(u.getPayload())));
+                messageSender.sendHabit(u.chatId(), habitService.getHabitCheckinDtoById(callback.id()));
             }
             case HABITS_SET_STATUS_COMPLETED -> {
                 habitService.markHabitAsCompleted(habit.id());
-                messageSender.sendHabit(u.chatId(), habitService.getHabitCheckinDtoById(payload.extractId(u.getPayload())));
+                messageSender.sendHabit(u.chatId(), habitService.getHabitCheckinDtoById(callback.id()));
             }
             case HABITS_SET_STATUS_PAUSED -> {
                 habitService.markHabitAsPaused(habit.id());
-                messageSender.sendHabit(u.chatId(), habitService.getHabitCheckinDtoById(payload.extractId(u.getPayload())));
+                messageSender.sendHabit(u.chatId(), habitService.getHabitCheckinDtoById(callback.id()));
             }
             case HABITS_SET_STATUS_IN_PROGRESS -> {
                 habitService.markHabitAsInProgress(habit.id());
-                messageSender.sendHabit(u.chatId(), habitService.getHabitCheckinDtoById(payload.extractId(u.getPayload())));
+                messageSender.sendHabit(u.chatId(), habitService.getHabitCheckinDtoById(callback.id()));
             }
             case HABITS_MARK_AS_UNCOMPLETED -> {
                 habitService.uncheckinHabit(habit.id(), LocalDate.now());
-                messageSender.sendHabit(u.chatId(), habitService.getHabitCheckinDtoById(payload.extractId(u.getPayload())));
+                messageSender.sendHabit(u.chatId(), habitService.getHabitCheckinDtoById(callback.id()));
             }
             case HABITS_MARK_AS_COMPLETED -> {
                 habitService.checkinHabit(habit.id(), LocalDate.now());
-                messageSender.sendHabit(u.chatId(), habitService.getHabitCheckinDtoById(payload.extractId(u.getPayload())));
+                messageSender.sendHabit(u.chatId(), habitService.getHabitCheckinDtoById(callback.id()));
             }
             case HABITS_CHANGE_TITLE -> {
-                habitRedisRepo.save(u.chatId(), habit);
+                sessions.savePendingHabit(u.chatId(), habit);
                 messageSender.sendHabitTitleInput(habit.id());
             }
             case HABITS_CHANGE_DESCRIPTION -> {
-                habitRedisRepo.save(u.chatId(), habit);
+                sessions.savePendingHabit(u.chatId(), habit);
                 messageSender.sendHabitDescriptionInput(habit.id());
             }
             case HABITS_CHANGE_INTERVAL -> {
-                habitRedisRepo.save(u.chatId(), habit);
+                sessions.savePendingHabit(u.chatId(), habit);
                 messageSender.sendHabitIntervalInput(habit.id());
             }
             case HABITS_CHANGE_GOAL_DATE -> {
-                habitRedisRepo.save(u.chatId(), habit);
+                sessions.savePendingHabit(u.chatId(), habit);
                 messageSender.sendHabitGoalDateInput(habit.id());
             }
             case HABITS_DELETE -> {
-                habitService.deleteHabitById(habit.id());
-                messageSender.sendText(u.chatId(), "Привычка удалена");
+                tx.executeWithoutResult(s -> {
+                    habitService.deleteHabitById(habit.id());
+                    outbox.sendText(u.chatId(), "Привычка удалена");
+                });
             }
         }
     }
@@ -121,102 +130,86 @@ public class HabitManager {
     public void changeHabitTitle(Update u) {
         String text = u.getText();
         if (text != null && !text.isBlank()) {
-            Optional<HabitCheckinDto> habit = habitRedisRepo.get(u.chatId());
-
-            HabitCheckinDto prevHabit = habit.orElse(null);
-            if (prevHabit == null) {
-                prevHabit = new HabitCheckinDto(
-                        null,
+            HabitCheckinDto newHabit = sessions.updatePendingHabit(u.chatId(), prev -> {
+                HabitCheckinDto prevHabit = orEmpty(prev);
+                return new HabitCheckinDto(
+                        prevHabit.id(),
                         text,
-                        null,
-                        HabitStatus.IN_PROGRESS,
-                        null,
-                        null,
-                        null,
-                        null,
-                        false,
-                        false
+                        prevHabit.description(),
+                        prevHabit.status(),
+                        prevHabit.interval(),
+                        prevHabit.priority(),
+                        prevHabit.day(),
+                        prevHabit.goalDate(),
+                        prevHabit.isCompleted(),
+                        prevHabit.isCompletedOnTime()
                 );
-            }
-
-            HabitCheckinDto newHabit = new HabitCheckinDto(
-                    prevHabit.id(),
-                    text,
-                    prevHabit.description(),
-                    prevHabit.status(),
-                    prevHabit.interval(),
-                    prevHabit.priority(),
-                    prevHabit.day(),
-                    prevHabit.goalDate(),
-                    prevHabit.isCompleted(),
-                    prevHabit.isCompletedOnTime()
-            );
-
-            habitRedisRepo.save(u.chatId(), newHabit);
-
-            maxApi.postMessage(u.chatId(), messageSender.createHabitCreateKeyboardBody(
+            });
+            messageSender.show(u.chatId(), messageSender.createHabitCreateKeyboardBody(
                     newHabit.title(),
                     newHabit.description(),
                     newHabit.interval() != null ? newHabit.interval().getDisplayName() : null,
                     newHabit.goalDate() != null ? formatGoalDate(newHabit.goalDate()) : null
-            )).block();
+            ), null);
         }
     }
 
     public void changeHabitDescription(Update u) {
         String text = u.getText();
         if (text != null && !text.isBlank()) {
-            Optional<HabitCheckinDto> habit = habitRedisRepo.get(u.chatId());
-
-            HabitCheckinDto prevHabit = habit.orElse(null);
-            if (prevHabit == null) {
-                prevHabit = new HabitCheckinDto(
-                        null,
-                        null,
+            HabitCheckinDto newHabit = sessions.updatePendingHabit(u.chatId(), prev -> {
+                HabitCheckinDto prevHabit = orEmpty(prev);
+                return new HabitCheckinDto(
+                        prevHabit.id(),
+                        prevHabit.title(),
                         text,
-                        HabitStatus.IN_PROGRESS,
-                        null,
-                        null,
-                        null,
-                        null,
-                        false,
-                        false
+                        prevHabit.status(),
+                        prevHabit.interval(),
+                        prevHabit.priority(),
+                        prevHabit.day(),
+                        prevHabit.goalDate(),
+                        prevHabit.isCompleted(),
+                        prevHabit.isCompletedOnTime()
                 );
-            }
-
-            HabitCheckinDto newHabit = new HabitCheckinDto(
-                    prevHabit.id(),
-                    prevHabit.title(),
-                    text,
-                    prevHabit.status(),
-                    prevHabit.interval(),
-                    prevHabit.priority(),
-                    prevHabit.day(),
-                    prevHabit.goalDate(),
-                    prevHabit.isCompleted(),
-                    prevHabit.isCompletedOnTime()
-            );
-
-            habitRedisRepo.save(u.chatId(), newHabit);
-            maxApi.postMessage(u.chatId(), messageSender.createHabitCreateKeyboardBody(
+            });
+            messageSender.show(u.chatId(), messageSender.createHabitCreateKeyboardBody(
                     newHabit.title(),
                     newHabit.description(),
                     newHabit.interval() != null ? newHabit.interval().getDisplayName() : null,
                     newHabit.goalDate() != null ? formatGoalDate(newHabit.goalDate()) : null
-            )).block();
+            ), null);
         }
     }
 
     public void getAllHabitsList(Update u) {
-        messageSender.sendAllHabitsList(u.chatId(), habitService.getAllHabits(u.chatId()));
+        sendHabitPage(u.chatId(), HabitService.HabitView.ALL, PageCursor.FIRST);
     }
 
     public void getTodayHabitsList(Update u) {
-        messageSender.sendTodayHabitsList(u.chatId(), habitService.getHabitsForToday(u.chatId()));
+        sendHabitPage(u.chatId(), HabitService.HabitView.TODAY, PageCursor.FIRST);
     }
 
     public void getWeekHabitsList(Update u) {
-        messageSender.sendTodayHabitsList(u.chatId(), habitService.getHabitsForWeek(u.chatId()));
+        sendHabitPage(u.chatId(), HabitService.HabitView.WEEK, PageCursor.FIRST);
+    }
+
+    /** Кнопка «назад/дальше» под списком привычек */
+    public void pageHabitList(Update u, CallbackData callback) {
+        PagePayload page = PagePayload.parse(callback, u.getPayload());
+        HabitService.HabitView view = page == null ? null : HabitService.HabitView.fromKey(page.list());
+        if (view == null) {
+            log.warn("Bad habit page payload: {}", u.getPayload());
+            return;
+        }
+        sendHabitPage(u.chatId(), view, page.cursor());
+    }
+
+    private void sendHabitPage(long chatId, HabitService.HabitView view, PageCursor cursor) {
+        if (view == HabitService.HabitView.ALL) {
+            messageSender.sendAllHabitsPage(chatId, habitService.getHabitsPage(chatId, cursor, ui.pageSize()));
+        } else {
+            messageSender.sendHabitCheckinPage(chatId, view, habitService.getHabitCheckinsPage(chatId, view, cursor, ui.pageSize()));
+        }
     }
 
     public void changeHabitInterval(Update u) {
@@ -227,44 +220,27 @@ public class HabitManager {
                 return;
             }
 
-            Optional<HabitCheckinDto> habit = habitRedisRepo.get(u.chatId());
-
-            HabitCheckinDto prevHabit = habit.orElse(null);
-            if (prevHabit == null) {
-                prevHabit = new HabitCheckinDto(
-                        null,
-                        null,
-                        null,
-                        HabitStatus.IN_PROGRESS,
+            HabitCheckinDto newHabit = sessions.updatePendingHabit(u.chatId(), prev -> {
+                HabitCheckinDto prevHabit = orEmpty(prev);
+                return new HabitCheckinDto(
+                        prevHabit.id(),
+                        prevHabit.title(),
+                        prevHabit.description(),
+                        prevHabit.status(),
                         interval,
-                        null,
-                        null,
-                        null,
-                        false,
-                        false
+                        prevHabit.priority(),
+                        prevHabit.day(),
+                        prevHabit.goalDate(),
+                        prevHabit.isCompleted(),
+                        prevHabit.isCompletedOnTime()
                 );
-            }
-
-            HabitCheckinDto newHabit = new HabitCheckinDto(
-                    prevHabit.id(),
-                    prevHabit.title(),
-                    prevHabit.description(),
-                    prevHabit.status(),
-                    interval,
-                    prevHabit.priority(),
-                    prevHabit.day(),
-                    prevHabit.goalDate(),
-                    prevHabit.isCompleted(),
-                    prevHabit.isCompletedOnTime()
-            );
-
-            habitRedisRepo.save(u.chatId(), newHabit);
-            maxApi.postMessage(u.chatId(), messageSender.createHabitCreateKeyboardBody(
+            });
+            messageSender.show(u.chatId(), messageSender.createHabitCreateKeyboardBody(
                     newHabit.title(),
                     newHabit.description(),
                     newHabit.interval() != null ? newHabit.interval().getDisplayName() : null,
                     newHabit.goalDate() != null ? formatGoalDate(newHabit.goalDate()) : null
-            )).block();
+            ), null);
         }
     }
 
@@ -279,45 +255,47 @@ public class HabitManager {
                 return;
             }
 
-            Optional<HabitCheckinDto> habit = habitRedisRepo.get(u.chatId());
-
-            HabitCheckinDto prevHabit = habit.orElse(null);
-            if (prevHabit == null) {
-                prevHabit = new HabitCheckinDto(
-                        null,
-                        null,
-                        null,
-                        HabitStatus.IN_PROGRESS,
-                        null,
-                        null,
-                        null,
+            HabitCheckinDto newHabit = sessions.updatePendingHabit(u.chatId(), prev -> {
+                HabitCheckinDto prevHabit = orEmpty(prev);
+                return new HabitCheckinDto(
+                        prevHabit.id(),
+                        prevHabit.title(),
+                        prevHabit.description(),
+                        prevHabit.status(),
+                        prevHabit.interval(),
+                        prevHabit.priority(),
+                        prevHabit.day(),
                         goalDate,
-                        false,
-                        false
+                        prevHabit.isCompleted(),
+                        prevHabit.isCompletedOnTime()
                 );
-            }
-
-            HabitCheckinDto newHabit = new HabitCheckinDto(
-                    prevHabit.id(),
-                    prevHabit.title(),
-                    prevHabit.description(),
-                    prevHabit.status(),
-                    prevHabit.interval(),
-                    prevHabit.priority(),
-                    prevHabit.day(),
-                    goalDate,
-                    prevHabit.isCompleted(),
-                    prevHabit.isCompletedOnTime()
-            );
-
-            habitRedisRepo.save(u.chatId(), newHabit);
-            maxApi.postMessage(u.chatId(), messageSender.createHabitCreateKeyboardBody(
+            });
+            messageSender.show(u.chatId(), messageSender.createHabitCreateKeyboardBody(
                     newHabit.title(),
                     newHabit.description(),
                     newHabit.interval() != null ? newHabit.interval().getDisplayName() : null,
                     newHabit.goalDate() != null ? formatGoalDate(newHabit.goalDate()) : null
-            )).block();
+            ), null);
+        }
+    }
+
+    /** Черновик, с которого начинается ввод привычки по полям */
+    private static HabitCheckinDto orEmpty(HabitCheckinDto habit) {
+        if (habit != null) {
+            return habit;
         }
+        return new HabitCheckinDto(
+                null,
+                null,
+                null,
+                HabitStatus.IN_PROGRESS,
+                null,
+                null,
+                null,
+                null,
+                false,
+                false
+        );
     }
 
     public static boolean shouldDoToday(HabitCheckinDto habit) {
@@ -15,5 +15,15 @@ public enum MessageMarker {
     CHANGE_HABIT_DESCRIPTION,
     CHANGE_HABIT_INTERVAL,
     CHANGE_HABIT_GOAL_DATE,
-    CREATE_HABIT
+    CREATE_HABIT;
+
+    /** Экран черновика задачи или привычки: предпросмотр или запрос одного из полей */
+    public boolean isDraft() {
+        return switch (this) {
+            case CREATE_TASK, CHANGE_TASK_TITLE, CHANGE_TASK_DESCRIPTION, CHANGE_TASK_DEADLINE,
+                 CREATE_HABIT, CHANGE_HABIT_TITLE, CHANGE_HABIT_DESCRIPTION, CHANGE_HABIT_INTERVAL,
+                 CHANGE_HABIT_GOAL_DATE -> true;
+            default -> false;
+        };
+    }
 }
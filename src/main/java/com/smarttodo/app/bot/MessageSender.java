@@ -1,23 +1,31 @@
 package com.smarttodo.app.bot;
 
 import com.smarttodo.app.client.MaxApi;
+import com.smarttodo.app.client.RenderedBody;
+import com.smarttodo.app.client.SendPriority;
 import com.smarttodo.app.dto.*;
-import com.smarttodo.app.entity.HabitInterval;
 import com.smarttodo.app.entity.TaskStatus;
 import com.smarttodo.app.llm.motivation.MotivationService;
-import com.smarttodo.app.repository.LastActionRedisRepo;
+import com.smarttodo.app.bot.session.ChatSessionStore;
+import com.smarttodo.app.bot.template.MessageTemplates;
 import com.smarttodo.app.service.HabitService;
+import com.smarttodo.app.service.TaskService;
 import com.smarttodo.app.service.MetricsService;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
-import reactor.util.retry.Retry;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
 
-import java.time.Duration;
 import java.time.format.DateTimeFormatter;
-import java.util.LinkedHashMap;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 @Slf4j
 @Service
@@ -25,151 +33,281 @@ import java.util.Map;
 public class MessageSender {
 
     private final MaxApi maxApi;        // postMessage возвращает Mono<SendMessageResult>
-    private final LastActionRedisRepo lastRepo;   // синхронный репозиторий
+    private final ChatSessionStore sessions;   // состояние чата, в Redis пишется в фоне
     private final MetricsService metricsService;
 
     private final MotivationService motivationService;
 
-    private static final Duration TIMEOUT = Duration.ofSeconds(5);
-    private static final Retry RETRY_5XX_OR_NETWORK = Retry
-            .backoff(3, Duration.ofMillis(300))
-            .filter(MaxApi::isTransient);
+    private static final DateTimeFormatter GOAL_DATE = DateTimeFormatter.ofPattern("dd.MM.yyyy");
+    private static final DateTimeFormatter WEEK_DAY = DateTimeFormatter.ofPattern("dd.MM");
+
     private final HabitService habitService;
+    private final MessageTemplates templates;   // готовые тела экранов
+    private final UiProps ui;
+    private final MeterRegistry meterRegistry;
+    private final DeferredSends deferred;       // шаги, отложенные на время недоступности MAX
+
+    /** Хвост очереди отправок каждого чата: следующая отправка стартует, когда закончилась предыдущая */
+    private final Map<Long, CompletableFuture<Void>> tails = new ConcurrentHashMap<>();
+
+    /** Исходы отправок, поставленных внутри {@link #track} на этом потоке */
+    private static final ThreadLocal<List<CompletableFuture<Void>>> TRACKED = new ThreadLocal<>();
+
+    /** Куда складывать последние сообщения чатов вместо сессии — см. {@link #track(Runnable, Map)} */
+    private static final ThreadLocal<Map<Long, MessageMeta>> LAST_MESSAGES = new ThreadLocal<>();
+    private static final Object LAST_MESSAGES_KEY = new Object();
+
+    // ===== Неблокирующие отправки =====
+
+    /**
+     * Отправляет сообщение и запоминает его как последнее сообщение чата с маркером.
+     * Ничего не ждёт: результат и сохранение метаданных — продолжение Mono.
+     */
+    public Mono<MessageMeta> send(long chatId, Object body, MessageMarker marker) {
+        return post(chatId, body)
+                .map(meta -> new MessageMeta(meta.mid(), meta.seq(), meta.sentAt(), marker, hashOf(body)))
+                .flatMap(meta -> Mono.deferContextual(ctx -> {
+                    Map<Long, MessageMeta> batch = ctx.getOrDefault(LAST_MESSAGES_KEY, null);
+                    if (batch == null) return sessions.saveLastMessageAsync(chatId, meta).thenReturn(meta);
+                    batch.put(chatId, meta);    // запишет пачкой тот, кто собирает (рассылка)
+                    return Mono.just(meta);
+                }))
+                .doOnNext(meta -> {
+                    log.info("Sent & saved: chatId={}, mid={}, seq={}, marker={}",
+                            chatId, meta.mid(), meta.seq(), meta.marker());
+                });
+    }
 
-    public void sendText(long chatId, String text) {
-        if (chatId <= 0) throw new IllegalArgumentException("chatId must be > 0");
-        if (text == null || text.isBlank()) return;
+    /**
+     * POST /messages (таймаут, лимит, повторы и предохранитель — в MaxApi), последнее сообщение чата не меняется.
+     * Пока MAX недоступен, запрос ждёт в {@link DeferredSends} — см. {@link #whenAvailable}.
+     */
+    public Mono<MessageMeta> post(long chatId, Object body) {
+        return whenAvailable(chatId, () -> postOnce(chatId, body), 0);
+    }
 
-        Map<String, Object> body = Map.of("text", text);
+    /** POST /messages без ожидания MAX: {@link MaxApi.MaxUnavailableException} уходит вызывающему (outbox повторяет сам) */
+    public Mono<MessageMeta> postOnce(long chatId, Object body) {
+        return maxApi.postMessage(chatId, body)
+                .switchIfEmpty(Mono.error(() -> new IllegalStateException("Empty SendMessageResult")))
+                .map(res -> new MessageMeta(res.getMid(), res.getSeq(), res.getTs(), null, 0))
+                .doOnSubscribe(s -> log.debug("POST /messages start: chatId={}", chatId))
+                .doOnNext(meta -> log.debug("POST /messages ok: mid={}, seq={}, ts={}", meta.mid(), meta.seq(), meta.sentAt()));
+    }
 
-        try {
-            log.info("POST /messages start: chatId={}, kind=TEXT", chatId);
-            // блокирующий вызов с timeout и retry
-            var res = maxApi.postMessage(chatId, body)
-                    .timeout(TIMEOUT)
-                    .retryWhen(RETRY_5XX_OR_NETWORK)
-                    .block();
-
-            if (res == null) {
-                throw new IllegalStateException("Empty SendMessageResult");
-            }
+    public Mono<MessageMeta> postText(long chatId, String text) {
+        return post(chatId, Map.of("text", text))
+                .doOnNext(meta -> log.info("TEXT sent: chatId={}, mid={}, seq={}", chatId, meta.mid(), meta.seq()));
+    }
 
-            log.info("TEXT sent: chatId={}, mid={}, seq={}", chatId, res.getMid(), res.getSeq());
-        } catch (Exception e) {
-            log.warn("sendText failed: chatId={}, err={}", chatId, e.toString());
+    /** PUT /messages; пока MAX недоступен, запрос ждёт в {@link DeferredSends} */
+    public Mono<Void> edit(long chatId, String mid, Object body) {
+        return whenAvailable(chatId, () -> maxApi.editMessage(chatId, mid, body), 0)
+                .then();
+    }
+
+    /**
+     * Вызов MAX, который при разомкнутом предохранителе не падает, а откладывается в {@link DeferredSends}
+     * и повторяется, когда MAX вернётся. Повторяется только сам вызов: то, что шаг сделал до него (разбор текста,
+     * чтение сессии), заново не выполняется. Шаг всё это время не завершён, поэтому следующие отправки чата
+     * ждут его и не обгоняют.
+     *
+     * @param since когда вызов отложили впервые; 0 — ещё не откладывали
+     */
+    private <T> Mono<T> whenAvailable(long chatId, Supplier<Mono<T>> call, long since) {
+        return Mono.defer(call)
+                .onErrorResume(MaxApi.MaxUnavailableException.class, e -> Mono.deferContextual(ctx -> {
+                    long first = since != 0 ? since : System.nanoTime();
+                    Sinks.Empty<Void> resumed = Sinks.empty();
+                    if (!deferred.defer(chatId, SendPriority.from(ctx), first,
+                            resumed::tryEmitEmpty,
+                            () -> {
+                                log.warn("Deferred send expired: chatId={}", chatId);
+                                resumed.tryEmitError(e);
+                            })) {
+                        return Mono.<T>error(e);
+                    }
+                    log.debug("Send deferred, MAX unavailable: chatId={}, retryIn={} ms", chatId, e.getRetryIn().toMillis());
+                    return resumed.asMono().then(whenAvailable(chatId, call, first));
+                }));
+    }
+
+    /**
+     * Перерисовывает экран черновика в последнем сообщении чата (PUT вместо нового POST).
+     * Если тело и маркер совпадают с уже показанными — запроса к MAX нет вовсе.
+     * Последнее сообщение читается при подписке, то есть после предыдущих отправок чата.
+     *
+     * @param marker новый маркер сообщения; null — оставить текущий
+     */
+    public Mono<Void> redraw(long chatId, RenderedBody body, MessageMarker marker) {
+        return sessions.lastMessageAsync(chatId)
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .flatMap(opt -> {
+                    MessageMeta last = opt.orElse(null);
+                    if (last == null || last.mid() == null || last.marker() == null || !last.marker().isDraft()) {
+                        // редактировать нечего — новое сообщение становится экраном черновика
+                        redraws("posted");
+                        return send(chatId, body, marker != null ? marker : last != null ? last.marker() : null).then();
+                    }
+
+                    MessageMarker next = marker != null ? marker : last.marker();
+                    long hash = body.contentHash();
+                    MessageMeta updated = new MessageMeta(last.mid(), last.seq(), last.sentAt(), next, hash);
+
+                    if (hash == last.bodyHash()) {
+                        redraws("skipped");
+                        log.debug("Redraw skipped, same body: chatId={}, mid={}", chatId, last.mid());
+                        return next == last.marker()
+                                ? Mono.<Void>empty()
+                                : sessions.saveLastMessageAsync(chatId, updated);
+                    }
+
+                    redraws("edited");
+                    return edit(chatId, last.mid(), body)
+                            .then(sessions.saveLastMessageAsync(chatId, updated))
+                            // сообщение удалено или слишком старое для правки — показываем заново
+                            .onErrorResume(MaxApi.MaxClientException.class, e -> {
+                                log.info("Edit rejected, posting new message: chatId={}, mid={}, err={}",
+                                        chatId, last.mid(), e.getMessage());
+                                return send(chatId, body, next).then();
+                            });
+                });
+    }
+
+    /**
+     * Экран черновика: в режиме одного сообщения правит последнее сообщение на месте,
+     * иначе отправляет новое, как раньше (с маркером — запоминая его как последнее).
+     */
+    public void show(long chatId, RenderedBody body, MessageMarker marker) {
+        if (ui.singleMessage()) {
+            submit(chatId, redraw(chatId, body, marker));
+        } else if (marker != null) {
+            sendMessage(chatId, body, marker);
+        } else {
+            sendBody(chatId, body);
         }
     }
 
-    public void sendStartKeyboard(long chatId) {
-        var body = InlineKeyboardBuilder.create()
-                .text("""
-                        
-                        Привет! Я твой помощник по самоорганизации. Готов держать фокус, планировать день и превращать хаос в аккуратные победы 💪:
-                        
-                        • ⚡️ Быстро добавляю задачи и напоминаю о важных делах
-                        • 📊 Показываю реальный прогресс и красивую статистику
-                        • ⏱️ Замеряю твои «часы активности» — когда ты действительно работаешь
-                        • 🌱 Запускаю трекеры привычек и помогаю не выбиваться из ритма
-                        
-                        Готов начать? 🚀
-                        """)
-                .format("markdown")
-                .addCallbackButton("📋 Меню задач",   "tasks-menu")
-                .addCallbackButton("🗓️ Меню привычек", "habits-menu")
-                .build();
-
-        sendMessage(chatId, body, MessageMarker.WELCOME);
+    private void redraws(String result) {
+        meterRegistry.counter("bot.ui.redraws", "result", result).increment();
     }
 
-    public void sendInputTaskTitle(long chatId) {
-        String text = """
-                Введите название задачи:
-                """;
+    private static long hashOf(Object body) {
+        return body instanceof RenderedBody rendered ? rendered.contentHash() : 0;
+    }
 
-        Map<String, Object> body = new LinkedHashMap<>();
-        body.put("text", text);
+    /**
+     * Ставит шаг в очередь отправок чата и сразу возвращается.
+     * Сообщения одного чата уходят по порядку, ошибка шага пишется в лог и не ломает следующие.
+     * Приоритет для лимитера MAX берётся из текущего потока (см. {@link SendPriority#run}).
+     * Если MAX недоступен (предохранитель разомкнут), вызов MAX внутри шага ждёт в {@link DeferredSends},
+     * а шаг и очередь чата за ним стоят, пока он не уйдёт или не устареет.
+     */
+    public void submit(long chatId, Mono<?> step) {
+        List<CompletableFuture<Void>> tracked = TRACKED.get();
+        CompletableFuture<Void> outcome = tracked == null ? null : new CompletableFuture<>();
+        if (tracked != null) tracked.add(outcome);
+
+        enqueue(chatId, step, SendPriority.current(), outcome, LAST_MESSAGES.get());
+    }
 
-        sendMessage(chatId, body, MessageMarker.CHANGE_TASK_TITLE);
+    private void enqueue(long chatId, Mono<?> step, SendPriority priority, CompletableFuture<Void> outcome,
+                         Map<Long, MessageMeta> lastMessages) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        CompletableFuture<Void> prev = tails.put(chatId, done);
+
+        (prev == null ? Mono.<Void>empty() : Mono.fromFuture(prev))
+                .then(Mono.defer(() -> step))
+                .doOnError(e -> {
+                    log.warn("Send failed: chatId={}, err={}, cause={}",
+                            chatId, e.toString(), e.getCause() != null ? e.getCause().toString() : "null");
+                    if (outcome != null) outcome.completeExceptionally(e);
+                })
+                .onErrorResume(e -> Mono.empty())
+                .doFinally(sig -> {
+                    tails.remove(chatId, done);
+                    done.complete(null);
+                    if (outcome != null) outcome.complete(null);
+                })
+                .contextWrite(priority.context())
+                .contextWrite(ctx -> lastMessages == null ? ctx : ctx.put(LAST_MESSAGES_KEY, lastMessages))
+                .subscribe();
     }
 
-    public void sendInputTaskDescription(long chatId) {
-        String text = """
-                Введите описание задачи:
-                """;
+    /**
+     * Выполняет синхронный код с отправками и возвращает их общий исход:
+     * число поставленных в очередь сообщений, когда все они ушли, или ошибку, если хоть одно не ушло.
+     * Нужен рассылкам, которые строятся на тех же sendXxx, что и ответы пользователю.
+     */
+    public Mono<Integer> track(Runnable sends) {
+        List<CompletableFuture<Void>> prev = TRACKED.get();
+        List<CompletableFuture<Void>> outcomes = new ArrayList<>();
+        TRACKED.set(outcomes);
+        try {
+            sends.run();
+        } finally {
+            TRACKED.set(prev);
+        }
+        return Mono.fromFuture(CompletableFuture.allOf(outcomes.toArray(CompletableFuture[]::new)))
+                .thenReturn(outcomes.size());
+    }
+
+    /**
+     * Как {@link #track(Runnable)}, но последние сообщения чатов не пишутся в их сессии по одному,
+     * а складываются в lastMessages: рассылка записывает их пачкой и не заводит сессию каждому получателю.
+     * Значения попадают в map до того, как завершится возвращённый Mono.
+     */
+    public Mono<Integer> track(Runnable sends, Map<Long, MessageMeta> lastMessages) {
+        Map<Long, MessageMeta> prev = LAST_MESSAGES.get();
+        LAST_MESSAGES.set(lastMessages);
+        try {
+            return track(sends);
+        } finally {
+            LAST_MESSAGES.set(prev);
+        }
+    }
 
-        Map<String, Object> body = new LinkedHashMap<>();
-        body.put("text", text);
+    // ===== Отправки «выстрелил и забыл» для обработчиков апдейтов =====
+
+    public void sendText(long chatId, String text) {
+        if (chatId <= 0) throw new IllegalArgumentException("chatId must be > 0");
+        if (text == null || text.isBlank()) return;
 
-        sendMessage(chatId, body, MessageMarker.CHANGE_TASK_DESCRIPTION);
+        submit(chatId, postText(chatId, text));
+    }
+
+    /** Отправка без маркера — последнее сообщение чата остаётся прежним */
+    public void sendBody(long chatId, Object body) {
+        submit(chatId, post(chatId, body));
+    }
+
+    public void sendStartKeyboard(long chatId) {
+        sendMessage(chatId, templates.welcome(), MessageMarker.WELCOME);
+    }
+
+    public void sendInputTaskTitle(long chatId) {
+        show(chatId, templates.taskTitleInput(), MessageMarker.CHANGE_TASK_TITLE);
+    }
+
+    public void sendInputTaskDescription(long chatId) {
+        show(chatId, templates.taskDescriptionInput(), MessageMarker.CHANGE_TASK_DESCRIPTION);
     }
 
     public void sendInputTaskDeadline(long chatId) {
-        String text = """
-                Введите дэдлайн по задаче в формате dd.MM.yyyy HH:mm:
-                """;
-
-        Map<String, Object> body = new LinkedHashMap<>();
-        body.put("text", text);
-
-        sendMessage(chatId, body, MessageMarker.CHANGE_TASK_DEADLINE);
-    }
-
-    public Object createTaskCreateKeyboardBody(String title, String description, String deadline) {
-
-        return InlineKeyboardBuilder.create()
-                .text("""
-                        ✨ Предпросмотр задачи
-
-                        Название: %s
-                        Описание: %s
-                        Дэдлайн: %s
-
-                        Вы можете описать задачу текстом, поля выше заполнятся автоматически или заполнить содержимое с помощью кнопок.
-                        Обязательно укажите дату и время дэдлайна по задаче.
-                        Обработка текста занимает 10 - 30 секунд.
-                        Затем вы сможете с помощью кнопок отредактировать задачу.
-                        """.formatted(
-                        title == null ? "." : title,
-                        description == null ? "." : description,
-                        deadline == null ? "." : deadline
-                ))
-                .format("markdown")
-                .addCallbackButton("Изменить название",     Payload.TASKS_CHANGE_TITLE.key())
-                .addCallbackButton("Изменить описание",     Payload.TASKS_CHANGE_DESCRIPTION.key())
-                .addCallbackButton("Изменить дэдлайн",      Payload.TASKS_CHANGE_DEADLINE.key())
-                .addCallbackButton("Подтвердить создание",  Payload.TASKS_CREATE_CONFIRM.key())
-                .addCallbackButton("🗓️ Меню привычек",        Payload.HABIT_MENU.key())
-                .addCallbackButton("📋 Меню задач",        Payload.TASK_MENU.key())
-                .addCallbackButton("🏠 Профиль",        Payload.HOME_PAGE.key())
-                .build();
+        show(chatId, templates.taskDeadlineInput(), MessageMarker.CHANGE_TASK_DEADLINE);
     }
 
-    public void sendTaskCreateKeyboard(long chatId) {
+    public RenderedBody createTaskCreateKeyboardBody(String title, String description, String deadline) {
+        return templates.taskPreview(
+                title == null ? "." : title,
+                description == null ? "." : description,
+                deadline == null ? "." : deadline
+        );
+    }
 
-        var body = InlineKeyboardBuilder.create()
-                .text("""
-                        ✨ Предпросмотр задачи
-
-                        Название: .
-                        Описание: .
-                        Дэдлайн: .
-                        
-                        Вы можете описать задачу текстом, поля выше заполнятся автоматически или заполнить содержимое с помощью кнопок.
-                        Обязательно укажите дату и время дэдлайна по задаче.
-                        Обработка текста занимает 10 - 30 секунд.
-                        Затем вы сможете с помощью кнопок отредактировать задачу.
-                        """)
-                .format("markdown")
-                .addCallbackButton("Изменить название",     Payload.TASKS_CHANGE_TITLE.key())
-                .addCallbackButton("Изменить описание",     Payload.TASKS_CHANGE_DESCRIPTION.key())
-                .addCallbackButton("Изменить дэдлайн",      Payload.TASKS_CHANGE_DEADLINE.key())
-                .addCallbackButton("Подтвердить создание",  Payload.TASKS_CREATE_CONFIRM.key())
-                .addCallbackButton("🗓️ Меню привычек",        Payload.HABIT_MENU.key())
-                .addCallbackButton("📋 Меню задач",        Payload.TASK_MENU.key())
-                .addCallbackButton("🏠 Профиль",        Payload.HOME_PAGE.key())
-                .build();
-
-        sendMessage(chatId, body, MessageMarker.CREATE_TASK);
+    public void sendTaskCreateKeyboard(long chatId) {
+        sendMessage(chatId, templates.taskCreate(), MessageMarker.CREATE_TASK);
     }
 
     public void sendUpcomingTasks(long chatId, List<TaskDto> tasks) {
@@ -204,19 +342,14 @@ public class MessageSender {
 
         for (TaskDto task : tasks) {
 
-            sb.append("""
-                %s **%s**
-                Описание: %s
-                Дэдлайн: %s
-
-                """.formatted(
+            MessageTemplates.UPCOMING_TASK_ITEM.appendTo(sb,
                     task.status().getEmoji(),
                     task.title(),
                     task.description() == null || task.description().isBlank()
                             ? "_нет описания_"
                             : task.description(),
                     TaskManager.formatLocalDateTime(task.deadline())
-            ));
+            );
         }
 
         sb.append("\n*Нажми на задачу ниже, чтобы открыть её*");
@@ -239,17 +372,16 @@ public class MessageSender {
     }
 
     public void sendHomePageKeyboard(long chatId) {
-        String text;
+        RenderedBody body;
 
         try {
             var summary    = metricsService.getWeeklySummary(chatId);
             var habitStats = summary.habitStats();
             var taskStats  = summary.taskStats();
 
-            var dateFormatter = DateTimeFormatter.ofPattern("dd.MM");
-            String period = summary.weekStart().format(dateFormatter)
+            String period = summary.weekStart().format(WEEK_DAY)
                     + "–"
-                    + summary.weekEnd().format(dateFormatter);
+                    + summary.weekEnd().format(WEEK_DAY);
 
             long totalTasks = taskStats != null ? taskStats.totalTasks()      : 0;
             long completedTasks = taskStats != null ? taskStats.completedTasks()  : 0;
@@ -272,25 +404,7 @@ public class MessageSender {
                     ? summary.activeDays().size()
                     : 0;
 
-            text = """
-                   👤 **Твой профиль**
-
-                   _Неделя: %s_
-
-                   **Задачи**📅
-                   • Всего: %d
-                   • Выполнено: %d
-                   • Просрочено: %d
-
-                   **Привычки**🌱
-                   • Всего: %d
-                   • Активных: %d
-                   • Соблюдено: %d
-                   • Средний прогресс: %.0f%%
-
-                   **Активность**📊
-                   • Дней с выполненными задачами: %d из 7
-                   """.formatted(
+            body = templates.homePage(
                     period,
                     totalTasks,
                     completedTasks,
@@ -298,66 +412,41 @@ public class MessageSender {
                     totalHabits,
                     activeHabits,
                     habitService.getCompletedHabitsCountForWeek(chatId),
-                    avgHabitCompletion,
+                    Math.round(avgHabitCompletion),
                     activeDaysCount
             );
         } catch (Exception e) {
             log.warn("Failed to build profile metrics for chatId={}: {}", chatId, e.toString());
-            text = """
-                   👤 **Твой профиль**
-
-                   Пока нет данных по задачам и привычкам за эту неделю.
-                   Начни с того, чтобы добавить задачу или создать привычку 🙂
-                   """;
+            body = templates.homePageEmpty();
         }
 
-        var body = InlineKeyboardBuilder.create()
-                .text(text)
-                .format("markdown")
-                // две кнопки профиля
-                .addCallbackButton("📋 Меню задач",   "tasks-menu")
-                .addCallbackButton("🗓️ Меню привычек", "habits-menu")
-                .build();
-
         sendMessage(chatId, body, MessageMarker.HOME_MENU);
     }
 
     public void sendTodayTaskList(long chatId, List<TaskDto> tasks) {
-        sendTaskList(chatId, tasks, "Список задач на сегодня");
-    }
-
-    public void sendWeekTaskList(long chatId, List<TaskDto> tasks) {
-        sendTaskList(chatId, tasks, "Список задач на неделю");
+        sendTaskList(chatId, ListPage.of(tasks), "Список задач на сегодня", null);
     }
 
-    public void sendAllTaskList(long chatId, List<TaskDto> tasks) {
-        sendTaskList(chatId, tasks, "Список всех незавершенных задач");
+    /** Страница списка задач с кнопками соседних страниц */
+    public void sendTaskPage(long chatId, TaskService.TaskView view, ListPage<TaskDto> page) {
+        String title = switch (view) {
+            case TODAY -> "Список задач на сегодня";
+            case TOMORROW -> "Список задач на завтра";
+            case WEEK -> "Список задач на неделю";
+            case ALL -> "Список всех незавершенных задач";
+        };
+        sendTaskList(chatId, page, title, view.key());
     }
 
     public void sendTask(long chatId, TaskDto task) {
-        var body = InlineKeyboardBuilder.create()
-                .text("""
-                        %s **%s**
-                        Описание: %s
-                        Дэдлайн: %s
-                        Статус: %s
-                        """.formatted(
-                        task.status().getEmoji(),
-                        task.title(),
-                        task.description(),
-                        TaskManager.formatLocalDateTime(task.deadline()),
-                        task.status().getDescription()
-                ))
-                .format("markdown")
-                .addCallbackButton("Отметить невыполненной",   Payload.TASKS_SET_STATUS_UNCOMPLETED.key() + ":" + task.id())
-                .addCallbackButton("Отметить взятой в работу",  Payload.TASKS_SET_STATUS_IN_PROGRESS.key() + ":" + task.id())
-                .addCallbackButton("Отметить выполненной",   Payload.TASKS_SET_STATUS_COMPLETED.key() + ":" + task.id())
-                .addCallbackButton("Удалить задачу",         Payload.TASKS_DELETE.key() + ":" + task.id())
-                .addCallbackButton("➕ Создать новую задачу", Payload.TASKS_CREATE_NEW.key())
-                .addCallbackButton("🗓️ Меню привычек",        Payload.HABIT_MENU.key())
-                .addCallbackButton("📋 Меню задач",        Payload.TASK_MENU.key())
-                .addCallbackButton("🏠 Профиль",        Payload.HOME_PAGE.key())
-                .build();
+        var body = templates.task(
+                task.status().getEmoji(),
+                task.title(),
+                task.description(),
+                TaskManager.formatLocalDateTime(task.deadline()),
+                task.status().getDescription(),
+                task.id()
+        );
 
         sendMessage(chatId, body, MessageMarker.TASK_LIST);
     }
@@ -372,91 +461,49 @@ public class MessageSender {
                 : "не задана";
 
         String goalDate = habit.goalDate() != null
-                ? habit.goalDate().format(DateTimeFormatter.ofPattern("dd.MM.yyyy"))
+                ? habit.goalDate().format(GOAL_DATE)
                 : "не задана";
 
-        boolean shouldDo = HabitManager.shouldDoToday(habit);
-        InlineKeyboardBuilder body;
-        if (shouldDo) {
-            body = InlineKeyboardBuilder.create()
-                    .text("""
-                   %s **%s**
-                   Необходимо выполнить сегодня: %s
-                   Выполнена: %s
-                   Описание: %s
-                   Периодичность: %s
-                   Цель до: %s
-                   Статус: %s
-                   """.formatted(
-                            habit.status().getEmoji(),
-                            habit.title(),
-                            "да",
-                            habit.isCompletedOnTime() ? "✅" : "❌",
-                            description,
-                            interval,
-                            goalDate,
-                            habit.status().getDescription()
-                    ))
-                    .format("markdown")
-                    .addCallbackButton("Отметить невыполненной сегодня", Payload.HABITS_MARK_AS_UNCOMPLETED.key() + ":%s".formatted(habit.id()))
-                    .addCallbackButton("Отметить выполненной сегодня", Payload.HABITS_MARK_AS_COMPLETED.key() + ":%s".formatted(habit.id()));
-
-        } else {
-            body = InlineKeyboardBuilder.create()
-                    .text("""
-                   %s **%s**
-                   Необходимо выполнить сегодня: %s
-                   Описание: %s
-                   Периодичность: %s
-                   Цель до: %s
-                   Статус: %s
-                   """.formatted(
-                            habit.status().getEmoji(),
-                            habit.title(),
-                            "нет",
-                            description,
-                            interval,
-                            goalDate,
-                            habit.status().getDescription()
-                    ))
-                    .format("markdown");
-        }
-
-        body.addCallbackButton("Поставить статус: завершена", Payload.HABITS_SET_STATUS_ARCHIVED.key() + ":%s".formatted(habit.id()))
-                .addCallbackButton("Поставить статус: в процессе", Payload.HABITS_SET_STATUS_IN_PROGRESS.key() + ":%s".formatted(habit.id()))
-                .addCallbackButton("Поставить статус: приостановлена", Payload.HABITS_SET_STATUS_PAUSED.key() + ":%s".formatted(habit.id()))
-                .addCallbackButton("Удалить привычку", Payload.HABITS_DELETE.key() + ":%s".formatted(habit.id()))
-                .addCallbackButton("➕ Создать новую привычку",    Payload.HABITS_CREATE_NEW.key())
-                .addCallbackButton("🗓️ Меню привычек",        Payload.HABIT_MENU.key())
-                .addCallbackButton("📋 Меню задач",        Payload.TASK_MENU.key())
-                .addCallbackButton("🏠 Профиль",        Payload.HOME_PAGE.key());
-
-        sendMessage(chatId, body.build(), MessageMarker.HABIT_LIST);
+        var body = HabitManager.shouldDoToday(habit)
+                ? templates.habitToday(
+                        habit.status().getEmoji(),
+                        habit.title(),
+                        habit.isCompletedOnTime() ? "✅" : "❌",
+                        description,
+                        interval,
+                        goalDate,
+                        habit.status().getDescription(),
+                        habit.id())
+                : templates.habit(
+                        habit.status().getEmoji(),
+                        habit.title(),
+                        description,
+                        interval,
+                        goalDate,
+                        habit.status().getDescription(),
+                        habit.id());
+
+        sendMessage(chatId, body, MessageMarker.HABIT_LIST);
     }
 
-    private void sendTaskList(long chatId, List<TaskDto> tasks, String title) {
+    private void sendTaskList(long chatId, ListPage<TaskDto> page, String title, String list) {
+        List<TaskDto> tasks = page.items();
         StringBuilder sb = new StringBuilder();
         sb.append("**").append(title).append("**\n\n");
 
         for (var task : tasks) {
             if (task.status() == TaskStatus.COMPLETED) {
-                sb.append("""
-                        ~~%s **%s**~~
-                        """.formatted(
+                MessageTemplates.COMPLETED_TASK_ITEM.appendTo(sb,
                         task.status().getEmoji(),
                         task.title()
-                ));
+                );
             } else {
-                sb.append("""
-                        %s **%s**
-                        Описание: %s
-                        Дэдлайн: %s
-                        """.formatted(
+                MessageTemplates.TASK_ITEM.appendTo(sb,
                         task.status().getEmoji(),
                         task.title(),
                         task.description(),
                         TaskManager.formatLocalDateTime(task.deadline())
-                ));
+                );
             }
         }
 
@@ -473,6 +520,7 @@ public class MessageSender {
             );
         }
 
+        addPageButtons(body, Payload.TASKS_PAGE, list, page);
         body.addCallbackButton("➕ Создать задачу", Payload.TASKS_CREATE_NEW.key());
         body.addCallbackButton("🏠 Профиль",  Payload.HOME_PAGE.key());
 
@@ -480,105 +528,54 @@ public class MessageSender {
     }
 
     public void sendTaskKeyboard(long chatId) {
-        var body = InlineKeyboardBuilder.create()
-                .text("""
-                        📝 **Меню задач**
-
-                        Здесь ты можешь посмотреть задачи на сегодня, неделю,
-                        увидеть все незавершенные задачи и добавить новые.
-                        """)
-                .format("markdown")
-                .addCallbackButton("✅ Все незавершенные", Payload.TASKS_GET_ALL.key())
-                .addCallbackButton("📅 На сегодня",         Payload.TASKS_GET_TODAY.key())
-                .addCallbackButton("📆 На неделю",          Payload.TASKS_GET_WEEK.key())
-                .addCallbackButton("📆 На завтра",          Payload.TASKS_GET_TOMORROW.key())
-                .addCallbackButton("➕ Создать задачу",      Payload.TASKS_CREATE_NEW.key())
-                .addCallbackButton("🏠 Профиль",          Payload.HOME_PAGE.key())
-                .build();
-
-        sendMessage(chatId, body, MessageMarker.TASK_MENU);
+        sendMessage(chatId, templates.taskMenu(), MessageMarker.TASK_MENU);
     }
 
     public void sendHabitKeyboard(long chatId) {
-        var body = InlineKeyboardBuilder.create()
-                .text("""
-                        🧩 **Меню привычек**
-
-                        Здесь ты можешь отслеживать свои привычки, смотреть,
-                        что нужно сделать сегодня и на неделе, а также следить
-                        за своими сериями.
-                        """)
-                .format("markdown")
-                .addCallbackButton("💪 Все привычки",        Payload.HABITS_GET_ALL.key())
-                .addCallbackButton("📅 На сегодня",          Payload.HABITS_GET_TODAY.key())
-//                .addCallbackButton("📅 На неделю",           Payload.HABITS_GET_WEEK.key())
-//                .addCallbackButton("🔥 Текущие серии",       Payload.HABITS_STREAKS.key())
-                .addCallbackButton("➕ Создать привычку",    Payload.HABITS_CREATE_NEW.key())
-                .addCallbackButton("🏠 Профиль",           Payload.HOME_PAGE.key())
-                .build();
-
-        sendMessage(chatId, body, MessageMarker.HABIT_MENU);
+        sendMessage(chatId, templates.habitMenu(), MessageMarker.HABIT_MENU);
     }
 
     private void sendMessage(long chatId, Object body, MessageMarker marker) {
-        try {
-            log.info("POST /messages start: chatId={}, marker={}", chatId, marker);
-
-            var res = maxApi.postMessage(chatId, body)
-                    .timeout(TIMEOUT)
-                    .retryWhen(RETRY_5XX_OR_NETWORK)
-                    .block();
-
-            if (res == null) throw new IllegalStateException("Empty SendMessageResult");
-
-            log.debug("POST /messages ok: mid={}, seq={}, ts={}", res.getMid(), res.getSeq(), res.getTs());
-
-            MessageMeta meta = new MessageMeta(
-                    res.getMid(),
-                    res.getSeq(),
-                    res.getTs(),
-                    marker
-            );
-
-            boolean saved = lastRepo.save(chatId, meta);
-            log.debug("Redis save result: {}", saved);
-
-            log.info("Sent & saved: chatId={}, mid={}, seq={}, marker={}",
-                    chatId, meta.mid(), meta.seq(), meta.marker());
-
-        } catch (Exception e) {
-            log.warn("sendMessage failed: chatId={}, marker={}, err={}, cause={}",
-                    chatId, marker, e.toString(), e.getCause() != null ? e.getCause().toString() : "null");
-        } finally {
-            log.debug("sendMessage finished: chatId={}, marker={}", chatId, marker);
-        }
+        log.info("POST /messages start: chatId={}, marker={}", chatId, marker);
+        submit(chatId, send(chatId, body, marker));
     }
 
-    public void sendAllHabitsList(long chatId, List<HabitDto> habits) {
-        sendHabitList(chatId, habits,
+    public void sendAllHabitsPage(long chatId, ListPage<HabitDto> page) {
+        sendHabitList(chatId, page,
                 "Все твои привычки",
                 "У тебя пока нет привычек. Начни с создания первой!");
     }
 
     // привычки на сегодня — HabitCheckinDto
     public void sendTodayHabitsList(long chatId, List<HabitCheckinDto> habits) {
-        sendHabitCheckinList(chatId, habits,
+        sendHabitCheckinList(chatId, ListPage.of(habits),
                 "Привычки на сегодня",
-                "На сегодня привычек нет. Можно отдохнуть — или добавить что-то полезное 🙂");
+                "На сегодня привычек нет. Можно отдохнуть — или добавить что-то полезное 🙂",
+                null);
     }
 
-    // привычки на неделю — HabitCheckinDto
-    public void sendWeekHabitsList(long chatId, List<HabitCheckinDto> habits) {
-        sendHabitCheckinList(chatId, habits,
-                "Привычки на неделю",
-                "На эту неделю ещё нет привычек. Добавь хотя бы одну, чтобы разогнаться!");
+    /** Страница отметок привычек за сегодня или за неделю с кнопками соседних страниц */
+    public void sendHabitCheckinPage(long chatId, HabitService.HabitView view, ListPage<HabitCheckinDto> page) {
+        if (view == HabitService.HabitView.WEEK) {
+            sendHabitCheckinList(chatId, page,
+                    "Привычки на неделю",
+                    "На эту неделю ещё нет привычек. Добавь хотя бы одну, чтобы разогнаться!",
+                    view.key());
+        } else {
+            sendHabitCheckinList(chatId, page,
+                    "Привычки на сегодня",
+                    "На сегодня привычек нет. Можно отдохнуть — или добавить что-то полезное 🙂",
+                    view.key());
+        }
     }
 
     private void sendHabitCheckinList(long chatId,
-                                      List<HabitCheckinDto> habits,
+                                      ListPage<HabitCheckinDto> page,
                                       String title,
-                                      String emptyMessage) {
+                                      String emptyMessage,
+                                      String list) {
 
+        List<HabitCheckinDto> habits = page.items();
         StringBuilder sb = new StringBuilder();
 
         sb.append("""
@@ -616,25 +613,18 @@ public class MessageSender {
 
             String goalDate = habit.goalDate() == null
                     ? "не задана"
-                    : habit.goalDate().format(DateTimeFormatter.ofPattern("dd.MM.yyyy"));
+                    : habit.goalDate().format(GOAL_DATE);
 
             String completed = habit.isCompleted() ? "✅" : "❌";
 
-            sb.append("""
-                %s **%s**
-                Описание: %s
-                Периодичность: %s
-                Цель до: %s
-                Выполнена: %s
-
-                """.formatted(
+            MessageTemplates.HABIT_CHECKIN_ITEM.appendTo(sb,
                     habit.status().getEmoji(),
                     habit.title(),
                     description,
                     interval,
                     goalDate,
                     completed
-            ));
+            );
         }
 
         sb.append("\n*Кликните на привычку, чтобы перейти к ней*");
@@ -650,6 +640,7 @@ public class MessageSender {
             );
         }
 
+        addPageButtons(body, Payload.HABITS_PAGE, list, page);
         body.addCallbackButton("➕ Создать привычку", Payload.HABITS_CREATE_NEW.key());
         body.addCallbackButton("🏠 Профиль",        Payload.HOME_PAGE.key());
 
@@ -702,10 +693,11 @@ public class MessageSender {
     }
 
     private void sendHabitList(long chatId,
-                               List<HabitDto> habits,
+                               ListPage<HabitDto> page,
                                String title,
                                String emptyMessage) {
 
+        List<HabitDto> habits = page.items();
         StringBuilder sb = new StringBuilder();
 
         sb.append("""
@@ -733,13 +725,7 @@ public class MessageSender {
                 """);
 
         for (HabitDto habit : habits) {
-            sb.append("""
-                    %s **%s**
-                    Описание: %s
-                    Периодичность: %s
-                    Цель до: %s
-
-                    """.formatted(
+            MessageTemplates.HABIT_ITEM.appendTo(sb,
                     habit.status().getEmoji(),
                     habit.title(),
                     habit.description() == null || habit.description().isBlank()
@@ -748,8 +734,8 @@ public class MessageSender {
                     habit.interval() == null ? "не задана" : habit.interval().getDisplayName(),
                     habit.goalDate() == null
                             ? "не задана"
-                            : habit.goalDate().format(DateTimeFormatter.ofPattern("dd.MM.yyyy"))
-            ));
+                            : habit.goalDate().format(GOAL_DATE)
+            );
         }
 
         sb.append("\n*Кликните на привычку, чтобы перейти к ней*");
@@ -765,127 +751,51 @@ public class MessageSender {
             );
         }
 
+        addPageButtons(body, Payload.HABITS_PAGE, HabitService.HabitView.ALL.key(), page);
         body.addCallbackButton("➕ Создать привычку", Payload.HABITS_CREATE_NEW.key());
         body.addCallbackButton("🏠 Профиль",        Payload.HOME_PAGE.key());
 
         sendMessage(chatId, body.build(), MessageMarker.HABIT_LIST);
     }
 
-    public void sendHabitTitleInput(long chatId) {
-        String text = """
-                Введите название привычки:
-                """;
-
-        Map<String, Object> body = new LinkedHashMap<>();
-        body.put("text", text);
+    /** Ряд «назад/дальше» под страницей списка; list == null — список целиком, без навигации */
+    private static void addPageButtons(InlineKeyboardBuilder body, Payload payload, String list, ListPage<?> page) {
+        if (list == null || (page.prev() == null && page.next() == null)) return;
+        body.addRow(row -> {
+            if (page.prev() != null) row.callback("◀️ Назад", PagePayload.of(payload, list, page.prev()));
+            if (page.next() != null) row.callback("Дальше ▶️", PagePayload.of(payload, list, page.next()));
+        });
+    }
 
-        sendMessage(chatId, body, MessageMarker.CHANGE_HABIT_TITLE);
+    public void sendHabitTitleInput(long chatId) {
+        show(chatId, templates.habitTitleInput(), MessageMarker.CHANGE_HABIT_TITLE);
     }
 
     public void sendHabitDescriptionInput(long chatId) {
-        String text = """
-                Введите краткое описание привычки:
-                """;
-
-        Map<String, Object> body = new LinkedHashMap<>();
-        body.put("text", text);
-
-        sendMessage(chatId, body, MessageMarker.CHANGE_HABIT_DESCRIPTION);
+        show(chatId, templates.habitDescriptionInput(), MessageMarker.CHANGE_HABIT_DESCRIPTION);
     }
 
     public void sendHabitIntervalInput(long chatId) {
-        var body = InlineKeyboardBuilder.create()
-                .text("""
-                        **Периодичность привычки**
-
-                        Выбери, как часто должна повторяться привычка:
-                        """)
-                .format("markdown")
-                .addMessageButton(HabitInterval.EVERY_DAY.getDisplayName(), HabitInterval.EVERY_DAY.getDisplayName())
-                .addMessageButton(HabitInterval.EVERY_WEEKDAY.getDisplayName(), HabitInterval.EVERY_WEEKDAY.getDisplayName())
-                .addMessageButton(HabitInterval.EVERY_WEEKEND.getDisplayName(), HabitInterval.EVERY_WEEKEND.getDisplayName())
-                .addMessageButton(HabitInterval.EVERY_WEEK.getDisplayName(), HabitInterval.EVERY_WEEK.getDisplayName())
-                .addMessageButton(HabitInterval.EVERY_MONDAY.getDisplayName(), HabitInterval.EVERY_MONDAY.getDisplayName())
-                .addMessageButton(HabitInterval.EVERY_TUESDAY.getDisplayName(), HabitInterval.EVERY_TUESDAY.getDisplayName())
-                .addMessageButton(HabitInterval.EVERY_WEDNESDAY.getDisplayName(), HabitInterval.EVERY_WEDNESDAY.getDisplayName())
-                .addMessageButton(HabitInterval.EVERY_THURSDAY.getDisplayName(), HabitInterval.EVERY_THURSDAY.getDisplayName())
-                .addMessageButton(HabitInterval.EVERY_FRIDAY.getDisplayName(), HabitInterval.EVERY_FRIDAY.getDisplayName())
-                .addMessageButton(HabitInterval.EVERY_SATURDAY.getDisplayName(), HabitInterval.EVERY_SATURDAY.getDisplayName())
-                .addMessageButton(HabitInterval.EVERY_SUNDAY.getDisplayName(), HabitInterval.EVERY_SUNDAY.getDisplayName())
-                .build();
-
-        sendMessage(chatId, body, MessageMarker.CHANGE_HABIT_INTERVAL);
-    }
-
-    public Object createHabitCreateKeyboardBody(String title,
-                                                String description,
-                                                String interval,
-                                                String goalDate) {
-
-        return InlineKeyboardBuilder.create()
-                .text("""
-                    💪**Создание привычки.**
-                    Создайте привычку, используя кнопки ниже.
-                    Заполните название, описание, периодичность и дату цели —
-                    после этого можно будет подтвердить создание.
-
-                    Название: %s
-                    Описание: %s
-                    Периодичность: %s
-                    Цель до: %s
-                    """.formatted(
-                        title == null || title.isBlank() ? "." : title,
-                        description == null || description.isBlank() ? "." : description,
-                        interval == null || interval.isBlank() ? "." : interval,
-                        goalDate == null || goalDate.isBlank() ? "." : goalDate
-                ))
-                .format("markdown")
-                .addCallbackButton("Изменить название",       Payload.HABITS_CHANGE_TITLE.key())
-                .addCallbackButton("Изменить описание",       Payload.HABITS_CHANGE_DESCRIPTION.key())
-                .addCallbackButton("Изменить периодичность",  Payload.HABITS_CHANGE_INTERVAL.key())
-                .addCallbackButton("Изменить дату завершения",Payload.HABITS_CHANGE_GOAL_DATE.key())
-                .addCallbackButton("Подтвердить создание",    Payload.HABITS_CREATE_CONFIRM.key())
-                .addCallbackButton("🗓️ Меню привычек",        Payload.HABIT_MENU.key())
-                .addCallbackButton("📋 Меню задач",        Payload.TASK_MENU.key())
-                .addCallbackButton("🏠 Профиль",        Payload.HOME_PAGE.key())
-                .build();
+        show(chatId, templates.habitIntervalInput(), MessageMarker.CHANGE_HABIT_INTERVAL);
+    }
+
+    public RenderedBody createHabitCreateKeyboardBody(String title,
+                                                      String description,
+                                                      String interval,
+                                                      String goalDate) {
+        return templates.habitPreview(
+                title == null || title.isBlank() ? "." : title,
+                description == null || description.isBlank() ? "." : description,
+                interval == null || interval.isBlank() ? "." : interval,
+                goalDate == null || goalDate.isBlank() ? "." : goalDate
+        );
     }
 
     public void sendHabitCreateKeyboard(long chatId) {
-        var body = InlineKeyboardBuilder.create()
-                .text("""
-                        💪**Создание привычки.**
-                        Создайте привычку, используя кнопки ниже.
-                        Заполните название, описание, периодичность и дату цели —
-                        после этого можно будет подтвердить создание.
-                        
-                        Название: .
-                        Описание: .
-                        Периодичность: .
-                        Цель до: .
-                        """)
-                .format("markdown")
-                .addCallbackButton("Изменить название", Payload.HABITS_CHANGE_TITLE.key())
-                .addCallbackButton("Изменить описание", Payload.HABITS_CHANGE_DESCRIPTION.key())
-                .addCallbackButton("Изменить периодичность", Payload.HABITS_CHANGE_INTERVAL.key())
-                .addCallbackButton("Изменить дату завершения", Payload.HABITS_CHANGE_GOAL_DATE.key())
-                .addCallbackButton("Подтвердить создание", Payload.HABITS_CREATE_CONFIRM.key())
-                .addCallbackButton("🗓️ Меню привычек",        Payload.HABIT_MENU.key())
-                .addCallbackButton("📋 Меню задач",        Payload.TASK_MENU.key())
-                .addCallbackButton("🏠 Профиль",        Payload.HOME_PAGE.key())
-                .build();
-
-        sendMessage(chatId, body, MessageMarker.CREATE_HABIT);
+        sendMessage(chatId, templates.habitCreate(), MessageMarker.CREATE_HABIT);
     }
 
     public void sendHabitGoalDateInput(long chatId) {
-        String text = """
-                Введите дату завершения привычки в формате dd.MM.yyyy:
-                """;
-
-        Map<String, Object> body = new LinkedHashMap<>();
-        body.put("text", text);
-
-        sendMessage(chatId, body, MessageMarker.CHANGE_HABIT_GOAL_DATE);
+        show(chatId, templates.habitGoalDateInput(), MessageMarker.CHANGE_HABIT_GOAL_DATE);
     }
 }
@@ -0,0 +1,48 @@
+package com.smarttodo.app.bot;
+
+import com.smarttodo.app.dto.PageCursor;
+
+/**
+ * Payload кнопок «назад/дальше» списков: {@code <payload>:<список>:<f|b>:<ключ>:<id>}.
+ * Курсор целиком едет в кнопке, поэтому между страницами на сервере ничего не хранится.
+ */
+public record PagePayload(
+        Payload payload,
+        String list,
+        PageCursor cursor
+) {
+
+    public static String of(Payload payload, String list, PageCursor cursor) {
+        return payload.key() + ':' + list + ':' + (cursor.backward() ? 'b' : 'f')
+                + ':' + cursor.key() + ':' + cursor.id();
+    }
+
+    /**
+     * Разбор хвоста после ключа: сам payload уже найден роутером в {@link CallbackData},
+     * поэтому строка не режется на части и ключ второй раз не ищется.
+     * @return null, если колбэк не похож на payload страницы
+     */
+    public static PagePayload parse(CallbackData callback, String raw) {
+        if (callback == null || raw == null) return null;
+        Payload payload = callback.payload();
+        if (payload != Payload.TASKS_PAGE && payload != Payload.HABITS_PAGE) return null;
+
+        int listStart = payload.key().length() + 1;
+        int listEnd = raw.indexOf(':', listStart);
+        if (listEnd < 0 || listEnd + 2 >= raw.length() || raw.charAt(listEnd + 2) != ':') return null;
+        char direction = raw.charAt(listEnd + 1);
+        if (direction != 'f' && direction != 'b') return null;
+
+        int keyStart = listEnd + 3;
+        int keyEnd = raw.indexOf(':', keyStart);
+        if (keyEnd < 0 || raw.indexOf(':', keyEnd + 1) >= 0) return null;
+        try {
+            return new PagePayload(payload, raw.substring(listStart, listEnd),
+                    new PageCursor(direction == 'b',
+                            Long.parseLong(raw, keyStart, keyEnd, 10),
+                            Long.parseLong(raw, keyEnd + 1, raw.length(), 10)));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -15,8 +15,10 @@ public enum Payload {
     TASKS_GET_WEEK("tasks-get-week"),
     TASKS_GET_ALL("tasks-get-all"),
     TASKS_GET_TOMORROW("tasks-get-tomorrow"),
+    TASKS_PAGE("tasks-page"),           // tasks-page:<список>:<f|b>:<ключ>:<id>, см. PagePayload
 
     HABITS_GET_ALL("habits-get-all"),
+    HABITS_PAGE("habits-page"),
     HABITS_DELETE("habits-delete"),
     HABITS_GET_TODAY("habits-get-today"),
     HABITS_GET_WEEK("habits-get-week"),
@@ -54,17 +56,51 @@ public enum Payload {
         return key;
     }
 
+    /**
+     * Открытая хеш-таблица key -> Payload, строится один раз.
+     * Позволяет найти payload по префиксу строки колбэка без substring/split.
+     */
+    private static final Payload[] TABLE;
+    private static final int MASK;
+
+    static {
+        int size = Integer.highestOneBit(values().length * 4 - 1) << 1;
+        TABLE = new Payload[size];
+        MASK = size - 1;
+        for (Payload p : values()) {
+            int i = hash(p.key, 0, p.key.length()) & MASK;
+            while (TABLE[i] != null) i = (i + 1) & MASK;
+            TABLE[i] = p;
+        }
+    }
+
     public static Payload from(String raw) {
         if (raw == null) return null;
-        String prefix = raw.contains(":") ? raw.split(":")[0] : raw;
-        for (Payload p : values()) {
-            if (p.key.equals(prefix)) {
+        int colon = raw.indexOf(':');
+        return lookup(raw, colon < 0 ? raw.length() : colon);
+    }
+
+    /** Ищет payload, ключ которого совпадает с raw[0, end) */
+    static Payload lookup(String raw, int end) {
+        int i = hash(raw, 0, end) & MASK;
+        Payload p;
+        while ((p = TABLE[i]) != null) {
+            if (p.key.length() == end && raw.regionMatches(0, p.key, 0, end)) {
                 return p;
             }
+            i = (i + 1) & MASK;
         }
         return null;
     }
 
+    private static int hash(String s, int from, int to) {
+        int h = 0;
+        for (int i = from; i < to; i++) {
+            h = 31 * h + s.charAt(i);
+        }
+        return h ^ (h >>> 16);
+    }
+
     public boolean hasId() {
         return switch (this) {
             case TASKS_ID,
@@ -86,14 +122,8 @@ public enum Payload {
 
     public Long extractId(String raw) {
         if (!hasId() || raw == null) return null;
-        int idx = raw.indexOf(':');
-        if (idx < 0 || idx == raw.length() - 1) return null;
-        String id = raw.substring(idx + 1);
-        try {
-            return Long.parseLong(id);
-        } catch (NumberFormatException e) {
-            return null;
-        }
+        long id = CallbackData.parseId(raw, raw.indexOf(':'));
+        return id == CallbackData.NO_ID ? null : id;
     }
 
     public boolean isTasksPayload() {
@@ -1,25 +1,26 @@
 package com.smarttodo.app.bot;
 
-import com.smarttodo.app.client.MaxApi;
-import com.smarttodo.app.dto.MessageMeta;
+import com.smarttodo.app.dto.ListPage;
+import com.smarttodo.app.dto.PageCursor;
 import com.smarttodo.app.dto.TaskDto;
 import com.smarttodo.app.entity.Update;
 import com.smarttodo.app.entity.Priority;
 import com.smarttodo.app.entity.TaskStatus;
 import com.smarttodo.app.llm.task.NlpService;
 import com.smarttodo.app.llm.task.dto.ParsedTask;
-import com.smarttodo.app.repository.LastActionRedisRepo;
-import com.smarttodo.app.repository.PendingTaskRedisRepo;
+import com.smarttodo.app.bot.outbox.Outbox;
+import com.smarttodo.app.bot.session.ChatSessionStore;
 import com.smarttodo.app.service.TaskService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
-import java.util.Comparator;
-import java.util.List;
 import java.util.Optional;
 
 @Slf4j
@@ -28,55 +29,66 @@ import java.util.Optional;
 public class TaskManager {
 
     private final TaskService taskService;
-    private final PendingTaskRedisRepo taskRedisRepo;
-    private final LastActionRedisRepo lastActionRepo;
+    private final ChatSessionStore sessions;
 
     private final MessageSender messageSender;
     private final NlpService nlp;
-    private final MaxApi maxApi;
+    private final Outbox outbox;                // подтверждения изменений — в одной транзакции с ними
+    private final TransactionTemplate tx;
+    private final UiProps ui;
 
-    public void parseTextWithLlm(Update u) {
+    private static final Duration LLM_TIMEOUT = Duration.ofSeconds(60);
 
-        String mid = lastActionRepo.get(u.chatId()).map(MessageMeta::mid).orElse(null);
+    public void parseTextWithLlm(Update u) {
 
         String text = u.getText();
-        if (text != null && !text.isBlank()) {
-            try {
-                var parsed = nlp.parseText(text).block(java.time.Duration.ofSeconds(60));
-                if (parsed == null || parsed.tasks() == null || parsed.tasks().isEmpty()) {
-                    messageSender.sendText(u.chatId(), "Не смог разобрать задачу. Сформулируй чуть яснее.");
-                    return;
-                }
-
-                ParsedTask task = parsed.tasks().getFirst();
-
-                TaskDto curTask = new TaskDto(
-                        null,
-                        task.title() == null ? "..." : task.title(),
-                        task.description() == null ? "..." : task.description(),
-                        null,
-                        Priority.LOW,
-                        parseStringToLocalDateTime(task.datetime()),
-                        null
-                );
-                taskRedisRepo.save(u.chatId(), curTask);
-
-                maxApi.editMessage(mid, messageSender.createTaskCreateKeyboardBody(
-                        curTask.title(),
-                        curTask.description(),
-                        formatLocalDateTime(curTask.deadline())
-                )).block();
-
-            } catch (IllegalArgumentException e) {
-                messageSender.sendText(u.chatId(), "Упс, модель не ответила вовремя. Попробуем ещё раз позже. %s".formatted(e.getMessage()));
-                return;
-            }
-        }
+        if (text == null || text.isBlank()) return;
+
+        long chatId = u.chatId();
+        // версия черновика на момент текста: правка или подтверждение, успевшие раньше ответа модели, не затираются
+        long version = sessions.pendingTaskVersion(chatId);
+
+        // модель отвечает вне полосы чата и вне очереди отправок — в очередь ставится только правка экрана
+        nlp.parseText(text)
+                .timeout(LLM_TIMEOUT)
+                .filter(parsed -> parsed.tasks() != null && !parsed.tasks().isEmpty())
+                .map(parsed -> {
+                    ParsedTask task = parsed.tasks().getFirst();
+                    return new TaskDto(
+                            null,
+                            task.title() == null ? "..." : task.title(),
+                            task.description() == null ? "..." : task.description(),
+                            null,
+                            Priority.LOW,
+                            parseStringToLocalDateTime(task.datetime()),
+                            null
+                    );
+                })
+                .flatMap(curTask -> sessions.savePendingTaskIfVersionAsync(chatId, version, curTask)
+                        .doOnNext(saved -> {
+                            if (!saved) {
+                                log.info("LLM result dropped, task draft changed meanwhile: chatId={}", chatId);
+                                return;
+                            }
+                            // предпросмотр правится на месте; если модель вернула то же самое — без запроса к MAX
+                            messageSender.submit(chatId, messageSender.redraw(chatId, messageSender.createTaskCreateKeyboardBody(
+                                    curTask.title(),
+                                    curTask.description(),
+                                    formatLocalDateTime(curTask.deadline())
+                            ), null));
+                        }))
+                .switchIfEmpty(Mono.fromRunnable(() -> messageSender
+                        .sendText(chatId, "Не смог разобрать задачу. Сформулируй чуть яснее.")))
+                .onErrorResume(e -> {
+                    messageSender.sendText(chatId, "Упс, модель не ответила вовремя. Попробуем ещё раз позже. %s".formatted(e.getMessage()));
+                    return Mono.empty();
+                })
+                .subscribe();
     }
 
     public void createTask(Update u) {
 
-        taskRedisRepo.save(u.chatId(), new TaskDto(
+        sessions.savePendingTask(u.chatId(), new TaskDto(
                 null,
                 "...",
                 "...",
@@ -90,16 +102,22 @@ public class TaskManager {
     }
 
     public void confirmTaskCreating(Update u) {
-        Optional<TaskDto> task = taskRedisRepo.get(u.chatId());
+        // черновик забирается сразу: повторное нажатие «Подтвердить» его уже не найдёт
+        Optional<TaskDto> task = sessions.takePendingTask(u.chatId());
 
         if (task.isEmpty()) {
             messageSender.sendText(u.chatId(), "Срок создания по этой задаче истек, создайте заново.");
             return;
         }
 
-        if (taskService.createTask(u.chatId(), task.get()) !=  null) {
-            taskRedisRepo.delete(u.chatId());
-            messageSender.sendText(u.chatId(), "Задача создана.");
+        try {
+            tx.executeWithoutResult(s -> {
+                taskService.createTask(u.chatId(), task.get());
+                outbox.sendText(u.chatId(), "Задача создана.");
+            });
+        } catch (RuntimeException e) {
+            sessions.savePendingTask(u.chatId(), task.get());
+            throw e;
         }
     }
 
@@ -107,38 +125,25 @@ public class TaskManager {
 
         String text = u.getText();
         if (text != null && !text.isBlank()) {
-           Optional<TaskDto> task = taskRedisRepo.get(u.chatId());
-
-           TaskDto prevTask = task.orElse(null);
-           if (prevTask == null) {
-               prevTask = new TaskDto(
-                       null,
-                       "...",
-                       "...",
-                       TaskStatus.UNCOMPLETED,
-                       Priority.LOW,
-                       null,
-                       null
+           // меняется только своё поле: параллельная правка другого поля черновика не затирается
+           TaskDto newTask = sessions.updatePendingTask(u.chatId(), prev -> {
+               TaskDto prevTask = orEmpty(prev);
+               return new TaskDto(
+                       prevTask.id(),
+                       text,
+                       prevTask.description(),
+                       prevTask.status(),
+                       prevTask.priority(),
+                       prevTask.deadline(),
+                       prevTask.completedAt()
                );
-           }
+           });
 
-           TaskDto newTask = new TaskDto(
-                   prevTask.id(),
-                   text,
-                   prevTask.description(),
-                   prevTask.status(),
-                   prevTask.priority(),
-                   prevTask.deadline(),
-                   prevTask.completedAt()
-           );
-
-           taskRedisRepo.save(u.chatId(), newTask);
-
-           maxApi.postMessage(u.chatId(), messageSender.createTaskCreateKeyboardBody(
+           messageSender.show(u.chatId(), messageSender.createTaskCreateKeyboardBody(
                    newTask.title(),
                    newTask.description(),
                    formatLocalDateTime(newTask.deadline())
-           )).block();
+           ), null);
         }
     }
 
@@ -146,38 +151,24 @@ public class TaskManager {
 
         String text = u.getText();
         if (text != null && !text.isBlank()) {
-            Optional<TaskDto> task = taskRedisRepo.get(u.chatId());
-
-            TaskDto prevTask = task.orElse(null);
-            if (prevTask == null) {
-                prevTask = new TaskDto(
-                        null,
-                        "...",
-                        "...",
-                        TaskStatus.UNCOMPLETED,
-                        Priority.LOW,
-                        null,
-                        null
+            TaskDto newTask = sessions.updatePendingTask(u.chatId(), prev -> {
+                TaskDto prevTask = orEmpty(prev);
+                return new TaskDto(
+                        prevTask.id(),
+                        prevTask.title(),
+                        text,
+                        prevTask.status(),
+                        prevTask.priority(),
+                        prevTask.deadline(),
+                        prevTask.completedAt()
                 );
-            }
-
-            TaskDto newTask = new TaskDto(
-                    prevTask.id(),
-                    prevTask.title(),
-                    text,
-                    prevTask.status(),
-                    prevTask.priority(),
-                    prevTask.deadline(),
-                    prevTask.completedAt()
-            );
-
-            taskRedisRepo.save(u.chatId(), newTask);
+            });
 
-            maxApi.postMessage(u.chatId(), messageSender.createTaskCreateKeyboardBody(
+            messageSender.show(u.chatId(), messageSender.createTaskCreateKeyboardBody(
                     newTask.title(),
                     newTask.description(),
                     formatLocalDateTime(newTask.deadline())
-            )).block();
+            ), null);
         }
     }
 
@@ -185,100 +176,92 @@ public class TaskManager {
 
         String text = u.getText();
         if (text != null && !text.isBlank()) {
-            Optional<TaskDto> task = taskRedisRepo.get(u.chatId());
-
-            TaskDto prevTask = task.orElse(null);
-            if (prevTask == null) {
-                prevTask = new TaskDto(
-                        null,
-                        "...",
-                        "...",
-                        TaskStatus.UNCOMPLETED,
-                        Priority.LOW,
-                        null,
-                        null
-                );
+            LocalDateTime deadline;
+            try {
+                deadline = parseStringToLocalDateTime(text);
+            } catch (DateTimeParseException e) {
+                messageSender.sendText(u.chatId(), "Неверный формат даты, проверьте введенные данные.");
+                return;
             }
 
-            try {
-                TaskDto newTask = new TaskDto(
+            TaskDto newTask = sessions.updatePendingTask(u.chatId(), prev -> {
+                TaskDto prevTask = orEmpty(prev);
+                return new TaskDto(
                         prevTask.id(),
                         prevTask.title(),
                         prevTask.description(),
                         prevTask.status(),
                         prevTask.priority(),
-                        parseStringToLocalDateTime(text),
+                        deadline,
                         prevTask.completedAt()
                 );
+            });
 
-                taskRedisRepo.save(u.chatId(), newTask);
-
-                maxApi.postMessage(u.chatId(), messageSender.createTaskCreateKeyboardBody(
-                        newTask.title(),
-                        newTask.description(),
-                        formatLocalDateTime(newTask.deadline())
-                )).block();
-
-            } catch (DateTimeParseException e) {
-                messageSender.sendText(u.chatId(), "Неверный формат даты, проверьте введенные данные.");
-            }
+            messageSender.show(u.chatId(), messageSender.createTaskCreateKeyboardBody(
+                    newTask.title(),
+                    newTask.description(),
+                    formatLocalDateTime(newTask.deadline())
+            ), null);
         }
     }
 
-    public void getTodayTaskList(Update u) {
-        List<TaskDto> taskList = taskService.getAllTasksForToday(u.chatId());
-        taskList.sort(Comparator.comparing(TaskDto::status).thenComparing(TaskDto::deadline).thenComparing(TaskDto::priority));
-        if (taskList.isEmpty()) {
-            messageSender.sendText(u.chatId(), "На сегодня нет задач.");
-            return;
+    /** Черновик, с которого начинается ввод задачи по полям */
+    private static TaskDto orEmpty(TaskDto task) {
+        if (task != null) {
+            return task;
         }
+        return new TaskDto(
+                null,
+                "...",
+                "...",
+                TaskStatus.UNCOMPLETED,
+                Priority.LOW,
+                null,
+                null
+        );
+    }
 
-        messageSender.sendTodayTaskList(u.chatId(), taskList);
+    public void getTodayTaskList(Update u) {
+        sendTaskPage(u.chatId(), TaskService.TaskView.TODAY, PageCursor.FIRST, "На сегодня нет задач.");
     }
 
     public void getTomorrowTaskList(Update u) {
-        List<TaskDto> taskList = taskService.getAllTasksForTomorrow(u.chatId());
-        taskList.sort(Comparator.comparing(TaskDto::status).thenComparing(TaskDto::deadline).thenComparing(TaskDto::priority));
-        if (taskList.isEmpty()) {
-            messageSender.sendText(u.chatId(), "На завтра нет задач.");
-            return;
-        }
-
-        messageSender.sendTodayTaskList(u.chatId(), taskList);
+        sendTaskPage(u.chatId(), TaskService.TaskView.TOMORROW, PageCursor.FIRST, "На завтра нет задач.");
     }
 
     public void getWeekTaskList(Update u) {
-        List<TaskDto> taskList = taskService.getAllTasksForWeek(u.chatId());
-        taskList.sort(Comparator.comparing(TaskDto::status).thenComparing(TaskDto::deadline).thenComparing(TaskDto::priority));
-        if (taskList.isEmpty()) {
-            messageSender.sendText(u.chatId(), "На эту неделю нет задач.");
+        sendTaskPage(u.chatId(), TaskService.TaskView.WEEK, PageCursor.FIRST, "На эту неделю нет задач.");
+    }
+
+    public void getAllTaskList(Update u) {
+        sendTaskPage(u.chatId(), TaskService.TaskView.ALL, PageCursor.FIRST, "Задачи отсутствуют.");
+    }
+
+    /** Кнопка «назад/дальше» под списком задач */
+    public void pageTaskList(Update u, CallbackData callback) {
+        PagePayload page = PagePayload.parse(callback, u.getPayload());
+        TaskService.TaskView view = page == null ? null : TaskService.TaskView.fromKey(page.list());
+        if (view == null) {
+            log.warn("Bad task page payload: {}", u.getPayload());
             return;
         }
-
-        messageSender.sendWeekTaskList(u.chatId(), taskList);
+        sendTaskPage(u.chatId(), view, page.cursor(), "Задачи отсутствуют.");
     }
 
-    public void getAllTaskList(Update u) {
-        List<TaskDto> taskList = taskService.getAllTasks(u.chatId()).stream()
-                .filter(task -> task.status() != TaskStatus.COMPLETED)
-                .sorted(Comparator.comparing(TaskDto::status)
-                        .thenComparing(TaskDto::deadline)
-                        .thenComparing(TaskDto::priority))
-                .toList();
-        log.info("Все задачи {}", taskList);
-        if (taskList.isEmpty()) {
-            messageSender.sendText(u.chatId(), "Задачи отсутствуют.");
+    private void sendTaskPage(long chatId, TaskService.TaskView view, PageCursor cursor, String emptyText) {
+        ListPage<TaskDto> page = taskService.getTasksPage(chatId, view, cursor, ui.pageSize());
+        if (page.isEmpty()) {
+            messageSender.sendText(chatId, emptyText);
             return;
         }
 
-        messageSender.sendAllTaskList(u.chatId(), taskList);
+        messageSender.sendTaskPage(chatId, view, page);
     }
 
-    public void pickTask(Update u) {
-        Payload payload = Payload.from(u.getPayload());
-        TaskDto task = taskService.getTaskById(payload.extractId(u.getPayload()));
+    public void pickTask(Update u, CallbackData callback) {
+        TaskDto task = taskService.getTaskById(callback.id());
 
-        switch (payload) {
+        switch (callback.payload()) {
             case TASKS_ID -> {
                 break;
             }
@@ -292,12 +275,14 @@ public class TaskManager {
                 taskService.markTaskAsCompleted(task.id());
             }
             case TASKS_DELETE -> {
-                taskService.deleteTask(task.id());
-                messageSender.sendText(u.chatId(), "Задача удалена");
+                tx.executeWithoutResult(s -> {
+                    taskService.deleteTask(task.id());
+                    outbox.sendText(u.chatId(), "Задача удалена");
+                });
             }
         }
 
-        messageSender.sendTask(u.chatId(), taskService.getTaskById(payload.extractId(u.getPayload())));
+        messageSender.sendTask(u.chatId(), taskService.getTaskById(callback.id()));
     }
 
     public static String formatLocalDateTime(LocalDateTime dateTime) {
@@ -0,0 +1,13 @@
+package com.smarttodo.app.bot;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "bot.ui")
+public record UiProps(
+        boolean singleMessage,  // черновик задачи/привычки живёт в одном сообщении, которое правится на месте
+        int pageSize            // строк на странице списка задач и привычек
+) {
+    public UiProps {
+        if (pageSize <= 0) pageSize = 10;
+    }
+}
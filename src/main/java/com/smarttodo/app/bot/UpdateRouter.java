@@ -1,17 +1,16 @@
 package com.smarttodo.app.bot;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.smarttodo.app.dto.MessageMeta;
 import com.smarttodo.app.entity.Update;
-import com.smarttodo.app.repository.LastActionRedisRepo;
+import com.smarttodo.app.bot.ingest.AdmissionController;
+import com.smarttodo.app.bot.session.ChatSessionStore;
 import com.smarttodo.app.service.UserService;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
-import java.util.Objects;
 import java.util.Optional;
 
 @Service
@@ -19,42 +18,37 @@ import java.util.Optional;
 public class UpdateRouter {
     private static final Logger log = LoggerFactory.getLogger(UpdateRouter.class);
 
-    private final ObjectMapper om;
     private final MessageSender messageSender;
 
     private final UserService userService;
-    private final LastActionRedisRepo lastActionRepo;// <-- заменили тип
+    private final ChatSessionStore sessions;
     private final TaskManager taskManager;
     private final HabitManager habitManager;
+    private final MeterRegistry meterRegistry;
 
-    /** Главная точка входа: вызывается контроллером вебхука */
-    public void dispatch(String rawJson) {
-        final Update u = parse(rawJson);
-        try {
-            route(u);
-        } catch (Exception e) {
-            log.error("Handler error for updateType={} eventId={}: {}", u.getUpdateType(), u.getEventId(), e.toString(), e);
-        }
+    /** Главная точка входа: вызывается приёмником вебхука с уже разобранным апдейтом */
+    public void dispatch(Update u) {
+        dispatch(u, false);
     }
 
-    private Update parse(String raw) {
+    /**
+     * @param degraded нода перегружена: вместо дорогой работы (LLM) отвечаем коротким сообщением
+     */
+    public void dispatch(Update u, boolean degraded) {
         try {
-            return om.readValue(raw, Update.class);
+            route(u, degraded);
         } catch (Exception e) {
-            log.warn("Bad payload: {}", truncate(raw), e);
-            return new Update();
+            meterRegistry.counter("bot.router.errors", "update_type", String.valueOf(u.getUpdateType())).increment();
+            log.error("Handler error for updateType={} eventId={}: {}", u.getUpdateType(), u.getEventId(), e.toString(), e);
         }
     }
 
-    private void route(Update u) throws JsonProcessingException {
-        // верхнеуровневые логи для отладки
-        try {
-            log.info("ROUTE payload: {}", om.writeValueAsString(u));
-        } catch (Exception e) {
-            log.debug("ROUTE payload json serialization failed: {}", e.toString());
+    private void route(Update u, boolean degraded) {
+        // полный дамп апдейта строим только при включённом debug
+        if (log.isDebugEnabled()) {
+            log.debug("Update: {}, UserId: {}", u, u.userId());
         }
-        log.info("Update: {}, UserId: {}", u, u.userId());
-        log.info("Is text command /start: {}", u.isTextCommand("/start"));
+        log.info("ROUTE: updateType={} eventId={} chatId={}", u.getUpdateType(), u.getEventId(), u.chatId());
 
         // Команда /start
         if (u.isTextCommand("/start")) {
@@ -69,9 +63,9 @@ public class UpdateRouter {
         if (u.isText()) {
             log.info("ROUTE: handle text, chatId={}", u.chatId());
 
-            Optional<MessageMeta> opt = lastActionRepo.get(u.chatId());
+            Optional<MessageMeta> opt = sessions.lastMessage(u.chatId());
             MessageMarker marker = opt.map(MessageMeta::marker).orElse(null);
-            log.debug("Redis marker for chatId={} -> {}", u.chatId(), marker);
+            log.debug("Session marker for chatId={} -> {}", u.chatId(), marker);
 
             if (marker == null) {
                 log.info("No marker -> fallback hint, chatId={}", u.chatId());
@@ -83,6 +77,12 @@ public class UpdateRouter {
                 case CREATE_TASK -> {
                     log.info("Marker=TASK_MENU -> creating task flow, chatId={}", u.chatId());
 
+                    if (degraded) {
+                        log.info("Overloaded -> skip LLM, chatId={}", u.chatId());
+                        meterRegistry.counter(AdmissionController.SHED_METRIC).increment();
+                        messageSender.sendText(u.chatId(), "Сейчас очень много запросов, не успеваю разобрать текст. Попробуйте через минуту или заполните задачу кнопками.");
+                        return;
+                    }
                     taskManager.parseTextWithLlm(u);
                 }
                 case CHANGE_TASK_TITLE -> {
@@ -127,20 +127,24 @@ public class UpdateRouter {
         if (u.isCallback()) {
             log.info("ROUTE: handle callback, chatId={}, userId={}, payload={}", u.chatId(), u.userId(), u.getPayload());
 
-            Payload payload = Payload.from(u.getPayload());
-            if (payload == null) {
+            CallbackData callback = CallbackData.parse(u.getPayload());
+            if (callback == null) {
                 log.error("Unknown task payload: {}", u.getPayload());
                 return;
             }
 
-            log.info("Checking payload {} hasId: {}", u.getPayload(), payload.hasId());
+            Payload payload = callback.payload();
             if (payload.hasId()) {
+                if (!callback.hasId()) {
+                    log.error("Payload without id: {}", u.getPayload());
+                    return;
+                }
                 if (payload.isTasksPayload()) {
-                    taskManager.pickTask(u);
+                    taskManager.pickTask(u, callback);
                     return;
                 }
                 if (payload.isHabitsPayload()) {
-                    habitManager.pickHabit(u);
+                    habitManager.pickHabit(u, callback);
                     return;
                 }
             }
@@ -156,6 +160,7 @@ public class UpdateRouter {
                 case TASKS_GET_WEEK -> taskManager.getWeekTaskList(u);
                 case TASKS_GET_ALL -> taskManager.getAllTaskList(u);
                 case TASKS_GET_TOMORROW -> taskManager.getTomorrowTaskList(u);
+                case TASKS_PAGE -> taskManager.pageTaskList(u, callback);
 
                 case HABIT_MENU -> messageSender.sendHabitKeyboard(u.chatId());
                 case HABITS_CREATE_NEW -> habitManager.createHabit(u);
@@ -166,6 +171,7 @@ public class UpdateRouter {
                 case HABITS_GET_ALL -> habitManager.getAllHabitsList(u);
                 case HABITS_GET_TODAY -> habitManager.getTodayHabitsList(u);
                 case HABITS_GET_WEEK -> habitManager.getWeekHabitsList(u);
+                case HABITS_PAGE -> habitManager.pageHabitList(u, callback);
                 case HABITS_CREATE_CONFIRM ->  habitManager.confirmHabitCreating(u);
 
                 case HOME_PAGE -> messageSender.sendHomePageKeyboard(u.chatId());
@@ -177,9 +183,4 @@ public class UpdateRouter {
 
         log.info("Unhandled update_type={} eventId={}", u.getUpdateType(), u.getEventId());
     }
-
-    private String truncate(String s) {
-        if (s == null) return "null";
-        return s.length() > 500 ? s.substring(0, 500) + "…[cut]" : s;
-    }
 }
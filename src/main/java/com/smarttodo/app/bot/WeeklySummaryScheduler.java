@@ -1,38 +1,24 @@
 package com.smarttodo.app.bot;
 
-import com.smarttodo.app.dto.WeeklySummaryDto;
-import com.smarttodo.app.entity.UserEntity;
-import com.smarttodo.app.repository.UserRepository;
+import com.smarttodo.app.bot.broadcast.BroadcastEngine;
+import com.smarttodo.app.client.SendPriority;
 import com.smarttodo.app.service.MetricsService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import java.util.List;
-
 @Service
 @RequiredArgsConstructor
 public class WeeklySummaryScheduler {
-    private final UserRepository userRepository;
+    private final BroadcastEngine broadcastEngine;
     private final MetricsService metricsService;
     private final MetricsManager metricsManager;
 
     @Scheduled(cron = "0 0 20 ? * SUN")
     public void sendWeeklySummaries() {
-        List<UserEntity> allUsers = userRepository.findAll();
-
-        if (allUsers.isEmpty()) {
-            return;
-        }
-
-        for (UserEntity user : allUsers) {
-            try {
-                WeeklySummaryDto weeklySummary = metricsService.getWeeklySummary(user.getChatId());
-                metricsManager.sendWeeklySummary(user.getChatId(), weeklySummary);
-
-                // Небольшая задержка чтобы не перегружать систему
-                Thread.sleep(50);
-            } catch (Exception ignored) {}
-        }
+        // темп задаёт лимитер MAX: рассылка идёт с приоритетом BULK и не мешает ответам пользователям
+        broadcastEngine.run("weekly-summary", SendPriority.BULK,
+                chatId -> metricsManager.sendWeeklySummary(chatId, metricsService.getWeeklySummary(chatId))
+        ).subscribe();
     }
-}
\ No newline at end of file
+}
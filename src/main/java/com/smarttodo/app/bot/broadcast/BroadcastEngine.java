@@ -0,0 +1,235 @@
+package com.smarttodo.app.bot.broadcast;
+
+import com.smarttodo.app.bot.MessageSender;
+import com.smarttodo.app.bot.session.ChatSessionStore;
+import com.smarttodo.app.client.SendPriority;
+import com.smarttodo.app.dto.MessageMeta;
+import com.smarttodo.app.entity.UserEntity;
+import com.smarttodo.app.repository.UserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
+
+/**
+ * Рассылка по всем пользователям для планировщиков.
+ * Пользователи читаются из БД страницами по id, содержимое для каждого считается на виртуальных нитях
+ * (одновременно не больше parallelism — это запросы к БД), отправки идут через обычный MessageSender,
+ * поэтому темп задают лимитер и диспетчер MAX, а не sleep в цикле. Пользователей, чьи сообщения ещё
+ * не ушли, не больше inFlight — рассылка не вычитывает таблицу вперёд отправки.
+ * Последние сообщения получателей не пишутся в сессии чатов по одному: они собираются по странице
+ * и записываются пачкой, когда все пользователи страницы обработаны ({@link ChatSessionStore#saveLastMessages}).
+ * Один и тот же job не запускается повторно, пока не закончился предыдущий прогон.
+ */
+@Slf4j
+@Service
+public class BroadcastEngine implements DisposableBean {
+
+    public enum Result { SENT, SKIPPED, FAILED }
+
+    public record BroadcastReport(
+            String job,
+            long users,
+            long sent,
+            long skipped,
+            long failed,
+            long messages,
+            long elapsedMs,
+            double usersPerSecond
+    ) {}
+
+    private final UserRepository userRepository;
+    private final MessageSender messageSender;
+    private final ChatSessionStore sessions;
+    private final BroadcastProps props;
+    private final MeterRegistry meterRegistry;
+
+    private final Set<String> running = ConcurrentHashMap.newKeySet();
+
+    /** Виртуальные нити для чтения из БД, одновременно их не больше parallelism */
+    private final Scheduler scheduler;
+
+    public BroadcastEngine(UserRepository userRepository,
+                           MessageSender messageSender,
+                           ChatSessionStore sessions,
+                           BroadcastProps props,
+                           MeterRegistry meterRegistry) {
+        this.userRepository = userRepository;
+        this.messageSender = messageSender;
+        this.sessions = sessions;
+        this.props = props;
+        this.meterRegistry = meterRegistry;
+        this.scheduler = Schedulers.fromExecutorService(
+                Executors.newFixedThreadPool(props.parallelism(), Thread.ofVirtual().name("broadcast-", 0).factory()),
+                "broadcast");
+    }
+
+    public Mono<BroadcastReport> run(String job, SendPriority priority, LongConsumer perChat) {
+        return run(job, priority, props.inFlight(), perChat);
+    }
+
+    /**
+     * @param inFlight сколько пользователей могут одновременно ждать отправки своих сообщений
+     * @param perChat  синхронный код для одного чата: читает данные и шлёт через MessageSender
+     */
+    public Mono<BroadcastReport> run(String job, SendPriority priority, int inFlight, LongConsumer perChat) {
+        return Mono.defer(() -> {
+            if (!running.add(job)) {
+                log.warn("Broadcast {} is still running, skipping this run", job);
+                return Mono.empty();
+            }
+            Progress progress = new Progress(job);
+            log.info("Broadcast {} started", job);
+
+            return pages()
+                    .doOnNext(page -> progress.read(page.size()))
+                    .flatMapIterable(Chunk::of, 1)
+                    .flatMap(r -> deliver(r.chatId(), priority, perChat, progress, r.chunk())
+                            .flatMap(result -> r.chunk().finish() ? flush(job, r.chunk()).thenReturn(result) : Mono.just(result)),
+                            Math.max(1, inFlight))
+                    .doOnNext(progress::record)
+                    .then(Mono.fromCallable(progress::report))
+                    .onErrorResume(e -> {
+                        log.error("Broadcast {} aborted: {}", job, e.toString());
+                        return Mono.fromCallable(progress::report);
+                    })
+                    .doOnNext(report -> {
+                        Timer.builder("bot.broadcast.duration").tag("job", job)
+                                .register(meterRegistry)
+                                .record(Duration.ofMillis(report.elapsedMs()));
+                        log.info("Broadcast {} finished: {}", job, report);
+                    })
+                    .doFinally(sig -> running.remove(job));
+        });
+    }
+
+    /** Страницы пользователей по возрастанию id, следующая читается, когда предыдущая разобрана */
+    private Flux<List<UserEntity>> pages() {
+        int chunk = props.chunkSize();
+        return page(Long.MIN_VALUE)
+                .expand(page -> page.size() < chunk ? Mono.empty() : page(page.getLast().getId()));
+    }
+
+    private Mono<List<UserEntity>> page(long afterId) {
+        return Mono.fromCallable(() -> userRepository.findByIdGreaterThanOrderByIdAsc(afterId, Limit.of(props.chunkSize())))
+                .subscribeOn(scheduler)
+                .filter(users -> !users.isEmpty());
+    }
+
+    /** Считает содержимое на нити БД, ставит сообщения в очередь чата и ждёт, пока они уйдут */
+    private Mono<Result> deliver(long chatId, SendPriority priority, LongConsumer perChat, Progress progress, Chunk chunk) {
+        return Mono.fromCallable(() -> messageSender.track(() -> priority.run(() -> perChat.accept(chatId)), chunk.lastMessages))
+                .subscribeOn(scheduler)
+                .doOnError(e -> log.warn("Broadcast content failed: chatId={}, err={}", chatId, e.toString()))
+                .flatMap(Function.identity())
+                .doOnNext(progress.messages::addAndGet)
+                .map(messages -> messages > 0 ? Result.SENT : Result.SKIPPED)
+                .onErrorResume(e -> Mono.just(Result.FAILED));
+    }
+
+    /** Последние сообщения страницы — одной пачкой; сбой записи не делает рассылку неудачной */
+    private Mono<Void> flush(String job, Chunk chunk) {
+        if (chunk.lastMessages.isEmpty()) return Mono.empty();
+        return Mono.fromRunnable(() -> sessions.saveLastMessages(chunk.lastMessages))
+                .subscribeOn(scheduler)
+                .doOnError(e -> log.warn("Broadcast {}: last messages of {} chats not saved: {}",
+                        job, chunk.lastMessages.size(), e.toString()))
+                .onErrorResume(e -> Mono.empty())
+                .then();
+    }
+
+    /** Получатель и страница, в которую он попал */
+    private record Recipient(long chatId, Chunk chunk) {}
+
+    /** Страница пользователей: последние сообщения её получателей и сколько их ещё не обработано */
+    private static final class Chunk {
+        private final Map<Long, MessageMeta> lastMessages = new ConcurrentHashMap<>();
+        private final AtomicInteger left;
+
+        private Chunk(int users) {
+            this.left = new AtomicInteger(users);
+        }
+
+        private static List<Recipient> of(List<UserEntity> page) {
+            Chunk chunk = new Chunk(page.size());
+            return page.stream().map(u -> new Recipient(u.getChatId(), chunk)).toList();
+        }
+
+        /** @return true для последнего пользователя страницы — пора писать пачку */
+        private boolean finish() {
+            return left.decrementAndGet() == 0;
+        }
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.dispose();
+    }
+
+    /** Счётчики одного прогона */
+    private final class Progress {
+        private final String job;
+        private final long started = System.nanoTime();
+        private final AtomicLong users = new AtomicLong();
+        private final AtomicLong sent = new AtomicLong();
+        private final AtomicLong skipped = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong messages = new AtomicLong();
+
+        private Progress(String job) {
+            this.job = job;
+        }
+
+        private void read(int page) {
+            long total = users.addAndGet(page);
+            log.info("Broadcast {} progress: read={}, sent={}, skipped={}, failed={}",
+                    job, total, sent.get(), skipped.get(), failed.get());
+        }
+
+        private void record(Result result) {
+            switch (result) {
+                case SENT -> sent.incrementAndGet();
+                case SKIPPED -> skipped.incrementAndGet();
+                case FAILED -> failed.incrementAndGet();
+            }
+            Counter.builder("bot.broadcast.users")
+                    .tag("job", job)
+                    .tag("result", result.name().toLowerCase())
+                    .register(meterRegistry)
+                    .increment();
+        }
+
+        private BroadcastReport report() {
+            long elapsedNanos = System.nanoTime() - started;
+            long done = sent.get() + skipped.get() + failed.get();
+            return new BroadcastReport(
+                    job,
+                    users.get(),
+                    sent.get(),
+                    skipped.get(),
+                    failed.get(),
+                    messages.get(),
+                    elapsedNanos / 1_000_000,
+                    elapsedNanos == 0 ? 0 : done / (elapsedNanos / 1e9)
+            );
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.smarttodo.app.bot.broadcast;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "bot.broadcast")
+public record BroadcastProps(
+        int chunkSize,      // сколько пользователей читается из БД за один запрос
+        int parallelism,    // одновременных расчётов содержимого — не больше пула соединений с БД
+        int inFlight        // пользователей, чьи сообщения ещё в очереди отправки
+) {
+    public BroadcastProps {
+        if (chunkSize <= 0) chunkSize = 500;
+        if (parallelism <= 0) parallelism = 8;
+        if (inFlight <= 0) inFlight = 64;
+    }
+}
@@ -0,0 +1,134 @@
+package com.smarttodo.app.bot.ingest;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Ограничение одновременной работы над апдейтами.
+ * Не больше maxInFlight апдейтов одновременно проходят через UpdateRouter, остальные ждут слот;
+ * без слота апдейт не обрабатывается: в потоке вебхука ожидание ограничено maxWait, дальше 503,
+ * в полосах апдейт ждёт на своём месте в очереди и учитывается в backlog.
+ * По размеру backlog (очереди полос + ожидающие слот) решается, принимать ли вебхук
+ * и нужно ли заменять дорогую работу коротким ответом.
+ * Состояние отдаётся в health/readiness: при перегрузке нода выходит из балансировки.
+ */
+@Slf4j
+@Service("admission")
+public class AdmissionController implements HealthIndicator {
+
+    public static final String SHED_METRIC = "bot.admission.shed";
+
+    private final AdmissionProps props;
+    private final UpdateLanes lanes;
+    private final Semaphore permits;
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    private final Counter rejected;
+
+    public AdmissionController(AdmissionProps props, UpdateLanes lanes, MeterRegistry registry) {
+        this.props = props;
+        this.lanes = lanes;
+        this.permits = new Semaphore(props.maxInFlight());
+
+        // растёт в UpdateRouter; регистрируем здесь, чтобы метрика была видна с нулём
+        Counter.builder(SHED_METRIC)
+                .description("Апдейты, в которых дорогая работа (LLM) заменена коротким ответом из-за перегрузки")
+                .register(registry);
+        this.rejected = Counter.builder("bot.admission.rejected")
+                .description("Вебхуки, отклонённые с 503 из-за перегрузки или без слота обработки")
+                .register(registry);
+        Gauge.builder("bot.admission.in-flight", this, AdmissionController::inFlight)
+                .register(registry);
+        Gauge.builder("bot.admission.waiting", waiting, AtomicInteger::get)
+                .register(registry);
+        Gauge.builder("bot.admission.backlog", this, AdmissionController::backlog)
+                .register(registry);
+    }
+
+    public int inFlight() {
+        return props.maxInFlight() - permits.availablePermits();
+    }
+
+    public int backlog() {
+        return lanes.queueDepth() + waiting.get();
+    }
+
+    /** Принимать ли новый вебхук. При false вызывающий отвечает 503 */
+    public boolean admitWebhook() {
+        if (backlog() >= props.rejectBacklog()) {
+            rejected.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Занимает слот обработки, ожидая не дольше maxWait.
+     * @return true, если слот получен и его нужно вернуть через {@link #release()};
+     *         false — слота нет, апдейт обрабатывать нельзя, вызывающий отвечает 503
+     */
+    public boolean acquire() {
+        if (permits.tryAcquire()) return true;
+
+        waiting.incrementAndGet();
+        try {
+            if (permits.tryAcquire(props.maxWait().toMillis(), TimeUnit.MILLISECONDS)) return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            waiting.decrementAndGet();
+        }
+        rejected.increment();
+        return false;
+    }
+
+    /**
+     * Занимает слот обработки без ограничения по времени — для полос: апдейт уже принят,
+     * пока ждёт, он учитывается в backlog, и новые вебхуки при перегрузке получают 503.
+     * Слот возвращается через {@link #release()}.
+     */
+    public void acquireQueued() throws InterruptedException {
+        if (permits.tryAcquire()) return;
+
+        waiting.incrementAndGet();
+        try {
+            permits.acquire();
+        } finally {
+            waiting.decrementAndGet();
+        }
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    /**
+     * Нужно ли обработать апдейт в облегчённом режиме (без LLM).
+     * Счётчик bot.admission.shed здесь не растёт: его увеличивает роутер, когда действительно заменяет работу.
+     */
+    public boolean shouldShed() {
+        return backlog() >= props.shedBacklog();
+    }
+
+    @Override
+    public Health health() {
+        int backlog = backlog();
+        Health.Builder builder = backlog >= props.shedBacklog() ? Health.outOfService() : Health.up();
+        return builder
+                .withDetail("inFlight", inFlight())
+                .withDetail("waiting", waiting.get())
+                .withDetail("backlog", backlog)
+                .withDetail("shedBacklog", props.shedBacklog())
+                .withDetail("rejectBacklog", props.rejectBacklog())
+                .build();
+    }
+}
@@ -0,0 +1,20 @@
+package com.smarttodo.app.bot.ingest;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "bot.admission")
+public record AdmissionProps(
+        int maxInFlight,    // сколько апдейтов одновременно проходят через UpdateRouter
+        Duration maxWait,   // сколько вебхук в синхронном режиме ждёт свободного слота, прежде чем ответить 503
+        int shedBacklog,    // при таком backlog дорогая работа (LLM) заменяется коротким ответом
+        int rejectBacklog   // при таком backlog вебхук отвечает 503 и MAX повторяет доставку позже
+) {
+    public AdmissionProps {
+        if (maxInFlight <= 0) maxInFlight = 32;
+        if (maxWait == null) maxWait = Duration.ofSeconds(2);
+        if (shedBacklog <= 0) shedBacklog = 500;
+        if (rejectBacklog <= 0) rejectBacklog = 2000;
+    }
+}
@@ -0,0 +1,21 @@
+package com.smarttodo.app.bot.ingest;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "bot.ingest")
+public record IngestProps(
+        boolean async,      // true: отвечаем MAX сразу, обработка уходит в фоновые полосы
+        int lanes,          // количество полос (апдейты одного чата всегда в одной полосе)
+        int laneCapacity,   // максимальная длина очереди одной полосы
+        int dedupCapacity,  // сколько последних eventId помнит локальный фильтр дублей
+        Duration dedupTtl   // сколько eventId живёт в Redis (общий фильтр для всех нод)
+) {
+    public IngestProps {
+        if (lanes <= 0) lanes = 64;
+        if (laneCapacity <= 0) laneCapacity = 256;
+        if (dedupCapacity <= 0) dedupCapacity = 100_000;
+        if (dedupTtl == null) dedupTtl = Duration.ofHours(1);
+    }
+}
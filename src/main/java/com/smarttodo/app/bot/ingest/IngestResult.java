@@ -0,0 +1,7 @@
+package com.smarttodo.app.bot.ingest;
+
+public enum IngestResult {
+    ACCEPTED,
+    DUPLICATE,
+    REJECTED    // перегрузка: MAX должен повторить доставку позже
+}
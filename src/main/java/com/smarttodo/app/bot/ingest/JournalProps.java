@@ -0,0 +1,18 @@
+package com.smarttodo.app.bot.ingest;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+
+@ConfigurationProperties(prefix = "bot.journal")
+public record JournalProps(
+        boolean enabled,        // писать ли тела вебхуков в журнал до ответа MAX
+        Path dir,               // каталог сегментов и чекпоинта
+        DataSize segmentSize    // размер одного сегмента (файл отображается в память целиком)
+) {
+    public JournalProps {
+        if (dir == null) dir = Path.of(System.getProperty("java.io.tmpdir"), "smarttodo-journal");
+        if (segmentSize == null) segmentSize = DataSize.ofMegabytes(16);
+    }
+}
@@ -0,0 +1,98 @@
+package com.smarttodo.app.bot.ingest;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Защита от повторной доставки вебхуков по eventId.
+ * Первый уровень — локальный LRU последних eventId (отсекает повтор без обращения к сети),
+ * второй — SET NX с TTL в Redis, чтобы повтор, пришедший на другую ноду, тоже был отброшен.
+ */
+@Slf4j
+@Service
+public class UpdateDeduplicator {
+
+    private static final String PREFIX = "bot:update-seen:";
+
+    private final StringRedisTemplate redis;
+    private final Duration ttl;
+    private final Map<String, Boolean> recent;
+
+    private final Counter localDuplicates;
+    private final Counter redisDuplicates;
+
+    public UpdateDeduplicator(StringRedisTemplate redis, IngestProps props, MeterRegistry registry) {
+        this.redis = redis;
+        this.ttl = props.dedupTtl();
+
+        final int capacity = props.dedupCapacity();
+        this.recent = new LinkedHashMap<>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > capacity;
+            }
+        };
+
+        this.localDuplicates = Counter.builder("bot.ingest.duplicates")
+                .tag("layer", "local")
+                .description("Отброшенные повторные апдейты")
+                .register(registry);
+        this.redisDuplicates = Counter.builder("bot.ingest.duplicates")
+                .tag("layer", "redis")
+                .description("Отброшенные повторные апдейты")
+                .register(registry);
+    }
+
+    /**
+     * Локальная проверка: запоминает eventId и возвращает false, если он уже встречался на этой ноде.
+     * Апдейты без eventId не фильтруются.
+     */
+    public boolean firstSeenLocally(String eventId) {
+        if (eventId == null || eventId.isEmpty()) return true;
+
+        boolean fresh;
+        synchronized (recent) {
+            fresh = recent.putIfAbsent(eventId, Boolean.TRUE) == null;
+        }
+        if (!fresh) {
+            localDuplicates.increment();
+            log.info("Duplicate update dropped locally: eventId={}", eventId);
+        }
+        return fresh;
+    }
+
+    /**
+     * Общая для всех нод проверка через Redis SET NX.
+     * При недоступности Redis апдейт пропускается дальше: лучше редкий дубль, чем потерянное сообщение.
+     */
+    public boolean firstSeenGlobally(String eventId) {
+        if (eventId == null || eventId.isEmpty()) return true;
+
+        try {
+            Boolean fresh = redis.opsForValue().setIfAbsent(PREFIX + eventId, "1", ttl);
+            if (Boolean.FALSE.equals(fresh)) {
+                redisDuplicates.increment();
+                log.info("Duplicate update dropped by Redis: eventId={}", eventId);
+                return false;
+            }
+        } catch (Exception e) {
+            log.warn("Dedup check in Redis failed, eventId={}: {}", eventId, e.toString());
+        }
+        return true;
+    }
+
+    /** Забыть eventId локально — апдейт не был принят и должен обработаться при повторной доставке */
+    public void forget(String eventId) {
+        if (eventId == null || eventId.isEmpty()) return;
+        synchronized (recent) {
+            recent.remove(eventId);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.smarttodo.app.bot.ingest;
+
+import com.smarttodo.app.bot.UpdateRouter;
+import com.smarttodo.app.entity.Update;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+/**
+ * Приём апдейтов от вебхука.
+ * В синхронном режиме апдейт обрабатывается в потоке запроса (как раньше),
+ * в асинхронном — разбирается и передаётся в полосу своего чата, а MAX получает ответ сразу.
+ * Повторно доставленные апдейты (тот же eventId) отбрасываются до любой работы с БД и MAX.
+ * Перед роутером стоит AdmissionController: без слота обработки апдейт до роутера не доходит —
+ * синхронный вебхук получает 503, в полосе апдейт ждёт слот; при перегрузке вебхук отклоняется,
+ * а дорогая работа заменяется коротким ответом.
+ * В асинхронном режиме тело апдейта до ответа MAX пишется в UpdateJournal,
+ * поэтому принятые, но не обработанные апдейты переживают перезапуск.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class UpdateIngestor {
+
+    private final IngestProps props;
+    private final UpdateParser parser;
+    private final UpdateRouter router;
+    private final UpdateLanes lanes;
+    private final UpdateDeduplicator dedup;
+    private final AdmissionController admission;
+    private final UpdateJournal journal;
+
+    public IngestResult ingest(byte[] body) {
+        if (!admission.admitWebhook()) {
+            return IngestResult.REJECTED;
+        }
+
+        final Update u = parser.parse(body);
+        final String eventId = u.getEventId();
+
+        if (!dedup.firstSeenLocally(eventId)) {
+            return IngestResult.DUPLICATE;
+        }
+
+        // после отметки любой исход, кроме ACCEPTED, снимает её: MAX повторит доставку, повтор не дубль
+        final IngestResult result;
+        try {
+            result = props.async() ? enqueue(u, body) : processNow(u);
+        } catch (RuntimeException e) {
+            dedup.forget(eventId);
+            throw e;
+        }
+        if (result != IngestResult.ACCEPTED) {
+            dedup.forget(eventId);
+        }
+        return result;
+    }
+
+    /** Синхронный режим: обработка в потоке вебхука, без слота в пределах maxWait — 503 */
+    private IngestResult processNow(Update u) {
+        if (!admission.acquire()) {
+            return IngestResult.REJECTED;
+        }
+        try {
+            process(u);
+        } finally {
+            admission.release();
+        }
+        return IngestResult.ACCEPTED;
+    }
+
+    /** Асинхронный режим: запись в журнал и постановка в полосу чата */
+    private IngestResult enqueue(Update u, byte[] body) {
+        final long offset = journal.append(body);
+        boolean queued = false;
+        try {
+            queued = lanes.submit(u.chatId(), () -> processJournaled(u, offset));
+        } finally {
+            if (!queued) journal.complete(offset);
+        }
+        return queued ? IngestResult.ACCEPTED : IngestResult.REJECTED;
+    }
+
+    /** Проигрывает апдейты, принятые до перезапуска, но так и не обработанные */
+    @EventListener(ApplicationReadyEvent.class)
+    public void replayJournal() {
+        journal.replay((offset, body) -> {
+            final Update u = parser.parse(body);
+            dedup.firstSeenLocally(u.getEventId());
+            if (!lanes.submit(u.chatId(), () -> processJournaled(u, offset))) {
+                processJournaled(u, offset);
+            }
+        });
+    }
+
+    private void processJournaled(Update u, long offset) {
+        try {
+            admission.acquireQueued();
+        } catch (InterruptedException e) {
+            // остановка ноды: запись журнала не закрывается, апдейт проиграется после перезапуска
+            Thread.currentThread().interrupt();
+            return;
+        }
+        try {
+            process(u);
+        } finally {
+            admission.release();
+            journal.complete(offset);
+        }
+    }
+
+    /** Вызывается только со слотом обработки */
+    private void process(Update u) {
+        if (!dedup.firstSeenGlobally(u.getEventId())) {
+            return;
+        }
+        router.dispatch(u, admission.shouldShed());
+    }
+}
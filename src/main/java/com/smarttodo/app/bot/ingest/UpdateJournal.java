@@ -0,0 +1,276 @@
+package com.smarttodo.app.bot.ingest;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Журнал входящих вебхуков на отображаемых в память файлах.
+ * Тело апдейта дописывается в текущий сегмент до ответа MAX, после обработки запись помечается выполненной.
+ * Чекпоинт — смещение, до которого все записи обработаны; при старте всё, что лежит после него, проигрывается заново.
+ *
+ * Формат записи: [int length][int crc32c][body]. Длина пишется последней и служит признаком завершённой записи:
+ * файл сегмента заполнен нулями, поэтому length == 0 означает конец данных.
+ * Смещения сквозные: сегмент называется по смещению своей первой записи.
+ */
+@Slf4j
+@Service
+public class UpdateJournal implements DisposableBean {
+
+    public static final long NO_OFFSET = -1L;
+
+    private static final int HEADER = 8;
+    private static final String SUFFIX = ".journal";
+
+    private final boolean enabled;
+    private final Path dir;
+    private final int segmentSize;
+
+    private final Object lock = new Object();
+    private final TreeSet<Long> pending = new TreeSet<>();      // начала ещё не обработанных записей
+    private final Deque<Long> segments = new ArrayDeque<>();    // базовые смещения существующих сегментов
+
+    private FileChannel activeChannel;
+    private MappedByteBuffer active;
+    private long activeBase;
+    private long writeOffset;
+
+    private FileChannel checkpointChannel;
+    private MappedByteBuffer checkpointBuf;
+    private long checkpoint;
+
+    private List<Record> recovered = List.of();     // записи после чекпоинта, найденные при старте
+
+    public UpdateJournal(JournalProps props) {
+        this.enabled = props.enabled();
+        this.dir = props.dir();
+        this.segmentSize = (int) Math.min(props.segmentSize().toBytes(), Integer.MAX_VALUE);
+        if (enabled) {
+            try {
+                open();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to open update journal in " + dir, e);
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Дописывает тело апдейта в журнал.
+     * @return смещение записи (передаётся в {@link #complete(long)}) или NO_OFFSET, если журнал выключен
+     */
+    public long append(byte[] body) {
+        if (!enabled) return NO_OFFSET;
+        if (body.length > segmentSize - HEADER) {
+            log.warn("Update body of {} bytes does not fit journal segment, not journaled", body.length);
+            return NO_OFFSET;
+        }
+
+        CRC32C crc = new CRC32C();
+        crc.update(body);
+
+        synchronized (lock) {
+            if (active.position() + HEADER + body.length > segmentSize) {
+                rotate();
+            }
+
+            int pos = active.position();
+            long offset = activeBase + pos;
+
+            active.position(pos + HEADER);
+            active.put(body);
+            active.putInt(pos + 4, (int) crc.getValue());
+            active.putInt(pos, body.length);    // длина последней: запись становится видимой целиком
+
+            writeOffset = activeBase + active.position();
+            pending.add(offset);
+            return offset;
+        }
+    }
+
+    /** Отмечает запись обработанной и сдвигает чекпоинт, если все записи до неё тоже обработаны */
+    public void complete(long offset) {
+        if (!enabled || offset == NO_OFFSET) return;
+
+        synchronized (lock) {
+            pending.remove(offset);
+            long next = pending.isEmpty() ? writeOffset : pending.first();
+            if (next > checkpoint) {
+                checkpoint = next;
+                checkpointBuf.putLong(0, checkpoint);
+                dropProcessedSegments();
+            }
+        }
+    }
+
+    /**
+     * Проигрывает записи, принятые, но не обработанные до остановки.
+     * Они зарегистрированы как ожидающие ещё при открытии журнала, поэтому новые апдейты
+     * не сдвинут чекпоинт через них. Обработчик обязан вызвать {@link #complete(long)}.
+     */
+    public void replay(BiConsumer<Long, byte[]> handler) {
+        List<Record> records;
+        synchronized (lock) {
+            records = recovered;
+            recovered = List.of();
+        }
+
+        if (!records.isEmpty()) {
+            log.info("Replaying {} journaled updates", records.size());
+        }
+        for (Record r : records) {
+            handler.accept(r.offset(), r.body());
+        }
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        if (!enabled) return;
+        synchronized (lock) {
+            active.force();
+            checkpointBuf.force();
+            activeChannel.close();
+            checkpointChannel.close();
+        }
+    }
+
+    private void open() throws IOException {
+        Files.createDirectories(dir);
+
+        checkpointChannel = FileChannel.open(dir.resolve("checkpoint"),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        checkpointBuf = checkpointChannel.map(FileChannel.MapMode.READ_WRITE, 0, Long.BYTES);
+        checkpoint = checkpointBuf.getLong(0);
+
+        try (Stream<Path> files = Files.list(dir)) {
+            files.map(p -> p.getFileName().toString())
+                    .filter(n -> n.endsWith(SUFFIX))
+                    .map(n -> Long.parseLong(n.substring(0, n.length() - SUFFIX.length())))
+                    .sorted()
+                    .forEach(segments::addLast);
+        }
+
+        if (segments.isEmpty()) {
+            segments.addLast(checkpoint);
+        }
+
+        activeBase = segments.peekLast();
+        activeChannel = openSegment(activeBase);
+        active = activeChannel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        active.position(scanEnd(active));
+        writeOffset = activeBase + active.position();
+
+        if (checkpoint > writeOffset) {
+            // чекпоинт впереди данных (например, сегменты удалили вручную) — начинаем с текущего конца
+            checkpoint = writeOffset;
+            checkpointBuf.putLong(0, checkpoint);
+        }
+
+        List<Record> records = new ArrayList<>();
+        for (long base : segments) {
+            if (base + segmentSize <= checkpoint) continue;
+            readSegment(base, Math.max(checkpoint, base), Math.min(writeOffset, base + segmentSize), records);
+        }
+        for (Record r : records) {
+            pending.add(r.offset());
+        }
+        recovered = records;
+
+        log.info("Update journal opened: dir={}, segments={}, checkpoint={}, writeOffset={}, unprocessed={}",
+                dir, segments.size(), checkpoint, writeOffset, records.size());
+    }
+
+    private void rotate() {
+        try {
+            active.force();
+            activeChannel.close();
+
+            activeBase = activeBase + segmentSize;
+            segments.addLast(activeBase);
+            activeChannel = openSegment(activeBase);
+            active = activeChannel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to rotate update journal segment", e);
+        }
+    }
+
+    private void dropProcessedSegments() {
+        while (segments.size() > 1) {
+            long first = segments.peekFirst();
+            if (first + segmentSize > checkpoint) return;
+            segments.pollFirst();
+            try {
+                Files.deleteIfExists(segmentPath(first));
+            } catch (IOException e) {
+                log.warn("Failed to delete journal segment {}: {}", first, e.toString());
+            }
+        }
+    }
+
+    private FileChannel openSegment(long base) throws IOException {
+        return FileChannel.open(segmentPath(base),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private Path segmentPath(long base) {
+        return dir.resolve(String.format("%020d%s", base, SUFFIX));
+    }
+
+    /** Позиция за последней целой записью сегмента; хвост после оборванной записи затирается */
+    private int scanEnd(MappedByteBuffer buf) {
+        int pos = 0;
+        while (pos + HEADER <= segmentSize) {
+            int len = buf.getInt(pos);
+            if (len <= 0 || pos + HEADER + len > segmentSize || !crcMatches(buf, pos, len)) break;
+            pos += HEADER + len;
+        }
+        for (int i = pos; i < segmentSize && i < pos + HEADER; i++) {
+            buf.put(i, (byte) 0);
+        }
+        return pos;
+    }
+
+    private void readSegment(long base, long from, long to, List<Record> out) throws IOException {
+        try (FileChannel ch = FileChannel.open(segmentPath(base), StandardOpenOption.READ)) {
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, segmentSize);
+            int pos = 0;
+            while (pos + HEADER <= segmentSize && base + pos < to) {
+                int len = buf.getInt(pos);
+                if (len <= 0 || pos + HEADER + len > segmentSize || !crcMatches(buf, pos, len)) break;
+                if (base + pos >= from) {
+                    byte[] body = new byte[len];
+                    buf.get(pos + HEADER, body);
+                    out.add(new Record(base + pos, body));
+                }
+                pos += HEADER + len;
+            }
+        }
+    }
+
+    private static boolean crcMatches(MappedByteBuffer buf, int pos, int len) {
+        CRC32C crc = new CRC32C();
+        crc.update(buf.slice(pos + HEADER, len));
+        return (int) crc.getValue() == buf.getInt(pos + 4);
+    }
+
+    private record Record(long offset, byte[] body) {}
+}
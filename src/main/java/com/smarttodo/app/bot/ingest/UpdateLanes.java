@@ -0,0 +1,146 @@
+package com.smarttodo.app.bot.ingest;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Набор последовательных полос обработки апдейтов.
+ * Апдейты одного чата попадают в одну и ту же полосу и обрабатываются строго по порядку,
+ * разные чаты обрабатываются параллельно. Каждая полоса — одна виртуальная нить
+ * с ограниченной очередью.
+ */
+@Slf4j
+@Service
+public class UpdateLanes implements DisposableBean {
+
+    private final Lane[] lanes;
+    private final Timer laneLag;
+    private final Counter rejected;
+    private volatile boolean running = true;
+
+    public UpdateLanes(IngestProps props, MeterRegistry registry) {
+        this.lanes = new Lane[props.lanes()];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new Lane(i, props.laneCapacity());
+        }
+
+        this.laneLag = Timer.builder("bot.ingest.lane.lag")
+                .description("Время ожидания апдейта в очереди полосы до начала обработки")
+                .publishPercentiles(0.5, 0.99)
+                .register(registry);
+        this.rejected = Counter.builder("bot.ingest.rejected")
+                .description("Апдейты, не принятые из-за переполнения полосы")
+                .register(registry);
+        Gauge.builder("bot.ingest.queue.depth", this, UpdateLanes::queueDepth)
+                .description("Суммарная длина очередей всех полос")
+                .register(registry);
+        Gauge.builder("bot.ingest.queue.max-lane-depth", this, UpdateLanes::maxLaneDepth)
+                .description("Длина самой загруженной полосы")
+                .register(registry);
+
+        for (Lane lane : lanes) {
+            lane.start();
+        }
+    }
+
+    /**
+     * Ставит задачу в полосу чата.
+     * @return false, если очередь полосы переполнена и задача не принята
+     */
+    public boolean submit(long chatId, Runnable task) {
+        Lane lane = lanes[laneIndex(chatId)];
+        boolean accepted = running && lane.queue.offer(new Job(task, System.nanoTime()));
+        if (!accepted) {
+            rejected.increment();
+            log.warn("Update lane {} is full, chatId={} rejected", lane.index, chatId);
+        }
+        return accepted;
+    }
+
+    public int queueDepth() {
+        int sum = 0;
+        for (Lane lane : lanes) sum += lane.queue.size();
+        return sum;
+    }
+
+    public int maxLaneDepth() {
+        int max = 0;
+        for (Lane lane : lanes) max = Math.max(max, lane.queue.size());
+        return max;
+    }
+
+    private int laneIndex(long chatId) {
+        // перемешиваем биты, чтобы соседние chatId не попадали в соседние полосы
+        long h = chatId * 0x9E3779B97F4A7C15L;
+        return (int) Math.floorMod(h ^ (h >>> 32), (long) lanes.length);
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        running = false;
+        for (Lane lane : lanes) {
+            lane.thread.interrupt();
+        }
+        for (Lane lane : lanes) {
+            lane.thread.join(TimeUnit.SECONDS.toMillis(5));
+        }
+    }
+
+    private record Job(Runnable task, long enqueuedAt) {}
+
+    private final class Lane {
+        private final int index;
+        private final BlockingQueue<Job> queue;
+        private Thread thread;
+
+        private Lane(int index, int capacity) {
+            this.index = index;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        private void start() {
+            thread = Thread.ofVirtual().name("update-lane-" + index).start(this::loop);
+        }
+
+        private void loop() {
+            while (running || !queue.isEmpty()) {
+                Job job;
+                try {
+                    job = queue.take();
+                } catch (InterruptedException e) {
+                    if (!running) {
+                        drain();
+                        return;
+                    }
+                    continue;
+                }
+                run(job);
+            }
+        }
+
+        private void drain() {
+            Job job;
+            while ((job = queue.poll()) != null) {
+                run(job);
+            }
+        }
+
+        private void run(Job job) {
+            laneLag.record(System.nanoTime() - job.enqueuedAt(), TimeUnit.NANOSECONDS);
+            try {
+                job.task().run();
+            } catch (Exception e) {
+                log.error("Update lane {} task failed: {}", index, e.toString(), e);
+            }
+        }
+    }
+}
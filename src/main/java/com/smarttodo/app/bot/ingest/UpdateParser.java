@@ -0,0 +1,165 @@
+package com.smarttodo.app.bot.ingest;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smarttodo.app.entity.Update;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Разбор тела вебхука потоковым API Jackson за один проход по байтам.
+ * Заполняются только поля, нужные для маршрутизации: update_type, event_id, timestamp,
+ * chat_id / user_id, текст сообщения и payload колбэка. Остальное пропускается без построения дерева.
+ */
+@Slf4j
+@Component
+public class UpdateParser {
+
+    private final JsonFactory factory;
+
+    public UpdateParser(ObjectMapper om) {
+        this.factory = om.getFactory();
+    }
+
+    public Update parse(byte[] body) {
+        try (JsonParser p = factory.createParser(body)) {
+            if (p.nextToken() != JsonToken.START_OBJECT) {
+                return new Update();
+            }
+
+            Update u = new Update();
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.currentName();
+                JsonToken value = p.nextToken();
+                if (value == JsonToken.VALUE_NULL) continue;
+
+                switch (field) {
+                    case "event_id" -> u.setEventId(p.getValueAsString());
+                    case "update_type" -> u.setUpdateType(p.getValueAsString());
+                    case "timestamp" -> u.setTimestamp(p.getValueAsLong());
+                    case "message" -> u.setMessage(readMessage(p));
+                    case "callback" -> u.setCallback(readCallback(p));
+                    default -> p.skipChildren();
+                }
+            }
+            return u;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Bad payload: {}", truncate(body), e);
+            return new Update();
+        }
+    }
+
+    private Update.Message readMessage(JsonParser p) throws IOException {
+        if (p.currentToken() != JsonToken.START_OBJECT) {
+            p.skipChildren();
+            return null;
+        }
+
+        Update.Message m = new Update.Message();
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            JsonToken value = p.nextToken();
+            if (value == JsonToken.VALUE_NULL) continue;
+
+            switch (field) {
+                case "timestamp" -> m.setTimestamp(p.getValueAsLong());
+                case "recipient" -> m.setRecipient(readRecipient(p));
+                case "sender" -> m.setSender(readSender(p));
+                case "body" -> m.setBody(readBody(p));
+                default -> p.skipChildren();
+            }
+        }
+        return m;
+    }
+
+    private Update.Callback readCallback(JsonParser p) throws IOException {
+        if (p.currentToken() != JsonToken.START_OBJECT) {
+            p.skipChildren();
+            return null;
+        }
+
+        Update.Callback c = new Update.Callback();
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            JsonToken value = p.nextToken();
+            if (value == JsonToken.VALUE_NULL) continue;
+
+            switch (field) {
+                case "payload" -> c.setPayload(p.getValueAsString());
+                case "recipient" -> c.setRecipient(readRecipient(p));
+                case "user" -> c.setUser(readSender(p));
+                default -> p.skipChildren();
+            }
+        }
+        return c;
+    }
+
+    private Update.Recipient readRecipient(JsonParser p) throws IOException {
+        if (p.currentToken() != JsonToken.START_OBJECT) {
+            p.skipChildren();
+            return null;
+        }
+
+        Update.Recipient r = new Update.Recipient();
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            p.nextToken();
+            if ("chat_id".equals(field)) {
+                r.setChatId(p.getValueAsLong());
+            } else {
+                p.skipChildren();
+            }
+        }
+        return r;
+    }
+
+    private Update.Sender readSender(JsonParser p) throws IOException {
+        if (p.currentToken() != JsonToken.START_OBJECT) {
+            p.skipChildren();
+            return null;
+        }
+
+        Update.Sender s = new Update.Sender();
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            JsonToken value = p.nextToken();
+            if ("user_id".equals(field) && value != JsonToken.VALUE_NULL) {
+                s.setUserId(p.getValueAsLong());
+            } else {
+                p.skipChildren();
+            }
+        }
+        return s;
+    }
+
+    private Update.MessageBody readBody(JsonParser p) throws IOException {
+        if (p.currentToken() != JsonToken.START_OBJECT) {
+            p.skipChildren();
+            return null;
+        }
+
+        Update.MessageBody b = new Update.MessageBody();
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            JsonToken value = p.nextToken();
+            if ("text".equals(field) && value != JsonToken.VALUE_NULL) {
+                b.setText(p.getValueAsString());
+            } else {
+                p.skipChildren();
+            }
+        }
+        return b;
+    }
+
+    private static String truncate(byte[] body) {
+        if (body == null) return "null";
+        int len = Math.min(body.length, 500);
+        String s = new String(body, 0, len, StandardCharsets.UTF_8);
+        return body.length > 500 ? s + "…[cut]" : s;
+    }
+}
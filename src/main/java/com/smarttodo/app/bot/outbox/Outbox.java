@@ -0,0 +1,144 @@
+package com.smarttodo.app.bot.outbox;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smarttodo.app.bot.MessageMarker;
+import com.smarttodo.app.client.MaxApi;
+import com.smarttodo.app.client.RenderedBody;
+import com.smarttodo.app.client.SendPriority;
+import com.smarttodo.app.dto.MessageMeta;
+import com.smarttodo.app.entity.OutboxMessageEntity;
+import com.smarttodo.app.entity.OutboxStatus;
+import com.smarttodo.app.repository.OutboxRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Транзакционный outbox сообщений бота.
+ * Подтверждение изменения данных («Задача создана.») пишется в bot_outbox в той же транзакции,
+ * что и само изменение: откат — нет и сообщения, коммит — сообщение точно уйдёт, даже если MAX
+ * сейчас недоступен или нода упала сразу после коммита. Отправляет {@link OutboxDispatcher}.
+ */
+@Slf4j
+@Service
+public class Outbox {
+
+    /** Публикуется при записи; диспетчер забирает сообщение сразу после коммита, не дожидаясь опроса */
+    public record Enqueued(long chatId) {}
+
+    private final OutboxRepository repository;
+    private final OutboxProps props;
+    private final ObjectMapper om;
+    private final ApplicationEventPublisher events;
+
+    public Outbox(OutboxRepository repository, OutboxProps props, ObjectMapper om, ApplicationEventPublisher events) {
+        this.repository = repository;
+        this.props = props;
+        this.om = om;
+        this.events = events;
+    }
+
+    /** Текст без маркера; вызывается только внутри транзакции изменения данных */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void sendText(long chatId, String text) {
+        send(chatId, Map.of("text", text), null);
+    }
+
+    /**
+     * @param body   {@link RenderedBody} или объект, который сериализуется в тело POST /messages
+     * @param marker маркер, с которым сообщение станет последним в чате; null — не менять последнее сообщение
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void send(long chatId, Object body, MessageMarker marker) {
+        OutboxMessageEntity m = new OutboxMessageEntity(chatId, json(body));
+        m.setMarker(marker == null ? null : marker.name());
+        m.setPriority(SendPriority.current().name());
+        repository.save(m);
+        events.publishEvent(new Enqueued(chatId));
+    }
+
+    /**
+     * Забрать до limit готовых строк в аренду этой ноде.
+     * Строки из held нода уже отправляет (аренда истекла, пока они ждали в очереди чата) — их не трогаем,
+     * иначе сообщение уйдёт второй раз.
+     * Своя транзакция: вызывается и после коммита транзакции, записавшей сообщение, — к ней присоединяться нельзя.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public List<OutboxMessageEntity> claim(int limit, Set<Long> held) {
+        Instant now = Instant.now();
+        List<OutboxMessageEntity> rows = new ArrayList<>(repository.lockDue(now, limit));
+        rows.removeIf(m -> held.contains(m.getId()));
+        Instant leaseEnd = now.plus(props.lease());
+        for (OutboxMessageEntity m : rows) {
+            m.setStatus(OutboxStatus.SENDING);
+            m.setAttempts(m.getAttempts() + 1);
+            m.setAvailableAt(leaseEnd);
+        }
+        return rows;
+    }
+
+    /** Продлить аренду строк, которые ещё ждут в очереди отправок этой ноды */
+    @Transactional
+    public void renew(Collection<Long> ids) {
+        if (ids.isEmpty()) return;
+        repository.extendLease(ids, Instant.now().plus(props.lease()));
+    }
+
+    @Transactional
+    public void markSent(long id, MessageMeta meta) {
+        repository.markSent(id, meta.mid(), meta.seq(), Instant.ofEpochMilli(meta.sentAt()));
+    }
+
+    /**
+     * Временная ошибка — строка вернётся в очередь с паузой, отказ MAX (4xx) или последняя попытка — FAILED.
+     * Строку, которая уже не в отправке (например, SENT), не трогаем — иначе сообщение уйдёт второй раз.
+     */
+    @Transactional
+    public void markFailed(long id, Throwable e) {
+        repository.findById(id).filter(m -> m.getStatus() == OutboxStatus.SENDING).ifPresent(m -> {
+            boolean permanent = e instanceof MaxApi.MaxClientException || m.getAttempts() >= props.maxAttempts();
+            String error = e.toString();
+            m.setLastError(error.length() > 512 ? error.substring(0, 512) : error);
+            if (permanent) {
+                m.setStatus(OutboxStatus.FAILED);
+                log.warn("Outbox message failed: id={}, chatId={}, attempts={}, err={}",
+                        id, m.getChatId(), m.getAttempts(), error);
+                return;
+            }
+            Duration wait = e instanceof MaxApi.MaxUnavailableException unavailable
+                    ? unavailable.getRetryIn()
+                    : Duration.ofSeconds(1L << Math.min(m.getAttempts(), 8));
+            m.setStatus(OutboxStatus.NEW);
+            m.setAvailableAt(Instant.now().plus(wait));
+        });
+    }
+
+    @Scheduled(fixedDelay = 3_600_000)
+    @Transactional
+    public void purgeSent() {
+        int n = repository.deleteByStatusAndCreatedAtBefore(OutboxStatus.SENT, Instant.now().minus(props.retention()));
+        if (n > 0) log.info("Outbox purged: {} sent messages", n);
+    }
+
+    private String json(Object body) {
+        if (body instanceof RenderedBody rendered) return new String(rendered.json(), StandardCharsets.UTF_8);
+        try {
+            return om.writeValueAsString(body);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Outbox body is not serializable: " + body.getClass(), e);
+        }
+    }
+}
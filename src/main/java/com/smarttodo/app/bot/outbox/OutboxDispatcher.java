@@ -0,0 +1,137 @@
+package com.smarttodo.app.bot.outbox;
+
+import com.smarttodo.app.bot.MessageMarker;
+import com.smarttodo.app.bot.MessageSender;
+import com.smarttodo.app.bot.session.ChatSessionStore;
+import com.smarttodo.app.client.MaxCallPolicy;
+import com.smarttodo.app.client.RenderedBody;
+import com.smarttodo.app.client.SendPriority;
+import com.smarttodo.app.dto.MessageMeta;
+import com.smarttodo.app.entity.OutboxMessageEntity;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Разбирает bot_outbox: забирает готовые строки пачкой ({@code FOR UPDATE SKIP LOCKED}, несколько нод не мешают друг другу)
+ * и ставит их в очередь отправок чата. После ответа MAX сначала сохраняются mid и seq в строке outbox,
+ * затем маркер последнего сообщения в сессии чата. Ошибки не уходят в {@code DeferredSends}:
+ * строка сама возвращается в очередь с паузой (см. {@link Outbox#markFailed}).
+ * Пока строка ждёт в очереди чата (в том числе отложенная при недоступном MAX), её аренда продлевается,
+ * и повторно её не забирает ни другая нода, ни эта.
+ */
+@Slf4j
+@Service
+public class OutboxDispatcher {
+
+    private final Outbox outbox;
+    private final OutboxProps props;
+    private final MessageSender messageSender;
+    private final ChatSessionStore sessions;
+    private final MaxCallPolicy policy;
+    private final MeterRegistry meterRegistry;
+
+    /** id забранных нодой и ещё не отправленных строк */
+    private final Set<Long> inFlight = ConcurrentHashMap.newKeySet();
+    private volatile Instant renewedAt = Instant.now();
+
+    public OutboxDispatcher(Outbox outbox, OutboxProps props, MessageSender messageSender,
+                            ChatSessionStore sessions, MaxCallPolicy policy, MeterRegistry meterRegistry) {
+        this.outbox = outbox;
+        this.props = props;
+        this.messageSender = messageSender;
+        this.sessions = sessions;
+        this.policy = policy;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /** Сообщение записано — отправляем сразу после коммита, на потоке обработчика, в порядке его остальных отправок */
+    @TransactionalEventListener
+    public void onEnqueued(Outbox.Enqueued event) {
+        poll();
+    }
+
+    @Scheduled(fixedDelayString = "${bot.outbox.poll-interval:1s}")
+    public void poll() {
+        // пока MAX недоступен, строки остаются в БД — забирать их некуда
+        if (policy.rejects()) return;
+        int free = props.maxInFlight() - inFlight.size();
+        if (free <= 0) return;
+
+        List<OutboxMessageEntity> batch = outbox.claim(Math.min(free, props.batchSize()), inFlight);
+        for (OutboxMessageEntity m : batch) {
+            long id = m.getId();
+            inFlight.add(id);
+            SendPriority.valueOf(m.getPriority()).run(() ->
+                    messageSender.submit(m.getChatId(), deliver(m).doFinally(sig -> inFlight.remove(id))));
+        }
+        if (!batch.isEmpty()) log.debug("Outbox claimed {} messages", batch.size());
+    }
+
+    /** Раз в пол-аренды продлеваем аренду строк, которые ещё ждут в очереди — и пока MAX недоступен тоже */
+    @Scheduled(fixedDelayString = "${bot.outbox.poll-interval:1s}")
+    public void renewLeases() {
+        Instant now = Instant.now();
+        if (now.isBefore(renewedAt.plus(props.lease().dividedBy(2)))) return;
+        renewedAt = now;
+        if (inFlight.isEmpty()) return;
+        List<Long> ids = List.copyOf(inFlight);
+        outbox.renew(ids);
+        log.debug("Outbox leases renewed: {} messages", ids.size());
+    }
+
+    private Mono<Void> deliver(OutboxMessageEntity m) {
+        long id = m.getId();
+        long chatId = m.getChatId();
+        RenderedBody body = new RenderedBody(m.getBody().getBytes(StandardCharsets.UTF_8));
+        MessageMarker marker = m.getMarker() == null ? null : MessageMarker.valueOf(m.getMarker());
+
+        return messageSender.postOnce(chatId, body)
+                // дальше JPA и сессия чата — не на потоке event loop
+                .publishOn(Schedulers.boundedElastic())
+                // приоритет строки: напоминание из outbox не заводит сессию чата (см. ChatSessionStore#saveLastMessage)
+                .doOnNext(meta -> SendPriority.valueOf(m.getPriority()).run(() -> afterSend(id, chatId, meta, marker, body)))
+                .then()
+                // сюда доходят только ошибки самого POST: ушедшее сообщение в очередь не возвращается
+                .onErrorResume(e -> Mono.<Void>fromRunnable(() -> {
+                            outbox.markFailed(id, e);
+                            delivered("failed");
+                        })
+                        .subscribeOn(Schedulers.boundedElastic()));
+    }
+
+    /**
+     * Сообщение уже у пользователя: сбой БД или Redis здесь пишется в лог, но не делает строку снова готовой к отправке.
+     * Маркер последнего сообщения — только подсказка для перерисовки.
+     */
+    private void afterSend(long id, long chatId, MessageMeta meta, MessageMarker marker, RenderedBody body) {
+        try {
+            outbox.markSent(id, meta);
+            delivered("sent");
+        } catch (RuntimeException e) {
+            log.warn("Outbox message sent, not marked: id={}, chatId={}, mid={}, err={}", id, chatId, meta.mid(), e.toString());
+            delivered("unmarked");
+        }
+        if (marker == null) return;
+        try {
+            sessions.saveLastMessage(chatId,
+                    new MessageMeta(meta.mid(), meta.seq(), meta.sentAt(), marker, body.contentHash()));
+        } catch (RuntimeException e) {
+            log.warn("Outbox message sent, last message not saved: chatId={}, mid={}, err={}", chatId, meta.mid(), e.toString());
+        }
+    }
+
+    private void delivered(String result) {
+        meterRegistry.counter("bot.outbox.delivered", "result", result).increment();
+    }
+}
@@ -0,0 +1,22 @@
+package com.smarttodo.app.bot.outbox;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "bot.outbox")
+public record OutboxProps(
+        int batchSize,          // строк за один заход в БД
+        int maxInFlight,        // забранных нодой и ещё не отправленных сообщений
+        Duration lease,         // столько строка принадлежит забравшей её ноде; потом её заберёт другая
+        int maxAttempts,        // после стольких временных ошибок сообщение помечается FAILED
+        Duration retention      // отправленные строки хранятся столько, потом удаляются
+) {
+    public OutboxProps {
+        if (batchSize <= 0) batchSize = 100;
+        if (maxInFlight <= 0) maxInFlight = 200;
+        if (lease == null || lease.isZero() || lease.isNegative()) lease = Duration.ofMinutes(1);
+        if (maxAttempts <= 0) maxAttempts = 10;
+        if (retention == null || retention.isZero() || retention.isNegative()) retention = Duration.ofDays(1);
+    }
+}
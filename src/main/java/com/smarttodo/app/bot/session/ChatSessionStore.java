@@ -0,0 +1,895 @@
+package com.smarttodo.app.bot.session;
+
+import com.smarttodo.app.client.SendPriority;
+import com.smarttodo.app.dto.HabitCheckinDto;
+import com.smarttodo.app.dto.MessageMeta;
+import com.smarttodo.app.dto.TaskDto;
+import com.smarttodo.app.repository.ChatSessionRedisRepo;
+import com.smarttodo.app.repository.LastActionRedisRepo;
+import com.smarttodo.app.repository.PendingHabitRedisRepo;
+import com.smarttodo.app.repository.PendingTaskRedisRepo;
+import com.smarttodo.app.repository.ReactiveLastActionRedisRepo;
+import com.smarttodo.app.repository.ReactivePendingTaskRedisRepo;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.UnaryOperator;
+
+/**
+ * Состояние диалога чата (последнее сообщение бота с маркером и черновики задачи/привычки),
+ * которое держится в памяти ноды и сбрасывается в Redis в фоне.
+ * <p>
+ * Чтобы несколько нод не затирали друг друга, чатом владеет одна нода: она берёт аренду
+ * {@code bot:session-owner:{chatId}} и, пока аренда заведомо действует, читает и пишет только локально.
+ * Запись в Redis идёт скриптом, который проверяет метку аренды и версии черновиков, поэтому опоздавший сброс
+ * после потери аренды ничего не испортит, а правка черновика в обход владельца не затрётся.
+ * Сброс пишет снимок, снятый под lock, а сам обмен с Redis идёт без него. Нода, получившая апдейт чужого чата, публикует
+ * просьбу отдать чат; владелец сбрасывает изменения и снимает аренду.
+ * Если отдать не успели за handoffWait, обращение идёт прямо в Redis, как без кэша.
+ * <p>
+ * Методы ...Async — для реактивных цепочек (Redis → LLM → MAX): поток не паркуется.
+ * Чат наш и нужное уже в памяти — ответ сразу; без сессий в памяти (и при {@code reactive}) —
+ * неблокирующий клиент Redis; иначе (взять аренду, дочитать хеш) — обычный путь на boundedElastic.
+ */
+@Slf4j
+@Service
+public class ChatSessionStore implements DisposableBean {
+
+    private static final String OWNER_PREFIX = "bot:session-owner:";
+    private static final String HANDOFF_CHANNEL = "bot:session-handoff";
+
+    /**
+     * ARGV[1] — текущая метка аренды сессии, ARGV[3] — новая, ARGV[4] — префикс меток этой ноды.
+     * 1 — аренда продлена, 2 — взята заново с новой меткой (локальное состояние устарело), 0 — чатом владеет другая нода.
+     * Аренда, оставшаяся от прежней сессии этой же ноды, берётся заново: её запись уже ничего не испортит.
+     */
+    private static final RedisScript<Long> LEASE = RedisScript.of("""
+            local cur = redis.call('GET', KEYS[1])
+            if cur == ARGV[1] then
+              redis.call('PEXPIRE', KEYS[1], ARGV[2])
+              return 1
+            end
+            if not cur or string.sub(cur, 1, #ARGV[4]) == ARGV[4] then
+              redis.call('SET', KEYS[1], ARGV[3], 'PX', ARGV[2])
+              return 2
+            end
+            return 0
+            """, Long.class);
+
+    /** Сколько сессий сбрасывается одним пайплайном */
+    private static final int FLUSH_BATCH = 500;
+
+    private final StringRedisTemplate redis;
+    private final ChatSessionRedisRepo chats;
+    private final LastActionRedisRepo lastRepo;
+    private final PendingTaskRedisRepo taskRepo;
+    private final PendingHabitRedisRepo habitRepo;
+    private final ReactiveLastActionRedisRepo reactiveLastRepo;
+    private final ReactivePendingTaskRedisRepo reactiveTaskRepo;
+    private final SessionProps props;
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final AtomicLong leases = new AtomicLong();   // метки аренд: nodeId:номер
+    private final long leaseMs;
+    private final long trustNanos;
+    private final long renewAheadNanos;
+
+    private final Map<Long, Session> sessions = new ConcurrentHashMap<>();
+    private final Set<Session> dirty = ConcurrentHashMap.newKeySet();
+    private final Thread flusher;
+    private volatile boolean running = true;
+
+    private final Counter leaseAcquired;
+    private final Counter leaseContended;
+    private final Counter handoffs;
+    private final Counter lostWrites;
+
+    public ChatSessionStore(StringRedisTemplate redis,
+                            ChatSessionRedisRepo chats,
+                            LastActionRedisRepo lastRepo,
+                            PendingTaskRedisRepo taskRepo,
+                            PendingHabitRedisRepo habitRepo,
+                            ReactiveLastActionRedisRepo reactiveLastRepo,
+                            ReactivePendingTaskRedisRepo reactiveTaskRepo,
+                            RedisMessageListenerContainer listeners,
+                            SessionProps props,
+                            MeterRegistry registry) {
+        this.redis = redis;
+        this.chats = chats;
+        this.lastRepo = lastRepo;
+        this.taskRepo = taskRepo;
+        this.habitRepo = habitRepo;
+        this.reactiveLastRepo = reactiveLastRepo;
+        this.reactiveTaskRepo = reactiveTaskRepo;
+        this.props = props;
+
+        this.leaseMs = props.lease().toMillis();
+        // доверяем локальному состоянию чуть меньше срока аренды — запас на сброс и расхождение часов
+        this.trustNanos = TimeUnit.MILLISECONDS.toNanos(leaseMs - leaseMs / 6);
+        this.renewAheadNanos = trustNanos / 2;
+
+        this.leaseAcquired = Counter.builder("bot.session.lease")
+                .tag("result", "acquired")
+                .description("Взятие аренды чата нодой")
+                .register(registry);
+        this.leaseContended = Counter.builder("bot.session.lease")
+                .tag("result", "contended")
+                .description("Взятие аренды чата нодой")
+                .register(registry);
+        this.handoffs = Counter.builder("bot.session.handoffs")
+                .description("Чаты, отданные другой ноде по запросу")
+                .register(registry);
+        this.lostWrites = Counter.builder("bot.session.lost-writes")
+                .description("Изменения, не сброшенные в Redis из-за потери аренды")
+                .register(registry);
+        Gauge.builder("bot.session.size", sessions, Map::size)
+                .description("Чаты, состояние которых держится в памяти ноды")
+                .register(registry);
+        Gauge.builder("bot.session.dirty", dirty, Set::size)
+                .description("Чаты с изменениями, ещё не сброшенными в Redis")
+                .register(registry);
+
+        if (props.enabled()) {
+            listeners.addMessageListener(this::onHandoffRequest, new ChannelTopic(HANDOFF_CHANNEL));
+            this.flusher = Thread.ofVirtual().name("session-flusher").start(this::flushLoop);
+        } else {
+            this.flusher = null;
+        }
+    }
+
+    // ===== Последнее сообщение бота =====
+
+    public Optional<MessageMeta> lastMessage(long chatId) {
+        Session s = own(chatId);
+        if (s == null) return lastRepo.get(chatId);
+        try {
+            load(s);
+            return Optional.ofNullable(s.last);
+        } finally {
+            s.lock.unlock();
+        }
+    }
+
+    public void saveLastMessage(long chatId, MessageMeta meta) {
+        saveLastMessage(chatId, meta, SendPriority.current());
+    }
+
+    /**
+     * Рассылки и напоминания не заводят и не арендуют сессию: чат, которому пришла только недельная сводка,
+     * не должен занимать место в памяти ноды и уводить аренду у ноды, где с ним сейчас работают.
+     * Уже свою сессию обновляем в памяти, иначе пишем прямо в Redis.
+     */
+    private void saveLastMessage(long chatId, MessageMeta meta, SendPriority priority) {
+        Session s = priority == SendPriority.INTERACTIVE ? own(chatId) : ownNow(chatId);
+        if (s == null) {
+            lastRepo.save(chatId, meta);
+            return;
+        }
+        try {
+            putLast(s, meta);
+        } finally {
+            s.lock.unlock();
+        }
+    }
+
+    /**
+     * Последние сообщения многих чатов (рассылка): чаты, которыми нода владеет, обновляются в памяти,
+     * остальные пишутся в Redis одной пачкой — без аренды и без сессии для каждого получателя.
+     */
+    public void saveLastMessages(Map<Long, MessageMeta> metas) {
+        Map<Long, MessageMeta> rest = new HashMap<>(metas.size());
+        metas.forEach((chatId, meta) -> {
+            Session s = ownNow(chatId);
+            if (s == null) {
+                rest.put(chatId, meta);
+                return;
+            }
+            try {
+                putLast(s, meta);
+            } finally {
+                s.lock.unlock();
+            }
+        });
+        if (!rest.isEmpty()) lastRepo.saveAll(rest);
+    }
+
+    /** Последнее сообщение при подписке; пусто — сообщения ещё не было */
+    public Mono<MessageMeta> lastMessageAsync(long chatId) {
+        return Mono.defer(() -> {
+            Session s = ownNow(chatId);
+            if (s != null) {
+                try {
+                    if (s.lastLoaded) return Mono.justOrEmpty(s.last);
+                } finally {
+                    s.lock.unlock();
+                }
+            }
+            if (direct()) return reactiveLastRepo.get(chatId);
+            return Mono.fromCallable(() -> lastMessage(chatId).orElse(null))
+                    .subscribeOn(Schedulers.boundedElastic());
+        });
+    }
+
+    /** Приоритет берётся из контекста цепочки (см. {@link SendPriority#context()}) */
+    public Mono<Void> saveLastMessageAsync(long chatId, MessageMeta meta) {
+        return Mono.deferContextual(ctx -> {
+            SendPriority priority = SendPriority.from(ctx);
+            Session s = ownNow(chatId);
+            if (s != null) {
+                try {
+                    putLast(s, meta);
+                } finally {
+                    s.lock.unlock();
+                }
+                return Mono.empty();
+            }
+            if (direct()) return reactiveLastRepo.save(chatId, meta).then();
+            return Mono.fromRunnable(() -> saveLastMessage(chatId, meta, priority))
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .then();
+        });
+    }
+
+    // ===== Черновик задачи =====
+
+    public Optional<TaskDto> pendingTask(long chatId) {
+        Session s = own(chatId);
+        if (s == null) return taskRepo.get(chatId);
+        try {
+            load(s);
+            return Optional.ofNullable(s.task);
+        } finally {
+            s.lock.unlock();
+        }
+    }
+
+    public void savePendingTask(long chatId, TaskDto task) {
+        Session s = own(chatId);
+        if (s == null) {
+            taskRepo.save(chatId, task);
+            return;
+        }
+        try {
+            load(s);
+            putTask(s, task);
+        } finally {
+            s.lock.unlock();
+        }
+    }
+
+    /**
+     * Правка черновика вместо чтения и записи целиком: своя сессия меняется под одним lock,
+     * без неё — запись по версии в Redis, и параллельные правки других полей не теряются.
+     *
+     * @param change текущий черновик (null — его нет) → новый; может вызываться повторно
+     * @return записанный черновик
+     */
+    public TaskDto updatePendingTask(long chatId, UnaryOperator<TaskDto> change) {
+        Session s = own(chatId);
+        if (s == null) return taskRepo.update(chatId, change);
+        try {
+            load(s);
+            putTask(s, change.apply(s.task));
+            return s.task;
+        } finally {
+            s.lock.unlock();
+        }
+    }
+
+    public Mono<Void> savePendingTaskAsync(long chatId, TaskDto task) {
+        return Mono.defer(() -> {
+            Session s = ownNow(chatId);
+            if (s != null) {
+                try {
+                    if (s.taskLoaded) {
+                        putTask(s, task);
+                        return Mono.empty();
+                    }
+                } finally {
+                    s.lock.unlock();
+                }
+            }
+            if (direct()) return reactiveTaskRepo.save(chatId, task);
+            return Mono.fromRunnable(() -> savePendingTask(chatId, task))
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .then();
+        });
+    }
+
+    /**
+     * Версия черновика задачи: растёт с каждым его изменением, включая подтверждение.
+     * Запоминается перед долгой работой вне полосы чата (разбор LLM), чтобы записать её результат,
+     * только если черновик за это время не трогали, — см. {@link #savePendingTaskIfVersionAsync}.
+     */
+    public long pendingTaskVersion(long chatId) {
+        Session s = own(chatId);
+        if (s == null) return taskRepo.version(chatId);
+        try {
+            load(s);
+            return s.taskVersion;
+        } finally {
+            s.lock.unlock();
+        }
+    }
+
+    /** Запись черновика, только если его версия всё ещё version; false — черновик успели изменить */
+    public boolean savePendingTaskIfVersion(long chatId, long version, TaskDto task) {
+        Session s = own(chatId);
+        if (s == null) return taskRepo.saveIfVersion(chatId, version, task);
+        try {
+            load(s);
+            if (s.taskVersion != version) return false;
+            putTask(s, task);
+            return true;
+        } finally {
+            s.lock.unlock();
+        }
+    }
+
+    public Mono<Boolean> savePendingTaskIfVersionAsync(long chatId, long version, TaskDto task) {
+        return Mono.defer(() -> {
+            Session s = ownNow(chatId);
+            if (s != null) {
+                try {
+                    if (s.taskLoaded) {
+                        if (s.taskVersion != version) return Mono.just(false);
+                        putTask(s, task);
+                        return Mono.just(true);
+                    }
+                } finally {
+                    s.lock.unlock();
+                }
+            }
+            return Mono.fromCallable(() -> savePendingTaskIfVersion(chatId, version, task))
+                    .subscribeOn(Schedulers.boundedElastic());
+        });
+    }
+
+    /** Черновик с удалением — для подтверждения; без сессии это один GETDEL */
+    public Optional<TaskDto> takePendingTask(long chatId) {
+        Session s = own(chatId);
+        if (s == null) return taskRepo.take(chatId);
+        try {
+            load(s);
+            TaskDto current = s.task;
+            putTask(s, null);
+            return Optional.ofNullable(current);
+        } finally {
+            s.lock.unlock();
+        }
+    }
+
+    public void deletePendingTask(long chatId) {
+        Session s = own(chatId);
+        if (s == null) {
+            taskRepo.delete(chatId);
+            return;
+        }
+        try {
+            load(s);
+            putTask(s, null);
+        } finally {
+            s.lock.unlock();
+        }
+    }
+
+    // ===== Черновик привычки =====
+
+    public Optional<HabitCheckinDto> pendingHabit(long chatId) {
+        Session s = own(chatId);
+        if (s == null) return habitRepo.get(chatId);
+        try {
+            load(s);
+            return Optional.ofNullable(s.habit);
+        } finally {
+            s.lock.unlock();
+        }
+    }
+
+    public void savePendingHabit(long chatId, HabitCheckinDto habit) {
+        Session s = own(chatId);
+        if (s == null) {
+            habitRepo.save(chatId, habit);
+            return;
+        }
+        try {
+            load(s);
+            putHabit(s, habit);
+        } finally {
+            s.lock.unlock();
+        }
+    }
+
+    /**
+     * Правка черновика вместо чтения и записи целиком: своя сессия меняется под одним lock,
+     * без неё — запись по версии в Redis, и параллельные правки других полей не теряются.
+     *
+     * @param change текущий черновик (null — его нет) → новый; может вызываться повторно
+     * @return записанный черновик
+     */
+    public HabitCheckinDto updatePendingHabit(long chatId, UnaryOperator<HabitCheckinDto> change) {
+        Session s = own(chatId);
+        if (s == null) return habitRepo.update(chatId, change);
+        try {
+            load(s);
+            putHabit(s, change.apply(s.habit));
+            return s.habit;
+        } finally {
+            s.lock.unlock();
+        }
+    }
+
+    /** Черновик с удалением — для подтверждения; без сессии это один GETDEL */
+    public Optional<HabitCheckinDto> takePendingHabit(long chatId) {
+        Session s = own(chatId);
+        if (s == null) return habitRepo.take(chatId);
+        try {
+            load(s);
+            HabitCheckinDto current = s.habit;
+            putHabit(s, null);
+            return Optional.ofNullable(current);
+        } finally {
+            s.lock.unlock();
+        }
+    }
+
+    public void deletePendingHabit(long chatId) {
+        Session s = own(chatId);
+        if (s == null) {
+            habitRepo.delete(chatId);
+            return;
+        }
+        try {
+            load(s);
+            putHabit(s, null);
+        } finally {
+            s.lock.unlock();
+        }
+    }
+
+    /**
+     * Дочитывает из Redis части состояния, которых ещё нет в памяти, — весь хеш чата одним запросом.
+     * Вызывается под lock сессии.
+     */
+    private void load(Session s) {
+        if (s.lastLoaded && s.taskLoaded && s.habitLoaded) return;
+        Map<String, byte[]> fields = chats.load(s.chatId);
+        if (!s.lastLoaded) {
+            s.last = LastActionRedisRepo.fromFields(fields).orElse(null);
+            s.lastLoaded = true;
+        }
+        if (!s.taskLoaded) {
+            s.task = taskRepo.fromFields(fields).orElse(null);
+            s.taskVersion = s.taskFlushed = ChatSessionRedisRepo.version(fields, ChatSessionRedisRepo.TASK_VERSION);
+            s.taskLoaded = true;
+        }
+        if (!s.habitLoaded) {
+            s.habit = habitRepo.fromFields(fields).orElse(null);
+            s.habitVersion = s.habitFlushed = ChatSessionRedisRepo.version(fields, ChatSessionRedisRepo.HABIT_VERSION);
+            s.habitLoaded = true;
+        }
+    }
+
+    /** Новое последнее сообщение в памяти, в Redis — фоновым сбросом. Вызывается под lock сессии */
+    private void putLast(Session s, MessageMeta meta) {
+        s.last = meta;
+        s.lastLoaded = true;
+        s.lastDirty = true;
+        s.revision++;
+        dirty.add(s);
+    }
+
+    /**
+     * Новое значение черновика в памяти: следующая версия, в Redis — фоновым сбросом.
+     * Вызывается под lock сессии после {@link #load}, чтобы версия продолжала записанную в Redis.
+     */
+    private void putTask(Session s, TaskDto task) {
+        s.task = task;
+        s.taskVersion++;
+        s.taskDirty = true;
+        s.revision++;
+        dirty.add(s);
+    }
+
+    private void putHabit(Session s, HabitCheckinDto habit) {
+        s.habit = habit;
+        s.habitVersion++;
+        s.habitDirty = true;
+        s.revision++;
+        dirty.add(s);
+    }
+
+    // ===== Владение чатом =====
+
+    /**
+     * Возвращает захваченную (lock) сессию, которой эта нода владеет, или null —
+     * тогда вызывающий работает напрямую с Redis.
+     */
+    private Session own(long chatId) {
+        if (!props.enabled()) return null;
+
+        while (true) {
+            Session s = sessions.get(chatId);
+            if (s == null) {
+                if (sessions.size() >= props.capacity()) return null;
+                s = sessions.computeIfAbsent(chatId, Session::new);
+            }
+
+            s.lock.lock();
+            if (s.removed) {
+                // сессию только что выбросил sweep — берём свежую из map
+                s.lock.unlock();
+                continue;
+            }
+
+            boolean owned = false;
+            try {
+                if (s.leased && s.trustedUntil - System.nanoTime() > renewAheadNanos) {
+                    owned = true;
+                } else {
+                    owned = acquire(s);
+                }
+            } catch (RuntimeException e) {
+                log.warn("Session lease failed, chatId={}: {}", chatId, e.toString());
+            } finally {
+                if (!owned) s.lock.unlock();
+            }
+            return owned ? s : null;
+        }
+    }
+
+    /**
+     * Сессия, которой нода заведомо владеет, захваченная без ожидания, — или null,
+     * если для ответа нужен Redis (аренда, продление) или сессия занята.
+     */
+    private Session ownNow(long chatId) {
+        if (!props.enabled()) return null;
+        Session s = sessions.get(chatId);
+        if (s == null || !s.lock.tryLock()) return null;
+        if (!s.removed && s.leased && s.trustedUntil - System.nanoTime() > renewAheadNanos) return s;
+        s.lock.unlock();
+        return null;
+    }
+
+    /** Реактивный путь в обход памяти ноды — сразу неблокирующим клиентом */
+    private boolean direct() {
+        return !props.enabled() && props.reactive();
+    }
+
+    private boolean acquire(Session s) {
+        String ownerKey = OWNER_PREFIX + s.chatId;
+        long deadline = System.nanoTime() + props.handoffWait().toNanos();
+        boolean requested = false;
+        long backoffMs = 5;
+
+        while (true) {
+            long t0 = System.nanoTime();
+            String token = nodeId + ":" + leases.incrementAndGet();
+            Long r = redis.execute(LEASE, List.of(ownerKey),
+                    s.leased ? s.token : "", String.valueOf(leaseMs), token, nodeId + ":");
+            if (r != null && r > 0) {
+                if (r == 2) {
+                    if (s.isDirty()) {
+                        lostWrites.increment();
+                        log.warn("Session lease expired before flush, chatId={}", s.chatId);
+                    }
+                    s.reset();
+                    s.token = token;
+                    leaseAcquired.increment();
+                }
+                s.trustedUntil = t0 + trustNanos;
+                s.leased = true;
+                return true;
+            }
+
+            if (!requested) {
+                redis.convertAndSend(HANDOFF_CHANNEL, String.valueOf(s.chatId));
+                requested = true;
+            }
+            if (System.nanoTime() - deadline > 0) {
+                leaseContended.increment();
+                log.warn("Session of chatId={} is held by another node, falling back to Redis", s.chatId);
+                return false;
+            }
+            try {
+                Thread.sleep(backoffMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            backoffMs = Math.min(backoffMs * 2, 50);
+        }
+    }
+
+    /** Другая нода получила апдейт чата, которым владеем мы: сбрасываем изменения и отпускаем аренду */
+    private void onHandoffRequest(Message message, byte[] pattern) {
+        long chatId;
+        try {
+            chatId = Long.parseLong(new String(message.getBody(), StandardCharsets.UTF_8));
+        } catch (NumberFormatException e) {
+            return;
+        }
+
+        Session s = sessions.get(chatId);
+        // своя же просьба или чат, которым мы не владеем
+        if (s == null || !s.leased) return;
+
+        s.lock.lock();
+        try {
+            awaitFlush(s);
+            if (!s.leased) return;
+            flush(s, true);
+            handoffs.increment();
+            log.debug("Session handed off: chatId={}", chatId);
+        } catch (RuntimeException e) {
+            log.warn("Session handoff failed, chatId={}: {}", chatId, e.toString());
+        } finally {
+            s.lock.unlock();
+        }
+    }
+
+    // ===== Сброс в Redis =====
+
+    private void flushLoop() {
+        long sweepEvery = TimeUnit.SECONDS.toNanos(1);
+        long lastSweep = System.nanoTime();
+
+        while (running) {
+            try {
+                Thread.sleep(props.flushInterval());
+            } catch (InterruptedException e) {
+                break;
+            }
+
+            flushDirty();
+
+            if (System.nanoTime() - lastSweep > sweepEvery) {
+                sweep();
+                lastSweep = System.nanoTime();
+            }
+        }
+    }
+
+    /** Выбрасывает из памяти сессии с истёкшей арендой — память ограничена активными чатами */
+    private void sweep() {
+        long now = System.nanoTime();
+        for (Session s : sessions.values()) {
+            if (s.trusted(now) || s.isDirty()) continue;
+            if (!s.lock.tryLock()) continue;
+            try {
+                if (s.trusted(now) || s.isDirty()) continue;
+                s.removed = true;
+                sessions.remove(s.chatId, s);
+            } finally {
+                s.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Фоновый сброс: изменённые сессии уходят пайплайнами по {@value #FLUSH_BATCH} —
+     * один обмен с Redis на пачку, а не на каждый чат. Под lock снимается только снимок изменений,
+     * обмен идёт без него: обработчики чатов пачки его не ждут. Правки, сделанные во время обмена,
+     * уйдут следующим тиком.
+     */
+    private void flushDirty() {
+        List<Flush> batch = new ArrayList<>();
+        for (Session s : dirty) {
+            if (!s.lock.tryLock()) continue;
+            try {
+                if (!s.isDirty()) {
+                    dirty.remove(s);
+                    continue;
+                }
+                batch.add(snapshot(s, false));
+            } finally {
+                s.lock.unlock();
+            }
+            if (batch.size() == FLUSH_BATCH) {
+                flushBatch(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) flushBatch(batch);
+    }
+
+    /** Вызывается без lock: сессии пачки захватываются по одной только для разбора исхода */
+    private void flushBatch(List<Flush> batch) {
+        List<Boolean> results = null;
+        try {
+            results = chats.applyAll(batch.stream().map(Flush::change).toList());
+        } catch (RuntimeException e) {
+            log.warn("Session flush failed, {} chats: {}", batch.size(), e.toString());
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            Flush f = batch.get(i);
+            f.session().lock.lock();
+            try {
+                // при ошибке обмена изменения остаются грязными и уйдут следующим тиком
+                if (results != null) afterFlush(f, results.get(i));
+                f.session().flushing = false;
+                f.session().flushed.signalAll();
+            } finally {
+                f.session().lock.unlock();
+            }
+        }
+    }
+
+    /** Сброс с ожиданием ответа — при передаче чата и остановке. Вызывается под lock сессии */
+    private void flush(Session s, boolean release) {
+        if (!s.isDirty() && !release) return;
+        Flush f = snapshot(s, release);
+        try {
+            boolean written = chats.apply(f.change());
+            if (!written && release && s.token != null) {
+                // изменения не прошли, но чат всё равно отдаём — иначе другая нода прождёт handoffWait
+                chats.apply(new ChatSessionRedisRepo.Change(s.chatId, Map.of(), List.of(), Map.of(),
+                        OWNER_PREFIX + s.chatId, s.token, true));
+            }
+            afterFlush(f, written);
+        } finally {
+            s.flushing = false;
+        }
+    }
+
+    /** Фоновый сброс, начатый до передачи чата, должен закончиться раньше неё. Вызывается под lock сессии */
+    private void awaitFlush(Session s) {
+        while (s.flushing) {
+            s.flushed.awaitUninterruptibly();
+        }
+    }
+
+    /**
+     * Снимок изменённых частей сессии — поля хеша чата. Пишутся, только если аренда с этой меткой всё ещё наша
+     * и версии черновиков в Redis те, что были при последнем чтении или сбросе, — правка в обход владельца
+     * (пока чат не успели передать) не затирается. Версия черновика пишется явно — та, что велась в памяти.
+     * Вызывается под lock сессии.
+     */
+    private Flush snapshot(Session s, boolean release) {
+        Map<String, byte[]> set = new HashMap<>();
+        List<String> del = new ArrayList<>(4);
+        Map<String, Long> expect = new HashMap<>(2);
+        if (s.lastDirty && s.last != null) set.putAll(LastActionRedisRepo.toFields(s.last));
+        if (s.taskDirty) {
+            if (s.task == null) del.addAll(PendingTaskRedisRepo.FIELDS);
+            else set.putAll(taskRepo.toFields(s.task));
+            set.put(ChatSessionRedisRepo.TASK_VERSION, ChatSessionRedisRepo.utf8(String.valueOf(s.taskVersion)));
+            expect.put(ChatSessionRedisRepo.TASK_VERSION, s.taskFlushed);
+        }
+        if (s.habitDirty) {
+            if (s.habit == null) del.addAll(PendingHabitRedisRepo.FIELDS);
+            else set.putAll(habitRepo.toFields(s.habit));
+            set.put(ChatSessionRedisRepo.HABIT_VERSION, ChatSessionRedisRepo.utf8(String.valueOf(s.habitVersion)));
+            expect.put(ChatSessionRedisRepo.HABIT_VERSION, s.habitFlushed);
+        }
+        s.flushing = true;
+        return new Flush(s, new ChatSessionRedisRepo.Change(s.chatId, set, del, expect, OWNER_PREFIX + s.chatId, s.token, release),
+                s.token, s.revision, s.taskVersion, s.habitVersion, s.isDirty());
+    }
+
+    /** Вызывается под lock сессии */
+    private void afterFlush(Flush f, boolean written) {
+        Session s = f.session();
+        // сессию за время обмена отдали или взяли заново — снимок к ней уже не относится
+        if (!Objects.equals(s.token, f.token())) return;
+
+        if (!written) {
+            if (f.dirty()) {
+                lostWrites.increment();
+                log.warn("Session flush skipped, lease is lost or draft changed in Redis: chatId={}", s.chatId);
+            }
+            // в памяти больше нечему верить — следующее обращение перечитает хеш чата
+            s.unload();
+            dirty.remove(s);
+            if (f.change().release()) s.reset();
+            return;
+        }
+
+        s.taskFlushed = f.taskVersion();
+        s.habitFlushed = f.habitVersion();
+        if (s.revision == f.revision()) {
+            s.lastDirty = s.taskDirty = s.habitDirty = false;
+            dirty.remove(s);
+        }
+        if (f.change().release()) s.reset();
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        running = false;
+        if (flusher == null) return;
+        flusher.interrupt();
+        flusher.join(TimeUnit.SECONDS.toMillis(5));
+
+        for (Session s : sessions.values()) {
+            s.lock.lock();
+            try {
+                awaitFlush(s);
+                if (s.leased) flush(s, true);
+            } catch (RuntimeException e) {
+                log.warn("Session flush on shutdown failed, chatId={}: {}", s.chatId, e.toString());
+            } finally {
+                s.lock.unlock();
+            }
+        }
+    }
+
+    /** Снимок сессии для записи в Redis без lock: изменение и момент сессии, к которому оно относится */
+    private record Flush(Session session, ChatSessionRedisRepo.Change change, String token,
+                         long revision, long taskVersion, long habitVersion, boolean dirty) {
+    }
+
+    private static final class Session {
+        private final long chatId;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition flushed = lock.newCondition();
+
+        private volatile boolean leased;
+        private volatile long trustedUntil;   // до какого момента (nanoTime) аренда заведомо наша
+        private String token;                 // метка аренды: запись с чужой или прежней меткой не пройдёт
+        private boolean removed;
+        private boolean flushing;             // снимок ушёл в Redis фоновым сбросом, ответа ещё нет
+        private long revision;                // растёт с каждой правкой в памяти
+
+        private MessageMeta last;
+        private TaskDto task;
+        private HabitCheckinDto habit;
+        private long taskVersion, habitVersion;   // как tv/hv в Redis, пока чат наш
+        private long taskFlushed, habitFlushed;   // версии, которые сейчас в Redis (прочитаны или записаны нами)
+        private boolean lastLoaded, taskLoaded, habitLoaded;
+        private volatile boolean lastDirty, taskDirty, habitDirty;
+
+        private Session(long chatId) {
+            this.chatId = chatId;
+        }
+
+        private boolean trusted(long now) {
+            return leased && trustedUntil - now > 0;
+        }
+
+        private boolean isDirty() {
+            return lastDirty || taskDirty || habitDirty;
+        }
+
+        /** Забыть состояние, оставив аренду: следующее обращение перечитает его из Redis */
+        private void unload() {
+            last = null;
+            task = null;
+            habit = null;
+            taskVersion = habitVersion = taskFlushed = habitFlushed = 0;
+            lastLoaded = taskLoaded = habitLoaded = false;
+            lastDirty = taskDirty = habitDirty = false;
+        }
+
+        private void reset() {
+            unload();
+            leased = false;
+            token = null;
+        }
+    }
+}
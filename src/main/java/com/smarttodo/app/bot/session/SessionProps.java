@@ -0,0 +1,22 @@
+package com.smarttodo.app.bot.session;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "bot.session")
+public record SessionProps(
+        boolean enabled,            // false — каждое обращение идёт прямо в Redis, как раньше
+        boolean reactive,           // реактивные цепочки без сессий в памяти ходят в Redis неблокирующим клиентом
+        int capacity,               // максимум чатов, чьё состояние держится в памяти ноды
+        Duration lease,             // срок владения чатом одной нодой
+        Duration flushInterval,     // как часто изменения сбрасываются в Redis
+        Duration handoffWait        // сколько ждать, пока другая нода отдаст чат
+) {
+    public SessionProps {
+        if (capacity <= 0) capacity = 10_000;
+        if (lease == null) lease = Duration.ofSeconds(30);
+        if (flushInterval == null) flushInterval = Duration.ofMillis(100);
+        if (handoffWait == null) handoffWait = Duration.ofSeconds(2);
+    }
+}
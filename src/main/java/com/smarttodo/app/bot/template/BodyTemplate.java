@@ -0,0 +1,52 @@
+package com.smarttodo.app.bot.template;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smarttodo.app.client.RenderedBody;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Тело сообщения со слотами {{name}} в любых строках (текст, подписи и payload кнопок).
+ * Тело сериализуется Jackson один раз; при подстановке в готовые куски JSON вставляются
+ * экранированные значения, и получается {@link RenderedBody} без обхода дерева объектов.
+ */
+public final class BodyTemplate {
+
+    private final byte[][] parts;
+    private final int[] slots;
+    private final int literalLength;
+
+    private BodyTemplate(TextTemplate json) {
+        String[] textParts = json.parts();
+        this.parts = new byte[textParts.length][];
+        int len = 0;
+        for (int i = 0; i < textParts.length; i++) {
+            parts[i] = textParts[i].getBytes(StandardCharsets.UTF_8);
+            len += parts[i].length;
+        }
+        this.slots = json.slots();
+        this.literalLength = len;
+    }
+
+    public static BodyTemplate compile(ObjectMapper om, Object body, String... names) {
+        try {
+            return new BodyTemplate(TextTemplate.compile(om.writeValueAsString(body), names));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize template body", e);
+        }
+    }
+
+    public RenderedBody render(String... values) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(literalLength + 32 * slots.length);
+        JsonStringEncoder encoder = JsonStringEncoder.getInstance();
+        for (int i = 0; i < slots.length; i++) {
+            out.writeBytes(parts[i]);
+            out.writeBytes(encoder.quoteAsUTF8(String.valueOf(values[slots[i]])));
+        }
+        out.writeBytes(parts[slots.length]);
+        return new RenderedBody(out.toByteArray());
+    }
+}
@@ -0,0 +1,381 @@
+package com.smarttodo.app.bot.template;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smarttodo.app.bot.InlineKeyboardBuilder;
+import com.smarttodo.app.bot.Payload;
+import com.smarttodo.app.client.RenderedBody;
+import com.smarttodo.app.entity.HabitInterval;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Тела экранов бота, собранные при старте.
+ * Статические экраны (меню, приглашения ввода) хранятся готовыми байтами JSON,
+ * у динамических (предпросмотр, карточка задачи, строки списков) разобраны слоты.
+ */
+@Component
+public class MessageTemplates {
+
+    // ===== Строки списков =====
+
+    public static final TextTemplate UPCOMING_TASK_ITEM = TextTemplate.compile("""
+            {{emoji}} **{{title}}**
+            Описание: {{description}}
+            Дэдлайн: {{deadline}}
+
+            """, "emoji", "title", "description", "deadline");
+
+    public static final TextTemplate TASK_ITEM = TextTemplate.compile("""
+            {{emoji}} **{{title}}**
+            Описание: {{description}}
+            Дэдлайн: {{deadline}}
+            """, "emoji", "title", "description", "deadline");
+
+    public static final TextTemplate COMPLETED_TASK_ITEM = TextTemplate.compile("""
+            ~~{{emoji}} **{{title}}**~~
+            """, "emoji", "title");
+
+    public static final TextTemplate HABIT_CHECKIN_ITEM = TextTemplate.compile("""
+            {{emoji}} **{{title}}**
+            Описание: {{description}}
+            Периодичность: {{interval}}
+            Цель до: {{goalDate}}
+            Выполнена: {{completed}}
+
+            """, "emoji", "title", "description", "interval", "goalDate", "completed");
+
+    public static final TextTemplate HABIT_ITEM = TextTemplate.compile("""
+            {{emoji}} **{{title}}**
+            Описание: {{description}}
+            Периодичность: {{interval}}
+            Цель до: {{goalDate}}
+
+            """, "emoji", "title", "description", "interval", "goalDate");
+
+    // ===== Динамические экраны =====
+
+    /** title, description, deadline */
+    private final BodyTemplate taskPreview;
+    /** title, description, interval, goalDate */
+    private final BodyTemplate habitPreview;
+    /** emoji, title, description, deadline, status, id */
+    private final BodyTemplate task;
+    /** emoji, title, completed, description, interval, goalDate, status, id — привычка на сегодня */
+    private final BodyTemplate habitToday;
+    /** emoji, title, description, interval, goalDate, status, id */
+    private final BodyTemplate habit;
+    /** period, totalTasks, completedTasks, overdueTasks, totalHabits, activeHabits, doneHabits, progress, activeDays */
+    private final BodyTemplate homePage;
+
+    // ===== Статические экраны =====
+
+    private final RenderedBody welcome;
+    private final RenderedBody homePageEmpty;
+    private final RenderedBody taskMenu;
+    private final RenderedBody habitMenu;
+    private final RenderedBody taskCreate;
+    private final RenderedBody habitCreate;
+    private final RenderedBody habitIntervalInput;
+    private final RenderedBody taskTitleInput;
+    private final RenderedBody taskDescriptionInput;
+    private final RenderedBody taskDeadlineInput;
+    private final RenderedBody habitTitleInput;
+    private final RenderedBody habitDescriptionInput;
+    private final RenderedBody habitGoalDateInput;
+
+    public MessageTemplates(ObjectMapper om) {
+        this.taskPreview = BodyTemplate.compile(om, InlineKeyboardBuilder.create()
+                .text("""
+                        ✨ Предпросмотр задачи
+
+                        Название: {{title}}
+                        Описание: {{description}}
+                        Дэдлайн: {{deadline}}
+
+                        Вы можете описать задачу текстом, поля выше заполнятся автоматически или заполнить содержимое с помощью кнопок.
+                        Обязательно укажите дату и время дэдлайна по задаче.
+                        Обработка текста занимает 10 - 30 секунд.
+                        Затем вы сможете с помощью кнопок отредактировать задачу.
+                        """)
+                .format("markdown")
+                .addCallbackButton("Изменить название",     Payload.TASKS_CHANGE_TITLE.key())
+                .addCallbackButton("Изменить описание",     Payload.TASKS_CHANGE_DESCRIPTION.key())
+                .addCallbackButton("Изменить дэдлайн",      Payload.TASKS_CHANGE_DEADLINE.key())
+                .addCallbackButton("Подтвердить создание",  Payload.TASKS_CREATE_CONFIRM.key())
+                .addCallbackButton("🗓️ Меню привычек",        Payload.HABIT_MENU.key())
+                .addCallbackButton("📋 Меню задач",        Payload.TASK_MENU.key())
+                .addCallbackButton("🏠 Профиль",        Payload.HOME_PAGE.key())
+                .build(), "title", "description", "deadline");
+
+        this.habitPreview = BodyTemplate.compile(om, InlineKeyboardBuilder.create()
+                .text("""
+                    💪**Создание привычки.**
+                    Создайте привычку, используя кнопки ниже.
+                    Заполните название, описание, периодичность и дату цели —
+                    после этого можно будет подтвердить создание.
+
+                    Название: {{title}}
+                    Описание: {{description}}
+                    Периодичность: {{interval}}
+                    Цель до: {{goalDate}}
+                    """)
+                .format("markdown")
+                .addCallbackButton("Изменить название",       Payload.HABITS_CHANGE_TITLE.key())
+                .addCallbackButton("Изменить описание",       Payload.HABITS_CHANGE_DESCRIPTION.key())
+                .addCallbackButton("Изменить периодичность",  Payload.HABITS_CHANGE_INTERVAL.key())
+                .addCallbackButton("Изменить дату завершения",Payload.HABITS_CHANGE_GOAL_DATE.key())
+                .addCallbackButton("Подтвердить создание",    Payload.HABITS_CREATE_CONFIRM.key())
+                .addCallbackButton("🗓️ Меню привычек",        Payload.HABIT_MENU.key())
+                .addCallbackButton("📋 Меню задач",        Payload.TASK_MENU.key())
+                .addCallbackButton("🏠 Профиль",        Payload.HOME_PAGE.key())
+                .build(), "title", "description", "interval", "goalDate");
+
+        this.task = BodyTemplate.compile(om, InlineKeyboardBuilder.create()
+                .text("""
+                        {{emoji}} **{{title}}**
+                        Описание: {{description}}
+                        Дэдлайн: {{deadline}}
+                        Статус: {{status}}
+                        """)
+                .format("markdown")
+                .addCallbackButton("Отметить невыполненной",   Payload.TASKS_SET_STATUS_UNCOMPLETED.key() + ":{{id}}")
+                .addCallbackButton("Отметить взятой в работу",  Payload.TASKS_SET_STATUS_IN_PROGRESS.key() + ":{{id}}")
+                .addCallbackButton("Отметить выполненной",   Payload.TASKS_SET_STATUS_COMPLETED.key() + ":{{id}}")
+                .addCallbackButton("Удалить задачу",         Payload.TASKS_DELETE.key() + ":{{id}}")
+                .addCallbackButton("➕ Создать новую задачу", Payload.TASKS_CREATE_NEW.key())
+                .addCallbackButton("🗓️ Меню привычек",        Payload.HABIT_MENU.key())
+                .addCallbackButton("📋 Меню задач",        Payload.TASK_MENU.key())
+                .addCallbackButton("🏠 Профиль",        Payload.HOME_PAGE.key())
+                .build(), "emoji", "title", "description", "deadline", "status", "id");
+
+        this.habitToday = BodyTemplate.compile(om, habitButtons(InlineKeyboardBuilder.create()
+                .text("""
+                        {{emoji}} **{{title}}**
+                        Необходимо выполнить сегодня: да
+                        Выполнена: {{completed}}
+                        Описание: {{description}}
+                        Периодичность: {{interval}}
+                        Цель до: {{goalDate}}
+                        Статус: {{status}}
+                        """)
+                .format("markdown")
+                .addCallbackButton("Отметить невыполненной сегодня", Payload.HABITS_MARK_AS_UNCOMPLETED.key() + ":{{id}}")
+                .addCallbackButton("Отметить выполненной сегодня", Payload.HABITS_MARK_AS_COMPLETED.key() + ":{{id}}"))
+                .build(), "emoji", "title", "completed", "description", "interval", "goalDate", "status", "id");
+
+        this.habit = BodyTemplate.compile(om, habitButtons(InlineKeyboardBuilder.create()
+                .text("""
+                        {{emoji}} **{{title}}**
+                        Необходимо выполнить сегодня: нет
+                        Описание: {{description}}
+                        Периодичность: {{interval}}
+                        Цель до: {{goalDate}}
+                        Статус: {{status}}
+                        """)
+                .format("markdown"))
+                .build(), "emoji", "title", "description", "interval", "goalDate", "status", "id");
+
+        this.homePage = BodyTemplate.compile(om, homePageButtons(InlineKeyboardBuilder.create()
+                .text("""
+                        👤 **Твой профиль**
+
+                        _Неделя: {{period}}_
+
+                        **Задачи**📅
+                        • Всего: {{totalTasks}}
+                        • Выполнено: {{completedTasks}}
+                        • Просрочено: {{overdueTasks}}
+
+                        **Привычки**🌱
+                        • Всего: {{totalHabits}}
+                        • Активных: {{activeHabits}}
+                        • Соблюдено: {{doneHabits}}
+                        • Средний прогресс: {{progress}}%
+
+                        **Активность**📊
+                        • Дней с выполненными задачами: {{activeDays}} из 7
+                        """))
+                .build(), "period", "totalTasks", "completedTasks", "overdueTasks",
+                "totalHabits", "activeHabits", "doneHabits", "progress", "activeDays");
+
+        this.homePageEmpty = render(om, homePageButtons(InlineKeyboardBuilder.create()
+                .text("""
+                        👤 **Твой профиль**
+
+                        Пока нет данных по задачам и привычкам за эту неделю.
+                        Начни с того, чтобы добавить задачу или создать привычку 🙂
+                        """))
+                .build());
+
+        this.welcome = render(om, InlineKeyboardBuilder.create()
+                .text("""
+                        
+                        Привет! Я твой помощник по самоорганизации. Готов держать фокус, планировать день и превращать хаос в аккуратные победы 💪:
+                        
+                        • ⚡️ Быстро добавляю задачи и напоминаю о важных делах
+                        • 📊 Показываю реальный прогресс и красивую статистику
+                        • ⏱️ Замеряю твои «часы активности» — когда ты действительно работаешь
+                        • 🌱 Запускаю трекеры привычек и помогаю не выбиваться из ритма
+                        
+                        Готов начать? 🚀
+                        """)
+                .format("markdown")
+                .addCallbackButton("📋 Меню задач",   "tasks-menu")
+                .addCallbackButton("🗓️ Меню привычек", "habits-menu")
+                .build());
+
+        this.taskMenu = render(om, InlineKeyboardBuilder.create()
+                .text("""
+                        📝 **Меню задач**
+
+                        Здесь ты можешь посмотреть задачи на сегодня, неделю,
+                        увидеть все незавершенные задачи и добавить новые.
+                        """)
+                .format("markdown")
+                .addCallbackButton("✅ Все незавершенные", Payload.TASKS_GET_ALL.key())
+                .addCallbackButton("📅 На сегодня",         Payload.TASKS_GET_TODAY.key())
+                .addCallbackButton("📆 На неделю",          Payload.TASKS_GET_WEEK.key())
+                .addCallbackButton("📆 На завтра",          Payload.TASKS_GET_TOMORROW.key())
+                .addCallbackButton("➕ Создать задачу",      Payload.TASKS_CREATE_NEW.key())
+                .addCallbackButton("🏠 Профиль",          Payload.HOME_PAGE.key())
+                .build());
+
+        this.habitMenu = render(om, InlineKeyboardBuilder.create()
+                .text("""
+                        🧩 **Меню привычек**
+
+                        Здесь ты можешь отслеживать свои привычки, смотреть,
+                        что нужно сделать сегодня и на неделе, а также следить
+                        за своими сериями.
+                        """)
+                .format("markdown")
+                .addCallbackButton("💪 Все привычки",        Payload.HABITS_GET_ALL.key())
+                .addCallbackButton("📅 На сегодня",          Payload.HABITS_GET_TODAY.key())
+//                .addCallbackButton("📅 На неделю",           Payload.HABITS_GET_WEEK.key())
+//                .addCallbackButton("🔥 Текущие серии",       Payload.HABITS_STREAKS.key())
+                .addCallbackButton("➕ Создать привычку",    Payload.HABITS_CREATE_NEW.key())
+                .addCallbackButton("🏠 Профиль",           Payload.HOME_PAGE.key())
+                .build());
+
+        // пустые формы создания — те же предпросмотры с точками вместо значений
+        this.taskCreate = taskPreview.render(".", ".", ".");
+        this.habitCreate = habitPreview.render(".", ".", ".", ".");
+
+        this.habitIntervalInput = render(om, InlineKeyboardBuilder.create()
+                .text("""
+                        **Периодичность привычки**
+
+                        Выбери, как часто должна повторяться привычка:
+                        """)
+                .format("markdown")
+                .addMessageButton(HabitInterval.EVERY_DAY.getDisplayName(), HabitInterval.EVERY_DAY.getDisplayName())
+                .addMessageButton(HabitInterval.EVERY_WEEKDAY.getDisplayName(), HabitInterval.EVERY_WEEKDAY.getDisplayName())
+                .addMessageButton(HabitInterval.EVERY_WEEKEND.getDisplayName(), HabitInterval.EVERY_WEEKEND.getDisplayName())
+                .addMessageButton(HabitInterval.EVERY_WEEK.getDisplayName(), HabitInterval.EVERY_WEEK.getDisplayName())
+                .addMessageButton(HabitInterval.EVERY_MONDAY.getDisplayName(), HabitInterval.EVERY_MONDAY.getDisplayName())
+                .addMessageButton(HabitInterval.EVERY_TUESDAY.getDisplayName(), HabitInterval.EVERY_TUESDAY.getDisplayName())
+                .addMessageButton(HabitInterval.EVERY_WEDNESDAY.getDisplayName(), HabitInterval.EVERY_WEDNESDAY.getDisplayName())
+                .addMessageButton(HabitInterval.EVERY_THURSDAY.getDisplayName(), HabitInterval.EVERY_THURSDAY.getDisplayName())
+                .addMessageButton(HabitInterval.EVERY_FRIDAY.getDisplayName(), HabitInterval.EVERY_FRIDAY.getDisplayName())
+                .addMessageButton(HabitInterval.EVERY_SATURDAY.getDisplayName(), HabitInterval.EVERY_SATURDAY.getDisplayName())
+                .addMessageButton(HabitInterval.EVERY_SUNDAY.getDisplayName(), HabitInterval.EVERY_SUNDAY.getDisplayName())
+                .build());
+
+        this.taskTitleInput = text(om, """
+                Введите название задачи:
+                """);
+        this.taskDescriptionInput = text(om, """
+                Введите описание задачи:
+                """);
+        this.taskDeadlineInput = text(om, """
+                Введите дэдлайн по задаче в формате dd.MM.yyyy HH:mm:
+                """);
+        this.habitTitleInput = text(om, """
+                Введите название привычки:
+                """);
+        this.habitDescriptionInput = text(om, """
+                Введите краткое описание привычки:
+                """);
+        this.habitGoalDateInput = text(om, """
+                Введите дату завершения привычки в формате dd.MM.yyyy:
+                """);
+    }
+
+    public RenderedBody taskPreview(String title, String description, String deadline) {
+        return taskPreview.render(title, description, deadline);
+    }
+
+    public RenderedBody habitPreview(String title, String description, String interval, String goalDate) {
+        return habitPreview.render(title, description, interval, goalDate);
+    }
+
+    public RenderedBody task(String emoji, String title, String description, String deadline, String status, Long id) {
+        return task.render(emoji, title, description, deadline, status, String.valueOf(id));
+    }
+
+    public RenderedBody habitToday(String emoji, String title, String completed, String description,
+                                   String interval, String goalDate, String status, Long id) {
+        return habitToday.render(emoji, title, completed, description, interval, goalDate, status, String.valueOf(id));
+    }
+
+    public RenderedBody habit(String emoji, String title, String description,
+                              String interval, String goalDate, String status, Long id) {
+        return habit.render(emoji, title, description, interval, goalDate, status, String.valueOf(id));
+    }
+
+    public RenderedBody homePage(String period, long totalTasks, long completedTasks, long overdueTasks,
+                                 int totalHabits, int activeHabits, long doneHabits, long progress, int activeDays) {
+        return homePage.render(period, String.valueOf(totalTasks), String.valueOf(completedTasks),
+                String.valueOf(overdueTasks), String.valueOf(totalHabits), String.valueOf(activeHabits),
+                String.valueOf(doneHabits), String.valueOf(progress), String.valueOf(activeDays));
+    }
+
+    public RenderedBody welcome()               { return welcome; }
+    public RenderedBody homePageEmpty()         { return homePageEmpty; }
+    public RenderedBody taskMenu()              { return taskMenu; }
+    public RenderedBody habitMenu()             { return habitMenu; }
+    public RenderedBody taskCreate()            { return taskCreate; }
+    public RenderedBody habitCreate()           { return habitCreate; }
+    public RenderedBody habitIntervalInput()    { return habitIntervalInput; }
+    public RenderedBody taskTitleInput()        { return taskTitleInput; }
+    public RenderedBody taskDescriptionInput()  { return taskDescriptionInput; }
+    public RenderedBody taskDeadlineInput()     { return taskDeadlineInput; }
+    public RenderedBody habitTitleInput()       { return habitTitleInput; }
+    public RenderedBody habitDescriptionInput() { return habitDescriptionInput; }
+    public RenderedBody habitGoalDateInput()    { return habitGoalDateInput; }
+
+    // общие кнопки карточки привычки — после кнопок отметки, если они есть
+    private static InlineKeyboardBuilder habitButtons(InlineKeyboardBuilder builder) {
+        return builder
+                .addCallbackButton("Поставить статус: завершена", Payload.HABITS_SET_STATUS_ARCHIVED.key() + ":{{id}}")
+                .addCallbackButton("Поставить статус: в процессе", Payload.HABITS_SET_STATUS_IN_PROGRESS.key() + ":{{id}}")
+                .addCallbackButton("Поставить статус: приостановлена", Payload.HABITS_SET_STATUS_PAUSED.key() + ":{{id}}")
+                .addCallbackButton("Удалить привычку", Payload.HABITS_DELETE.key() + ":{{id}}")
+                .addCallbackButton("➕ Создать новую привычку",    Payload.HABITS_CREATE_NEW.key())
+                .addCallbackButton("🗓️ Меню привычек",        Payload.HABIT_MENU.key())
+                .addCallbackButton("📋 Меню задач",        Payload.TASK_MENU.key())
+                .addCallbackButton("🏠 Профиль",        Payload.HOME_PAGE.key());
+    }
+
+    // две кнопки профиля
+    private static InlineKeyboardBuilder homePageButtons(InlineKeyboardBuilder builder) {
+        return builder
+                .format("markdown")
+                .addCallbackButton("📋 Меню задач",   "tasks-menu")
+                .addCallbackButton("🗓️ Меню привычек", "habits-menu");
+    }
+
+    private static RenderedBody render(ObjectMapper om, Object body) {
+        try {
+            return new RenderedBody(om.writeValueAsBytes(body));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize template body", e);
+        }
+    }
+
+    private static RenderedBody text(ObjectMapper om, String text) {
+        return render(om, Map.of("text", text));
+    }
+}
@@ -0,0 +1,62 @@
+package com.smarttodo.app.bot.template;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Текст со слотами {{name}}, разобранный один раз.
+ * Подстановка — это склейка готовых кусков и значений, без разбора формата как у String.formatted.
+ * Значения передаются в порядке имён, объявленных в {@link #compile}.
+ */
+public final class TextTemplate {
+
+    private final String[] parts;   // parts[i] идёт перед значением slots[i], последний кусок — после всех
+    private final int[] slots;
+    private final int literalLength;
+
+    private TextTemplate(String[] parts, int[] slots) {
+        this.parts = parts;
+        this.slots = slots;
+        int len = 0;
+        for (String p : parts) len += p.length();
+        this.literalLength = len;
+    }
+
+    public static TextTemplate compile(String text, String... names) {
+        List<String> parts = new ArrayList<>();
+        List<Integer> slots = new ArrayList<>();
+        int from = 0;
+        int open;
+        while ((open = text.indexOf("{{", from)) >= 0) {
+            int close = text.indexOf("}}", open);
+            if (close < 0) break;
+            String name = text.substring(open + 2, close);
+            int slot = List.of(names).indexOf(name);
+            if (slot < 0) throw new IllegalArgumentException("Unknown slot {{" + name + "}}");
+            parts.add(text.substring(from, open));
+            slots.add(slot);
+            from = close + 2;
+        }
+        parts.add(text.substring(from));
+        return new TextTemplate(parts.toArray(String[]::new), slots.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    public String render(String... values) {
+        return appendTo(new StringBuilder(literalLength + 16 * slots.length), values).toString();
+    }
+
+    public StringBuilder appendTo(StringBuilder sb, String... values) {
+        for (int i = 0; i < slots.length; i++) {
+            sb.append(parts[i]).append(values[slots[i]]);
+        }
+        return sb.append(parts[slots.length]);
+    }
+
+    String[] parts() {
+        return parts;
+    }
+
+    int[] slots() {
+        return slots;
+    }
+}
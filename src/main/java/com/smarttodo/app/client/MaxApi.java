@@ -1,37 +1,60 @@
 package com.smarttodo.app.client;
 
 import com.smarttodo.app.bot.InlineKeyboardBuilder;
+import com.smarttodo.app.client.config.RateLimitProps;
 import com.smarttodo.app.dto.MessageMeta;
 import com.smarttodo.app.dto.SendMessageResult;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.logging.log4j.message.Message;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Mono;
 import reactor.util.retry.Retry;
 
 import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.*;
 
 @Slf4j
 @Service
 public class MaxApi {
 
+    /** Таймаут одной попытки; ожидание слота лимитера в него не входит */
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(5);
+    private static final Duration MAX_RETRY_AFTER = Duration.ofMinutes(1);
+
     private final WebClient client; // собран в MaxConfig: baseUrl + Authorization
+    private final MaxRateLimiter limiter;
+    private final OutboundDispatcher dispatcher;
+    private final MaxCallPolicy policy;
+    private final int maxRetries;
 
-    public MaxApi(@Qualifier("maxClient") WebClient client) {
+    public MaxApi(@Qualifier("maxClient") WebClient client,
+                  MaxRateLimiter limiter,
+                  OutboundDispatcher dispatcher,
+                  MaxCallPolicy policy,
+                  RateLimitProps props) {
         this.client = client;
+        this.limiter = limiter;
+        this.dispatcher = dispatcher;
+        this.policy = policy;
+        this.maxRetries = props.maxRetries();
     }
 
     public Mono<SendMessageResult> postMessage(long chatId, Object body) {
-        return client.post()
+        return limited(chatId, client.post()
                 .uri(b -> b.path("/messages").queryParam("chat_id", chatId).build())
                 .contentType(MediaType.APPLICATION_JSON)
-                .bodyValue(body)
+                .bodyValue(wire(body))
                 .retrieve()
+                .onStatus(s -> s.value() == 429, MaxApi::rateLimited)
                 .onStatus(
                         s -> s.is4xxClientError(),
                         resp -> resp.bodyToMono(String.class).defaultIfEmpty("")
@@ -44,19 +67,21 @@ public class MaxApi {
                                 .map(err -> new MaxServerException(
                                         "5xx from MAX: " + resp.statusCode().value() + " body=" + err))
                 )
-                .bodyToMono(SendMessageResult.class);
+                .bodyToMono(SendMessageResult.class));
     }
 
-    public Mono<ResponseEntity<Void>> editMessage(String messageId, Object body) {
+    /** @param chatId чат сообщения — правка расходует его лимит так же, как новое сообщение */
+    public Mono<ResponseEntity<Void>> editMessage(long chatId, String messageId, Object body) {
         final long started = System.nanoTime();
         log.info("Start editMessage");
-        return client.put()
+        return limited(chatId, client.put()
                 .uri(b -> b.path("/messages")
                         .queryParam("message_id", messageId)
                         .build())
                 .contentType(MediaType.APPLICATION_JSON)
-                .bodyValue(body)
+                .bodyValue(wire(body))
                 .retrieve()
+                .onStatus(s -> s.value() == 429, MaxApi::rateLimited)
                 .onStatus(
                         s -> s.is4xxClientError(),
                         resp -> resp.bodyToMono(String.class).defaultIfEmpty("")
@@ -71,23 +96,69 @@ public class MaxApi {
                 )
                 .toBodilessEntity()
                 .doOnSubscribe(s ->
-                        log.info("PUT /messages start: messageId={}, body={}", messageId, body))
+                        log.info("PUT /messages start: chatId={}, messageId={}", chatId, messageId))
                 .doOnSuccess(resp ->
                         log.info("PUT /messages ok: messageId={}, status={}", messageId, resp.getStatusCode()))
                 .doOnError(e ->
                         log.warn("PUT /messages failed: messageId={}, err={}", messageId, e.toString()))
                 .doFinally(sig ->
                         log.debug("PUT /messages finished: messageId={}, signal={}, took={} ms",
-                                messageId, sig, (System.nanoTime() - started) / 1_000_000));
+                                messageId, sig, (System.nanoTime() - started) / 1_000_000)));
+    }
+
+    /** Готовые байты ({@link RenderedBody}) уходят как есть, остальное сериализует кодек Jackson */
+    private static Object wire(Object body) {
+        return body instanceof RenderedBody rendered ? rendered.json() : body;
+    }
+
+    /**
+     * Запрос получает слот лимитера и встаёт в очередь своего класса у диспетчера
+     * (класс берётся из контекста Reactor). На 429 лимитер ставится на паузу по Retry-After
+     * и запрос повторяется — с новым слотом.
+     * Временные ошибки повторяются по {@link MaxCallPolicy}; пока предохранитель разомкнут,
+     * запрос сразу завершается {@link MaxUnavailableException}, не дожидаясь слота.
+     */
+    private <T> Mono<T> limited(long chatId, Mono<T> call) {
+        Mono<T> guarded = policy.guard(call.timeout(REQUEST_TIMEOUT));
+        return Mono.deferContextual(ctx -> {
+                    SendPriority cls = SendPriority.from(ctx);
+                    return policy.rejects()
+                            ? guarded
+                            : limiter.acquire(chatId, cls).then(dispatcher.submit(cls, guarded));
+                })
+                .doOnError(MaxRateLimitedException.class, e -> limiter.pause(e.getRetryAfter()))
+                .retryWhen(Retry.max(maxRetries)
+                        .filter(e -> e instanceof MaxRateLimitedException)
+                        .onRetryExhaustedThrow((spec, sig) -> sig.failure()))
+                .retryWhen(policy.retry())
+                .doOnSubscribe(s -> policy.onRequest());
     }
 
+    private static Mono<Throwable> rateLimited(ClientResponse resp) {
+        Duration retryAfter = parseRetryAfter(resp.headers().asHttpHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+        return resp.releaseBody().then(Mono.just(new MaxRateLimitedException(retryAfter)));
+    }
 
-    public static boolean isTransient(Throwable t) {
-        if (t instanceof MaxServerException) return true; // 5xx
-        String n = t.getClass().getName();
-        return n.contains("Timeout") || n.contains("Connect") || n.contains("IOException");
+    /** Retry-After бывает числом секунд или HTTP-датой */
+    static Duration parseRetryAfter(String value) {
+        Duration d = Duration.ofSeconds(1);
+        if (value != null && !value.isBlank()) {
+            try {
+                d = Duration.ofSeconds(Long.parseLong(value.trim()));
+            } catch (NumberFormatException e) {
+                try {
+                    d = Duration.between(ZonedDateTime.now(),
+                            ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME));
+                } catch (DateTimeParseException ignored) {
+                    // непонятный заголовок — берём секунду по умолчанию
+                }
+            }
+        }
+        if (d.isNegative()) return Duration.ZERO;
+        return d.compareTo(MAX_RETRY_AFTER) > 0 ? MAX_RETRY_AFTER : d;
     }
 
+
     public static class MaxClientException extends RuntimeException {
         public MaxClientException(String msg) { super(msg); }
     }
@@ -95,4 +166,27 @@ public class MaxApi {
     public static class MaxServerException extends RuntimeException {
         public MaxServerException(String msg) { super(msg); }
     }
+
+    /** Предохранитель разомкнут: запрос не отправлялся */
+    public static class MaxUnavailableException extends RuntimeException {
+        private final Duration retryIn;
+
+        public MaxUnavailableException(Duration retryIn) {
+            super("MAX circuit open, retry in " + retryIn.toMillis() + " ms");
+            this.retryIn = retryIn;
+        }
+
+        public Duration getRetryIn() { return retryIn; }
+    }
+
+    public static class MaxRateLimitedException extends RuntimeException {
+        private final Duration retryAfter;
+
+        public MaxRateLimitedException(Duration retryAfter) {
+            super("429 from MAX, retry after " + retryAfter.toMillis() + " ms");
+            this.retryAfter = retryAfter;
+        }
+
+        public Duration getRetryAfter() { return retryAfter; }
+    }
 }
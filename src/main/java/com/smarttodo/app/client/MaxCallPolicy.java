@@ -0,0 +1,127 @@
+package com.smarttodo.app.client;
+
+import com.smarttodo.app.client.config.RetryProps;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Что делать с ошибкой запроса к MAX.
+ * Временные ошибки (5xx, таймауты, сеть) учитываются предохранителем и повторяются с паузой,
+ * но только пока есть общий бюджет повторов: каждый новый запрос добавляет в него budgetRatio повтора,
+ * плюс небольшой запас в секунду. Во время сбоя MAX повторы не умножают нагрузку больше чем на 1 + budgetRatio,
+ * а разомкнутый предохранитель не повторяется вовсе.
+ */
+@Slf4j
+@Service
+public class MaxCallPolicy {
+
+    private final MaxCircuitBreaker breaker;
+    private final RetryProps props;
+    private final Retry retry;
+
+    // бюджет повторов, в повторах; меняется под монитором
+    private double budget;
+    private long refilledAt = System.nanoTime();
+
+    private final Counter retried;
+    private final Counter denied;
+
+    public MaxCallPolicy(MaxCircuitBreaker breaker, RetryProps props, MeterRegistry registry) {
+        this.breaker = breaker;
+        this.props = props;
+        this.budget = props.budgetBurst();
+        this.retry = Retry.from(signals -> signals.concatMap(sig -> {
+            Throwable e = sig.failure();
+            if (!shouldRetry(e, sig.totalRetriesInARow())) return Mono.error(e);
+            return Mono.delay(backoff(sig.totalRetriesInARow()));
+        }));
+        this.retried = Counter.builder("max.api.retries")
+                .tag("result", "retried")
+                .description("Повторы запросов к MAX после временной ошибки")
+                .register(registry);
+        this.denied = Counter.builder("max.api.retries")
+                .tag("result", "denied")
+                .description("Повторы запросов к MAX после временной ошибки")
+                .register(registry);
+    }
+
+    /** 5xx, таймаут или сетевая ошибка — MAX может ответить при следующей попытке */
+    public static boolean isTransient(Throwable t) {
+        if (t instanceof MaxApi.MaxServerException) return true; // 5xx
+        String n = t.getClass().getName();
+        return n.contains("Timeout") || n.contains("Connect") || n.contains("IOException");
+    }
+
+    /**
+     * Одна попытка запроса: не пускается разомкнутым предохранителем,
+     * а её исход и время ответа попадают в его окно.
+     */
+    public <T> Mono<T> guard(Mono<T> call) {
+        return Mono.defer(() -> {
+            MaxCircuitBreaker.Permit permit = breaker.tryAcquire();
+            if (permit == null) return Mono.error(new MaxApi.MaxUnavailableException(breaker.retryIn()));
+            long started = System.nanoTime();
+            return call
+                    .doOnSuccess(v -> permit.success(System.nanoTime() - started))
+                    .doOnError(e -> {
+                        if (isTransient(e)) permit.failure(System.nanoTime() - started);
+                        else permit.release();
+                    })
+                    .doOnCancel(permit::release);
+        });
+    }
+
+    /** Предохранитель разомкнут: запрос не нужно ставить в очередь лимитера */
+    public boolean rejects() {
+        return breaker.isOpen();
+    }
+
+    public MaxCircuitBreaker.State state() {
+        return breaker.state();
+    }
+
+    /** Новый запрос (не повтор) пополняет бюджет повторов */
+    public synchronized void onRequest() {
+        budget = Math.min(props.budgetBurst(), budget + props.budgetRatio());
+    }
+
+    /** Retry для запроса целиком: переподписка проходит лимитер и предохранитель заново */
+    public Retry retry() {
+        return retry;
+    }
+
+    private boolean shouldRetry(Throwable e, long retriesInARow) {
+        if (!isTransient(e) || retriesInARow >= props.attempts()) return false;
+        if (breaker.state() == MaxCircuitBreaker.State.OPEN || !withdraw()) {
+            denied.increment();
+            log.debug("MAX retry denied: state={}, err={}", breaker.state(), e.toString());
+            return false;
+        }
+        retried.increment();
+        return true;
+    }
+
+    private synchronized boolean withdraw() {
+        long now = System.nanoTime();
+        double seconds = (now - refilledAt) / (double) TimeUnit.SECONDS.toNanos(1);
+        refilledAt = now;
+        budget = Math.min(props.budgetBurst(), budget + seconds * props.budgetMinPerSecond());
+        if (budget < 1) return false;
+        budget -= 1;
+        return true;
+    }
+
+    /** Экспонента от backoff с разбросом ±50%, чтобы повторы разных чатов не шли залпом */
+    private Duration backoff(long retriesInARow) {
+        long base = props.backoff().toMillis() << Math.min(retriesInARow, 10);
+        return Duration.ofMillis(base / 2 + ThreadLocalRandom.current().nextLong(base + 1));
+    }
+}
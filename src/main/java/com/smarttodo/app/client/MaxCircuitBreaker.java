@@ -0,0 +1,198 @@
+package com.smarttodo.app.client;
+
+import com.smarttodo.app.client.config.BreakerProps;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Предохранитель запросов к MAX.
+ * CLOSED — запросы идут, исходы копятся в скользящем окне из {@value #BUCKETS} корзин.
+ * Когда в окне набралось minCalls запросов и доля временных ошибок или медленных ответов превысила порог,
+ * предохранитель размыкается (OPEN): openFor запросы сразу завершаются ошибкой, не занимая лимитер и соединения.
+ * Затем HALF_OPEN — пропускается halfOpenCalls пробных запросов: все успешны — CLOSED, хоть один плохой — снова OPEN.
+ * <p>
+ * Состояние меняется под монитором: запросов к MAX десятки в секунду, секция короткая и ничего не ждёт.
+ */
+@Slf4j
+@Service
+public class MaxCircuitBreaker {
+
+    public enum State { CLOSED, HALF_OPEN, OPEN }
+
+    private static final int BUCKETS = 10;
+
+    private final BreakerProps props;
+    private final long bucketNanos;
+    private final long slowNanos;
+
+    // корзина i хранит исходы интервала номер stamp[i]
+    private final long[] stamp = new long[BUCKETS];
+    private final int[] calls = new int[BUCKETS];
+    private final int[] failures = new int[BUCKETS];
+    private final int[] slow = new int[BUCKETS];
+
+    private volatile State state = State.CLOSED;
+    private volatile long openUntil;
+    private int probes;         // выданные пробные запросы
+    private int probesOk;
+    private int generation;     // номер периода проб: исходы проб прошлого периода не учитываются
+
+    private final Map<State, Counter> transitions = new EnumMap<>(State.class);
+    private final Counter rejected;
+
+    public MaxCircuitBreaker(BreakerProps props, MeterRegistry registry) {
+        this.props = props;
+        this.bucketNanos = Math.max(1, props.window().toNanos() / BUCKETS);
+        this.slowNanos = props.slowCall().toNanos();
+
+        for (State s : State.values()) {
+            transitions.put(s, Counter.builder("max.breaker.transitions")
+                    .tag("to", s.name().toLowerCase())
+                    .description("Переходы предохранителя запросов к MAX")
+                    .register(registry));
+        }
+        this.rejected = Counter.builder("max.breaker.rejected")
+                .description("Запросы к MAX, отклонённые разомкнутым предохранителем")
+                .register(registry);
+        Gauge.builder("max.breaker.state", this, b -> b.state.ordinal())
+                .description("Состояние предохранителя: 0 — замкнут, 1 — пробные запросы, 2 — разомкнут")
+                .register(registry);
+    }
+
+    public State state() {
+        return state;
+    }
+
+    /** Разомкнут и пауза ещё не вышла — запрос точно не пройдёт */
+    public boolean isOpen() {
+        return state == State.OPEN && openUntil - System.nanoTime() > 0;
+    }
+
+    /** Сколько ещё предохранитель будет разомкнут */
+    public Duration retryIn() {
+        return state == State.OPEN
+                ? Duration.ofNanos(Math.max(0, openUntil - System.nanoTime()))
+                : Duration.ZERO;
+    }
+
+    /**
+     * Разрешение на один запрос или null, если предохранитель его не пускает.
+     * Разрешение нужно закрыть ровно одним исходом; повторные вызовы игнорируются.
+     */
+    public Permit tryAcquire() {
+        // быстрый путь без монитора: в замкнутом состоянии пускаем всех
+        if (state == State.CLOSED) return new Permit(false, 0);
+
+        synchronized (this) {
+            if (state == State.OPEN && System.nanoTime() - openUntil >= 0) {
+                transition(State.HALF_OPEN);
+            }
+            if (state == State.HALF_OPEN && probes < props.halfOpenCalls()) {
+                probes++;
+                return new Permit(true, generation);
+            }
+            if (state == State.CLOSED) return new Permit(false, 0);
+        }
+        rejected.increment();
+        return null;
+    }
+
+    private synchronized void record(Permit permit, boolean failed, long nanos) {
+        boolean isSlow = !failed && nanos >= slowNanos;
+        if (permit.probe) {
+            if (state != State.HALF_OPEN || permit.generation != generation) return;
+            if (failed || isSlow) {
+                open();
+            } else if (++probesOk >= props.halfOpenCalls()) {
+                resetWindow();
+                transition(State.CLOSED);
+            }
+            return;
+        }
+        if (state != State.CLOSED) return;
+
+        long idx = System.nanoTime() / bucketNanos;
+        int slot = (int) Math.floorMod(idx, (long) BUCKETS);
+        if (stamp[slot] != idx) {
+            stamp[slot] = idx;
+            calls[slot] = failures[slot] = slow[slot] = 0;
+        }
+        calls[slot]++;
+        if (failed) failures[slot]++;
+        if (isSlow) slow[slot]++;
+
+        int total = 0, failedTotal = 0, slowTotal = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            if (idx - stamp[i] < BUCKETS) {
+                total += calls[i];
+                failedTotal += failures[i];
+                slowTotal += slow[i];
+            }
+        }
+        if (total >= props.minCalls()
+                && (failedTotal >= total * props.failureRate() || slowTotal >= total * props.slowRate())) {
+            log.warn("MAX circuit opened: calls={}, failures={}, slow={} in last {} s",
+                    total, failedTotal, slowTotal, props.window().toSeconds());
+            open();
+        }
+    }
+
+    /** Пробный запрос не дошёл до исхода (отмена, 4xx, 429) — место пробы освобождается */
+    private synchronized void abandon(Permit permit) {
+        if (permit.probe && state == State.HALF_OPEN && permit.generation == generation) probes--;
+    }
+
+    private void open() {
+        openUntil = System.nanoTime() + props.openFor().toNanos();
+        resetWindow();
+        transition(State.OPEN);
+    }
+
+    private void resetWindow() {
+        for (int i = 0; i < BUCKETS; i++) {
+            calls[i] = failures[i] = slow[i] = 0;
+        }
+        probes = 0;
+        probesOk = 0;
+        generation++;
+    }
+
+    private void transition(State to) {
+        if (state == to) return;
+        log.warn("MAX circuit {} -> {}", state, to);
+        state = to;
+        transitions.get(to).increment();
+    }
+
+    public final class Permit {
+        private final boolean probe;
+        private final int generation;
+        private final AtomicBoolean settled = new AtomicBoolean();
+
+        private Permit(boolean probe, int generation) {
+            this.probe = probe;
+            this.generation = generation;
+        }
+
+        public void success(long nanos) {
+            if (settled.compareAndSet(false, true)) record(this, false, nanos);
+        }
+
+        public void failure(long nanos) {
+            if (settled.compareAndSet(false, true)) record(this, true, nanos);
+        }
+
+        /** Исход не говорит о здоровье MAX */
+        public void release() {
+            if (settled.compareAndSet(false, true)) abandon(this);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.smarttodo.app.client;
+
+import com.smarttodo.app.client.config.RateLimitProps;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ограничение исходящих запросов к MAX: глобальное ведро и ведро на каждый чат.
+ * Ведро реализовано как GCRA — одно AtomicLong «теоретическое время прибытия» на ведро,
+ * захват слота — CAS без блокировок. Ожидание слота — Mono.delay, поток не занимается.
+ * <p>
+ * Интерактивный запрос резервирует ближайший слот. Напоминания и рассылки сначала резервирует слот в своём
+ * ведре (так тысячи писем рассылки выстраиваются по времени, а не опрашивают лимитер разом),
+ * а глобальный слот берёт, только пока занято меньше bulkShare запаса — остаток запаса остаётся ответам.
+ */
+@Slf4j
+@Service
+public class MaxRateLimiter {
+
+    private final long globalInterval;   // нс между запросами при равномерном темпе
+    private final long globalTolerance;  // на сколько нс вперёд можно занять слоты (размер всплеска)
+    private final long bulkTolerance;
+    private final long chatInterval;
+    private final long chatTolerance;
+
+    private final AtomicLong global = new AtomicLong(System.nanoTime());
+    private final AtomicLong bulk = new AtomicLong(System.nanoTime());
+    private final Map<Long, AtomicLong> chats = new ConcurrentHashMap<>();
+
+    private final Map<SendPriority, Timer> waits = new EnumMap<>(SendPriority.class);
+    private final Counter throttled;
+
+    public MaxRateLimiter(RateLimitProps props, MeterRegistry registry) {
+        this.globalInterval = (long) (TimeUnit.SECONDS.toNanos(1) / props.globalRate());
+        this.globalTolerance = globalInterval * (props.globalBurst() - 1);
+        this.bulkTolerance = (long) (globalTolerance * props.bulkShare());
+        this.chatInterval = (long) (TimeUnit.SECONDS.toNanos(1) / props.chatRate());
+        this.chatTolerance = chatInterval * (props.chatBurst() - 1);
+
+        for (SendPriority priority : SendPriority.values()) {
+            waits.put(priority, Timer.builder("max.api.rate-limit.wait")
+                    .tag("class", priority.tag())     // то же имя тега, что у очередей OutboundDispatcher
+                    .description("Ожидание слота лимитера перед запросом к MAX")
+                    .register(registry));
+        }
+        this.throttled = Counter.builder("max.api.throttled")
+                .description("Ответы 429 от MAX")
+                .register(registry);
+    }
+
+    /**
+     * Завершается, когда запрос можно отправлять.
+     * @param chatId чат получателя; правки тоже передают свой чат ({@link MaxApi#editMessage}) — лимит чата
+     *               общий для отправок и правок. 0 — только глобальный лимит, для запросов вне чата
+     */
+    public Mono<Void> acquire(long chatId, SendPriority priority) {
+        return Mono.defer(() -> {
+            long started = System.nanoTime();
+            long chatWait = chatId == 0 ? 0 : reserve(chats.computeIfAbsent(chatId, id -> new AtomicLong(started)),
+                    chatInterval, chatTolerance, started);
+
+            Mono<Void> slot = chatWait > 0
+                    ? Mono.delay(Duration.ofNanos(chatWait)).then(Mono.defer(() -> acquireGlobal(priority)))
+                    : acquireGlobal(priority);
+
+            Timer timer = waits.get(priority);
+            return slot.doOnSuccess(v -> timer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS));
+        });
+    }
+
+    private Mono<Void> acquireGlobal(SendPriority priority) {
+        long now = System.nanoTime();
+        if (priority != SendPriority.INTERACTIVE) {
+            long wait = reserve(bulk, globalInterval, bulkTolerance, now);
+            return wait == 0
+                    ? takeBulk()
+                    : Mono.delay(Duration.ofNanos(wait)).then(Mono.defer(this::takeBulk));
+        }
+        long wait = reserve(global, globalInterval, globalTolerance, now);
+        return wait == 0 ? Mono.empty() : Mono.delay(Duration.ofNanos(wait)).then();
+    }
+
+    private Mono<Void> takeBulk() {
+        long wait = tryTake(global, globalInterval, bulkTolerance, System.nanoTime());
+        return wait == 0
+                ? Mono.empty()
+                : Mono.delay(Duration.ofNanos(wait)).then(Mono.defer(this::takeBulk));
+    }
+
+    /** MAX ответил 429: ни один запрос не уйдёт раньше, чем через retryAfter */
+    public void pause(Duration retryAfter) {
+        throttled.increment();
+        long until = System.nanoTime() + retryAfter.toNanos() + globalTolerance;
+        global.accumulateAndGet(until, Math::max);
+        log.warn("MAX rate limit hit, outbound paused for {} ms", retryAfter.toMillis());
+    }
+
+    /** Вёдра чатов, которые давно полны, не нужны — новый чат начинается с полного ведра */
+    @Scheduled(fixedDelay = 60_000)
+    public void evictIdleChats() {
+        long now = System.nanoTime();
+        chats.values().removeIf(tat -> tat.get() - now < 0);
+    }
+
+    /** Занять слот (возможно, в будущем); вернуть, сколько нс ждать до него */
+    private static long reserve(AtomicLong tat, long interval, long tolerance, long now) {
+        while (true) {
+            long cur = tat.get();
+            long base = Math.max(cur, now);
+            if (tat.compareAndSet(cur, base + interval)) {
+                return Math.max(0, base - tolerance - now);
+            }
+        }
+    }
+
+    /** Занять слот, только если он свободен сейчас; иначе вернуть, сколько нс до свободного */
+    private static long tryTake(AtomicLong tat, long interval, long tolerance, long now) {
+        while (true) {
+            long cur = tat.get();
+            long base = Math.max(cur, now);
+            long wait = base - tolerance - now;
+            if (wait > 0) return wait;
+            if (tat.compareAndSet(cur, base + interval)) return 0;
+        }
+    }
+}
@@ -1,12 +1,16 @@
 package com.smarttodo.app.client;
 
 import lombok.RequiredArgsConstructor;
-import com.smarttodo.app.bot.UpdateRouter;
+import com.smarttodo.app.bot.ingest.IngestResult;
+import com.smarttodo.app.bot.ingest.UpdateIngestor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
 
 import static org.springframework.util.StringUtils.truncate;
@@ -17,14 +21,21 @@ import static org.springframework.util.StringUtils.truncate;
 @RequiredArgsConstructor
 public class MaxWebhookController {
 
-    private final UpdateRouter router;
+    private final UpdateIngestor ingestor;
 
     @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<Void> onUpdate(@RequestBody String rawJson,
+    public ResponseEntity<Void> onUpdate(@RequestBody byte[] body,
                                          @RequestHeader Map<String, String> headers) {
-        log.info("INBOUND webhook: headers={}", headers);
-        log.info("INBOUND webhook body: {}", truncate(rawJson));
-        router.dispatch(rawJson);
+        if (log.isDebugEnabled()) {
+            log.debug("INBOUND webhook: headers={}", headers);
+            log.debug("INBOUND webhook body: {}", truncate(new String(body, StandardCharsets.UTF_8), 2000));
+        }
+        if (ingestor.ingest(body) == IngestResult.REJECTED) {
+            // нода перегружена — MAX повторит доставку позже
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "5")
+                    .build();
+        }
         return ResponseEntity.ok().build();
     }
 
@@ -0,0 +1,195 @@
+package com.smarttodo.app.client;
+
+import com.smarttodo.app.client.config.DispatchProps;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Диспетчер исходящих запросов к MAX.
+ * У каждого класса трафика ({@link SendPriority}) своя ограниченная очередь; одновременно к MAX
+ * уходит не больше maxInFlight запросов. Освободившееся место отдаётся классам по весам
+ * (плавный взвешенный round-robin), поэтому при идущей рассылке ответы пользователям
+ * по-прежнему уходят почти без очереди.
+ */
+@Slf4j
+@Service
+public class OutboundDispatcher {
+
+    private final int maxInFlight;
+    private final Map<SendPriority, ClassQueue> queues = new EnumMap<>(SendPriority.class);
+    private final ClassQueue[] order;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger wip = new AtomicInteger();
+
+    public OutboundDispatcher(DispatchProps props, MeterRegistry registry) {
+        this.maxInFlight = props.maxInFlight();
+        for (SendPriority cls : SendPriority.values()) {
+            queues.put(cls, new ClassQueue(cls, props.capacity().get(cls), props.weight().get(cls), registry));
+        }
+        this.order = queues.values().toArray(ClassQueue[]::new);
+
+        Gauge.builder("max.api.outbound.in-flight", inFlight, AtomicInteger::get)
+                .description("Запросы к MAX, выполняющиеся сейчас")
+                .register(registry);
+    }
+
+    /**
+     * Ставит запрос в очередь класса; запрос выполнится, когда до него дойдёт очередь.
+     * Если очередь класса переполнена — ошибка {@link OutboundQueueFullException}.
+     */
+    public <T> Mono<T> submit(SendPriority cls, Mono<T> call) {
+        return Mono.create(sink -> {
+            ClassQueue q = queues.get(cls);
+            Job<T> job = new Job<>(q, call, sink);
+            if (!q.offer(job)) {
+                q.rejected.increment();
+                sink.error(new OutboundQueueFullException(cls));
+                return;
+            }
+            sink.onCancel(job::cancel);
+            drain();
+        });
+    }
+
+    /** Выдаёт задания из очередей, пока есть свободные места; одновременно работает только один поток */
+    private void drain() {
+        if (wip.getAndIncrement() != 0) return;
+        int missed = 1;
+        while (true) {
+            while (inFlight.get() < maxInFlight) {
+                Job<?> job = next();
+                if (job == null) break;
+                if (job.cancelled) continue;
+                inFlight.incrementAndGet();
+                job.start();
+            }
+            missed = wip.addAndGet(-missed);
+            if (missed == 0) return;
+        }
+    }
+
+    /** Плавный взвешенный round-robin по непустым очередям (как в nginx upstream) */
+    private Job<?> next() {
+        ClassQueue best = null;
+        int total = 0;
+        for (ClassQueue q : order) {
+            if (q.size.get() == 0) continue;
+            q.current += q.weight;
+            total += q.weight;
+            if (best == null || q.current > best.current) best = q;
+        }
+        if (best == null) return null;
+        best.current -= total;
+        return best.poll();
+    }
+
+    private void finished() {
+        inFlight.decrementAndGet();
+        drain();
+    }
+
+    private final class Job<T> {
+        private final ClassQueue queue;
+        private final Mono<T> call;
+        private final MonoSink<T> sink;
+        private final long enqueuedAt = System.nanoTime();
+        private volatile boolean cancelled;
+        private volatile Disposable running;
+
+        private Job(ClassQueue queue, Mono<T> call, MonoSink<T> sink) {
+            this.queue = queue;
+            this.call = call;
+            this.sink = sink;
+        }
+
+        private void start() {
+            long startedAt = System.nanoTime();
+            queue.queueWait.record(startedAt - enqueuedAt, TimeUnit.NANOSECONDS);
+            running = call
+                    .doFinally(sig -> {
+                        queue.latency.record(System.nanoTime() - enqueuedAt, TimeUnit.NANOSECONDS);
+                        finished();
+                    })
+                    .subscribe(sink::success, sink::error, sink::success);
+        }
+
+        private void cancel() {
+            cancelled = true;
+            Disposable d = running;
+            if (d != null) d.dispose();
+        }
+    }
+
+    private static final class ClassQueue {
+        private final int capacity;
+        private final int weight;
+        private int current;   // меняется только внутри drain()
+
+        private final Queue<Job<?>> jobs = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger();
+
+        private final Timer queueWait;
+        private final Timer latency;
+        private final Counter rejected;
+
+        private ClassQueue(SendPriority cls, int capacity, int weight, MeterRegistry registry) {
+            this.capacity = capacity;
+            this.weight = weight;
+
+            this.queueWait = Timer.builder("max.api.outbound.queue-wait")
+                    .tag("class", cls.tag())
+                    .description("Ожидание в очереди диспетчера до отправки в MAX")
+                    .publishPercentiles(0.5, 0.99)
+                    .register(registry);
+            this.latency = Timer.builder("max.api.outbound.latency")
+                    .tag("class", cls.tag())
+                    .description("Время от постановки в очередь до ответа MAX")
+                    .publishPercentiles(0.5, 0.99)
+                    .register(registry);
+            this.rejected = Counter.builder("max.api.outbound.rejected")
+                    .tag("class", cls.tag())
+                    .description("Запросы, не поставленные в переполненную очередь")
+                    .register(registry);
+            Gauge.builder("max.api.outbound.queue.depth", size, AtomicInteger::get)
+                    .tag("class", cls.tag())
+                    .description("Длина очереди класса")
+                    .register(registry);
+        }
+
+        private boolean offer(Job<?> job) {
+            if (size.incrementAndGet() > capacity) {
+                size.decrementAndGet();
+                return false;
+            }
+            jobs.offer(job);
+            return true;
+        }
+
+        private Job<?> poll() {
+            Job<?> job = jobs.poll();
+            if (job != null) size.decrementAndGet();
+            return job;
+        }
+    }
+
+    public static class OutboundQueueFullException extends RuntimeException {
+        public OutboundQueueFullException(SendPriority cls) {
+            super("Outbound queue is full: " + cls);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.smarttodo.app.client;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Тело запроса к MAX, уже сериализованное в JSON (UTF-8).
+ * MaxApi отправляет байты как есть, без повторного прохода через Jackson.
+ */
+public record RenderedBody(byte[] json) {
+
+    /** 64-битный FNV-1a по байтам тела: одинаковая отрисовка — одинаковый хеш, 0 не выдаётся */
+    public long contentHash() {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : json) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return h == 0 ? 1 : h;
+    }
+
+    @Override
+    public String toString() {
+        return new String(json, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,48 @@
+package com.smarttodo.app.client;
+
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+/**
+ * Класс исходящего трафика в MAX.
+ * INTERACTIVE — ответы пользователю на его действие, REMINDER — напоминания о задачах и привычках,
+ * BULK — рассылки планировщиков. Неинтерактивный трафик не может занять весь запас глобального лимита,
+ * а у диспетчера у каждого класса своя очередь и вес, поэтому ответы не стоят в очереди за рассылкой.
+ */
+public enum SendPriority {
+    INTERACTIVE,
+    REMINDER,
+    BULK;
+
+    private static final ThreadLocal<SendPriority> CURRENT = ThreadLocal.withInitial(() -> INTERACTIVE);
+
+    /** Значение тега в метриках */
+    public String tag() {
+        return name().toLowerCase();
+    }
+
+    /** Приоритет, с которым отправляет текущий поток (для синхронного API MessageSender) */
+    public static SendPriority current() {
+        return CURRENT.get();
+    }
+
+    /** Выполнить код так, чтобы все отправки из него ушли с этим приоритетом */
+    public void run(Runnable action) {
+        SendPriority prev = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            action.run();
+        } finally {
+            CURRENT.set(prev);
+        }
+    }
+
+    /** Для реактивных цепочек: {@code mono.contextWrite(SendPriority.BULK.context())} */
+    public Context context() {
+        return Context.of(SendPriority.class, this);
+    }
+
+    public static SendPriority from(ContextView ctx) {
+        return ctx.getOrDefault(SendPriority.class, INTERACTIVE);
+    }
+}
@@ -0,0 +1,26 @@
+package com.smarttodo.app.client.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "max.breaker")
+public record BreakerProps(
+        Duration window,        // скользящее окно, по которому считаются доли ошибок и медленных ответов
+        int minCalls,           // меньше запросов в окне — предохранитель не размыкается
+        double failureRate,     // доля временных ошибок (5xx, таймауты, сеть), при которой MAX считается недоступным
+        Duration slowCall,      // ответ дольше — медленный
+        double slowRate,        // доля медленных ответов, при которой MAX считается перегруженным
+        Duration openFor,       // сколько запросы не пускаются после размыкания
+        int halfOpenCalls       // пробных запросов после паузы; все успешны — предохранитель замыкается
+) {
+    public BreakerProps {
+        if (window == null || window.isZero() || window.isNegative()) window = Duration.ofSeconds(10);
+        if (minCalls <= 0) minCalls = 20;
+        if (failureRate <= 0 || failureRate > 1) failureRate = 0.5;
+        if (slowCall == null || slowCall.isZero() || slowCall.isNegative()) slowCall = Duration.ofSeconds(2);
+        if (slowRate <= 0 || slowRate > 1) slowRate = 0.8;
+        if (openFor == null || openFor.isZero() || openFor.isNegative()) openFor = Duration.ofSeconds(30);
+        if (halfOpenCalls <= 0) halfOpenCalls = 3;
+    }
+}
@@ -0,0 +1,34 @@
+package com.smarttodo.app.client.config;
+
+import com.smarttodo.app.client.SendPriority;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+@ConfigurationProperties(prefix = "max.dispatch")
+public record DispatchProps(
+        int maxInFlight,                        // одновременных запросов к MAX (меньше пула соединений max-pool)
+        Map<SendPriority, Integer> capacity,    // длина очереди каждого класса
+        Map<SendPriority, Integer> weight       // доля выборки класса, когда очереди заняты у нескольких
+) {
+    public DispatchProps {
+        if (maxInFlight <= 0) maxInFlight = 64;
+        capacity = withDefaults(capacity, 1000, 2000, 2000);
+        weight = withDefaults(weight, 8, 3, 1);
+    }
+
+    private static Map<SendPriority, Integer> withDefaults(Map<SendPriority, Integer> given,
+                                                           int interactive, int reminder, int bulk) {
+        Map<SendPriority, Integer> m = new EnumMap<>(SendPriority.class);
+        m.put(SendPriority.INTERACTIVE, interactive);
+        m.put(SendPriority.REMINDER, reminder);
+        m.put(SendPriority.BULK, bulk);
+        if (given != null) {
+            given.forEach((k, v) -> {
+                if (v != null && v > 0) m.put(k, v);
+            });
+        }
+        return m;
+    }
+}
@@ -0,0 +1,22 @@
+package com.smarttodo.app.client.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "max.rate-limit")
+public record RateLimitProps(
+        double globalRate,      // запросов в секунду ко всему Bot API
+        int globalBurst,        // сколько запросов можно отправить разом
+        double chatRate,        // сообщений в секунду в один чат
+        int chatBurst,
+        double bulkShare,       // доля запаса глобального лимита, доступная рассылкам
+        int maxRetries          // сколько раз повторять запрос после 429
+) {
+    public RateLimitProps {
+        if (globalRate <= 0) globalRate = 30;
+        if (globalBurst <= 0) globalBurst = 30;
+        if (chatRate <= 0) chatRate = 1;
+        if (chatBurst <= 0) chatBurst = 3;
+        if (bulkShare <= 0 || bulkShare > 1) bulkShare = 0.5;
+        if (maxRetries <= 0) maxRetries = 3;
+    }
+}
@@ -0,0 +1,22 @@
+package com.smarttodo.app.client.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "max.retry")
+public record RetryProps(
+        int attempts,                   // повторов одного запроса при временной ошибке
+        Duration backoff,               // пауза перед первым повтором, дальше удваивается (со случайным разбросом)
+        double budgetRatio,             // повторы — не больше этой доли от потока запросов
+        double budgetMinPerSecond,      // запас повторов в секунду при слабом потоке
+        int budgetBurst                 // сколько повторов может накопиться в бюджете
+) {
+    public RetryProps {
+        if (attempts <= 0) attempts = 3;
+        if (backoff == null || backoff.isNegative()) backoff = Duration.ofMillis(300);
+        if (budgetRatio <= 0 || budgetRatio > 1) budgetRatio = 0.1;
+        if (budgetMinPerSecond <= 0) budgetMinPerSecond = 1;
+        if (budgetBurst <= 0) budgetBurst = 20;
+    }
+}
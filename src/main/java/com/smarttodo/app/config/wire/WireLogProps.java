@@ -0,0 +1,21 @@
+package com.smarttodo.app.config.wire;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.Set;
+
+@ConfigurationProperties(prefix = "http.wire-log")
+public record WireLogProps(
+        boolean enabled,        // false — фильтр не ставится на клиенты вовсе
+        double sampleRate,      // доля запросов, которые пишутся целиком (0..1)
+        Set<Long> chats,        // чаты, чьи запросы к MAX пишутся всегда (отладка конкретного пользователя)
+        boolean errors,         // ошибки (4xx/5xx, сбой соединения) пишутся всегда; sample-rate=0 — только ошибки
+        int maxBodyBytes        // сколько первых байт тела попадает в лог
+) {
+    public WireLogProps {
+        if (sampleRate < 0) sampleRate = 0;
+        if (sampleRate > 1) sampleRate = 1;
+        if (chats == null) chats = Set.of();
+        if (maxBodyBytes <= 0) maxBodyBytes = 2048;
+    }
+}
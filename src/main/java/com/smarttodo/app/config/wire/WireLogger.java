@@ -0,0 +1,178 @@
+package com.smarttodo.app.config.wire;
+
+import org.reactivestreams.Publisher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.client.reactive.ClientHttpRequest;
+import org.springframework.http.client.reactive.ClientHttpRequestDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.BodyInserter;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+/**
+ * Журнал HTTP-обмена с внешними API (MAX, Ollama).
+ * Выключен по умолчанию. Во включённом виде тела не буферизуются:
+ * из потока байт, который идёт в сокет и из сокета, копируются только первые max-body-bytes.
+ * Запрос попадает в журнал, если он в выборке (sample-rate), относится к отлаживаемому чату
+ * или закончился ошибкой (errors).
+ */
+@Component
+public class WireLogger {
+
+    private final WireLogProps props;
+
+    public WireLogger(WireLogProps props) {
+        this.props = props;
+    }
+
+    /** {@code WebClient.builder().apply(wireLogger.install("MAX"))} — при выключенном журнале ничего не делает */
+    public Consumer<WebClient.Builder> install(String name) {
+        return builder -> {
+            if (props.enabled()) builder.filter(new Filter(LoggerFactory.getLogger("wire." + name), name));
+        };
+    }
+
+    private boolean selected(ClientRequest req) {
+        if (!props.chats().isEmpty()) {
+            Long chatId = parseLong(queryParam(req.url().getRawQuery(), "chat_id"));
+            if (chatId != null && props.chats().contains(chatId)) return true;
+        }
+        double rate = props.sampleRate();
+        return rate > 0 && (rate >= 1 || ThreadLocalRandom.current().nextDouble() < rate);
+    }
+
+    private final class Filter implements ExchangeFilterFunction {
+        private final Logger log;
+        private final String name;
+
+        private Filter(Logger log, String name) {
+            this.log = log;
+            this.name = name;
+        }
+
+        @Override
+        public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+            boolean selected = selected(request);
+            if (!selected && !props.errors()) return next.exchange(request);
+
+            long started = System.nanoTime();
+            Capture sent = new Capture(props.maxBodyBytes());
+            ClientRequest teed = ClientRequest.from(request)
+                    .body(teeBody(request.body(), sent))
+                    .build();
+
+            return next.exchange(teed)
+                    .doOnError(e -> log.warn("{} ==> {} {} failed after {} ms: {}; req={}",
+                            name, request.method(), request.url(), elapsedMs(started), e.toString(), sent))
+                    .map(resp -> {
+                        boolean failed = resp.statusCode().isError();
+                        if (!selected && !failed) return resp;
+
+                        Capture received = new Capture(props.maxBodyBytes());
+                        return resp.mutate()
+                                .body(body -> body
+                                        .doOnNext(received::tee)
+                                        .doFinally(sig -> write(failed, request, resp, started, sent, received)))
+                                .build();
+                    });
+        }
+
+        private void write(boolean failed, ClientRequest request, ClientResponse resp,
+                           long started, Capture sent, Capture received) {
+            String format = "{} ==> {} {} <== {} in {} ms; req={}; resp={}";
+            Object[] args = {name, request.method(), request.url(), resp.statusCode().value(),
+                    elapsedMs(started), sent, received};
+            if (failed) log.warn(format, args);
+            else log.info(format, args);
+        }
+    }
+
+    /** Тело запроса пишется в сокет как обычно, по дороге копируется его начало */
+    private static BodyInserter<?, ? super ClientHttpRequest> teeBody(BodyInserter<?, ? super ClientHttpRequest> body,
+                                                                      Capture capture) {
+        return (outputMessage, context) -> body.insert(new ClientHttpRequestDecorator(outputMessage) {
+            @Override
+            public Mono<Void> writeWith(Publisher<? extends DataBuffer> chunks) {
+                return super.writeWith(Flux.from(chunks).doOnNext(capture::tee));
+            }
+
+            @Override
+            public Mono<Void> writeAndFlushWith(Publisher<? extends Publisher<? extends DataBuffer>> chunks) {
+                return super.writeAndFlushWith(Flux.from(chunks).map(inner -> Flux.from(inner).doOnNext(capture::tee)));
+            }
+        }, context);
+    }
+
+    /** Первые limit байт потока и его полная длина; сам буфер не трогается (позиция чтения не сдвигается) */
+    static final class Capture {
+        private final int limit;
+        private byte[] head;
+        private int length;
+        private long total;
+
+        Capture(int limit) {
+            this.limit = limit;
+        }
+
+        synchronized void tee(DataBuffer buf) {
+            int readable = buf.readableByteCount();
+            total += readable;
+            int n = Math.min(readable, limit - length);
+            if (n <= 0) return;
+            // буфер по размеру тела, а не по лимиту: короткие ответы MAX не тянут за собой 2 КБ
+            if (head == null) head = new byte[n];
+            else if (head.length < length + n) head = Arrays.copyOf(head, Math.min(limit, Math.max(length + n, head.length * 2)));
+            int from = buf.readPosition();
+            for (int i = 0; i < n; i++) {
+                head[length + i] = buf.getByte(from + i);
+            }
+            length += n;
+        }
+
+        @Override
+        public synchronized String toString() {
+            if (total == 0) return "<empty>";
+            String text = new String(head, 0, length, StandardCharsets.UTF_8);
+            return total > length ? text + "…(" + total + " bytes)" : text;
+        }
+    }
+
+    private static long elapsedMs(long started) {
+        return (System.nanoTime() - started) / 1_000_000;
+    }
+
+    private static String queryParam(String query, String name) {
+        if (query == null) return null;
+        int from = 0;
+        while (from < query.length()) {
+            int amp = query.indexOf('&', from);
+            int end = amp < 0 ? query.length() : amp;
+            if (query.startsWith(name, from) && end > from + name.length() && query.charAt(from + name.length()) == '=') {
+                return query.substring(from + name.length() + 1, end);
+            }
+            from = end + 1;
+        }
+        return null;
+    }
+
+    private static Long parseLong(String s) {
+        if (s == null) return null;
+        try {
+            return Long.parseLong(s);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
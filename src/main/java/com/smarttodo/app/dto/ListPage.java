@@ -0,0 +1,21 @@
+package com.smarttodo.app.dto;
+
+import java.util.List;
+
+/**
+ * Страница списка и курсоры соседних страниц (null — страницы нет).
+ */
+public record ListPage<T>(
+        List<T> items,
+        PageCursor prev,
+        PageCursor next
+) {
+    /** Весь список одной страницей, без навигации */
+    public static <T> ListPage<T> of(List<T> items) {
+        return new ListPage<>(items, null, null);
+    }
+
+    public boolean isEmpty() {
+        return items == null || items.isEmpty();
+    }
+}
@@ -6,7 +6,8 @@ public record MessageMeta(
         String mid,
         long seq,
         long sentAt,
-        MessageMarker marker
+        MessageMarker marker,
+        long bodyHash       // хеш отрисованного тела (RenderedBody#contentHash), 0 — неизвестен
 ) {
     @Override
     public String toString() {
@@ -14,7 +15,8 @@ public record MessageMeta(
                 "  mid = '" + mid + "',\n" +
                 "  seq = " + seq + ",\n" +
                 "  sentAt = " + sentAt + ",\n" +
-                "  marker = " + marker + "\n" +
+                "  marker = " + marker + ",\n" +
+                "  bodyHash = " + bodyHash + "\n" +
                 "}";
     }
 }
\ No newline at end of file
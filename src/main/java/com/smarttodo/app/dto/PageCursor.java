@@ -0,0 +1,26 @@
+package com.smarttodo.app.dto;
+
+/**
+ * Позиция keyset-пагинации: ключ сортировки и id строки на границе страницы.
+ * Вперёд — строки после (key, id), назад — строки перед ними. Смещения нет,
+ * поэтому страница стоит одинаково на любой глубине списка.
+ */
+public record PageCursor(boolean backward, long key, long id) {
+
+    /** Ключ строки без ключа сортировки (задача без срока): такие строки идут в конце списка */
+    public static final long NO_KEY = Long.MAX_VALUE;
+
+    public static final PageCursor FIRST = new PageCursor(false, Long.MIN_VALUE, Long.MIN_VALUE);
+
+    public static PageCursor after(long key, long id) {
+        return new PageCursor(false, key, id);
+    }
+
+    public static PageCursor before(long key, long id) {
+        return new PageCursor(true, key, id);
+    }
+
+    public boolean isFirst() {
+        return equals(FIRST);
+    }
+}
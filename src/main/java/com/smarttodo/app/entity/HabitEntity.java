@@ -15,7 +15,7 @@ import java.util.List;
 @EqualsAndHashCode(of = "id")
 @ToString(of = {"id", "title", "status"})
 @Entity
-@Table(name = "habits")
+@Table(name = "habits", indexes = @Index(name = "idx_habits_chat", columnList = "chat_id, id"))
 public class HabitEntity {
 
     @Id
@@ -0,0 +1,72 @@
+package com.smarttodo.app.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.Instant;
+
+/**
+ * Сообщение бота, записанное в одной транзакции с изменением данных, которое оно подтверждает.
+ * Уходит в MAX позже, из {@code OutboxDispatcher}; mid и seq отправленного сообщения сохраняются здесь же.
+ */
+@Getter
+@Setter
+@RequiredArgsConstructor
+@NoArgsConstructor(force = true)
+@EqualsAndHashCode(of = "id")
+@ToString(of = {"id", "chatId", "status", "attempts"})
+@Entity
+@Table(name = "bot_outbox", indexes = @Index(name = "idx_bot_outbox_due", columnList = "status, available_at"))
+public class OutboxMessageEntity {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "chat_id", nullable = false, updatable = false)
+    @NonNull
+    private final Long chatId;
+
+    /** Готовое JSON-тело запроса POST /messages */
+    @Column(name = "body", nullable = false, updatable = false, columnDefinition = "text")
+    @NonNull
+    private final String body;
+
+    /** Маркер, с которым сообщение станет последним в чате; null — последнее сообщение не меняется */
+    @Column(name = "marker", length = 32, updatable = false)
+    private String marker;
+
+    @Column(name = "priority", nullable = false, length = 16, updatable = false)
+    private String priority;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 16)
+    private OutboxStatus status = OutboxStatus.NEW;
+
+    @Column(name = "attempts", nullable = false)
+    private int attempts;
+
+    @Column(name = "available_at", nullable = false)
+    private Instant availableAt;
+
+    @Column(name = "last_error", length = 512)
+    private String lastError;
+
+    @Column(name = "mid")
+    private String mid;
+
+    @Column(name = "seq")
+    private Long seq;
+
+    @Column(name = "sent_at")
+    private Instant sentAt;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private Instant createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        this.createdAt = Instant.now();
+        if (this.availableAt == null) this.availableAt = this.createdAt;
+    }
+}
@@ -0,0 +1,8 @@
+package com.smarttodo.app.entity;
+
+public enum OutboxStatus {
+    NEW,        // ждёт отправки (или повтора после available_at)
+    SENDING,    // забрано нодой до available_at; аренда истекла — заберёт любая нода
+    SENT,
+    FAILED      // MAX отказал насовсем или кончились попытки
+}
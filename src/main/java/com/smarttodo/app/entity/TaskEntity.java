@@ -13,7 +13,7 @@ import java.time.LocalDateTime;
 @EqualsAndHashCode(of = "id")
 @ToString(of = {"id", "title", "status"})
 @Entity
-@Table(name = "tasks")
+@Table(name = "tasks", indexes = @Index(name = "idx_tasks_chat_deadline", columnList = "chat_id, deadline, id"))
 public class TaskEntity {
 
     @Id
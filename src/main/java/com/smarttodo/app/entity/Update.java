@@ -8,8 +8,6 @@ import lombok.Setter;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
-import java.util.Arrays;
-import java.util.stream.Collectors;
 
 @Setter
 @Getter
@@ -38,9 +36,20 @@ public class Update {
     private static String indent(String s, int spaces) {
         if (s == null) return "null";
         String pad = " ".repeat(spaces);
-        return Arrays.stream(s.split("\\R", -1))
-                .map(line -> pad + line)
-                .collect(Collectors.joining(NL));
+        StringBuilder sb = new StringBuilder(s.length() + pad.length() * 8);
+        sb.append(pad);
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '\r') {
+                if (i + 1 < s.length() && s.charAt(i + 1) == '\n') i++;
+                sb.append(NL).append(pad);
+            } else if (c == '\n') {
+                sb.append(NL).append(pad);
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
     }
 
     public boolean isType(String expected) {
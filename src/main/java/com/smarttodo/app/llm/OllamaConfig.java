@@ -1,14 +1,12 @@
 package com.smarttodo.app.llm;
 
-import org.slf4j.LoggerFactory;
+import com.smarttodo.app.config.wire.WireLogger;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpHeaders;
-import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
 import org.springframework.web.reactive.function.client.ExchangeStrategies;
 import org.springframework.web.reactive.function.client.WebClient;
-import reactor.core.publisher.Mono;
 import reactor.netty.http.client.HttpClient;
 import reactor.netty.resources.ConnectionProvider;
 
@@ -19,7 +17,7 @@ import java.time.Duration;
 public class OllamaConfig {
 
     @Bean(name = "ollamaWebClient")
-    public WebClient ollamaClient(OllamaProps p) {
+    public WebClient ollamaClient(OllamaProps p, WireLogger wireLogger) {
         var pool = ConnectionProvider.builder("ollama-pool")
                 .maxConnections(50)
                 .pendingAcquireMaxCount(500)
@@ -39,25 +37,7 @@ public class OllamaConfig {
                 })
                 .clientConnector(new org.springframework.http.client.reactive.ReactorClientHttpConnector(http))
                 .exchangeStrategies(strategies)
-                .filter(logReq())
-                .filter(logResp())
+                .apply(wireLogger.install("OLLAMA"))
                 .build();
     }
-
-    private static ExchangeFilterFunction logReq() {
-        return ExchangeFilterFunction.ofRequestProcessor(req -> {
-            var sb = new StringBuilder("OLLAMA ==> ").append(req.method()).append(" ").append(req.url()).append('\n');
-            req.headers().forEach((n, v) -> sb.append("  ").append(n).append(": ").append(v).append('\n'));
-            LoggerFactory.getLogger("OllamaApi").info(sb.toString());
-            return Mono.just(req);
-        });
-    }
-
-    private static ExchangeFilterFunction logResp() {
-        return ExchangeFilterFunction.ofResponseProcessor(resp -> {
-            var log = LoggerFactory.getLogger("OllamaApi");
-            log.info("OLLAMA <== {} {}", resp.statusCode().value(), resp.statusCode());
-            return Mono.just(resp);
-        });
-    }
 }
@@ -0,0 +1,176 @@
+package com.smarttodo.app.loadtest;
+
+import com.smarttodo.app.bot.UpdateRouter;
+import com.smarttodo.app.bot.ingest.UpdateParser;
+import com.smarttodo.app.loadtest.LoadScenario.LoadEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Прогон апдейтов с заданной частотой в роутер (target=ROUTER, замеряется полная обработка)
+ * или в HTTP-эндпоинт вебхука (target=HTTP, замеряется время ответа MAX).
+ * Каждый апдейт выполняется в своей виртуальной нити, темп задаётся общим расписанием.
+ */
+@Slf4j
+@Profile("loadtest")
+@Service
+@RequiredArgsConstructor
+public class LoadRunner {
+
+    public enum Target { ROUTER, HTTP }
+
+    public record LoadRequest(
+            Target target,
+            int chats,
+            int rounds,
+            double ratePerSecond,
+            String recordedFile     // если задан — вместо синтетики шлём записанный трафик
+    ) {}
+
+    public record TypeReport(long count, long errors, double p50Ms, double p99Ms, double maxMs) {}
+
+    public record LoadReport(
+            Target target,
+            int sent,
+            long elapsedMs,
+            double throughputPerSecond,
+            Map<String, TypeReport> byType
+    ) {}
+
+    private final LoadScenario scenario;
+    private final UpdateParser parser;
+    private final UpdateRouter router;
+    private final LoadTestProps props;
+    private final MeterRegistry meterRegistry;
+
+    private final HttpClient http = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+
+    public LoadReport run(LoadRequest req) throws IOException {
+        Target target = req.target() == null ? Target.ROUTER : req.target();
+        List<LoadEvent> events = req.recordedFile() != null && !req.recordedFile().isBlank()
+                ? scenario.recorded(Path.of(req.recordedFile()))
+                : scenario.synthesize(Math.max(1, req.chats()), Math.max(1, req.rounds()));
+
+        double rate = req.ratePerSecond() > 0 ? req.ratePerSecond() : 100;
+        long intervalNanos = (long) (1_000_000_000L / rate);
+
+        Map<String, Stats> stats = new ConcurrentHashMap<>();
+        Map<String, Double> routerErrorsBefore = routerErrors();
+
+        log.info("Load run started: target={}, events={}, rate={}/s", target, events.size(), rate);
+        long started = System.nanoTime();
+        try (ExecutorService exec = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < events.size(); i++) {
+                long due = started + i * intervalNanos;
+                long wait;
+                while ((wait = due - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                LoadEvent event = events.get(i);
+                exec.submit(() -> fire(target, event, stats));
+            }
+        }
+        long elapsedNanos = System.nanoTime() - started;
+
+        if (target == Target.ROUTER) {
+            // роутер сам ловит исключения обработчиков, поэтому ошибки берём из его счётчика
+            Map<String, Double> after = routerErrors();
+            after.forEach((type, value) -> stats.computeIfAbsent(type, t -> new Stats())
+                    .errors.addAndGet((long) (value - routerErrorsBefore.getOrDefault(type, 0.0))));
+        }
+
+        Map<String, TypeReport> byType = new TreeMap<>();
+        stats.forEach((type, s) -> byType.put(type, s.report()));
+
+        LoadReport report = new LoadReport(
+                target,
+                events.size(),
+                elapsedNanos / 1_000_000,
+                events.size() / (elapsedNanos / 1e9),
+                byType
+        );
+        log.info("Load run finished: {}", report);
+        return report;
+    }
+
+    private void fire(Target target, LoadEvent event, Map<String, Stats> stats) {
+        Stats s = stats.computeIfAbsent(event.updateType(), t -> new Stats());
+        long t0 = System.nanoTime();
+        try {
+            if (target == Target.ROUTER) {
+                router.dispatch(parser.parse(event.body()));
+            } else {
+                HttpResponse<Void> resp = http.send(HttpRequest.newBuilder(URI.create(props.webhookUrl()))
+                                .header("Content-Type", "application/json")
+                                .POST(HttpRequest.BodyPublishers.ofByteArray(event.body()))
+                                .build(),
+                        HttpResponse.BodyHandlers.discarding());
+                if (resp.statusCode() / 100 != 2) s.errors.incrementAndGet();
+            }
+        } catch (Exception e) {
+            s.errors.incrementAndGet();
+            log.debug("Load event failed: {}", e.toString());
+        } finally {
+            s.record(System.nanoTime() - t0);
+        }
+    }
+
+    private Map<String, Double> routerErrors() {
+        Map<String, Double> result = new TreeMap<>();
+        for (Counter c : meterRegistry.find("bot.router.errors").counters()) {
+            result.put(c.getId().getTag("update_type"), c.count());
+        }
+        return result;
+    }
+
+    private static final class Stats {
+        private final List<Long> latencies = new ArrayList<>();
+        private final AtomicLong errors = new AtomicLong();
+
+        private synchronized void record(long nanos) {
+            latencies.add(nanos);
+        }
+
+        private synchronized TypeReport report() {
+            long[] sorted = latencies.stream().mapToLong(Long::longValue).toArray();
+            Arrays.sort(sorted);
+            return new TypeReport(
+                    sorted.length,
+                    errors.get(),
+                    percentileMs(sorted, 0.50),
+                    percentileMs(sorted, 0.99),
+                    sorted.length == 0 ? 0 : sorted[sorted.length - 1] / 1e6
+            );
+        }
+
+        private static double percentileMs(long[] sorted, double p) {
+            if (sorted.length == 0) return 0;
+            int idx = (int) Math.ceil(p * sorted.length) - 1;
+            return sorted[Math.max(0, idx)] / 1e6;
+        }
+    }
+}
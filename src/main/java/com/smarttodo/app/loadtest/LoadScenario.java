@@ -0,0 +1,95 @@
+package com.smarttodo.app.loadtest;
+
+import com.smarttodo.app.bot.Payload;
+import com.smarttodo.app.bot.ingest.UpdateParser;
+import com.smarttodo.app.entity.Update;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Источник апдейтов для нагрузки: записанный трафик (один JSON вебхука на строку)
+ * или синтетический сценарий «типичного пользователя» для N чатов.
+ */
+@Profile("loadtest")
+@Component
+@RequiredArgsConstructor
+public class LoadScenario {
+
+    /** Синтетические чаты живут в отдельном диапазоне, чтобы не пересекаться с реальными пользователями */
+    private static final long CHAT_ID_BASE = 9_000_000_000L;
+
+    private final UpdateParser parser;
+
+    public record LoadEvent(String updateType, long chatId, byte[] body) {}
+
+    public List<LoadEvent> recorded(Path file) throws IOException {
+        List<LoadEvent> events = new ArrayList<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (line.isBlank()) continue;
+            byte[] body = line.getBytes(StandardCharsets.UTF_8);
+            Update u = parser.parse(body);
+            events.add(new LoadEvent(String.valueOf(u.getUpdateType()), u.chatId(), body));
+        }
+        return events;
+    }
+
+    /**
+     * Шаги чатов перемежаются по кругу: сначала первый шаг всех чатов, затем второй и т.д.
+     * /start отправляется один раз, остальные шаги повторяются rounds раз.
+     */
+    public List<LoadEvent> synthesize(int chats, int rounds) {
+        List<LoadEvent> events = new ArrayList<>();
+        for (int c = 0; c < chats; c++) {
+            events.add(text(CHAT_ID_BASE + c, "/start"));
+        }
+        for (int r = 0; r < rounds; r++) {
+            for (Step step : ROUND) {
+                for (int c = 0; c < chats; c++) {
+                    long chatId = CHAT_ID_BASE + c;
+                    events.add(step.text() != null ? text(chatId, step.text()) : callback(chatId, step.payload()));
+                }
+            }
+        }
+        return events;
+    }
+
+    private record Step(String text, String payload) {}
+
+    private static final List<Step> ROUND = List.of(
+            new Step(null, Payload.TASK_MENU.key()),
+            new Step(null, Payload.TASKS_CREATE_NEW.key()),
+            new Step("Завтра в 19:00 выпить сок", null),
+            new Step(null, Payload.TASKS_CHANGE_TITLE.key()),
+            new Step("Выпить апельсиновый сок", null),
+            new Step(null, Payload.TASKS_CREATE_CONFIRM.key()),
+            new Step(null, Payload.TASKS_GET_ALL.key()),
+            new Step(null, Payload.HABIT_MENU.key()),
+            new Step(null, Payload.HOME_PAGE.key())
+    );
+
+    private static LoadEvent text(long chatId, String text) {
+        String json = """
+                {"update_type":"message_created","event_id":"%s","timestamp":%d,\
+                "message":{"recipient":{"chat_id":%d},"sender":{"user_id":%d},"body":{"text":"%s"}}}"""
+                .formatted(UUID.randomUUID(), System.currentTimeMillis(), chatId, chatId, text);
+        return new LoadEvent("message_created", chatId, json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static LoadEvent callback(long chatId, String payload) {
+        String json = """
+                {"update_type":"message_callback","event_id":"%s","timestamp":%d,\
+                "callback":{"payload":"%s","user":{"user_id":%d}},\
+                "message":{"recipient":{"chat_id":%d}}}"""
+                .formatted(UUID.randomUUID(), System.currentTimeMillis(), payload, chatId, chatId);
+        return new LoadEvent("message_callback", chatId, json.getBytes(StandardCharsets.UTF_8));
+    }
+}
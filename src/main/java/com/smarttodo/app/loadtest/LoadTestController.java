@@ -0,0 +1,28 @@
+package com.smarttodo.app.loadtest;
+
+import com.smarttodo.app.loadtest.LoadRunner.LoadReport;
+import com.smarttodo.app.loadtest.LoadRunner.LoadRequest;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+
+/**
+ * Запуск нагрузочного прогона. Доступен только с профилем loadtest.
+ * Пример: POST /loadtest/run {"target":"ROUTER","chats":200,"rounds":3,"rate_per_second":300}
+ */
+@Profile("loadtest")
+@RestController
+@RequestMapping("/loadtest")
+@RequiredArgsConstructor
+public class LoadTestController {
+
+    private final LoadRunner runner;
+
+    @PostMapping(value = "/run", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+    public LoadReport run(@RequestBody LoadRequest request) throws IOException {
+        return runner.run(request);
+    }
+}
@@ -0,0 +1,18 @@
+package com.smarttodo.app.loadtest;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "bot.loadtest")
+public record LoadTestProps(
+        Duration maxLatency,       // искусственная задержка ответа заглушки MAX
+        Duration ollamaLatency,    // искусственная задержка ответа заглушки Ollama
+        String webhookUrl          // куда слать апдейты при target=HTTP
+) {
+    public LoadTestProps {
+        if (maxLatency == null) maxLatency = Duration.ofMillis(30);
+        if (ollamaLatency == null) ollamaLatency = Duration.ofMillis(500);
+        if (webhookUrl == null || webhookUrl.isBlank()) webhookUrl = "http://localhost:8080/webhook/max";
+    }
+}
@@ -0,0 +1,41 @@
+package com.smarttodo.app.loadtest;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Заглушка Bot API MAX для нагрузочного профиля.
+ * MaxApi ходит сюда по HTTP (max.api.base-url указывает на /stub/max), поэтому весь клиентский стек
+ * WebClient + пул соединений работает как в бою, а реальный MAX не получает ни одного сообщения.
+ * Задержка ответа не держит поток Tomcat (Mono с delayElement).
+ */
+@Profile("loadtest")
+@RestController
+@RequestMapping("/stub/max")
+@RequiredArgsConstructor
+public class StubMaxController {
+
+    private final LoadTestProps props;
+    private final AtomicLong seq = new AtomicLong();
+
+    @PostMapping(value = "/messages", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<String> postMessage(@RequestParam("chat_id") long chatId, @RequestBody String body) {
+        long n = seq.incrementAndGet();
+        return Mono.just("""
+                {"message":{"body":{"mid":"stub-%d-%d","seq":%d},"timestamp":%d}}"""
+                .formatted(chatId, n, n, System.currentTimeMillis()))
+                .delayElement(props.maxLatency());
+    }
+
+    @PutMapping("/messages")
+    public Mono<ResponseEntity<Void>> editMessage(@RequestParam("message_id") String messageId, @RequestBody String body) {
+        return Mono.just(ResponseEntity.ok().<Void>build())
+                .delayElement(props.maxLatency());
+    }
+}
@@ -0,0 +1,51 @@
+package com.smarttodo.app.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Заглушка Ollama для нагрузочного профиля: отвечает фиксированным результатом с настраиваемой задержкой.
+ * Потоковый запрос (разбор задачи) получает NDJSON, обычный (мотивация) — один JSON.
+ */
+@Profile("loadtest")
+@RestController
+@RequestMapping("/stub/ollama")
+@RequiredArgsConstructor
+public class StubOllamaController {
+
+    private final LoadTestProps props;
+    private final ObjectMapper om;
+
+    @PostMapping("/api/chat")
+    public Mono<ResponseEntity<String>> chat(@RequestBody String body) throws Exception {
+        return Mono.just(respond(body)).delayElement(props.ollamaLatency());
+    }
+
+    private ResponseEntity<String> respond(String body) throws Exception {
+        JsonNode request = om.readTree(body);
+        if (request.path("stream").asBoolean(false)) {
+            String tomorrow = LocalDate.now().plusDays(1).format(DateTimeFormatter.ofPattern("dd.MM.yyyy"));
+            String content = """
+                    {"tasks":[{"title":"Выпить сок","description":null,"datetime":"%s 19:00","priority":null,"splitOf":null}]}"""
+                    .formatted(tomorrow);
+            String ndjson = om.writeValueAsString(om.createObjectNode()
+                    .put("done", false)
+                    .set("message", om.createObjectNode().put("content", content)))
+                    + "\n"
+                    + "{\"done\":true}\n";
+            return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(ndjson);
+        }
+
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body("""
+                {"message":{"role":"assistant","content":"Так держать, ты отлично справляешься!"},"done":true}""");
+    }
+}
@@ -0,0 +1,390 @@
+package com.smarttodo.app.repository;
+
+import org.springframework.data.redis.connection.RedisPipelineException;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.UnaryOperator;
+
+/**
+ * Состояние диалога чата — один хеш {@code bot:chat:{chatId}} с короткими полями:
+ * последнее сообщение бота (mid, seq, at, mk, bh) и черновики задачи (t, tx, tv) и привычки (h, hx, hv).
+ * Читается одним HGETALL, меняется по полям. Значения — байты: черновики в формате
+ * {@link com.smarttodo.app.repository.codec.DraftCodec}, остальное — строки UTF-8.
+ * Срок хранения — у ключа целиком ({@link #TTL}, продлевается записью), у черновика — своё поле с моментом истечения (epoch ms): истёкший черновик при чтении не виден, а запись его стирает.
+ * Версия черновика (tv, hv) растёт с каждым его изменением и не удаляется вместе с ним — по ней
+ * {@link #update} правит черновик без потери параллельных правок.
+ * <p>
+ * Раньше это были три ключа: {@code bot:last-message:}, {@code bot:pending-task:}, {@code bot:pending-habit:}.
+ * Любой скрипт ниже, не найдя хеша, сначала переносит в него старые ключи чата и удаляет их —
+ * миграция идёт по мере обращений, без отдельного прогона.
+ * Те же скрипты через неблокирующий клиент — {@link ReactiveChatSessionRedisRepo}.
+ */
+@Service
+public class ChatSessionRedisRepo {
+
+    static final String PREFIX = "bot:chat:";
+    public static final Duration TTL = Duration.ofDays(30);
+
+    // поля хеша
+    public static final String MID = "mid";
+    public static final String SEQ = "seq";
+    public static final String SENT_AT = "at";
+    public static final String MARKER = "mk";
+    public static final String BODY_HASH = "bh";
+    public static final String TASK = "t";
+    public static final String TASK_EXPIRES = "tx";
+    public static final String HABIT = "h";
+    public static final String HABIT_EXPIRES = "hx";
+    public static final String TASK_VERSION = "tv";
+    public static final String HABIT_VERSION = "hv";
+
+    /** Сколько раз {@link #update} повторяет изменение черновика, который меняют параллельно */
+    private static final int UPDATE_ATTEMPTS = 8;
+
+    /** Сколько изменений уходит одним пайплайном в {@link #applyAll} */
+    private static final int BATCH = 500;
+
+    /** KEYS[1] — хеш, KEYS[2..4] — старые ключи, ARGV[1] — текущее время (ms) */
+    private static final String MIGRATE = """
+            if redis.call('EXISTS', KEYS[1]) == 0 then
+              local old = redis.call('HGETALL', KEYS[2])
+              local names = {mid = 'mid', seq = 'seq', sentAt = 'at', marker = 'mk', bodyHash = 'bh'}
+              for i = 1, #old, 2 do
+                local f = names[old[i]]
+                if f then redis.call('HSET', KEYS[1], f, old[i + 1]) end
+              end
+              for _, d in ipairs({{KEYS[3], 't', 'tx'}, {KEYS[4], 'h', 'hx'}}) do
+                local v = redis.call('GET', d[1])
+                local ttl = redis.call('PTTL', d[1])
+                if v and ttl > 0 then redis.call('HSET', KEYS[1], d[2], v, d[3], tonumber(ARGV[1]) + ttl) end
+              end
+              if redis.call('EXISTS', KEYS[1]) == 1 then
+                local ttl = redis.call('PTTL', KEYS[2])
+                redis.call('PEXPIRE', KEYS[1], ttl > 0 and ttl or %d)
+              end
+              redis.call('DEL', KEYS[2], KEYS[3], KEYS[4])
+            end
+            """.formatted(TTL.toMillis());
+
+    /** Всё состояние чата (ARGV[2..] пусто) или только перечисленные поля — плоский список имя, значение */
+    static final RedisScript<List> LOAD = RedisScript.of(MIGRATE + """
+            if #ARGV < 2 then return redis.call('HGETALL', KEYS[1]) end
+            local values = redis.call('HMGET', KEYS[1], unpack(ARGV, 2))
+            local out = {}
+            for i = 2, #ARGV do
+              if values[i - 1] then
+                out[#out + 1] = ARGV[i]
+                out[#out + 1] = values[i - 1]
+              end
+            end
+            return out
+            """, List.class);
+
+    /**
+     * Изменение полей. KEYS[5] — ключ аренды, ARGV[2] — её владелец ('' — не проверять),
+     * ARGV[3] — '1' снять аренду после записи, ARGV[4] — число пар поле-значение, ARGV[5] — число ожидаемых версий;
+     * дальше пары поле-значение, пары поле версии - версия и поля на удаление.
+     * Записанный, удалённый или истёкший черновик получает следующую версию, если её не передали среди полей явно
+     * (так пишет владелец сессии чата, который ведёт версию в памяти).
+     * 0 — аренда чужая или версия черновика не та, что ожидалась, ничего не записано.
+     */
+    static final RedisScript<Long> UPDATE = RedisScript.of("""
+            if ARGV[2] ~= '' and redis.call('GET', KEYS[5]) ~= ARGV[2] then return 0 end
+            """ + MIGRATE + """
+            local n, m = tonumber(ARGV[4]), tonumber(ARGV[5])
+            local e, d = 6 + 2 * n, 6 + 2 * n + 2 * m
+            for i = e, d - 1, 2 do
+              if (redis.call('HGET', KEYS[1], ARGV[i]) or '0') ~= ARGV[i + 1] then return 0 end
+            end
+            if n > 0 then redis.call('HSET', KEYS[1], unpack(ARGV, 6, e - 1)) end
+            if #ARGV >= d then redis.call('HDEL', KEYS[1], unpack(ARGV, d)) end
+            local touched = {}
+            for i = 6, e - 1, 2 do touched[ARGV[i]] = true end
+            for i = d, #ARGV do touched[ARGV[i]] = true end
+            for _, d in ipairs({{'t', 'tx', 'tv'}, {'h', 'hx', 'hv'}}) do
+              local exp = redis.call('HGET', KEYS[1], d[2])
+              if exp and tonumber(exp) <= tonumber(ARGV[1]) then
+                redis.call('HDEL', KEYS[1], d[1], d[2])
+                touched[d[1]] = true
+              end
+              if touched[d[1]] and not touched[d[3]] then redis.call('HINCRBY', KEYS[1], d[3], 1) end
+            end
+            if redis.call('EXISTS', KEYS[1]) == 1 then redis.call('PEXPIRE', KEYS[1], %d) end
+            if ARGV[3] == '1' then redis.call('DEL', KEYS[5]) end
+            return 1
+            """.formatted(TTL.toMillis()), Long.class);
+
+    /**
+     * Забрать черновик: значение поля ARGV[2], если не истекло (ARGV[3] — поле срока), и удалить оба поля;
+     * ARGV[4] — поле версии
+     */
+    static final RedisScript<byte[]> TAKE = RedisScript.of(MIGRATE + """
+            local v = redis.call('HMGET', KEYS[1], ARGV[2], ARGV[3])
+            if not v[1] then return false end
+            redis.call('HDEL', KEYS[1], ARGV[2], ARGV[3])
+            redis.call('HINCRBY', KEYS[1], ARGV[4], 1)
+            if v[2] and tonumber(v[2]) <= tonumber(ARGV[1]) then return false end
+            return v[1]
+            """, byte[].class);
+
+    /**
+     * Запись черновика по версии. ARGV[2..4] — поля черновика, срока и версии, ARGV[5] — ожидаемая версия
+     * ('0' — версии ещё нет), ARGV[6] — значение, ARGV[7] — момент истечения.
+     * {1} — записано; {0, версия, значение} — версия другая, значение — текущий черновик, если он есть и не истёк.
+     */
+    static final RedisScript<List> SWAP = RedisScript.of(MIGRATE + """
+            local cur = redis.call('HMGET', KEYS[1], ARGV[2], ARGV[3], ARGV[4])
+            local version = cur[3] or '0'
+            if version ~= ARGV[5] then
+              if cur[1] and not (cur[2] and tonumber(cur[2]) <= tonumber(ARGV[1])) then return {0, version, cur[1]} end
+              return {0, version}
+            end
+            redis.call('HSET', KEYS[1], ARGV[2], ARGV[6], ARGV[3], ARGV[7])
+            redis.call('HINCRBY', KEYS[1], ARGV[4], 1)
+            redis.call('PEXPIRE', KEYS[1], %d)
+            return {1}
+            """.formatted(TTL.toMillis()), List.class);
+
+    /** Аргументы скриптов: строки — в UTF-8, байты — как есть */
+    static final RedisSerializer<Object> ARGS = new RedisSerializer<>() {
+        @Override
+        public byte[] serialize(Object value) {
+            return value instanceof byte[] b ? b : utf8(String.valueOf(value));
+        }
+
+        @Override
+        public Object deserialize(byte[] bytes) {
+            return bytes;
+        }
+    };
+
+    private final StringRedisTemplate redis;
+    private volatile boolean updateLoaded;  // UPDATE в кэше скриптов Redis (для EVALSHA в пайплайне)
+
+    public ChatSessionRedisRepo(StringRedisTemplate redis) {
+        this.redis = redis;
+    }
+
+    public static String key(long chatId) {
+        return PREFIX + chatId;
+    }
+
+    /**
+     * Изменение записи чата: set — поля со значениями, del — удаляемые поля,
+     * expect — версии черновиков (tv, hv), которые должны быть в Redis, иначе ничего не пишется.
+     * Если ownerKey задан, запись идёт, только пока аренда ownerKey у owner; release — снять её после записи.
+     */
+    public record Change(long chatId, Map<String, byte[]> set, Collection<String> del, Map<String, Long> expect,
+                         String ownerKey, String owner, boolean release) {
+
+        public static Change of(long chatId, Map<String, byte[]> set, Collection<String> del) {
+            return new Change(chatId, set, del, Map.of(), null, null, false);
+        }
+    }
+
+    /** Всё состояние чата одним HGETALL; пустая Map — состояния нет */
+    public Map<String, byte[]> load(long chatId) {
+        return toMap(run(LOAD, keys(chatId, null), String.valueOf(System.currentTimeMillis())));
+    }
+
+    /** Только нужные поля (HMGET) */
+    public Map<String, byte[]> load(long chatId, String... fields) {
+        Object[] args = new Object[fields.length + 1];
+        args[0] = String.valueOf(System.currentTimeMillis());
+        System.arraycopy(fields, 0, args, 1, fields.length);
+        return toMap(run(LOAD, keys(chatId, null), args));
+    }
+
+    /** @return false — аренда чужая или версия черновика не та, ничего не записано */
+    public boolean apply(Change change) {
+        Long r = run(UPDATE, keys(change.chatId(), change.ownerKey()), args(change).toArray());
+        return r != null && r == 1;
+    }
+
+    /**
+     * Изменения многих чатов пайплайнами по {@value #BATCH}: один обмен с Redis на пачку.
+     *
+     * @return исходы в порядке изменений (false — аренда чужая или версия черновика не та)
+     */
+    public List<Boolean> applyAll(List<Change> changes) {
+        List<Boolean> out = new ArrayList<>(changes.size());
+        for (int from = 0; from < changes.size(); from += BATCH) {
+            List<Change> batch = changes.subList(from, Math.min(from + BATCH, changes.size()));
+            List<Object> results;
+            try {
+                results = pipeline(batch);
+            } catch (RedisPipelineException e) {
+                if (!String.valueOf(e.getMostSpecificCause().getMessage()).contains("NOSCRIPT")) throw e;
+                // Redis перезапустился или кэш скриптов сброшен — загружаем и повторяем (UPDATE идемпотентен)
+                updateLoaded = false;
+                results = pipeline(batch);
+            }
+            for (Object r : results) {
+                out.add(r instanceof Long n && n == 1);
+            }
+        }
+        return out;
+    }
+
+    /** Значение черновика с удалением, одним запросом */
+    public Optional<byte[]> take(long chatId, String field, String expiresField, String versionField) {
+        return Optional.ofNullable(run(TAKE, keys(chatId, null),
+                String.valueOf(System.currentTimeMillis()), field, expiresField, versionField));
+    }
+
+    /**
+     * Изменение черновика без потери параллельных правок: чтение значения с версией, затем запись,
+     * только если версия не сменилась, — два обмена, как прежние чтение и запись целиком.
+     * Если черновик успели изменить, скрипт записи сразу возвращает его текущее значение,
+     * и change применяется заново уже к нему: правки разных полей складываются, а не затирают друг друга.
+     *
+     * @param change текущее значение (null — черновика нет или срок вышел) → новое; может вызываться повторно
+     * @return записанное значение
+     */
+    public byte[] update(long chatId, String field, String expiresField, String versionField,
+                         long expiresAt, UnaryOperator<byte[]> change) {
+        Map<String, byte[]> fields = load(chatId, field, expiresField, versionField);
+        byte[] current = draft(fields, field, expiresField);
+        String version = Objects.requireNonNullElse(str(fields.get(versionField)), "0");
+
+        for (int attempt = 1; ; attempt++) {
+            byte[] next = change.apply(current);
+            List<?> r = run(SWAP, keys(chatId, null), String.valueOf(System.currentTimeMillis()),
+                    field, expiresField, versionField, version, next, String.valueOf(expiresAt));
+            if (r != null && !r.isEmpty() && r.get(0) instanceof Long written && written == 1) {
+                return next;
+            }
+            if (r == null || r.size() < 2 || attempt == UPDATE_ATTEMPTS) {
+                throw new IllegalStateException("Draft " + field + " of chatId=" + chatId + " was not updated after " + attempt + " attempts");
+            }
+            version = str((byte[]) r.get(1));
+            current = r.size() > 2 ? (byte[]) r.get(2) : null;
+        }
+    }
+
+    /** Текущая версия черновика; 0 — черновика ещё не было */
+    public long version(long chatId, String versionField) {
+        return version(load(chatId, versionField), versionField);
+    }
+
+    /**
+     * Запись черновика, только если его версия всё ещё expected, — для значения, посчитанного по старому черновику.
+     *
+     * @return false — черновик успели изменить, ничего не записано
+     */
+    public boolean swap(long chatId, String field, String expiresField, String versionField,
+                        long expected, byte[] value, long expiresAt) {
+        List<?> r = run(SWAP, keys(chatId, null), String.valueOf(System.currentTimeMillis()),
+                field, expiresField, versionField, String.valueOf(expected), value, String.valueOf(expiresAt));
+        return r != null && !r.isEmpty() && r.get(0) instanceof Long written && written == 1;
+    }
+
+    /** Версия черновика из загруженных полей; 0 — её нет */
+    public static long version(Map<String, byte[]> fields, String versionField) {
+        String version = str(fields.get(versionField));
+        try {
+            return version == null ? 0 : Long.parseLong(version);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /** Значение черновика из загруженных полей или null, если его нет или срок вышел */
+    public static byte[] draft(Map<String, byte[]> fields, String field, String expiresField) {
+        byte[] value = fields.get(field);
+        if (value == null) return null;
+        String expires = str(fields.get(expiresField));
+        try {
+            if (expires != null && Long.parseLong(expires) <= System.currentTimeMillis()) return null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return value;
+    }
+
+    public static byte[] utf8(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Строковое значение поля или null */
+    public static String str(byte[] value) {
+        return value == null ? null : new String(value, StandardCharsets.UTF_8);
+    }
+
+    /** Скрипт с двоичными аргументами; строки и элементы списков в ответе — байты, числа — как есть */
+    @SuppressWarnings("unchecked")
+    private <T> T run(RedisScript<T> script, List<String> keys, Object... args) {
+        return redis.execute(script, ARGS, (RedisSerializer<T>) (RedisSerializer<?>) RedisSerializer.byteArray(), keys, args);
+    }
+
+    private List<Object> pipeline(List<Change> batch) {
+        if (!updateLoaded) {
+            redis.execute((RedisCallback<String>) c -> c.scriptingCommands()
+                    .scriptLoad(utf8(UPDATE.getScriptAsString())));
+            updateLoaded = true;
+        }
+        byte[] sha = utf8(UPDATE.getSha1());
+        return redis.executePipelined((RedisCallback<Object>) c -> {
+            for (Change change : batch) {
+                List<String> keys = keys(change.chatId(), change.ownerKey());
+                List<Object> args = args(change);
+                byte[][] keysAndArgs = new byte[keys.size() + args.size()][];
+                int i = 0;
+                for (String k : keys) keysAndArgs[i++] = utf8(k);
+                for (Object a : args) keysAndArgs[i++] = ARGS.serialize(a);
+                c.scriptingCommands().evalSha(sha, ReturnType.INTEGER, keys.size(), keysAndArgs);
+            }
+            return null;
+        });
+    }
+
+    static List<String> keys(long chatId, String ownerKey) {
+        return List.of(key(chatId),
+                "bot:last-message:" + chatId,
+                "bot:pending-task:" + chatId,
+                "bot:pending-habit:" + chatId,
+                ownerKey == null ? key(chatId) : ownerKey);
+    }
+
+    static List<Object> args(Change change) {
+        List<Object> args = new ArrayList<>(5 + 2 * change.set().size() + 2 * change.expect().size() + change.del().size());
+        args.add(String.valueOf(System.currentTimeMillis()));
+        args.add(change.owner() == null ? "" : change.owner());
+        args.add(change.release() ? "1" : "0");
+        args.add(String.valueOf(change.set().size()));
+        args.add(String.valueOf(change.expect().size()));
+        change.set().forEach((field, value) -> {
+            args.add(field);
+            args.add(value);
+        });
+        change.expect().forEach((field, version) -> {
+            args.add(field);
+            args.add(String.valueOf(version));
+        });
+        args.addAll(change.del());
+        return args;
+    }
+
+    static Map<String, byte[]> toMap(List<?> flat) {
+        if (flat == null || flat.isEmpty()) return Map.of();
+        Map<String, byte[]> m = new HashMap<>(flat.size());
+        for (int i = 0; i + 1 < flat.size(); i += 2) {
+            m.put(str((byte[]) flat.get(i)), (byte[]) flat.get(i + 1));
+        }
+        return m;
+    }
+}
@@ -5,6 +5,7 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -18,5 +19,8 @@ public interface HabitCheckinRepository extends JpaRepository<HabitCheckinEntity
 
     void deleteByHabit_IdAndDay(Long habitId, LocalDate day);
 
+    /** Отметки сразу для всех привычек страницы — один запрос вместо запроса на строку */
+    List<HabitCheckinEntity> findAllByHabit_IdInAndDayBetween(Collection<Long> habitIds, LocalDate startDate, LocalDate endDate);
+
     
 }
@@ -2,10 +2,15 @@ package com.smarttodo.app.repository;
 
 import com.smarttodo.app.entity.HabitEntity;
 import com.smarttodo.app.entity.HabitStatus;
+import com.smarttodo.app.entity.HabitInterval;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -20,4 +25,37 @@ public interface HabitRepository extends JpaRepository<HabitEntity, Long> {
     List<HabitEntity> findAllByStatusAndGoalDateLessThanEqual(HabitStatus status, LocalDate date);
 
     List<HabitEntity> findAllByUser_IdAndStatus(Long userId, HabitStatus status);
+
+    // ===== Keyset-страницы по id =====
+
+    List<HabitEntity> findByChatIdAndIdGreaterThanOrderByIdAsc(Long chatId, long id, Limit limit);
+
+    List<HabitEntity> findByChatIdAndIdLessThanOrderByIdDesc(Long chatId, long id, Limit limit);
+
+    /** Привычки в работе, которые могут выпасть на дни с from: цель не раньше from, периодичность из intervals */
+    @Query("""
+            select h from HabitEntity h
+            where h.chatId = :chatId and h.status = com.smarttodo.app.entity.HabitStatus.IN_PROGRESS
+              and (h.goalDate is null or h.goalDate >= :from)
+              and (h.interval is null or h.interval in :intervals)
+              and h.id > :id
+            order by h.id asc""")
+    List<HabitEntity> findDueAfter(@Param("chatId") Long chatId,
+                                   @Param("from") LocalDate from,
+                                   @Param("intervals") Collection<HabitInterval> intervals,
+                                   @Param("id") long id,
+                                   Limit limit);
+
+    @Query("""
+            select h from HabitEntity h
+            where h.chatId = :chatId and h.status = com.smarttodo.app.entity.HabitStatus.IN_PROGRESS
+              and (h.goalDate is null or h.goalDate >= :from)
+              and (h.interval is null or h.interval in :intervals)
+              and h.id < :id
+            order by h.id desc""")
+    List<HabitEntity> findDueBefore(@Param("chatId") Long chatId,
+                                    @Param("from") LocalDate from,
+                                    @Param("intervals") Collection<HabitInterval> intervals,
+                                    @Param("id") long id,
+                                    Limit limit);
 }
@@ -2,56 +2,76 @@ package com.smarttodo.app.repository;
 
 import com.smarttodo.app.bot.MessageMarker;
 import com.smarttodo.app.dto.MessageMeta;
-import org.springframework.data.redis.core.BoundHashOperations;
-import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 
-import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
-import java.util.HashMap;
 import java.util.Optional;
 
+import static com.smarttodo.app.repository.ChatSessionRedisRepo.*;
+
+/**
+ * Последнее сообщение бота в чате — поля mid, seq, at, mk, bh хеша чата ({@link ChatSessionRedisRepo}).
+ * С {@code bot.near-cache.enabled} чтения обслуживает локальная копия {@link LastMessageNearCache}.
+ */
 @Service
 public class LastActionRedisRepo {
 
-    private final StringRedisTemplate redis;
-    private static final String PREFIX = "bot:last-message:";
-    private static final Duration TTL = Duration.ofDays(30);
+    private final ChatSessionRedisRepo sessions;
+    private final LastMessageNearCache nearCache;
 
-    public LastActionRedisRepo(StringRedisTemplate redis) {
-        this.redis = redis;
+    public LastActionRedisRepo(ChatSessionRedisRepo sessions, LastMessageNearCache nearCache) {
+        this.sessions = sessions;
+        this.nearCache = nearCache;
     }
 
-    private String key(long chatId) { return PREFIX + chatId; }
-
     public boolean save(long chatId, MessageMeta meta) {
-        String k = key(chatId);
-        BoundHashOperations<String, String, String> h = redis.boundHashOps(k);
-
-        Map<String, String> map = new HashMap<>();
-        map.put("mid",    meta.mid());
-        map.put("seq",    String.valueOf(meta.seq()));
-        map.put("sentAt", String.valueOf(meta.sentAt()));
-        map.put("marker", meta.marker() == null ? "" : meta.marker().name());
+        if (nearCache.active()) return nearCache.save(chatId, meta);
+        return sessions.apply(ChatSessionRedisRepo.Change.of(chatId, toFields(meta), List.of()));
+    }
 
-        h.putAll(map);
-        Boolean ok = redis.expire(k, TTL);
-        return Boolean.TRUE.equals(ok);
+    /**
+     * Последние сообщения многих чатов сразу — пайплайнами, один обмен с Redis на пачку.
+     * Вызывается из {@link com.smarttodo.app.bot.session.ChatSessionStore#saveLastMessages} для страницы рассылки.
+     *
+     * @return сколько чатов записано
+     */
+    public int saveAll(Map<Long, MessageMeta> metas) {
+        List<ChatSessionRedisRepo.Change> changes = new ArrayList<>(metas.size());
+        metas.forEach((chatId, meta) -> changes.add(ChatSessionRedisRepo.Change.of(chatId, toFields(meta), List.of())));
+        int saved = 0;
+        for (boolean ok : sessions.applyAll(changes)) {
+            if (ok) saved++;
+        }
+        return saved;
     }
 
     public Optional<MessageMeta> get(long chatId) {
-        String k = key(chatId);
-        BoundHashOperations<String, String, String> h = redis.boundHashOps(k);
+        if (nearCache.active()) return nearCache.get(chatId);
+        return fromFields(sessions.load(chatId, MID, SEQ, SENT_AT, MARKER, BODY_HASH));
+    }
+
+    public static Map<String, byte[]> toFields(MessageMeta meta) {
+        return Map.of(
+                MID, utf8(meta.mid() == null ? "" : meta.mid()),
+                SEQ, utf8(String.valueOf(meta.seq())),
+                SENT_AT, utf8(String.valueOf(meta.sentAt())),
+                MARKER, utf8(meta.marker() == null ? "" : meta.marker().name()),
+                BODY_HASH, utf8(String.valueOf(meta.bodyHash())));
+    }
 
-        Map<String, String> m = h.entries(); // пустая Map, если ключ отсутствует
-        if (m == null || m.isEmpty()) return Optional.empty();
+    /** Поля хеша чата → последнее сообщение; пусто, если сообщения ещё не было */
+    public static Optional<MessageMeta> fromFields(Map<String, byte[]> m) {
+        if (m == null || !m.containsKey(MID)) return Optional.empty();
 
-        String mid    = m.get("mid");
-        long   seq    = parseLong(m.getOrDefault("seq", null), 0L);
-        long   sentAt = parseLong(m.getOrDefault("sentAt", null), 0L);
-        MessageMarker marker = parseMarker(m.getOrDefault("marker", null));
+        String mid    = str(m.get(MID));
+        long   seq    = parseLong(str(m.get(SEQ)), 0L);
+        long   sentAt = parseLong(str(m.get(SENT_AT)), 0L);
+        MessageMarker marker = parseMarker(str(m.get(MARKER)));
+        long   bodyHash = parseLong(str(m.get(BODY_HASH)), 0L);
 
-        return Optional.of(new MessageMeta(mid, seq, sentAt, marker));
+        return Optional.of(new MessageMeta(mid.isEmpty() ? null : mid, seq, sentAt, marker, bodyHash));
     }
 
     private static MessageMarker parseMarker(String raw) {
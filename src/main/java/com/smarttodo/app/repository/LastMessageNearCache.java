@@ -0,0 +1,286 @@
+package com.smarttodo.app.repository;
+
+import com.smarttodo.app.dto.MessageMeta;
+import io.lettuce.core.LettuceFutures;
+import io.lettuce.core.RedisChannelHandler;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisCommandExecutionException;
+import io.lettuce.core.RedisConnectionStateListener;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.RedisNoScriptException;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.TrackingArgs;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.api.push.PushMessage;
+import io.lettuce.core.api.sync.RedisCommands;
+import io.lettuce.core.codec.ByteArrayCodec;
+import io.lettuce.core.protocol.ProtocolVersion;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.stereotype.Service;
+
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static com.smarttodo.app.repository.ChatSessionRedisRepo.*;
+
+/**
+ * Локальная копия последних сообщений чатов ({@link LastActionRedisRepo}) с отслеживанием ключей на стороне Redis.
+ * <p>
+ * Чтения и запись последнего сообщения этой нодой идут отдельным соединением RESP3 с
+ * {@code CLIENT TRACKING ON NOLOOP}: Redis запоминает прочитанные им хеши чатов и присылает в это же
+ * соединение invalidate, как только хеш меняет кто-то другой (другая нода, сброс сессий, черновики).
+ * Любая запись снимает наблюдение с ключа, поэтому за своей записью тем же пакетом (без ожидания ответа)
+ * идёт чтение: ключ снова под наблюдением, а в копию кладётся прочитанное — один обмен с Redis, как и раньше.
+ * <p>
+ * Пока идёт чтение, в копии лежит метка; invalidate, пришедший раньше ответа, снимает её, и прочитанное
+ * не запоминается. После обрыва соединения отслеживание в Redis пропадает, поэтому копия очищается,
+ * а значения, прочитанные до повторного включения отслеживания, в неё не попадают.
+ */
+@Slf4j
+@Service
+public class LastMessageNearCache implements DisposableBean {
+
+    private static final String[] FIELDS = {MID, SEQ, SENT_AT, MARKER, BODY_HASH};
+
+    private final RedisConnectionFactory factory;
+    private final NearCacheProps props;
+
+    /** chatId → Optional&lt;MessageMeta&gt; или метка идущего чтения; LRU, под монитором самой map */
+    private final Map<Long, Object> entries;
+
+    private StatefulRedisConnection<byte[], byte[]> connection;   // под монитором this
+    private volatile RedisCommands<byte[], byte[]> commands;
+    private volatile RedisAsyncCommands<byte[], byte[]> async;
+    private long timeoutNanos;
+    private volatile boolean unsupported;
+    /** Поколение отслеживания: -1 — выключено (ещё не включали или был обрыв), иначе растёт с каждым включением */
+    private volatile long generation = -1;
+    private long generations;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter invalidations;
+
+    public LastMessageNearCache(RedisConnectionFactory factory, NearCacheProps props, MeterRegistry registry) {
+        this.factory = factory;
+        this.props = props;
+
+        final int capacity = props.capacity();
+        this.entries = new LinkedHashMap<>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Object> eldest) {
+                return size() > capacity;
+            }
+        };
+
+        this.hits = Counter.builder("bot.near-cache.requests")
+                .tag("result", "hit")
+                .description("Чтения последнего сообщения чата через локальную копию")
+                .register(registry);
+        this.misses = Counter.builder("bot.near-cache.requests")
+                .tag("result", "miss")
+                .description("Чтения последнего сообщения чата через локальную копию")
+                .register(registry);
+        this.invalidations = Counter.builder("bot.near-cache.invalidations")
+                .description("Уведомления Redis об изменённых хешах чатов")
+                .register(registry);
+        Gauge.builder("bot.near-cache.size", this, LastMessageNearCache::size)
+                .description("Чаты в локальной копии последних сообщений")
+                .register(registry);
+    }
+
+    /** Копия включена и отслеживание в Redis работает; иначе чтения идут обычным путём */
+    public boolean active() {
+        if (!props.enabled() || unsupported) return false;
+        if (generation > 0) return true;
+        try {
+            return track() > 0;
+        } catch (RedisCommandExecutionException e) {
+            // сервер старше Redis 6 — отслеживания нет вовсе
+            unsupported = true;
+            log.warn("Near cache disabled, CLIENT TRACKING is not supported: {}", e.getMessage());
+            return false;
+        } catch (RuntimeException e) {
+            log.warn("Near cache tracking is unavailable: {}", e.toString());
+            return false;
+        }
+    }
+
+    public Optional<MessageMeta> get(long chatId) {
+        long gen = generation;
+        Object mark = new Object();
+        synchronized (entries) {
+            Object cached = entries.get(chatId);
+            if (cached instanceof Optional<?> hit) {
+                hits.increment();
+                @SuppressWarnings("unchecked")
+                Optional<MessageMeta> meta = (Optional<MessageMeta>) hit;
+                return meta;
+            }
+            if (cached == null) entries.put(chatId, mark);
+        }
+        misses.increment();
+
+        Optional<MessageMeta> meta = fetch(chatId, null);
+        remember(chatId, mark, gen, meta);
+        return meta;
+    }
+
+    public boolean save(long chatId, MessageMeta meta) {
+        long gen = generation;
+        Object mark = new Object();
+        synchronized (entries) {
+            entries.put(chatId, mark);
+        }
+        // прочитанное может оказаться ещё новее своей записи — в копию идёт оно
+        remember(chatId, mark, gen, fetch(chatId, Change.of(chatId, LastActionRedisRepo.toFields(meta), List.of())));
+        return true;
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /** Запоминает значение, только если с начала обращения не было ни invalidate, ни обрыва */
+    private void remember(long chatId, Object mark, long gen, Optional<MessageMeta> meta) {
+        synchronized (entries) {
+            if (entries.get(chatId) == mark) {
+                if (gen > 0 && generation == gen) entries.put(chatId, meta);
+                else entries.remove(chatId);
+            }
+        }
+    }
+
+    /** Включает отслеживание, если оно ещё не включено; возвращает поколение */
+    private synchronized long track() {
+        if (generation > 0) return generation;
+        if (connection == null) {
+            if (!(factory instanceof LettuceConnectionFactory lettuce)
+                    || !(lettuce.getNativeClient() instanceof RedisClient client)
+                    || client.getOptions().getConfiguredProtocolVersion() == ProtocolVersion.RESP2) {
+                unsupported = true;
+                log.warn("Near cache needs a standalone Lettuce client with RESP3, disabled");
+                return -1;
+            }
+            StatefulRedisConnection<byte[], byte[]> c = client.connect(ByteArrayCodec.INSTANCE);
+            c.addListener(this::onPush);
+            client.addListener(new RedisConnectionStateListener() {
+                @Override
+                public void onRedisConnected(RedisChannelHandler<?, ?> handler, SocketAddress address) {
+                }
+
+                @Override
+                public void onRedisDisconnected(RedisChannelHandler<?, ?> handler) {
+                    if (handler == c) onDisconnect();
+                }
+            });
+            connection = c;
+            commands = c.sync();
+            async = c.async();
+            timeoutNanos = c.getTimeout().toNanos();
+        }
+        commands.clientTracking(TrackingArgs.Builder.enabled().noloop());
+        loadScripts();
+        generation = ++generations;
+        log.info("Near cache tracking enabled, generation={}", generation);
+        return generation;
+    }
+
+    private void onDisconnect() {
+        generation = -1;
+        synchronized (entries) {
+            entries.clear();
+        }
+        log.info("Near cache connection lost, local copy dropped");
+    }
+
+    /** {@code invalidate [ключи]}; вместо ключей null — сброшено всё (FLUSHALL, переполнение таблицы отслеживания) */
+    private void onPush(PushMessage message) {
+        if (!"invalidate".equals(message.getType())) return;
+        List<Object> content = message.getContent();
+        Object keys = content.size() > 1 ? content.get(1) : null;
+        if (!(keys instanceof List<?> list)) {
+            synchronized (entries) {
+                entries.clear();
+            }
+            invalidations.increment();
+            return;
+        }
+        for (Object key : list) {
+            Long chatId = chatIdOf(key);
+            if (chatId == null) continue;   // старые ключи, прочитанные при переносе
+            synchronized (entries) {
+                entries.remove(chatId);
+            }
+            invalidations.increment();
+        }
+    }
+
+    private static Long chatIdOf(Object key) {
+        String k = key instanceof ByteBuffer b ? StandardCharsets.UTF_8.decode(b.duplicate()).toString()
+                : key instanceof byte[] bytes ? str(bytes)
+                : null;
+        if (k == null || !k.startsWith(PREFIX)) return null;
+        try {
+            return Long.parseLong(k, PREFIX.length(), k.length(), 10);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /** Последнее сообщение через отслеживающее соединение; с change — сначала запись, тем же пакетом */
+    private Optional<MessageMeta> fetch(long chatId, Change change) {
+        byte[][] keys = bytes(keys(chatId, null).toArray());
+        Object[] load = new Object[FIELDS.length + 1];
+        load[0] = String.valueOf(System.currentTimeMillis());
+        System.arraycopy(FIELDS, 0, load, 1, FIELDS.length);
+        byte[][] loadArgs = bytes(load);
+        byte[][] updateArgs = change == null ? null : bytes(args(change).toArray());
+        try {
+            return fetch(keys, updateArgs, loadArgs);
+        } catch (RedisNoScriptException e) {
+            // кэш скриптов Redis сброшен — загружаем и повторяем (запись идемпотентна)
+            loadScripts();
+            return fetch(keys, updateArgs, loadArgs);
+        }
+    }
+
+    private Optional<MessageMeta> fetch(byte[][] keys, byte[][] updateArgs, byte[][] loadArgs) {
+        RedisFuture<Long> written = updateArgs == null ? null
+                : async.evalsha(UPDATE.getSha1(), ScriptOutputType.INTEGER, keys, updateArgs);
+        RedisFuture<List<Object>> loaded = async.evalsha(LOAD.getSha1(), ScriptOutputType.MULTI, keys, loadArgs);
+        if (written != null) LettuceFutures.awaitOrCancel(written, timeoutNanos, TimeUnit.NANOSECONDS);
+        return LastActionRedisRepo.fromFields(toMap(LettuceFutures.awaitOrCancel(loaded, timeoutNanos, TimeUnit.NANOSECONDS)));
+    }
+
+    private void loadScripts() {
+        commands.scriptLoad(utf8(LOAD.getScriptAsString()));
+        commands.scriptLoad(utf8(UPDATE.getScriptAsString()));
+    }
+
+    private static byte[][] bytes(Object[] values) {
+        byte[][] out = new byte[values.length][];
+        for (int i = 0; i < out.length; i++) out[i] = ARGS.serialize(values[i]);
+        return out;
+    }
+
+    @Override
+    public synchronized void destroy() {
+        if (connection != null) connection.close();
+    }
+}
@@ -0,0 +1,13 @@
+package com.smarttodo.app.repository;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "bot.near-cache")
+public record NearCacheProps(
+        boolean enabled,        // false — каждое чтение последнего сообщения идёт в Redis, как раньше
+        int capacity            // максимум чатов в локальной копии; лишние вытесняются по LRU
+) {
+    public NearCacheProps {
+        if (capacity <= 0) capacity = 10_000;
+    }
+}
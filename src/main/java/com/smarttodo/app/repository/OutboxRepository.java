@@ -0,0 +1,48 @@
+package com.smarttodo.app.repository;
+
+import com.smarttodo.app.entity.OutboxMessageEntity;
+import com.smarttodo.app.entity.OutboxStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface OutboxRepository extends JpaRepository<OutboxMessageEntity, Long> {
+
+    /**
+     * Готовые к отправке строки, заблокированные до конца транзакции.
+     * Строки, уже заблокированные другой нодой, пропускаются — ноды разбирают очередь параллельно без дублей.
+     */
+    @Query(value = """
+            SELECT * FROM bot_outbox
+            WHERE status IN ('NEW', 'SENDING') AND available_at <= :now
+            ORDER BY id
+            LIMIT :limit
+            FOR UPDATE SKIP LOCKED""", nativeQuery = true)
+    List<OutboxMessageEntity> lockDue(@Param("now") Instant now, @Param("limit") int limit);
+
+    /** Продлить аренду строк, которые нода ещё держит в очереди отправок; отправленные и вернувшиеся в очередь не трогаются */
+    @Modifying
+    @Query("""
+            update OutboxMessageEntity m
+            set m.availableAt = :until
+            where m.id in :ids and m.status = com.smarttodo.app.entity.OutboxStatus.SENDING""")
+    int extendLease(@Param("ids") Collection<Long> ids, @Param("until") Instant until);
+
+    @Modifying
+    @Query("""
+            update OutboxMessageEntity m
+            set m.status = com.smarttodo.app.entity.OutboxStatus.SENT, m.mid = :mid, m.seq = :seq, m.sentAt = :sentAt
+            where m.id = :id""")
+    int markSent(@Param("id") Long id, @Param("mid") String mid, @Param("seq") long seq, @Param("sentAt") Instant sentAt);
+
+    @Modifying
+    @Query("delete from OutboxMessageEntity m where m.status = :status and m.createdAt < :before")
+    int deleteByStatusAndCreatedAtBefore(@Param("status") OutboxStatus status, @Param("before") Instant before);
+}
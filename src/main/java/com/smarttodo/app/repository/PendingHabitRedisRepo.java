@@ -1,61 +1,95 @@
 package com.smarttodo.app.repository;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.smarttodo.app.dto.HabitCheckinDto;
-import com.smarttodo.app.dto.HabitDto;
+import com.smarttodo.app.repository.codec.DraftCodec;
+import com.smarttodo.app.repository.codec.DraftCodecProps;
+import com.smarttodo.app.repository.codec.DraftCodecs;
+import com.smarttodo.app.repository.codec.HabitDraftCodec;
+import com.smarttodo.app.repository.codec.JsonDraftCodec;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 
-import java.time.Duration;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.UnaryOperator;
+
+import java.time.Duration;
 
 @Slf4j
 @Service
 public class PendingHabitRedisRepo {
 
-    private final StringRedisTemplate redis;
-    private final ObjectMapper objectMapper;
+    /** Поля черновика привычки в хеше чата ({@link ChatSessionRedisRepo}) */
+    public static final List<String> FIELDS = List.of(ChatSessionRedisRepo.HABIT, ChatSessionRedisRepo.HABIT_EXPIRES);
 
-    private static final String PREFIX = "bot:pending-habit:";
-    private static final Duration TTL = Duration.ofHours(1);
+    private final ChatSessionRedisRepo sessions;
+    private final DraftCodec<HabitCheckinDto> codec;
 
-    public PendingHabitRedisRepo(StringRedisTemplate redis, ObjectMapper objectMapper) {
-        this.redis = redis;
-        this.objectMapper = objectMapper;
-    }
+    public static final Duration TTL = Duration.ofHours(1);
 
-    private String key(long chatId) {
-        return PREFIX + chatId;
+    public PendingHabitRedisRepo(ChatSessionRedisRepo sessions, ObjectMapper objectMapper, DraftCodecProps props) {
+        this.sessions = sessions;
+        this.codec = new DraftCodecs<>(props.format(), new HabitDraftCodec(), new JsonDraftCodec<>(objectMapper, HabitCheckinDto.class));
     }
 
     public void save(long chatId, HabitCheckinDto dto) {
-        String k = key(chatId);
-        try {
-            String json = objectMapper.writeValueAsString(dto);
-            redis.opsForValue().set(k, json, TTL);
-        } catch (JsonProcessingException e) {
-            throw new RuntimeException("Failed to serialize TaskDto to JSON", e);
-        }
+        sessions.apply(ChatSessionRedisRepo.Change.of(chatId, toFields(dto), List.of()));
     }
 
     public Optional<HabitCheckinDto> get(long chatId) {
-        String k = key(chatId);
-        String json = redis.opsForValue().get(k);
-        if (json == null || json.isBlank()) {
+        return fromFields(sessions.load(chatId, ChatSessionRedisRepo.HABIT, ChatSessionRedisRepo.HABIT_EXPIRES));
+    }
+
+    /**
+     * Изменение черновика по версии ({@link ChatSessionRedisRepo#update}): параллельная правка другого поля
+     * не теряется — change применяется заново к свежему черновику.
+     *
+     * @param change текущий черновик (null — его нет) → новый; может вызываться повторно, поэтому без побочных эффектов
+     * @return записанный черновик
+     */
+    public HabitCheckinDto update(long chatId, UnaryOperator<HabitCheckinDto> change) {
+        byte[] written = sessions.update(chatId, ChatSessionRedisRepo.HABIT, ChatSessionRedisRepo.HABIT_EXPIRES, ChatSessionRedisRepo.HABIT_VERSION,
+                System.currentTimeMillis() + TTL.toMillis(),
+                current -> codec.encode(change.apply(decode(current).orElse(null))));
+        return codec.decode(written);
+    }
+
+    /** Забрать черновик: чтение и удаление одним запросом — дважды подтвердить один черновик нельзя */
+    public Optional<HabitCheckinDto> take(long chatId) {
+        return decode(sessions.take(chatId, ChatSessionRedisRepo.HABIT, ChatSessionRedisRepo.HABIT_EXPIRES, ChatSessionRedisRepo.HABIT_VERSION).orElse(null));
+    }
+
+    /** Поля черновика в хеше чата: закодированный черновик и момент истечения */
+    public Map<String, byte[]> toFields(HabitCheckinDto dto) {
+        return Map.of(
+                ChatSessionRedisRepo.HABIT, codec.encode(dto),
+                ChatSessionRedisRepo.HABIT_EXPIRES, ChatSessionRedisRepo.utf8(String.valueOf(System.currentTimeMillis() + TTL.toMillis())));
+    }
+
+    public Optional<HabitCheckinDto> fromFields(Map<String, byte[]> fields) {
+        return decode(ChatSessionRedisRepo.draft(fields, ChatSessionRedisRepo.HABIT, ChatSessionRedisRepo.HABIT_EXPIRES));
+    }
+
+    public byte[] encode(HabitCheckinDto dto) {
+        return codec.encode(dto);
+    }
+
+    /** Двоичный черновик или JSON, записанный до перехода на двоичный формат */
+    public Optional<HabitCheckinDto> decode(byte[] data) {
+        if (data == null || data.length == 0) {
             return Optional.empty();
         }
         try {
-            HabitCheckinDto dto = objectMapper.readValue(json, HabitCheckinDto.class);
-            return Optional.of(dto);
-        } catch (JsonProcessingException e) {
-            log.warn("Failed to deserialize TaskDto from JSON", e);
+            return Optional.of(codec.decode(data));
+        } catch (IllegalArgumentException e) {
+            log.warn("Failed to decode HabitCheckinDto draft", e);
             return Optional.empty();
         }
     }
 
     public void delete(long chatId) {
-        redis.delete(key(chatId));
+        sessions.apply(ChatSessionRedisRepo.Change.of(chatId, Map.of(), FIELDS));
     }
 }
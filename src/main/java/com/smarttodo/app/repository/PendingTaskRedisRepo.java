@@ -1,13 +1,19 @@
 package com.smarttodo.app.repository;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.smarttodo.app.dto.TaskDto;
+import com.smarttodo.app.repository.codec.DraftCodec;
+import com.smarttodo.app.repository.codec.DraftCodecProps;
+import com.smarttodo.app.repository.codec.DraftCodecs;
+import com.smarttodo.app.repository.codec.JsonDraftCodec;
+import com.smarttodo.app.repository.codec.TaskDraftCodec;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.UnaryOperator;
 
 import java.time.Duration;
 
@@ -15,49 +21,90 @@ import java.time.Duration;
 @Service
 public class PendingTaskRedisRepo {
 
-    private final StringRedisTemplate redis;
-    private final ObjectMapper objectMapper;
+    /** Поля черновика задачи в хеше чата ({@link ChatSessionRedisRepo}) */
+    public static final List<String> FIELDS = List.of(ChatSessionRedisRepo.TASK, ChatSessionRedisRepo.TASK_EXPIRES);
 
-    private static final String PREFIX = "bot:pending-task:";
-    private static final Duration TTL = Duration.ofHours(1);
+    private final ChatSessionRedisRepo sessions;
+    private final DraftCodec<TaskDto> codec;
 
-    public PendingTaskRedisRepo(StringRedisTemplate redis, ObjectMapper objectMapper) {
-        this.redis = redis;
-        this.objectMapper = objectMapper;
-    }
+    public static final Duration TTL = Duration.ofHours(1);
 
-    private String key(long chatId) {
-        return PREFIX + chatId;
+    public PendingTaskRedisRepo(ChatSessionRedisRepo sessions, ObjectMapper objectMapper, DraftCodecProps props) {
+        this.sessions = sessions;
+        this.codec = new DraftCodecs<>(props.format(), new TaskDraftCodec(), new JsonDraftCodec<>(objectMapper, TaskDto.class));
     }
 
     public void save(long chatId, TaskDto dto) {
-        String k = key(chatId);
-        try {
-            String json = objectMapper.writeValueAsString(dto);
-            redis.opsForValue().set(k, json, TTL);
-        } catch (JsonProcessingException e) {
-            throw new RuntimeException("Failed to serialize TaskDto to JSON", e);
-        }
+        sessions.apply(ChatSessionRedisRepo.Change.of(chatId, toFields(dto), List.of()));
     }
 
     public Optional<TaskDto> get(long chatId) {
-        String k = key(chatId);
-        String json = redis.opsForValue().get(k);
-        if (json == null || json.isBlank()) {
+        return fromFields(sessions.load(chatId, ChatSessionRedisRepo.TASK, ChatSessionRedisRepo.TASK_EXPIRES));
+    }
+
+    /**
+     * Изменение черновика по версии ({@link ChatSessionRedisRepo#update}): параллельная правка другого поля
+     * не теряется — change применяется заново к свежему черновику.
+     *
+     * @param change текущий черновик (null — его нет) → новый; может вызываться повторно, поэтому без побочных эффектов
+     * @return записанный черновик
+     */
+    public TaskDto update(long chatId, UnaryOperator<TaskDto> change) {
+        byte[] written = sessions.update(chatId, ChatSessionRedisRepo.TASK, ChatSessionRedisRepo.TASK_EXPIRES, ChatSessionRedisRepo.TASK_VERSION,
+                System.currentTimeMillis() + TTL.toMillis(),
+                current -> codec.encode(change.apply(decode(current).orElse(null))));
+        return codec.decode(written);
+    }
+
+    /** Версия черновика: растёт с каждым его изменением */
+    public long version(long chatId) {
+        return sessions.version(chatId, ChatSessionRedisRepo.TASK_VERSION);
+    }
+
+    /**
+     * Запись черновика, только если его версия всё ещё expected.
+     *
+     * @return false — черновик успели изменить или забрать, ничего не записано
+     */
+    public boolean saveIfVersion(long chatId, long expected, TaskDto dto) {
+        return sessions.swap(chatId, ChatSessionRedisRepo.TASK, ChatSessionRedisRepo.TASK_EXPIRES, ChatSessionRedisRepo.TASK_VERSION,
+                expected, codec.encode(dto), System.currentTimeMillis() + TTL.toMillis());
+    }
+
+    /** Забрать черновик: чтение и удаление одним запросом — дважды подтвердить один черновик нельзя */
+    public Optional<TaskDto> take(long chatId) {
+        return decode(sessions.take(chatId, ChatSessionRedisRepo.TASK, ChatSessionRedisRepo.TASK_EXPIRES, ChatSessionRedisRepo.TASK_VERSION).orElse(null));
+    }
+
+    /** Поля черновика в хеше чата: закодированный черновик и момент истечения */
+    public Map<String, byte[]> toFields(TaskDto dto) {
+        return Map.of(
+                ChatSessionRedisRepo.TASK, codec.encode(dto),
+                ChatSessionRedisRepo.TASK_EXPIRES, ChatSessionRedisRepo.utf8(String.valueOf(System.currentTimeMillis() + TTL.toMillis())));
+    }
+
+    public Optional<TaskDto> fromFields(Map<String, byte[]> fields) {
+        return decode(ChatSessionRedisRepo.draft(fields, ChatSessionRedisRepo.TASK, ChatSessionRedisRepo.TASK_EXPIRES));
+    }
+
+    public byte[] encode(TaskDto dto) {
+        return codec.encode(dto);
+    }
+
+    /** Двоичный черновик или JSON, записанный до перехода на двоичный формат */
+    public Optional<TaskDto> decode(byte[] data) {
+        if (data == null || data.length == 0) {
             return Optional.empty();
         }
         try {
-            TaskDto dto = objectMapper.readValue(json, TaskDto.class);
-            return Optional.of(dto);
-        } catch (JsonProcessingException e) {
-             log.warn("Failed to deserialize TaskDto from JSON", e);
+            return Optional.of(codec.decode(data));
+        } catch (IllegalArgumentException e) {
+            log.warn("Failed to decode TaskDto draft", e);
             return Optional.empty();
         }
     }
 
     public void delete(long chatId) {
-        redis.delete(key(chatId));
+        sessions.apply(ChatSessionRedisRepo.Change.of(chatId, Map.of(), FIELDS));
     }
 }
-
-
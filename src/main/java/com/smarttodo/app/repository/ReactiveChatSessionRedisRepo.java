@@ -0,0 +1,64 @@
+package com.smarttodo.app.repository;
+
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisElementReader;
+import org.springframework.data.redis.serializer.RedisElementWriter;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static com.smarttodo.app.repository.ChatSessionRedisRepo.*;
+
+/**
+ * Хеш чата ({@link ChatSessionRedisRepo}) через неблокирующий API Lettuce: те же скрипты и поля,
+ * но ответ — продолжение Mono, поток на время запроса не занимается.
+ */
+@Service
+public class ReactiveChatSessionRedisRepo {
+
+    private static final RedisElementWriter<Object> ARGS_WRITER = RedisElementWriter.from(ARGS);
+
+    private final ReactiveStringRedisTemplate redis;
+
+    public ReactiveChatSessionRedisRepo(ReactiveStringRedisTemplate redis) {
+        this.redis = redis;
+    }
+
+    /** Всё состояние чата или только перечисленные поля; пустая Map — состояния нет */
+    public Mono<Map<String, byte[]>> load(long chatId, String... fields) {
+        List<Object> args = new ArrayList<>(fields.length + 1);
+        args.add(String.valueOf(System.currentTimeMillis()));
+        args.addAll(List.of(fields));
+        return run(LOAD, keys(chatId, null), args)
+                .next()
+                .map(ChatSessionRedisRepo::toMap)
+                .defaultIfEmpty(Map.of());
+    }
+
+    /** false — аренда чужая, ничего не записано */
+    public Mono<Boolean> apply(Change change) {
+        return run(UPDATE, keys(change.chatId(), change.ownerKey()), args(change))
+                .next()
+                .map(r -> r == 1)
+                .defaultIfEmpty(false);
+    }
+
+    /** Значение черновика с удалением, одним запросом; пусто — черновика нет или срок вышел */
+    public Mono<byte[]> take(long chatId, String field, String expiresField, String versionField) {
+        return run(TAKE, keys(chatId, null), List.of(String.valueOf(System.currentTimeMillis()), field, expiresField, versionField))
+                .next();
+    }
+
+    /** Скрипт с двоичными аргументами; строки и элементы списков в ответе — байты, числа — как есть */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private <T> Flux<T> run(RedisScript<T> script, List<String> keys, List<Object> args) {
+        RedisElementReader reader = RedisElementReader.from(RedisSerializer.byteArray());
+        return redis.execute(script, keys, args, ARGS_WRITER, (RedisElementReader<T>) reader);
+    }
+}
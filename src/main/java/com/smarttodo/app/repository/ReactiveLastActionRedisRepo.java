@@ -0,0 +1,30 @@
+package com.smarttodo.app.repository;
+
+import com.smarttodo.app.dto.MessageMeta;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+import static com.smarttodo.app.repository.ChatSessionRedisRepo.*;
+
+/** {@link LastActionRedisRepo} через неблокирующий клиент Redis */
+@Service
+public class ReactiveLastActionRedisRepo {
+
+    private final ReactiveChatSessionRedisRepo sessions;
+
+    public ReactiveLastActionRedisRepo(ReactiveChatSessionRedisRepo sessions) {
+        this.sessions = sessions;
+    }
+
+    public Mono<Boolean> save(long chatId, MessageMeta meta) {
+        return sessions.apply(Change.of(chatId, LastActionRedisRepo.toFields(meta), List.of()));
+    }
+
+    /** Пусто, если сообщения ещё не было */
+    public Mono<MessageMeta> get(long chatId) {
+        return sessions.load(chatId, MID, SEQ, SENT_AT, MARKER, BODY_HASH)
+                .flatMap(fields -> Mono.justOrEmpty(LastActionRedisRepo.fromFields(fields)));
+    }
+}
@@ -0,0 +1,40 @@
+package com.smarttodo.app.repository;
+
+import com.smarttodo.app.dto.TaskDto;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+
+/** {@link PendingTaskRedisRepo} через неблокирующий клиент Redis; формат черновика — тот же */
+@Service
+public class ReactivePendingTaskRedisRepo {
+
+    private final ReactiveChatSessionRedisRepo sessions;
+    private final PendingTaskRedisRepo drafts;     // кодек черновика
+
+    public ReactivePendingTaskRedisRepo(ReactiveChatSessionRedisRepo sessions, PendingTaskRedisRepo drafts) {
+        this.sessions = sessions;
+        this.drafts = drafts;
+    }
+
+    public Mono<Void> save(long chatId, TaskDto dto) {
+        return sessions.apply(ChatSessionRedisRepo.Change.of(chatId, drafts.toFields(dto), List.of())).then();
+    }
+
+    public Mono<TaskDto> get(long chatId) {
+        return sessions.load(chatId, ChatSessionRedisRepo.TASK, ChatSessionRedisRepo.TASK_EXPIRES)
+                .flatMap(fields -> Mono.justOrEmpty(drafts.fromFields(fields)));
+    }
+
+    /** Забрать черновик: чтение и удаление одним запросом */
+    public Mono<TaskDto> take(long chatId) {
+        return sessions.take(chatId, ChatSessionRedisRepo.TASK, ChatSessionRedisRepo.TASK_EXPIRES, ChatSessionRedisRepo.TASK_VERSION)
+                .flatMap(data -> Mono.justOrEmpty(drafts.decode(data)));
+    }
+
+    public Mono<Void> delete(long chatId) {
+        return sessions.apply(ChatSessionRedisRepo.Change.of(chatId, Map.of(), PendingTaskRedisRepo.FIELDS)).then();
+    }
+}
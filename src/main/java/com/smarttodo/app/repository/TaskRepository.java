@@ -2,10 +2,14 @@ package com.smarttodo.app.repository;
 
 import com.smarttodo.app.entity.TaskEntity;
 import com.smarttodo.app.entity.TaskStatus;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -18,4 +22,48 @@ public interface TaskRepository extends JpaRepository<TaskEntity, Long> {
     List<TaskEntity> findAllByChatIdAndStatus(Long chatId, TaskStatus status);
 
     List<TaskEntity> findAllByChatIdAndDeadlineBetween(Long chatId, LocalDateTime start, LocalDateTime end);
+
+    /** Незавершённые задачи со сроком в [start, end]; индекс idx_tasks_chat_open_deadline */
+    @Query("""
+            select t from TaskEntity t
+            where t.chatId = :chatId and t.status <> com.smarttodo.app.entity.TaskStatus.COMPLETED
+              and t.deadline between :start and :end""")
+    List<TaskEntity> findOpenByChatIdAndDeadlineBetween(@Param("chatId") Long chatId,
+                                                        @Param("start") LocalDateTime start,
+                                                        @Param("end") LocalDateTime end);
+
+    // ===== Keyset-страницы по (deadline, id), индекс idx_tasks_chat_deadline =====
+
+    /** Задачи со сроком не позже to, идущие после (deadline, id) */
+    @Query("""
+            select t from TaskEntity t
+            where t.chatId = :chatId and t.status in :statuses and t.deadline <= :to
+              and (t.deadline > :deadline or (t.deadline = :deadline and t.id > :id))
+            order by t.deadline asc, t.id asc""")
+    List<TaskEntity> findPageAfter(@Param("chatId") Long chatId,
+                                   @Param("statuses") Collection<TaskStatus> statuses,
+                                   @Param("to") LocalDateTime to,
+                                   @Param("deadline") LocalDateTime deadline,
+                                   @Param("id") long id,
+                                   Limit limit);
+
+    /** Задачи со сроком не раньше from, идущие перед (deadline, id); в обратном порядке */
+    @Query("""
+            select t from TaskEntity t
+            where t.chatId = :chatId and t.status in :statuses and t.deadline >= :from
+              and (t.deadline < :deadline or (t.deadline = :deadline and t.id < :id))
+            order by t.deadline desc, t.id desc""")
+    List<TaskEntity> findPageBefore(@Param("chatId") Long chatId,
+                                    @Param("statuses") Collection<TaskStatus> statuses,
+                                    @Param("from") LocalDateTime from,
+                                    @Param("deadline") LocalDateTime deadline,
+                                    @Param("id") long id,
+                                    Limit limit);
+
+    /** Задачи без срока — хвост списка, по id */
+    List<TaskEntity> findByChatIdAndStatusInAndDeadlineIsNullAndIdGreaterThanOrderByIdAsc(
+            Long chatId, Collection<TaskStatus> statuses, long id, Limit limit);
+
+    List<TaskEntity> findByChatIdAndStatusInAndDeadlineIsNullAndIdLessThanOrderByIdDesc(
+            Long chatId, Collection<TaskStatus> statuses, long id, Limit limit);
 }
@@ -1,9 +1,11 @@
 package com.smarttodo.app.repository;
 
 import com.smarttodo.app.entity.UserEntity;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -12,4 +14,7 @@ public interface UserRepository extends JpaRepository<UserEntity, Long> {
     Optional<UserEntity> findByChatId(Long chatId);
 
     boolean existsByChatId(Long chatId);
+
+    /** Следующая страница пользователей по id (keyset), без OFFSET и без загрузки всей таблицы */
+    List<UserEntity> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit);
 }
@@ -0,0 +1,132 @@
+package com.smarttodo.app.repository.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Основа компактного двоичного формата черновиков: первый байт — версия формата,
+ * дальше поля, записанные наследником через {@link Out}: числа — varint (zigzag),
+ * строки — длина в байтах UTF-8 и сами байты, перечисления — код из таблицы наследника.
+ * Код значения — его место в таблице, а не ordinal(): порядок констант в enum можно менять,
+ * новые значения дописываются только в конец таблицы.
+ */
+public abstract class BinaryDraftCodec<T> implements DraftCodec<T> {
+
+    private final int version;
+
+    protected BinaryDraftCodec(int version) {
+        if (version <= 0 || version == '{') throw new IllegalArgumentException("Bad draft format version: " + version);
+        this.version = version;
+    }
+
+    protected abstract void write(Out out, T value);
+
+    /** @param version версия, которой записаны байты (не новее текущей) */
+    protected abstract T read(In in, int version);
+
+    @Override
+    public final byte[] encode(T value) {
+        Out out = new Out();
+        out.writeByte(version);
+        write(out, value);
+        return out.toByteArray();
+    }
+
+    @Override
+    public final T decode(byte[] data) {
+        if (data.length == 0) throw new IllegalArgumentException("Empty draft");
+        int v = data[0] & 0xff;
+        if (v == 0 || v > version) throw new IllegalArgumentException("Unknown draft format version: " + v);
+        try {
+            return read(new In(data), v);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Truncated draft", e);
+        }
+    }
+
+    protected static <E extends Enum<E>> int code(E[] table, E value) {
+        for (int i = 0; i < table.length; i++) {
+            if (table[i] == value) return i;
+        }
+        throw new IllegalArgumentException("No stable code for " + value);
+    }
+
+    protected static <E extends Enum<E>> E fromCode(E[] table, int code) {
+        if (code < 0 || code >= table.length) throw new IllegalArgumentException("Unknown code " + code);
+        return table[code];
+    }
+
+    protected static final class Out {
+        private byte[] buf = new byte[64];
+        private int pos;
+
+        public void writeByte(int b) {
+            ensure(1);
+            buf[pos++] = (byte) b;
+        }
+
+        public void writeLong(long v) {
+            long z = (v << 1) ^ (v >> 63);
+            ensure(10);
+            while ((z & ~0x7FL) != 0) {
+                buf[pos++] = (byte) ((z & 0x7F) | 0x80);
+                z >>>= 7;
+            }
+            buf[pos++] = (byte) z;
+        }
+
+        public void writeString(String s) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            writeLong(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, pos, bytes.length);
+            pos += bytes.length;
+        }
+
+        private void ensure(int n) {
+            if (pos + n > buf.length) buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + n));
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(buf, pos);
+        }
+    }
+
+    protected static final class In {
+        private final byte[] data;
+        private int pos = 1;
+
+        private In(byte[] data) {
+            this.data = data;
+        }
+
+        public int readByte() {
+            return data[pos++] & 0xff;
+        }
+
+        public long readLong() {
+            long z = 0;
+            for (int shift = 0; ; shift += 7) {
+                if (shift > 63) throw new IllegalArgumentException("Malformed varint");
+                byte b = data[pos++];
+                z |= (long) (b & 0x7F) << shift;
+                if (b >= 0) break;
+            }
+            return (z >>> 1) ^ -(z & 1);
+        }
+
+        public int readInt() {
+            long v = readLong();
+            if (v != (int) v) throw new IllegalArgumentException("Value out of int range: " + v);
+            return (int) v;
+        }
+
+        public String readString() {
+            int len = readInt();
+            if (len < 0 || len > data.length - pos) throw new IllegalArgumentException("Bad string length " + len);
+            String s = new String(data, pos, len, StandardCharsets.UTF_8);
+            pos += len;
+            return s;
+        }
+    }
+}
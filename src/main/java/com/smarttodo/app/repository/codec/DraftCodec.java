@@ -0,0 +1,12 @@
+package com.smarttodo.app.repository.codec;
+
+/**
+ * Представление черновика в Redis (поля t и h хеша чата).
+ * decode бросает IllegalArgumentException, если байты не в этом формате или повреждены.
+ */
+public interface DraftCodec<T> {
+
+    byte[] encode(T value);
+
+    T decode(byte[] data);
+}
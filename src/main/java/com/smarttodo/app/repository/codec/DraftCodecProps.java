@@ -0,0 +1,12 @@
+package com.smarttodo.app.repository.codec;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "bot.drafts")
+public record DraftCodecProps(
+        DraftFormat format      // JSON — писать как раньше (например, пока на старой версии остаются ноды)
+) {
+    public DraftCodecProps {
+        if (format == null) format = DraftFormat.BINARY;
+    }
+}
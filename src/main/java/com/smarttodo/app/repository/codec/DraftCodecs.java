@@ -0,0 +1,29 @@
+package com.smarttodo.app.repository.codec;
+
+/**
+ * Кодек черновика для репозитория: пишет в выбранном формате, а читает любой из двух —
+ * JSON узнаётся по первому байту. Так формат можно переключать в обе стороны,
+ * не теряя черновики, записанные до переключения.
+ */
+public final class DraftCodecs<T> implements DraftCodec<T> {
+
+    private final DraftCodec<T> writer;
+    private final BinaryDraftCodec<T> binary;
+    private final JsonDraftCodec<T> json;
+
+    public DraftCodecs(DraftFormat format, BinaryDraftCodec<T> binary, JsonDraftCodec<T> json) {
+        this.writer = format == DraftFormat.JSON ? json : binary;
+        this.binary = binary;
+        this.json = json;
+    }
+
+    @Override
+    public byte[] encode(T value) {
+        return writer.encode(value);
+    }
+
+    @Override
+    public T decode(byte[] data) {
+        return JsonDraftCodec.isJson(data) ? json.decode(data) : binary.decode(data);
+    }
+}
@@ -0,0 +1,7 @@
+package com.smarttodo.app.repository.codec;
+
+/** В каком формате пишутся черновики; читаются оба */
+public enum DraftFormat {
+    BINARY,
+    JSON
+}
@@ -0,0 +1,69 @@
+package com.smarttodo.app.repository.codec;
+
+import com.smarttodo.app.dto.HabitCheckinDto;
+import com.smarttodo.app.entity.HabitInterval;
+import com.smarttodo.app.entity.HabitStatus;
+import com.smarttodo.app.entity.Priority;
+
+import java.time.LocalDate;
+
+/**
+ * Черновик привычки, версия 1: флаги присутствия и булевы поля (varint), заголовок, затем присутствующие поля
+ * по порядку — id, описание, коды статуса, периодичности и приоритета, день и цель (дни от эпохи).
+ */
+public final class HabitDraftCodec extends BinaryDraftCodec<HabitCheckinDto> {
+
+    // стабильные коды: только дописывать в конец
+    private static final HabitStatus[] STATUSES = {
+            HabitStatus.ARCHIVED, HabitStatus.IN_PROGRESS, HabitStatus.PAUSED, HabitStatus.COMPLETED};
+    private static final HabitInterval[] INTERVALS = {
+            HabitInterval.EVERY_DAY, HabitInterval.EVERY_WEEK, HabitInterval.EVERY_WEEKEND, HabitInterval.EVERY_WEEKDAY,
+            HabitInterval.EVERY_SUNDAY, HabitInterval.EVERY_MONDAY, HabitInterval.EVERY_TUESDAY,
+            HabitInterval.EVERY_WEDNESDAY, HabitInterval.EVERY_THURSDAY, HabitInterval.EVERY_FRIDAY,
+            HabitInterval.EVERY_SATURDAY};
+    private static final Priority[] PRIORITIES = {Priority.LOW, Priority.MEDIUM, Priority.HIGH};
+
+    private static final int ID = 1, DESCRIPTION = 1 << 1, STATUS = 1 << 2, INTERVAL = 1 << 3, PRIORITY = 1 << 4,
+            DAY = 1 << 5, GOAL_DATE = 1 << 6, COMPLETED = 1 << 7, COMPLETED_ON_TIME = 1 << 8;
+
+    public HabitDraftCodec() {
+        super(1);
+    }
+
+    @Override
+    protected void write(Out out, HabitCheckinDto h) {
+        int flags = (h.id() != null ? ID : 0)
+                | (h.description() != null ? DESCRIPTION : 0)
+                | (h.status() != null ? STATUS : 0)
+                | (h.interval() != null ? INTERVAL : 0)
+                | (h.priority() != null ? PRIORITY : 0)
+                | (h.day() != null ? DAY : 0)
+                | (h.goalDate() != null ? GOAL_DATE : 0)
+                | (h.isCompleted() ? COMPLETED : 0)
+                | (h.isCompletedOnTime() ? COMPLETED_ON_TIME : 0);
+        out.writeLong(flags);
+        out.writeString(h.title());
+        if (h.id() != null) out.writeLong(h.id());
+        if (h.description() != null) out.writeString(h.description());
+        if (h.status() != null) out.writeLong(code(STATUSES, h.status()));
+        if (h.interval() != null) out.writeLong(code(INTERVALS, h.interval()));
+        if (h.priority() != null) out.writeLong(code(PRIORITIES, h.priority()));
+        if (h.day() != null) out.writeLong(h.day().toEpochDay());
+        if (h.goalDate() != null) out.writeLong(h.goalDate().toEpochDay());
+    }
+
+    @Override
+    protected HabitCheckinDto read(In in, int version) {
+        long flags = in.readLong();
+        String title = in.readString();
+        Long id = (flags & ID) != 0 ? in.readLong() : null;
+        String description = (flags & DESCRIPTION) != 0 ? in.readString() : null;
+        HabitStatus status = (flags & STATUS) != 0 ? fromCode(STATUSES, in.readInt()) : null;
+        HabitInterval interval = (flags & INTERVAL) != 0 ? fromCode(INTERVALS, in.readInt()) : null;
+        Priority priority = (flags & PRIORITY) != 0 ? fromCode(PRIORITIES, in.readInt()) : null;
+        LocalDate day = (flags & DAY) != 0 ? LocalDate.ofEpochDay(in.readLong()) : null;
+        LocalDate goalDate = (flags & GOAL_DATE) != 0 ? LocalDate.ofEpochDay(in.readLong()) : null;
+        return new HabitCheckinDto(id, title, description, status, interval, priority, day, goalDate,
+                (flags & COMPLETED) != 0, (flags & COMPLETED_ON_TIME) != 0);
+    }
+}
@@ -0,0 +1,40 @@
+package com.smarttodo.app.repository.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+
+/** Прежний формат черновиков — JSON через Jackson */
+public final class JsonDraftCodec<T> implements DraftCodec<T> {
+
+    private final ObjectMapper objectMapper;
+    private final Class<T> type;
+
+    public JsonDraftCodec(ObjectMapper objectMapper, Class<T> type) {
+        this.objectMapper = objectMapper;
+        this.type = type;
+    }
+
+    /** JSON-объект начинается с '{' — двоичный формат так не начинается никогда */
+    public static boolean isJson(byte[] data) {
+        return data.length > 0 && data[0] == '{';
+    }
+
+    @Override
+    public byte[] encode(T value) {
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to serialize " + type.getSimpleName() + " to JSON", e);
+        }
+    }
+
+    @Override
+    public T decode(byte[] data) {
+        try {
+            return objectMapper.readValue(data, type);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Failed to deserialize " + type.getSimpleName() + " from JSON", e);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.smarttodo.app.repository.codec;
+
+import com.smarttodo.app.dto.TaskDto;
+import com.smarttodo.app.entity.Priority;
+import com.smarttodo.app.entity.TaskStatus;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Черновик задачи, версия 1: флаги присутствия (varint), заголовок, затем присутствующие поля по порядку —
+ * id, описание, код статуса, код приоритета, срок (секунды и наносекунды от эпохи, без зоны — как UTC),
+ * время выполнения (секунды и наносекунды от эпохи).
+ */
+public final class TaskDraftCodec extends BinaryDraftCodec<TaskDto> {
+
+    // стабильные коды: только дописывать в конец
+    private static final TaskStatus[] STATUSES = {TaskStatus.UNCOMPLETED, TaskStatus.IN_PROGRESS, TaskStatus.COMPLETED};
+    private static final Priority[] PRIORITIES = {Priority.LOW, Priority.MEDIUM, Priority.HIGH};
+
+    private static final int ID = 1, DESCRIPTION = 1 << 1, STATUS = 1 << 2, PRIORITY = 1 << 3,
+            DEADLINE = 1 << 4, COMPLETED_AT = 1 << 5;
+
+    public TaskDraftCodec() {
+        super(1);
+    }
+
+    @Override
+    protected void write(Out out, TaskDto t) {
+        int flags = (t.id() != null ? ID : 0)
+                | (t.description() != null ? DESCRIPTION : 0)
+                | (t.status() != null ? STATUS : 0)
+                | (t.priority() != null ? PRIORITY : 0)
+                | (t.deadline() != null ? DEADLINE : 0)
+                | (t.completedAt() != null ? COMPLETED_AT : 0);
+        out.writeLong(flags);
+        out.writeString(t.title());
+        if (t.id() != null) out.writeLong(t.id());
+        if (t.description() != null) out.writeString(t.description());
+        if (t.status() != null) out.writeLong(code(STATUSES, t.status()));
+        if (t.priority() != null) out.writeLong(code(PRIORITIES, t.priority()));
+        if (t.deadline() != null) {
+            out.writeLong(t.deadline().toEpochSecond(ZoneOffset.UTC));
+            out.writeLong(t.deadline().getNano());
+        }
+        if (t.completedAt() != null) {
+            out.writeLong(t.completedAt().getEpochSecond());
+            out.writeLong(t.completedAt().getNano());
+        }
+    }
+
+    @Override
+    protected TaskDto read(In in, int version) {
+        long flags = in.readLong();
+        String title = in.readString();
+        Long id = (flags & ID) != 0 ? in.readLong() : null;
+        String description = (flags & DESCRIPTION) != 0 ? in.readString() : null;
+        TaskStatus status = (flags & STATUS) != 0 ? fromCode(STATUSES, in.readInt()) : null;
+        Priority priority = (flags & PRIORITY) != 0 ? fromCode(PRIORITIES, in.readInt()) : null;
+        LocalDateTime deadline = (flags & DEADLINE) != 0
+                ? LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC)
+                : null;
+        Instant completedAt = (flags & COMPLETED_AT) != 0 ? Instant.ofEpochSecond(in.readLong(), in.readInt()) : null;
+        return new TaskDto(id, title, description, status, priority, deadline, completedAt);
+    }
+}
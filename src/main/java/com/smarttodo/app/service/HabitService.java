@@ -2,6 +2,8 @@ package com.smarttodo.app.service;
 
 import com.smarttodo.app.dto.HabitCheckinDto;
 import com.smarttodo.app.dto.HabitDto;
+import com.smarttodo.app.dto.ListPage;
+import com.smarttodo.app.dto.PageCursor;
 import com.smarttodo.app.entity.HabitCheckinEntity;
 import com.smarttodo.app.entity.HabitEntity;
 import com.smarttodo.app.entity.HabitInterval;
@@ -10,13 +12,21 @@ import com.smarttodo.app.entity.UserEntity;
 import com.smarttodo.app.repository.HabitCheckinRepository;
 import com.smarttodo.app.repository.HabitRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.DayOfWeek;
 import java.time.LocalDate;
 import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
@@ -123,6 +133,105 @@ public class HabitService {
                 .toList();
     }
 
+    /** Списки привычек бота; key — имя списка в payload кнопок страниц */
+    public enum HabitView {
+        ALL, TODAY, WEEK;
+
+        public String key() {
+            return name().toLowerCase();
+        }
+
+        public static HabitView fromKey(String key) {
+            for (HabitView v : values()) {
+                if (v.key().equals(key)) return v;
+            }
+            return null;
+        }
+    }
+
+    /** Страница всех привычек по id */
+    @Transactional(readOnly = true)
+    public ListPage<HabitDto> getHabitsPage(Long chatId, PageCursor cursor, int size) {
+        List<HabitEntity> rows = cursor.backward()
+                ? habitRepository.findByChatIdAndIdLessThanOrderByIdDesc(chatId, cursor.id(), Limit.of(size + 1))
+                : habitRepository.findByChatIdAndIdGreaterThanOrderByIdAsc(chatId, cursor.id(), Limit.of(size + 1));
+
+        boolean more = rows.size() > size;
+        List<HabitDto> items = new ArrayList<>(size);
+        for (HabitEntity habit : more ? rows.subList(0, size) : rows) {
+            items.add(toDto(habit));
+        }
+        if (cursor.backward()) Collections.reverse(items);
+        if (items.isEmpty()) return ListPage.of(items);
+
+        boolean hasPrev = cursor.backward() ? more : !cursor.isFirst();
+        boolean hasNext = cursor.backward() || more;
+        return new ListPage<>(items,
+                hasPrev ? PageCursor.before(0, items.getFirst().id()) : null,
+                hasNext ? PageCursor.after(0, items.getLast().id()) : null);
+    }
+
+    /**
+     * Страница отметок привычек за сегодня (TODAY) или за последние 7 дней (WEEK).
+     * Строка — пара (привычка, день), порядок — (id, день), ключ курсора — день (epochDay).
+     * Периодичность и цель отсекаются в запросе, отметки читаются одним запросом на страницу.
+     */
+    @Transactional(readOnly = true)
+    public ListPage<HabitCheckinDto> getHabitCheckinsPage(Long chatId, HabitView view, PageCursor cursor, int size) {
+        LocalDate end = LocalDate.now();
+        LocalDate start = view == HabitView.WEEK ? end.minusDays(6) : end;
+        List<LocalDate> days = start.datesUntil(end.plusDays(1)).toList();
+        Set<HabitInterval> intervals = EnumSet.noneOf(HabitInterval.class);
+        for (HabitInterval interval : HabitInterval.values()) {
+            if (days.stream().anyMatch(day -> isDueOn(interval, day.getDayOfWeek()))) intervals.add(interval);
+        }
+
+        boolean backward = cursor.backward();
+        List<Map.Entry<HabitEntity, LocalDate>> rows = new ArrayList<>(size + 1);
+        // привычка курсора может иметь ещё дни по эту сторону от него — читаем её снова (id включительно)
+        long fromId = cursor.isFirst() ? Long.MIN_VALUE : backward ? cursor.id() + 1 : cursor.id() - 1;
+        while (rows.size() <= size) {
+            List<HabitEntity> batch = backward
+                    ? habitRepository.findDueBefore(chatId, start, intervals, fromId, Limit.of(size + 1))
+                    : habitRepository.findDueAfter(chatId, start, intervals, fromId, Limit.of(size + 1));
+            for (HabitEntity habit : batch) {
+                for (int i = 0; i < days.size() && rows.size() <= size; i++) {
+                    LocalDate day = days.get(backward ? days.size() - 1 - i : i);
+                    if (!isHabitDueToday(habit, day)) continue;
+                    if (!cursor.isFirst() && habit.getId() == cursor.id()
+                            && (backward ? day.toEpochDay() >= cursor.key() : day.toEpochDay() <= cursor.key())) continue;
+                    rows.add(Map.entry(habit, day));
+                }
+                fromId = habit.getId();
+            }
+            if (batch.size() <= size) break;
+        }
+
+        boolean more = rows.size() > size;
+        List<Map.Entry<HabitEntity, LocalDate>> page = new ArrayList<>(more ? rows.subList(0, size) : rows);
+        if (backward) Collections.reverse(page);
+        if (page.isEmpty()) return ListPage.of(List.of());
+
+        Set<Map.Entry<Long, LocalDate>> done = new HashSet<>();
+        for (HabitCheckinEntity checkin : habitCheckinRepository.findAllByHabit_IdInAndDayBetween(
+                page.stream().map(e -> e.getKey().getId()).collect(Collectors.toSet()), start, end)) {
+            done.add(Map.entry(checkin.getHabit().getId(), checkin.getDay()));
+        }
+        List<HabitCheckinDto> items = new ArrayList<>(page.size());
+        for (Map.Entry<HabitEntity, LocalDate> e : page) {
+            boolean isCompleted = done.contains(Map.entry(e.getKey().getId(), e.getValue()));
+            items.add(toCheckinDto(e.getKey(), e.getValue(), isCompleted, isCompleted));
+        }
+
+        boolean hasPrev = backward ? more : !cursor.isFirst();
+        boolean hasNext = backward || more;
+        HabitCheckinDto first = items.getFirst();
+        HabitCheckinDto last = items.getLast();
+        return new ListPage<>(items,
+                hasPrev ? PageCursor.before(first.day().toEpochDay(), first.id()) : null,
+                hasNext ? PageCursor.after(last.day().toEpochDay(), last.id()) : null);
+    }
+
     @Transactional(readOnly = true)
     public long getCompletedHabitsCountForWeek(Long chatId) {
         LocalDate today = LocalDate.now();
@@ -203,11 +312,14 @@ public class HabitService {
             return false;
         }
 
-        HabitInterval interval = habit.getInterval();
+        return isDueOn(habit.getInterval(), today.getDayOfWeek());
+    }
+
+    /** Выпадает ли привычка с такой периодичностью на этот день недели; без периодичности — каждый день */
+    static boolean isDueOn(HabitInterval interval, DayOfWeek dayOfWeek) {
         if (interval == null) {
             return true;
         }
-        DayOfWeek dayOfWeek = today.getDayOfWeek();
 
         return switch (interval) {
             case EVERY_DAY -> true;
@@ -1,15 +1,17 @@
 package com.smarttodo.app.service;
 
 import com.smarttodo.app.bot.MessageSender;
+import com.smarttodo.app.bot.broadcast.BroadcastEngine;
+import com.smarttodo.app.bot.broadcast.BroadcastEngine.BroadcastReport;
+import com.smarttodo.app.client.SendPriority;
 import com.smarttodo.app.dto.HabitCheckinDto;
 import com.smarttodo.app.dto.TaskDto;
 import com.smarttodo.app.entity.TaskEntity;
 import com.smarttodo.app.entity.TaskStatus;
-import com.smarttodo.app.entity.UserEntity;
 import com.smarttodo.app.repository.TaskRepository;
-import com.smarttodo.app.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
 
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
@@ -19,24 +21,17 @@ import java.util.List;
 @RequiredArgsConstructor
 public class ReminderService {
     private final TaskRepository taskRepository;
-    private final UserRepository userRepository;
+    private final BroadcastEngine broadcastEngine;
     private final MessageSender messageSender;
     private final HabitService habitService;
 
-    public void sendRemindersToAllUsers() {
-        List<Long> allChatIds = userRepository.findAll().stream()
-                .map(UserEntity::getChatId)
-                .toList();
-
-        for (Long chatId : allChatIds) {
-            try {
-                checkUpcomingDeadlinesInHour(chatId);
-                checkUpcomingDeadlinesInDay(chatId);
-                sendTasksAndHabitsForToday(chatId);
-
-                Thread.sleep(50);
-            } catch (Exception ignored) {}
-        }
+    public Mono<BroadcastReport> sendRemindersToAllUsers() {
+        // темп задаёт лимитер MAX, у напоминаний свой класс в диспетчере исходящих сообщений
+        return broadcastEngine.run("reminders", SendPriority.REMINDER, chatId -> {
+            checkUpcomingDeadlinesInHour(chatId);
+            checkUpcomingDeadlinesInDay(chatId);
+            sendTasksAndHabitsForToday(chatId);
+        });
     }
 
     public List<TaskDto> checkUpcomingDeadlinesInHour(Long chatId) {
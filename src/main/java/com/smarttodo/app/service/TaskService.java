@@ -1,11 +1,14 @@
 package com.smarttodo.app.service;
 
+import com.smarttodo.app.dto.ListPage;
+import com.smarttodo.app.dto.PageCursor;
 import com.smarttodo.app.dto.TaskDto;
 import com.smarttodo.app.entity.TaskEntity;
 import com.smarttodo.app.entity.TaskStatus;
 import com.smarttodo.app.entity.UserEntity;
 import com.smarttodo.app.repository.TaskRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -13,13 +16,23 @@ import java.time.Instant;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 public class TaskService {
 
+    private static final LocalDateTime EARLIEST = LocalDateTime.of(1, 1, 1, 0, 0);
+    private static final LocalDateTime LATEST = LocalDateTime.of(9999, 12, 31, 23, 59);
+    private static final Set<TaskStatus> ALL_STATUSES = EnumSet.allOf(TaskStatus.class);
+    private static final Set<TaskStatus> OPEN_STATUSES = EnumSet.complementOf(EnumSet.of(TaskStatus.COMPLETED));
+
     private final TaskRepository taskRepository;
     private final UserService userService;
 
@@ -111,8 +124,7 @@ public class TaskService {
         LocalDateTime startOfDay = LocalDate.now().atStartOfDay();
         LocalDateTime endOfDay = LocalDate.now().atTime(LocalTime.MAX);
 
-        return taskRepository.findAllByChatIdAndDeadlineBetween(chatId, startOfDay, endOfDay).stream()
-                .filter(task -> task.getStatus() != TaskStatus.COMPLETED)
+        return taskRepository.findOpenByChatIdAndDeadlineBetween(chatId, startOfDay, endOfDay).stream()
                 .map(this::toDto)
                 .collect(Collectors.toList());
     }
@@ -122,8 +134,7 @@ public class TaskService {
         LocalDateTime startOfWeek = LocalDate.now().atStartOfDay();
         LocalDateTime endOfWeek = startOfWeek.plusDays(7).with(LocalTime.MAX);
 
-        return taskRepository.findAllByChatIdAndDeadlineBetween(chatId, startOfWeek, endOfWeek).stream()
-                .filter(task -> task.getStatus() != TaskStatus.COMPLETED)
+        return taskRepository.findOpenByChatIdAndDeadlineBetween(chatId, startOfWeek, endOfWeek).stream()
                 .map(this::toDto)
                 .collect(Collectors.toList());
     }
@@ -170,6 +181,98 @@ public class TaskService {
                 .collect(Collectors.toList());
     }
 
+    /** Списки задач бота; key — имя списка в payload кнопок страниц */
+    public enum TaskView {
+        TODAY, TOMORROW, WEEK, ALL;
+
+        public String key() {
+            return name().toLowerCase();
+        }
+
+        public static TaskView fromKey(String key) {
+            for (TaskView v : values()) {
+                if (v.key().equals(key)) return v;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Страница списка задач, упорядоченного по (deadline, id); задачи без срока — в конце, по id.
+     * Читается не больше size + 1 строк, сколько бы задач ни было у пользователя.
+     */
+    @Transactional(readOnly = true)
+    public ListPage<TaskDto> getTasksPage(Long chatId, TaskView view, PageCursor cursor, int size) {
+        LocalDate today = LocalDate.now();
+        LocalDateTime from = switch (view) {
+            case TODAY, WEEK -> today.atStartOfDay();
+            case TOMORROW -> today.plusDays(1).atStartOfDay();
+            case ALL -> EARLIEST;
+        };
+        LocalDateTime to = switch (view) {
+            case TODAY -> today.atTime(LocalTime.MAX);
+            case TOMORROW -> today.plusDays(1).atTime(LocalTime.MAX);
+            case WEEK -> today.plusDays(7).atTime(LocalTime.MAX);
+            case ALL -> LATEST;
+        };
+        Set<TaskStatus> statuses = view == TaskView.ALL ? OPEN_STATUSES : ALL_STATUSES;
+        boolean undated = view == TaskView.ALL;
+
+        List<TaskEntity> rows = new ArrayList<>(size + 1);
+        if (!cursor.backward()) {
+            if (cursor.key() != PageCursor.NO_KEY) {
+                rows.addAll(taskRepository.findPageAfter(chatId, statuses, to,
+                        cursor.isFirst() ? from : fromKey(cursor.key()), cursor.isFirst() ? Long.MIN_VALUE : cursor.id(),
+                        Limit.of(size + 1)));
+            }
+            if (undated && rows.size() <= size) {
+                rows.addAll(taskRepository.findByChatIdAndStatusInAndDeadlineIsNullAndIdGreaterThanOrderByIdAsc(
+                        chatId, statuses, cursor.key() == PageCursor.NO_KEY ? cursor.id() : Long.MIN_VALUE,
+                        Limit.of(size + 1 - rows.size())));
+            }
+            boolean hasNext = rows.size() > size;
+            List<TaskEntity> page = hasNext ? rows.subList(0, size) : rows;
+            return toPage(page, !cursor.isFirst() && !page.isEmpty(), hasNext);
+        }
+
+        // назад: сначала хвост без срока (если курсор в нём), потом задачи со сроком — от ближних к дальним
+        if (undated && cursor.key() == PageCursor.NO_KEY) {
+            rows.addAll(taskRepository.findByChatIdAndStatusInAndDeadlineIsNullAndIdLessThanOrderByIdDesc(
+                    chatId, statuses, cursor.id(), Limit.of(size + 1)));
+        }
+        if (rows.size() <= size) {
+            boolean fromTail = cursor.key() == PageCursor.NO_KEY;
+            rows.addAll(taskRepository.findPageBefore(chatId, statuses, from,
+                    fromTail ? to : fromKey(cursor.key()), fromTail ? Long.MAX_VALUE : cursor.id(),
+                    Limit.of(size + 1 - rows.size())));
+        }
+        boolean hasPrev = rows.size() > size;
+        List<TaskEntity> page = new ArrayList<>(hasPrev ? rows.subList(0, size) : rows);
+        Collections.reverse(page);
+        return toPage(page, hasPrev, !page.isEmpty());
+    }
+
+    private ListPage<TaskDto> toPage(List<TaskEntity> rows, boolean hasPrev, boolean hasNext) {
+        List<TaskDto> items = rows.stream().map(this::toDto).toList();
+        if (items.isEmpty()) return ListPage.of(items);
+        TaskDto first = items.getFirst();
+        TaskDto last = items.getLast();
+        return new ListPage<>(items,
+                hasPrev ? PageCursor.before(toKey(first.deadline()), first.id()) : null,
+                hasNext ? PageCursor.after(toKey(last.deadline()), last.id()) : null);
+    }
+
+    /** Ключ курсора — срок в микросекундах (точность timestamp в Postgres), без срока — NO_KEY */
+    private static long toKey(LocalDateTime deadline) {
+        if (deadline == null) return PageCursor.NO_KEY;
+        return deadline.toEpochSecond(ZoneOffset.UTC) * 1_000_000L + deadline.getNano() / 1_000;
+    }
+
+    private static LocalDateTime fromKey(long key) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(key, 1_000_000L),
+                (int) Math.floorMod(key, 1_000_000L) * 1_000, ZoneOffset.UTC);
+    }
+
     public TaskDto deleteTask(Long taskId) {
         TaskEntity taskToDelete = taskRepository.findById(taskId)
                 .orElseThrow(() -> new IllegalArgumentException("Не найдена задача с id: " + taskId));
@@ -0,0 +1,71 @@
+-- Схема в том виде, в каком её создавал Hibernate (ddl-auto=update) по сущностям.
+-- На базах, созданных так, эта миграция не выполняется: Flyway ставит на них отметку версии 1
+-- (spring.flyway.baseline-on-migrate) и начинает со следующих миграций.
+
+create table users (
+    id bigint not null,
+    chat_id bigint not null unique,
+    created_at timestamp(6) with time zone not null,
+    display_name varchar(255),
+    primary key (id)
+);
+
+create table tasks (
+    id bigint generated by default as identity,
+    chat_id bigint not null,
+    completed_at timestamp(6) with time zone,
+    created_at timestamp(6) with time zone not null,
+    deadline timestamp(6),
+    description text,
+    priority varchar(32) not null check (priority in ('LOW','MEDIUM','HIGH')),
+    status varchar(32) not null check (status in ('UNCOMPLETED','IN_PROGRESS','COMPLETED')),
+    title varchar(255) not null,
+    user_id bigint not null,
+    primary key (id),
+    constraint fk_task_user foreign key (user_id) references users
+);
+
+create table habits (
+    id bigint generated by default as identity,
+    chat_id bigint not null,
+    created_at timestamp(6) with time zone not null,
+    description text,
+    goal_date date,
+    interval varchar(32) check (interval in ('EVERY_DAY','EVERY_WEEK','EVERY_WEEKEND','EVERY_WEEKDAY','EVERY_SUNDAY','EVERY_MONDAY','EVERY_TUESDAY','EVERY_WEDNESDAY','EVERY_THURSDAY','EVERY_FRIDAY','EVERY_SATURDAY')),
+    priority varchar(32) check (priority in ('LOW','MEDIUM','HIGH')),
+    status varchar(32) check (status in ('ARCHIVED','IN_PROGRESS','PAUSED','COMPLETED')),
+    title varchar(255) not null,
+    user_id bigint not null,
+    primary key (id),
+    constraint fk_habit_user foreign key (user_id) references users
+);
+
+create table habit_checkins (
+    id bigint generated by default as identity,
+    day date not null,
+    habit_id bigint not null,
+    primary key (id),
+    constraint uk_habit_day unique (habit_id, day),
+    constraint fk_checkin_habit foreign key (habit_id) references habits
+);
+
+create table bot_outbox (
+    id bigint generated by default as identity,
+    attempts integer not null,
+    available_at timestamp(6) with time zone not null,
+    body text not null,
+    chat_id bigint not null,
+    created_at timestamp(6) with time zone not null,
+    last_error varchar(512),
+    marker varchar(32),
+    mid varchar(255),
+    priority varchar(16) not null,
+    sent_at timestamp(6) with time zone,
+    seq bigint,
+    status varchar(16) not null check (status in ('NEW','SENDING','SENT','FAILED')),
+    primary key (id)
+);
+
+create index idx_tasks_chat_deadline on tasks (chat_id, deadline, id);
+create index idx_habits_chat on habits (chat_id, id);
+create index idx_bot_outbox_due on bot_outbox (status, available_at);
@@ -0,0 +1,27 @@
+-- Индексы под запросы репозиториев. CONCURRENTLY — без блокировки записи в живые таблицы,
+-- поэтому Flyway выполняет миграцию вне транзакции; IF NOT EXISTS — повторный запуск ничего не ломает.
+-- Уже есть: idx_tasks_chat_deadline (задачи чата по сроку, все статусы), idx_habits_chat (привычки чата по id),
+-- uk_habit_day (habit_id, day) — под отметки привычки за период, отдельный индекс для них не нужен.
+
+-- Незавершённые задачи чата по сроку: список «все» (keyset по (deadline, id) и хвост без срока по id),
+-- незавершённые на сегодня и на неделю. Завершённые задачи копятся, в этот индекс они не попадают.
+create index concurrently if not exists idx_tasks_chat_open_deadline
+    on tasks (chat_id, deadline, id) where status <> 'COMPLETED';
+
+-- Задачи чата с заданным статусом (findAllByChatIdAndStatus)
+create index concurrently if not exists idx_tasks_chat_status
+    on tasks (chat_id, status);
+
+-- Привычки чата в работе, keyset по id (findDueAfter / findDueBefore: статус в запросе — литерал)
+create index concurrently if not exists idx_habits_chat_in_progress
+    on habits (chat_id, id) where status = 'IN_PROGRESS';
+
+-- Привычки с наступившей целью по всем чатам (findAllByStatusAndGoalDateLessThanEqual)
+create index concurrently if not exists idx_habits_status_goal_date
+    on habits (status, goal_date);
+
+-- Внешние ключи на users: выборки по user_id и удаление пользователя каскадом
+create index concurrently if not exists idx_tasks_user
+    on tasks (user_id);
+create index concurrently if not exists idx_habits_user
+    on habits (user_id);
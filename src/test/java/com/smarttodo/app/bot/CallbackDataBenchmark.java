@@ -0,0 +1,82 @@
+package com.smarttodo.app.bot;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Разбор payload колбэка: как было (split(":") и перебор values() в роутере и ещё раз в менеджере,
+ * extractId через substring и Long.parseLong на каждое обращение) и один CallbackData.parse по таблице.
+ * Запуск — см. «Бенчмарки» в README.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CallbackDataBenchmark {
+
+    /** Колбэки карточки задачи и привычки (habits-id — последний в enum, дольше всех искался перебором) и колбэк без id */
+    @Param({"tasks-id:123456", "habits-id:987654321", "tasks-get-all"})
+    public String raw;
+
+    // ===== Прежний путь: роутер + pickTask/pickHabit =====
+
+    @Benchmark
+    public void legacy(Blackhole bh) {
+        Payload routed = legacyFrom(raw);                       // UpdateRouter
+        bh.consume(routed.hasId());
+        if (routed.hasId()) {
+            Payload picked = legacyFrom(raw);                   // pickTask / pickHabit
+            bh.consume(picked);
+            bh.consume(legacyExtractId(picked, raw));           // загрузка сущности
+            bh.consume(legacyExtractId(picked, raw));           // повторная загрузка для ответа
+        }
+    }
+
+    @Benchmark
+    public Payload legacyLookupOnly() {
+        return legacyFrom(raw);
+    }
+
+    // ===== Сейчас: один разбор на апдейт =====
+
+    @Benchmark
+    public void callbackData(Blackhole bh) {
+        CallbackData callback = CallbackData.parse(raw);
+        bh.consume(callback.hasId());
+        bh.consume(callback.payload());
+        bh.consume(callback.id());
+        bh.consume(callback.id());
+    }
+
+    @Benchmark
+    public Payload tableLookupOnly() {
+        return Payload.from(raw);
+    }
+
+    private static Payload legacyFrom(String raw) {
+        if (raw == null) return null;
+        String prefix = raw.contains(":") ? raw.split(":")[0] : raw;
+        for (Payload p : Payload.values()) {
+            if (p.key().equals(prefix)) {
+                return p;
+            }
+        }
+        return null;
+    }
+
+    private static Long legacyExtractId(Payload payload, String raw) {
+        if (!payload.hasId() || raw == null) return null;
+        int idx = raw.indexOf(':');
+        if (idx < 0 || idx == raw.length() - 1) return null;
+        String id = raw.substring(idx + 1);
+        try {
+            return Long.parseLong(id);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
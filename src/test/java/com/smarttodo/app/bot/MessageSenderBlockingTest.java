@@ -0,0 +1,154 @@
+package com.smarttodo.app.bot;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smarttodo.app.bot.session.ChatSessionStore;
+import com.smarttodo.app.bot.template.MessageTemplates;
+import com.smarttodo.app.client.MaxApi;
+import com.smarttodo.app.client.MaxCallPolicy;
+import com.smarttodo.app.client.MaxCircuitBreaker;
+import com.smarttodo.app.client.MaxRateLimiter;
+import com.smarttodo.app.client.OutboundDispatcher;
+import com.smarttodo.app.client.config.BreakerProps;
+import com.smarttodo.app.client.config.DispatchProps;
+import com.smarttodo.app.client.config.RateLimitProps;
+import com.smarttodo.app.client.config.RetryProps;
+import com.smarttodo.app.dto.MessageMeta;
+import com.smarttodo.app.llm.motivation.MotivationService;
+import com.smarttodo.app.service.HabitService;
+import com.smarttodo.app.service.MetricsService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.blockhound.BlockHound;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Путь отправки не должен блокировать неблокирующие потоки Reactor,
+ * а в коде обработки апдейтов не должно появляться новых .block().
+ */
+class MessageSenderBlockingTest {
+
+    private static final String SENT = """
+            {"message":{"body":{"mid":"mid-1","seq":7},"timestamp":1700000000000}}""";
+
+    @BeforeAll
+    static void installBlockHound() throws Exception {
+        // прогрев: первая отправка грузит классы из jar, это чтение файла, а не блокировка на пути запроса
+        newSender(sessions())
+                .send(1L, Map.of("text", "warm-up"), MessageMarker.WELCOME)
+                .toFuture()
+                .get(5, TimeUnit.SECONDS);
+        BlockHound.install();
+    }
+
+    @Test
+    void sendDoesNotBlockReactorThreads() throws Exception {
+        // сессия чата отвечает продолжением Mono (память ноды или неблокирующий клиент Redis) — имитируем задержку
+        ChatSessionStore sessions = sessions();
+        doAnswer(inv -> Mono.delay(Duration.ofMillis(5)).then())
+                .when(sessions).saveLastMessageAsync(anyLong(), any());
+
+        MessageSender sender = newSender(sessions);
+
+        MessageMeta meta = Mono.defer(() -> sender.send(42L, Map.of("text", "hi"), MessageMarker.WELCOME))
+                .subscribeOn(Schedulers.parallel())
+                .toFuture()
+                .get(5, TimeUnit.SECONDS);
+
+        assertEquals("mid-1", meta.mid());
+        assertEquals(MessageMarker.WELCOME, meta.marker());
+        verify(sessions).saveLastMessageAsync(42L, meta);
+    }
+
+    @Test
+    void noBlockCallsInUpdateHandling() throws IOException {
+        List<String> offenders;
+        try (Stream<Path> files = Stream.of("bot", "client", "llm")
+                .map(dir -> Path.of("src/main/java/com/smarttodo/app", dir))
+                .flatMap(MessageSenderBlockingTest::walk)) {
+            offenders = files
+                    .filter(f -> f.toString().endsWith(".java"))
+                    .filter(f -> read(f).contains(".block("))
+                    .map(Path::toString)
+                    .toList();
+        }
+        assertTrue(offenders.isEmpty(), "Blocking .block() calls on the update path: " + offenders);
+    }
+
+    private static ChatSessionStore sessions() {
+        ChatSessionStore sessions = mock(ChatSessionStore.class);
+        when(sessions.saveLastMessageAsync(anyLong(), any())).thenReturn(Mono.empty());
+        return sessions;
+    }
+
+    private static MessageSender newSender(ChatSessionStore sessions) {
+        WebClient client = WebClient.builder()
+                .exchangeFunction(req -> Mono.just(ClientResponse.create(HttpStatus.OK)
+                        .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .body(SENT)
+                        .build()))
+                .build();
+        RateLimitProps props = new RateLimitProps(0, 0, 0, 0, 0, 0);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        MaxCallPolicy policy = new MaxCallPolicy(
+                new MaxCircuitBreaker(new BreakerProps(null, 0, 0, null, 0, null, 0), registry),
+                new RetryProps(0, null, 0, 0, 0),
+                registry);
+
+        return new MessageSender(
+                new MaxApi(client,
+                        new MaxRateLimiter(props, registry),
+                        new OutboundDispatcher(new DispatchProps(0, null, null), registry),
+                        policy,
+                        props),
+                sessions,
+                mock(MetricsService.class),
+                mock(MotivationService.class),
+                mock(HabitService.class),
+                new MessageTemplates(new ObjectMapper()),
+                new UiProps(true, 0),
+                registry,
+                new DeferredSends(new DeferProps(0, null, null), policy, registry)
+        );
+    }
+
+    private static Stream<Path> walk(Path dir) {
+        try {
+            return Files.walk(dir);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String read(Path file) {
+        try {
+            return Files.readString(file);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.smarttodo.app.bot;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smarttodo.app.bot.session.ChatSessionStore;
+import com.smarttodo.app.bot.template.MessageTemplates;
+import com.smarttodo.app.client.MaxApi;
+import com.smarttodo.app.client.MaxCallPolicy;
+import com.smarttodo.app.client.MaxCircuitBreaker;
+import com.smarttodo.app.dto.SendMessageResult;
+import com.smarttodo.app.llm.motivation.MotivationService;
+import com.smarttodo.app.service.HabitService;
+import com.smarttodo.app.service.MetricsService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Отправка при недоступном MAX: откладывается только вызов MAX, работа шага до него не повторяется,
+ * а следующие отправки чата ждут отложенную и не обгоняют её.
+ */
+class MessageSenderDeferTest {
+
+    private static final Map<String, String> FIRST = Map.of("text", "first");
+    private static final Map<String, String> SECOND = Map.of("text", "second");
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final MaxApi maxApi = mock(MaxApi.class);
+    private final MaxCallPolicy policy = mock(MaxCallPolicy.class);
+    private final DeferredSends deferred = new DeferredSends(new DeferProps(0, null, null), policy, registry);
+    private final MessageSender sender = new MessageSender(maxApi, mock(ChatSessionStore.class),
+            mock(MetricsService.class), mock(MotivationService.class), mock(HabitService.class),
+            new MessageTemplates(new ObjectMapper()), new UiProps(true, 0), registry, deferred);
+
+    @Test
+    void parkedSendBlocksChatAndRetriesOnlyMaxCall() {
+        when(policy.state()).thenReturn(MaxCircuitBreaker.State.CLOSED);
+        when(maxApi.postMessage(eq(42L), eq(FIRST)))
+                .thenReturn(Mono.error(new MaxApi.MaxUnavailableException(Duration.ofSeconds(1))), Mono.just(sent()));
+        when(maxApi.postMessage(eq(42L), eq(SECOND))).thenReturn(Mono.just(sent()));
+
+        AtomicInteger parsed = new AtomicInteger();
+        sender.submit(42L, Mono.fromCallable(parsed::incrementAndGet).then(sender.post(42L, FIRST)));
+        sender.submit(42L, sender.post(42L, SECOND));
+
+        // первый шаг отложен — второй стоит за ним в очереди чата
+        verify(maxApi, after(200).never()).postMessage(42L, SECOND);
+
+        deferred.drain();
+        InOrder order = inOrder(maxApi);
+        order.verify(maxApi, timeout(1_000).times(2)).postMessage(42L, FIRST);
+        order.verify(maxApi, timeout(1_000)).postMessage(42L, SECOND);
+        assertEquals(1, parsed.get(), "work before the MAX call must not be repeated");
+    }
+
+    @Test
+    void expiredSendFailsStepAndReleasesChat() throws Exception {
+        when(policy.state()).thenReturn(MaxCircuitBreaker.State.CLOSED);
+        when(maxApi.postMessage(eq(42L), eq(FIRST)))
+                .thenReturn(Mono.error(new MaxApi.MaxUnavailableException(Duration.ofSeconds(1))));
+        when(maxApi.postMessage(eq(42L), eq(SECOND))).thenReturn(Mono.just(sent()));
+        DeferredSends expiring = new DeferredSends(new DeferProps(0, Duration.ofNanos(1), Duration.ofNanos(1)), policy, registry);
+        MessageSender sender = new MessageSender(maxApi, mock(ChatSessionStore.class),
+                mock(MetricsService.class), mock(MotivationService.class), mock(HabitService.class),
+                new MessageTemplates(new ObjectMapper()), new UiProps(true, 0), registry, expiring);
+
+        Mono<Integer> outcome = sender.track(() -> sender.submit(42L, sender.post(42L, FIRST)));
+        sender.submit(42L, sender.post(42L, SECOND));
+        verify(maxApi, after(100).never()).postMessage(42L, SECOND);
+
+        Thread.sleep(5);
+        expiring.drain();
+        assertThrows(MaxApi.MaxUnavailableException.class, () -> {
+            try {
+                outcome.toFuture().get(1, TimeUnit.SECONDS);
+            } catch (ExecutionException e) {
+                throw e.getCause();
+            }
+        });
+        verify(maxApi, timeout(1_000)).postMessage(42L, SECOND);
+        verify(maxApi, times(1)).postMessage(42L, FIRST);
+        verify(maxApi, never()).editMessage(anyLong(), any(), any());
+    }
+
+    private static SendMessageResult sent() {
+        SendMessageResult.MessageDto.Body body = new SendMessageResult.MessageDto.Body();
+        body.setMid("mid-1");
+        body.setSeq(7L);
+        SendMessageResult.MessageDto message = new SendMessageResult.MessageDto();
+        message.setBody(body);
+        message.setTs(1_700_000_000_000L);
+        SendMessageResult res = new SendMessageResult();
+        res.setMessage(message);
+        return res;
+    }
+}
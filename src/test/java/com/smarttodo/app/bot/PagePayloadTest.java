@@ -0,0 +1,43 @@
+package com.smarttodo.app.bot;
+
+import com.smarttodo.app.dto.PageCursor;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Кнопки страниц: курсор из кнопки разбирается обратно без потерь, в том числе на границах
+ * (первая страница, хвост без срока), а испорченный payload даёт null, а не исключение.
+ */
+class PagePayloadTest {
+
+    @Test
+    void cursorSurvivesRoundTrip() {
+        for (PageCursor cursor : new PageCursor[]{
+                PageCursor.FIRST,
+                PageCursor.after(PageCursor.NO_KEY, 42),
+                PageCursor.before(PageCursor.NO_KEY, 42),
+                PageCursor.after(-1_000_000L, 7),
+                PageCursor.before(1_735_758_000_000_000L, Long.MAX_VALUE)}) {
+            assertEquals(new PagePayload(Payload.TASKS_PAGE, "all", cursor), parse(PagePayload.of(Payload.TASKS_PAGE, "all", cursor)));
+            assertEquals(new PagePayload(Payload.HABITS_PAGE, "week", cursor), parse(PagePayload.of(Payload.HABITS_PAGE, "week", cursor)));
+        }
+    }
+
+    @Test
+    void malformedPayloadIsNull() {
+        for (String raw : new String[]{
+                "tasks-page", "tasks-page:", "tasks-page:all", "tasks-page:all:f", "tasks-page:all:f:1",
+                "tasks-page:all:x:1:2", "tasks-page:all:f:1:2:3", "tasks-page:all:f::2", "tasks-page:all:f:1:",
+                "tasks-page:all:f:a:2", "tasks-page:all:ff:1:2"}) {
+            assertNull(parse(raw), raw);
+        }
+        assertNull(PagePayload.parse(CallbackData.parse("tasks-menu"), "tasks-menu"));
+        assertNull(PagePayload.parse(null, "tasks-page:all:f:1:2"));
+    }
+
+    private static PagePayload parse(String raw) {
+        return PagePayload.parse(CallbackData.parse(raw), raw);
+    }
+}
@@ -0,0 +1,66 @@
+package com.smarttodo.app.bot;
+
+import com.smarttodo.app.bot.ingest.AdmissionController;
+import com.smarttodo.app.bot.session.ChatSessionStore;
+import com.smarttodo.app.dto.MessageMeta;
+import com.smarttodo.app.entity.Update;
+import com.smarttodo.app.service.UserService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * bot.admission.shed считает только апдейты, в которых разбор LLM действительно заменён коротким ответом,
+ * а не каждый апдейт, пришедший при перегрузке.
+ */
+class UpdateRouterShedTest {
+
+    private static final long CHAT = 42;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final MessageSender sender = mock(MessageSender.class);
+    private final ChatSessionStore sessions = mock(ChatSessionStore.class);
+    private final TaskManager taskManager = mock(TaskManager.class);
+    private final UpdateRouter router = new UpdateRouter(sender, mock(UserService.class), sessions,
+            taskManager, mock(HabitManager.class), registry);
+
+    @Test
+    void countsShedOnlyWhenLlmIsReplaced() {
+        router.dispatch(text(MessageMarker.CREATE_TASK), true);
+
+        verify(taskManager, never()).parseTextWithLlm(any());
+        verify(sender).sendText(eq(CHAT), anyString());
+        assertEquals(1.0, shed());
+    }
+
+    @Test
+    void degradedUpdateWithoutLlmIsNotCounted() {
+        router.dispatch(text(MessageMarker.CHANGE_TASK_TITLE), true);
+        router.dispatch(text(MessageMarker.CREATE_TASK), false);
+
+        assertEquals(0.0, shed());
+    }
+
+    private Update text(MessageMarker marker) {
+        Update u = mock(Update.class);
+        when(u.isText()).thenReturn(true);
+        when(u.chatId()).thenReturn(CHAT);
+        when(sessions.lastMessage(CHAT)).thenReturn(Optional.of(new MessageMeta("mid", 1, 1L, marker, 0)));
+        return u;
+    }
+
+    private double shed() {
+        var counter = registry.find(AdmissionController.SHED_METRIC).counter();
+        return counter == null ? 0.0 : counter.count();
+    }
+}
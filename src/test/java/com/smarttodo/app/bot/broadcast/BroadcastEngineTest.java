@@ -0,0 +1,111 @@
+package com.smarttodo.app.bot.broadcast;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smarttodo.app.bot.DeferProps;
+import com.smarttodo.app.bot.DeferredSends;
+import com.smarttodo.app.bot.MessageSender;
+import com.smarttodo.app.bot.UiProps;
+import com.smarttodo.app.bot.session.ChatSessionStore;
+import com.smarttodo.app.bot.template.MessageTemplates;
+import com.smarttodo.app.client.MaxApi;
+import com.smarttodo.app.client.MaxCallPolicy;
+import com.smarttodo.app.client.SendPriority;
+import com.smarttodo.app.dto.MessageMeta;
+import com.smarttodo.app.dto.SendMessageResult;
+import com.smarttodo.app.entity.UserEntity;
+import com.smarttodo.app.llm.motivation.MotivationService;
+import com.smarttodo.app.repository.UserRepository;
+import com.smarttodo.app.service.HabitService;
+import com.smarttodo.app.service.MetricsService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Рассылка не заводит сессию каждому получателю: последние сообщения собираются по странице пользователей
+ * и записываются одной пачкой на страницу.
+ */
+class BroadcastEngineTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final UserRepository users = mock(UserRepository.class);
+    private final ChatSessionStore sessions = mock(ChatSessionStore.class);
+    private final MaxApi maxApi = mock(MaxApi.class);
+    private final MessageSender sender = new MessageSender(maxApi, sessions,
+            mock(MetricsService.class), mock(MotivationService.class), mock(HabitService.class),
+            new MessageTemplates(new ObjectMapper()), new UiProps(true, 0), registry,
+            new DeferredSends(new DeferProps(0, null, null), mock(MaxCallPolicy.class), registry));
+    private final BroadcastEngine engine = new BroadcastEngine(users, sender, sessions, new BroadcastProps(2, 2, 4), registry);
+
+    @AfterEach
+    void tearDown() {
+        engine.destroy();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void lastMessagesAreSavedOncePerPage() {
+        when(users.findByIdGreaterThanOrderByIdAsc(anyLong(), any())).thenAnswer(inv -> {
+            long after = inv.getArgument(0);
+            return List.of(new UserEntity(1L, 101L), new UserEntity(2L, 102L), new UserEntity(3L, 103L)).stream()
+                    .filter(u -> u.getId() > after)
+                    .limit(2)
+                    .toList();
+        });
+        when(maxApi.postMessage(anyLong(), any())).thenAnswer(inv -> Mono.just(sent("mid-" + inv.getArgument(0))));
+        List<Map<Long, MessageMeta>> batches = new ArrayList<>();
+        doAnswer(inv -> batches.add(Map.copyOf(inv.getArgument(0)))).when(sessions).saveLastMessages(any());
+
+        BroadcastEngine.BroadcastReport report = engine.run("test", SendPriority.BULK, sender::sendStartKeyboard)
+                .block(Duration.ofSeconds(5));
+
+        assertEquals(3, report.sent());
+        verify(sessions, never()).saveLastMessageAsync(anyLong(), any());
+        verify(sessions, times(2)).saveLastMessages(any());
+        assertEquals(Set.of(Set.of(101L, 102L), Set.of(103L)), Set.copyOf(batches.stream().map(Map::keySet).toList()));
+        assertEquals("mid-103", batches.stream().filter(b -> b.containsKey(103L)).findFirst().orElseThrow().get(103L).mid());
+    }
+
+    @Test
+    void interactiveSendStillSavesToSession() {
+        when(maxApi.postMessage(eq(7L), any())).thenReturn(Mono.just(sent("mid-7")));
+        when(sessions.saveLastMessageAsync(anyLong(), any())).thenReturn(Mono.empty());
+
+        sender.send(7L, Map.of("text", "hi"), null).block(Duration.ofSeconds(5));
+
+        ArgumentCaptor<MessageMeta> meta = ArgumentCaptor.forClass(MessageMeta.class);
+        verify(sessions).saveLastMessageAsync(eq(7L), meta.capture());
+        assertEquals("mid-7", meta.getValue().mid());
+    }
+
+    private static SendMessageResult sent(String mid) {
+        SendMessageResult.MessageDto.Body body = new SendMessageResult.MessageDto.Body();
+        body.setMid(mid);
+        body.setSeq(1L);
+        SendMessageResult.MessageDto message = new SendMessageResult.MessageDto();
+        message.setBody(body);
+        message.setTs(1L);
+        SendMessageResult res = new SendMessageResult();
+        res.setMessage(message);
+        return res;
+    }
+}
@@ -0,0 +1,98 @@
+package com.smarttodo.app.bot.ingest;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Два уровня дедупликации: локальный LRU и SET NX в Redis с пропуском апдейта при недоступности Redis.
+ */
+class UpdateDeduplicatorTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final StringRedisTemplate redis = mock(StringRedisTemplate.class);
+    @SuppressWarnings("unchecked")
+    private final ValueOperations<String, String> values = mock(ValueOperations.class);
+
+    private UpdateDeduplicator dedup(int capacity) {
+        when(redis.opsForValue()).thenReturn(values);
+        return new UpdateDeduplicator(redis, new IngestProps(false, 0, 0, capacity, null), registry);
+    }
+
+    @Test
+    void localRepeatIsDuplicate() {
+        UpdateDeduplicator dedup = dedup(16);
+
+        assertTrue(dedup.firstSeenLocally("e1"));
+        assertFalse(dedup.firstSeenLocally("e1"));
+        assertEquals(1.0, registry.get("bot.ingest.duplicates").tag("layer", "local").counter().count());
+    }
+
+    @Test
+    void leastRecentlySeenIsEvictedFirst() {
+        UpdateDeduplicator dedup = dedup(2);
+
+        assertTrue(dedup.firstSeenLocally("e1"));
+        assertTrue(dedup.firstSeenLocally("e2"));
+        assertFalse(dedup.firstSeenLocally("e1"));   // e1 снова свежий, e2 — самый старый
+        assertTrue(dedup.firstSeenLocally("e3"));    // вытесняет e2
+
+        assertFalse(dedup.firstSeenLocally("e1"));
+        assertFalse(dedup.firstSeenLocally("e3"));
+        assertTrue(dedup.firstSeenLocally("e2"));
+    }
+
+    @Test
+    void forgottenEventIsSeenAgain() {
+        UpdateDeduplicator dedup = dedup(16);
+
+        assertTrue(dedup.firstSeenLocally("e1"));
+        dedup.forget("e1");
+        assertTrue(dedup.firstSeenLocally("e1"));
+    }
+
+    @Test
+    void updatesWithoutEventIdAreNotFiltered() {
+        UpdateDeduplicator dedup = dedup(16);
+
+        assertTrue(dedup.firstSeenLocally(null));
+        assertTrue(dedup.firstSeenLocally(""));
+        assertTrue(dedup.firstSeenLocally(""));
+        assertTrue(dedup.firstSeenGlobally(null));
+    }
+
+    @Test
+    void redisKeyAlreadySetIsDuplicate() {
+        UpdateDeduplicator dedup = dedup(16);
+        when(values.setIfAbsent(eq("bot:update-seen:e1"), anyString(), any(Duration.class)))
+                .thenReturn(true, false);
+
+        assertTrue(dedup.firstSeenGlobally("e1"));
+        assertFalse(dedup.firstSeenGlobally("e1"));
+        assertEquals(1.0, registry.get("bot.ingest.duplicates").tag("layer", "redis").counter().count());
+    }
+
+    @Test
+    void unavailableRedisLetsUpdateThrough() {
+        UpdateDeduplicator dedup = dedup(16);
+        when(values.setIfAbsent(anyString(), anyString(), any(Duration.class)))
+                .thenThrow(new RedisConnectionFailureException("down"));
+
+        assertTrue(dedup.firstSeenGlobally("e1"));
+        assertTrue(dedup.firstSeenGlobally("e1"));
+        assertEquals(0.0, registry.get("bot.ingest.duplicates").tag("layer", "redis").counter().count());
+    }
+}
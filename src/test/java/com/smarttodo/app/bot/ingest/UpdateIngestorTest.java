@@ -0,0 +1,178 @@
+package com.smarttodo.app.bot.ingest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smarttodo.app.bot.UpdateRouter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Приём апдейтов под нагрузкой: через роутер одновременно проходит не больше maxInFlight апдейтов,
+ * апдейт без слота или с ошибкой приёма не обрабатывается и не теряется — повторная доставка не считается дублем.
+ */
+class UpdateIngestorTest {
+
+    private static final int MAX_IN_FLIGHT = 2;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final UpdateRouter router = mock(UpdateRouter.class);
+    private final AtomicInteger current = new AtomicInteger();
+    private final AtomicInteger peak = new AtomicInteger();
+    private final AtomicInteger dispatched = new AtomicInteger();
+    private UpdateLanes lanes;
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        if (lanes != null) lanes.destroy();
+    }
+
+    @Test
+    void syncWebhookWithoutPermitIsRejectedAndNotDispatched() throws Exception {
+        UpdateIngestor ingestor = ingestor(false, Duration.ofMillis(20));
+        slowRouter(Duration.ofMillis(100), null);
+
+        int webhooks = 16;
+        ExecutorService pool = Executors.newFixedThreadPool(webhooks);
+        List<Future<IngestResult>> results = new ArrayList<>();
+        CountDownLatch start = new CountDownLatch(1);
+        for (int i = 0; i < webhooks; i++) {
+            byte[] body = body("e" + i, i);
+            results.add(pool.submit(() -> {
+                start.await();
+                return ingestor.ingest(body);
+            }));
+        }
+        start.countDown();
+
+        int accepted = 0;
+        List<Integer> rejected = new ArrayList<>();
+        for (int i = 0; i < webhooks; i++) {
+            IngestResult r = results.get(i).get(5, TimeUnit.SECONDS);
+            if (r == IngestResult.ACCEPTED) accepted++;
+            if (r == IngestResult.REJECTED) rejected.add(i);
+        }
+        pool.shutdown();
+
+        assertTrue(peak.get() <= MAX_IN_FLIGHT, "peak concurrency " + peak.get());
+        assertTrue(!rejected.isEmpty(), "permits were never saturated");
+        assertEquals(accepted, dispatched.get());
+
+        // повторная доставка отклонённого апдейта — не дубль, он обрабатывается
+        int retry = rejected.getFirst();
+        assertEquals(IngestResult.ACCEPTED, ingestor.ingest(body("e" + retry, retry)));
+        assertEquals(accepted + 1, dispatched.get());
+    }
+
+    @Test
+    void lanesWaitForPermitAndNeverExceedMaxInFlight() throws Exception {
+        UpdateIngestor ingestor = ingestor(true, Duration.ofMillis(1));
+        int updates = 20;
+        CountDownLatch done = new CountDownLatch(updates);
+        slowRouter(Duration.ofMillis(20), done);
+
+        for (int i = 0; i < updates; i++) {
+            assertEquals(IngestResult.ACCEPTED, ingestor.ingest(body("e" + i, i)));
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS), "not all updates were processed");
+        assertEquals(updates, dispatched.get());
+        assertTrue(peak.get() <= MAX_IN_FLIGHT, "peak concurrency " + peak.get());
+    }
+
+    @Test
+    void failedSyncProcessingIsNotRememberedAsDuplicate() {
+        UpdateIngestor ingestor = ingestor(false, Duration.ofMillis(20));
+        doThrow(new IllegalStateException("boom")).doNothing().when(router).dispatch(any(), anyBoolean());
+
+        assertThrows(IllegalStateException.class, () -> ingestor.ingest(body("e1", 1)));
+        assertEquals(IngestResult.ACCEPTED, ingestor.ingest(body("e1", 1)));
+        assertEquals(IngestResult.DUPLICATE, ingestor.ingest(body("e1", 1)));
+    }
+
+    @Test
+    void failedJournalAppendIsNotRememberedAsDuplicate() throws Exception {
+        UpdateJournal journal = mock(UpdateJournal.class);
+        when(journal.append(any()))
+                .thenThrow(new UncheckedIOException(new IOException("disk full")))
+                .thenReturn(7L);
+        UpdateIngestor ingestor = ingestor(true, Duration.ofMillis(1), journal);
+        CountDownLatch done = new CountDownLatch(1);
+        slowRouter(Duration.ZERO, done);
+
+        assertThrows(UncheckedIOException.class, () -> ingestor.ingest(body("e1", 1)));
+        assertEquals(IngestResult.ACCEPTED, ingestor.ingest(body("e1", 1)));
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        verify(journal, timeout(1_000)).complete(7L);
+        assertEquals(1, dispatched.get());
+    }
+
+    private UpdateIngestor ingestor(boolean async, Duration maxWait) {
+        return ingestor(async, maxWait, new UpdateJournal(new JournalProps(false, null, null)));
+    }
+
+    private UpdateIngestor ingestor(boolean async, Duration maxWait, UpdateJournal journal) {
+        IngestProps props = new IngestProps(async, 8, 64, 0, null);
+        lanes = new UpdateLanes(props, registry);
+        AdmissionController admission = new AdmissionController(
+                new AdmissionProps(MAX_IN_FLIGHT, maxWait, 1_000, 10_000), lanes, registry);
+
+        StringRedisTemplate redis = mock(StringRedisTemplate.class);
+        @SuppressWarnings("unchecked")
+        ValueOperations<String, String> values = mock(ValueOperations.class);
+        when(redis.opsForValue()).thenReturn(values);
+        when(values.setIfAbsent(anyString(), anyString(), any(Duration.class))).thenReturn(true);
+
+        return new UpdateIngestor(props, new UpdateParser(new ObjectMapper()), router, lanes,
+                new UpdateDeduplicator(redis, props, registry), admission, journal);
+    }
+
+    private void slowRouter(Duration work, CountDownLatch done) {
+        doAnswer(inv -> {
+            peak.accumulateAndGet(current.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(work.toMillis());
+            } finally {
+                current.decrementAndGet();
+                dispatched.incrementAndGet();
+                if (done != null) done.countDown();
+            }
+            return null;
+        }).when(router).dispatch(any(), anyBoolean());
+    }
+
+    static byte[] body(String eventId, long chatId) {
+        return ("""
+                {"event_id":"%s","update_type":"message_created",
+                 "message":{"recipient":{"chat_id":%d},"sender":{"user_id":%d},"body":{"text":"hi"}}}"""
+                .formatted(eventId, chatId, chatId)).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,164 @@
+package com.smarttodo.app.bot.ingest;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Восстановление журнала после остановки: проигрываются записи, принятые, но не обработанные;
+ * оборванная или испорченная запись отсекает хвост, а не ломает открытие; сегменты сменяют друг друга
+ * и удаляются, когда всё в них обработано.
+ */
+class UpdateJournalTest {
+
+    private static final int HEADER = 8;
+
+    @TempDir
+    Path dir;
+
+    private UpdateJournal journal;
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (journal != null) journal.destroy();
+    }
+
+    @Test
+    void replaysAcceptedButNotCompletedUpdates() throws IOException {
+        journal = open(DataSize.ofKilobytes(4));
+        long a = journal.append(bytes("a"));
+        journal.append(bytes("b"));
+        long c = journal.append(bytes("c"));
+        journal.complete(a);
+        journal.complete(c);    // чекпоинт стоит на b: c проиграется ещё раз, повтор отсечёт дедупликация
+
+        List<String> replayed = reopen(DataSize.ofKilobytes(4));
+        assertEquals(List.of("b", "c"), replayed);
+
+        // проигранное и обработанное больше не возвращается
+        assertEquals(List.of(), reopen(DataSize.ofKilobytes(4)));
+    }
+
+    @Test
+    void newUpdatesDoNotMoveCheckpointPastReplayedOnes() throws IOException {
+        journal = open(DataSize.ofKilobytes(4));
+        journal.append(bytes("a"));
+        journal.destroy();
+
+        journal = open(DataSize.ofKilobytes(4));
+        journal.replay((offset, body) -> {});              // проигранное ещё не обработано
+        journal.complete(journal.append(bytes("b")));
+
+        assertEquals(List.of("a", "b"), reopen(DataSize.ofKilobytes(4)));
+    }
+
+    @Test
+    void tornRecordIsCutOffAndOverwritten() throws IOException {
+        journal = open(DataSize.ofKilobytes(4));
+        journal.append(bytes("a"));
+        journal.append(bytes("b"));
+        journal.destroy();
+        journal = null;
+
+        // нода упала посреди записи: заголовок есть, тела — только начало
+        long end = 2L * (HEADER + 1);
+        try (RandomAccessFile f = new RandomAccessFile(segment(0).toFile(), "rw")) {
+            f.seek(end);
+            f.writeInt(100);
+            f.writeInt(12345);
+            f.write(bytes("torn"));
+        }
+
+        journal = open(DataSize.ofKilobytes(4));
+        assertEquals(end, journal.append(bytes("c")));     // новая запись ложится на место оборванной
+        assertEquals(List.of("a", "b", "c"), reopen(DataSize.ofKilobytes(4)));
+    }
+
+    @Test
+    void crcMismatchStopsRecoveryAtCorruptRecord() throws IOException {
+        journal = open(DataSize.ofKilobytes(4));
+        journal.append(bytes("a"));
+        long b = journal.append(bytes("b"));
+        journal.append(bytes("c"));
+        journal.destroy();
+        journal = null;
+
+        try (RandomAccessFile f = new RandomAccessFile(segment(0).toFile(), "rw")) {
+            f.seek(b + HEADER);
+            f.write('x');
+        }
+
+        assertEquals(List.of("a"), reopen(DataSize.ofKilobytes(4)));
+    }
+
+    @Test
+    void recordsSpanSegmentsAndProcessedSegmentsAreDeleted() throws IOException {
+        // по две записи на сегмент
+        DataSize size = DataSize.ofBytes(2 * (HEADER + 20) + 4);
+        journal = open(size);
+        List<Long> offsets = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            offsets.add(journal.append(bytes("%020d".formatted(i))));
+        }
+        assertEquals(3, segments());
+
+        journal.destroy();
+        journal = open(size);
+        List<String> replayed = new ArrayList<>();
+        List<Long> replayedOffsets = new ArrayList<>();
+        journal.replay((offset, body) -> {
+            replayedOffsets.add(offset);
+            replayed.add(new String(body, StandardCharsets.UTF_8));
+        });
+        assertEquals(offsets, replayedOffsets);
+        assertEquals("%020d".formatted(4), replayed.get(4));
+
+        replayedOffsets.forEach(journal::complete);
+        assertEquals(1, segments());
+        assertEquals(List.of(), reopen(size));
+    }
+
+    private UpdateJournal open(DataSize segmentSize) {
+        return new UpdateJournal(new JournalProps(true, dir, segmentSize));
+    }
+
+    /** Перезапуск: проигрывает журнал, отмечая всё обработанным, и возвращает тела по порядку */
+    private List<String> reopen(DataSize segmentSize) throws IOException {
+        if (journal != null) journal.destroy();
+        journal = open(segmentSize);
+        List<String> bodies = new ArrayList<>();
+        List<Long> offsets = new ArrayList<>();
+        journal.replay((offset, body) -> {
+            offsets.add(offset);
+            bodies.add(new String(body, StandardCharsets.UTF_8));
+        });
+        offsets.forEach(journal::complete);
+        return bodies;
+    }
+
+    private Path segment(long base) {
+        return dir.resolve(String.format("%020d.journal", base));
+    }
+
+    private long segments() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(p -> p.toString().endsWith(".journal")).count();
+        }
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
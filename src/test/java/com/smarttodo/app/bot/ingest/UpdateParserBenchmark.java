@@ -0,0 +1,87 @@
+package com.smarttodo.app.bot.ingest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.smarttodo.app.entity.Update;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Разбор тела вебхука: как было (строка, om.readValue в Update, повторная сериализация и toString для логов)
+ * и потоковым UpdateParser. Тела — типичные сообщение и нажатие кнопки от MAX со всеми полями, которые бот не читает.
+ * Запуск — см. «Бенчмарки» в README.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UpdateParserBenchmark {
+
+    private static final byte[] MESSAGE = """
+            {"update_type":"message_created","timestamp":1760659200000,"event_id":"2f1c9a7e-5b1d-4c3a-9e2f-1a2b3c4d5e6f",
+             "user_locale":"ru",
+             "message":{"sender":{"user_id":100200300,"first_name":"Иван","last_name":"Петров","username":"ivan",
+                                  "is_bot":false,"last_activity_time":1760659199000,"name":"Иван Петров"},
+                        "recipient":{"chat_id":400500600,"chat_type":"dialog","user_id":700800900},
+                        "timestamp":1760659200000,
+                        "body":{"mid":"mid.0000000000000001","seq":115301234567890,
+                                "text":"Купить молоко завтра в 19:00, 2 литра, обезжиренное","attachments":null,
+                                "markup":[{"type":"strong","from":0,"length":6}]},
+                        "stat":{"views":1},"url":"https://max.ru/c/400500600/mid.0000000000000001"}}
+            """.getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] CALLBACK = """
+            {"update_type":"message_callback","timestamp":1760659260000,"event_id":"8a7b6c5d-4e3f-2a1b-0c9d-8e7f6a5b4c3d",
+             "user_locale":"ru",
+             "callback":{"timestamp":1760659260000,"callback_id":"cb.0000000000000002","payload":"TASKS_PAGE:1760659200:42",
+                         "user":{"user_id":100200300,"first_name":"Иван","last_name":"Петров","username":"ivan",
+                                 "is_bot":false,"last_activity_time":1760659259000,"name":"Иван Петров"}},
+             "message":{"sender":{"user_id":1,"first_name":"SmartTodo","username":"smarttodo_bot","is_bot":true},
+                        "recipient":{"chat_id":400500600,"chat_type":"dialog","user_id":100200300},
+                        "timestamp":1760659200000,
+                        "body":{"mid":"mid.0000000000000002","seq":115301234567891,"text":"📋 Все незавершенные задачи",
+                                "attachments":[{"type":"inline_keyboard","payload":{"buttons":[
+                                  [{"type":"callback","text":"⬅️","payload":"TASKS_PAGE:0:0"}],
+                                  [{"type":"callback","text":"➡️","payload":"TASKS_PAGE:1760659200:42"}],
+                                  [{"type":"callback","text":"🏠 Профиль","payload":"HOME_PAGE"}]]}}]}}}
+            """.getBytes(StandardCharsets.UTF_8);
+
+    private final ObjectMapper om = new ObjectMapper()
+            .setPropertyNamingStrategy(PropertyNamingStrategies.SNAKE_CASE);   // как spring.jackson в application.properties
+    private final UpdateParser parser = new UpdateParser(om);
+
+    @Param({"message", "callback"})
+    public String kind;
+
+    private byte[] body;
+
+    @Setup
+    public void setUp() {
+        body = "message".equals(kind) ? MESSAGE : CALLBACK;
+    }
+
+    /** Прежний путь: @RequestBody String, om.readValue, лог через writeValueAsString и Update.toString */
+    @Benchmark
+    public void databindAndDump(Blackhole bh) throws Exception {
+        Update u = om.readValue(new String(body, StandardCharsets.UTF_8), Update.class);
+        bh.consume(om.writeValueAsString(u));
+        bh.consume(u.toString());
+        bh.consume(u);
+    }
+
+    /** Только разбор через databind — без логов, для честного сравнения самого парсинга */
+    @Benchmark
+    public Update databind() throws Exception {
+        return om.readValue(body, Update.class);
+    }
+
+    @Benchmark
+    public Update streaming() {
+        return parser.parse(body);
+    }
+}
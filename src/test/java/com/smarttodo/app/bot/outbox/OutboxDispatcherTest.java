@@ -0,0 +1,110 @@
+package com.smarttodo.app.bot.outbox;
+
+import com.smarttodo.app.bot.MessageSender;
+import com.smarttodo.app.bot.session.ChatSessionStore;
+import com.smarttodo.app.client.MaxApi;
+import com.smarttodo.app.client.MaxCallPolicy;
+import com.smarttodo.app.dto.MessageMeta;
+import com.smarttodo.app.entity.OutboxMessageEntity;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Строка outbox, ждущая в очереди чата дольше аренды, остаётся за этой нодой: аренда продлевается,
+ * а повторный заход в БД её не забирает — сообщение не уходит дважды.
+ */
+class OutboxDispatcherTest {
+
+    private static final Duration LEASE = Duration.ofMillis(40);
+
+    private final Outbox outbox = mock(Outbox.class);
+    private final MessageSender messageSender = mock(MessageSender.class);
+    private final MaxCallPolicy policy = mock(MaxCallPolicy.class);
+    private final ChatSessionStore sessions = mock(ChatSessionStore.class);
+    private final OutboxDispatcher dispatcher = new OutboxDispatcher(outbox, new OutboxProps(0, 0, LEASE, 0, null),
+            messageSender, sessions, policy, new SimpleMeterRegistry());
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void queuedRowIsRenewedAndNotClaimedAgain() throws Exception {
+        when(outbox.claim(anyInt(), any())).thenReturn(List.of(row(7L)), List.of());
+        when(messageSender.postOnce(anyLong(), any())).thenReturn(Mono.never());
+
+        dispatcher.poll();
+        verify(messageSender).submit(eq(42L), any());   // шаг стоит в очереди чата и не выполняется
+
+        Thread.sleep(LEASE.toMillis());
+        dispatcher.renewLeases();
+        ArgumentCaptor<Collection<Long>> renewed = ArgumentCaptor.forClass(Collection.class);
+        verify(outbox).renew(renewed.capture());
+        assertEquals(List.of(7L), List.copyOf(renewed.getValue()));
+
+        dispatcher.poll();
+        ArgumentCaptor<Set<Long>> held = ArgumentCaptor.forClass(Set.class);
+        verify(outbox, times(2)).claim(anyInt(), held.capture());
+        assertTrue(held.getValue().contains(7L), "in-flight row must be skipped on the next claim");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void finishedRowIsNoLongerRenewed() throws Exception {
+        when(outbox.claim(anyInt(), any())).thenReturn(List.of(row(7L)));
+        when(messageSender.postOnce(anyLong(), any())).thenReturn(Mono.error(new MaxApi.MaxClientException("bad request")));
+
+        dispatcher.poll();
+        ArgumentCaptor<Mono<?>> step = ArgumentCaptor.forClass(Mono.class);
+        verify(messageSender).submit(eq(42L), step.capture());
+        step.getValue().block(Duration.ofSeconds(5));
+        verify(outbox, timeout(1_000)).markFailed(eq(7L), any());
+
+        Thread.sleep(LEASE.toMillis());
+        dispatcher.renewLeases();
+        verify(outbox, never()).renew(any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void failureAfterSendDoesNotRequeueRow() {
+        OutboxMessageEntity m = row(7L);
+        m.setMarker("WELCOME");
+        when(outbox.claim(anyInt(), any())).thenReturn(List.of(m));
+        when(messageSender.postOnce(anyLong(), any())).thenReturn(Mono.just(new MessageMeta("mid-1", 7, 1L, null, 0)));
+        doThrow(new IllegalStateException("redis down")).when(sessions).saveLastMessage(anyLong(), any());
+
+        dispatcher.poll();
+        ArgumentCaptor<Mono<?>> step = ArgumentCaptor.forClass(Mono.class);
+        verify(messageSender).submit(eq(42L), step.capture());
+        step.getValue().block(Duration.ofSeconds(5));
+
+        verify(outbox).markSent(eq(7L), any());
+        verify(outbox, never()).markFailed(anyLong(), any());
+    }
+
+    private static OutboxMessageEntity row(long id) {
+        OutboxMessageEntity m = new OutboxMessageEntity(42L, "{\"text\":\"hi\"}");
+        m.setId(id);
+        m.setPriority("INTERACTIVE");
+        return m;
+    }
+}
@@ -0,0 +1,50 @@
+package com.smarttodo.app.bot.outbox;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smarttodo.app.entity.OutboxMessageEntity;
+import com.smarttodo.app.entity.OutboxStatus;
+import com.smarttodo.app.repository.OutboxRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.io.IOException;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Ошибка отправки возвращает в очередь только строку, которая ещё в отправке: отправленная остаётся SENT.
+ */
+class OutboxTest {
+
+    private final OutboxRepository repository = mock(OutboxRepository.class);
+    private final Outbox outbox = new Outbox(repository, new OutboxProps(0, 0, null, 0, null),
+            new ObjectMapper(), mock(ApplicationEventPublisher.class));
+
+    @Test
+    void sendingRowGoesBackToQueue() {
+        OutboxMessageEntity m = row(OutboxStatus.SENDING);
+        outbox.markFailed(7L, new IOException("timeout"));
+        assertEquals(OutboxStatus.NEW, m.getStatus());
+    }
+
+    @Test
+    void sentRowIsNotRequeued() {
+        OutboxMessageEntity m = row(OutboxStatus.SENT);
+        outbox.markFailed(7L, new IllegalStateException("redis down"));
+        assertEquals(OutboxStatus.SENT, m.getStatus());
+        assertNull(m.getLastError());
+    }
+
+    private OutboxMessageEntity row(OutboxStatus status) {
+        OutboxMessageEntity m = new OutboxMessageEntity(42L, "{}");
+        m.setId(7L);
+        m.setStatus(status);
+        m.setAttempts(1);
+        when(repository.findById(7L)).thenReturn(Optional.of(m));
+        return m;
+    }
+}
@@ -0,0 +1,380 @@
+package com.smarttodo.app.bot.session;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smarttodo.app.bot.MessageMarker;
+import com.smarttodo.app.client.SendPriority;
+import com.smarttodo.app.dto.MessageMeta;
+import com.smarttodo.app.dto.TaskDto;
+import com.smarttodo.app.entity.Priority;
+import com.smarttodo.app.entity.TaskStatus;
+import com.smarttodo.app.repository.ChatSessionRedisRepo;
+import com.smarttodo.app.repository.LastActionRedisRepo;
+import com.smarttodo.app.repository.PendingHabitRedisRepo;
+import com.smarttodo.app.repository.PendingTaskRedisRepo;
+import com.smarttodo.app.repository.codec.DraftCodecProps;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.listener.Topic;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Владение чатом и фоновый сброс: аренда с меткой, передача чата другой ноде,
+ * сброс снимка без lock и запись черновиков по версии. Redis — в памяти, по правилам скриптов LEASE и UPDATE.
+ */
+class ChatSessionStoreTest {
+
+    private static final long CHAT = 42;
+    private static final String OWNER_KEY = "bot:session-owner:" + CHAT;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final FakeRedis fake = new FakeRedis();
+    private final PendingTaskRedisRepo taskRepo =
+            new PendingTaskRedisRepo(fake, new ObjectMapper().findAndRegisterModules(), new DraftCodecProps(null));
+    private final LastActionRedisRepo lastRepo = mock(LastActionRedisRepo.class);
+    private final List<String> handoffRequests = new CopyOnWriteArrayList<>();
+    private ChatSessionStore store;
+    private MessageListener handoff;
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        fake.gate = null;
+        if (store != null) store.destroy();
+    }
+
+    @Test
+    void flushWritesDraftWithVersionKeptInMemory() {
+        store(Duration.ofMillis(10), Duration.ofMillis(100));
+
+        store.savePendingTask(CHAT, task("Купить молоко"));
+        store.updatePendingTask(CHAT, prev -> rename(prev, "Купить хлеб"));
+
+        await(() -> "2".equals(redisVersion()));
+        assertEquals("Купить хлеб", redisTask().title());
+        assertEquals(0.0, lostWrites());
+    }
+
+    @Test
+    void editDuringFlushDoesNotWaitForRedisAndGoesOutNextTick() throws Exception {
+        store(Duration.ofMillis(10), Duration.ofMillis(100));
+        CountDownLatch gate = fake.pause();
+
+        store.savePendingTask(CHAT, task("Купить молоко"));
+        assertTrue(fake.entered.await(2, TimeUnit.SECONDS), "flush did not start");
+
+        // снимок уже в Redis-обмене: правка того же чата не ждёт его
+        assertTimeoutPreemptively(Duration.ofMillis(500),
+                () -> store.updatePendingTask(CHAT, prev -> rename(prev, "Купить хлеб")));
+        gate.countDown();
+
+        await(() -> "2".equals(redisVersion()));
+        assertEquals("Купить хлеб", redisTask().title());
+        assertEquals(0.0, lostWrites());
+    }
+
+    @Test
+    void draftChangedInRedisBypassingOwnerIsNotOverwritten() {
+        store(Duration.ofMillis(10), Duration.ofMillis(100));
+        store.savePendingTask(CHAT, task("Купить молоко"));
+        await(() -> "1".equals(redisVersion()));
+
+        // другая нода не дождалась передачи чата и правит черновик прямо в Redis
+        fake.writeDirect(CHAT, taskRepo.toFields(task("Правка с другой ноды")), ChatSessionRedisRepo.TASK_VERSION);
+        store.updatePendingTask(CHAT, prev -> rename(prev, "Купить хлеб"));
+
+        await(() -> lostWrites() == 1.0);
+        assertEquals("Правка с другой ноды", redisTask().title());
+        assertEquals("2", redisVersion());
+        // память сброшена — следующее чтение видит Redis
+        assertEquals("Правка с другой ноды", store.pendingTask(CHAT).orElseThrow().title());
+    }
+
+    @Test
+    void flushAfterLeaseTakeoverIsRejected() throws Exception {
+        store(Duration.ofMillis(10), Duration.ofMillis(100));
+        store.savePendingTask(CHAT, task("Купить молоко"));
+        await(() -> "1".equals(redisVersion()));
+
+        CountDownLatch gate = fake.pause();
+        store.updatePendingTask(CHAT, prev -> rename(prev, "Купить хлеб"));
+        assertTrue(fake.entered.await(2, TimeUnit.SECONDS), "flush did not start");
+        // пока снимок в пути, аренда истекла и чат взяла другая нода
+        fake.owners.put(OWNER_KEY, "other-node:1");
+        gate.countDown();
+
+        await(() -> lostWrites() == 1.0);
+        assertEquals("Купить молоко", redisTask().title());
+        assertEquals("1", redisVersion());
+    }
+
+    @Test
+    void handoffFlushesDirtyStateAndReleasesLease() {
+        store(Duration.ofHours(1), Duration.ofMillis(100));
+        store.savePendingTask(CHAT, task("Купить молоко"));
+        String token = fake.owners.get(OWNER_KEY);
+        assertTrue(fake.hashes.getOrDefault(CHAT, Map.of()).isEmpty(), "nothing is flushed before handoff");
+
+        requestHandoff();
+
+        assertEquals("Купить молоко", redisTask().title());
+        assertEquals("1", redisVersion());
+        assertFalse(fake.owners.containsKey(OWNER_KEY));
+        assertEquals(1.0, registry.get("bot.session.handoffs").counter().count());
+
+        // чат вернулся к этой ноде — уже с другой меткой аренды
+        assertEquals("Купить молоко", store.pendingTask(CHAT).orElseThrow().title());
+        assertNotEquals(token, fake.owners.get(OWNER_KEY));
+    }
+
+    @Test
+    void handoffWaitsForFlushInFlight() throws Exception {
+        store(Duration.ofMillis(10), Duration.ofMillis(100));
+        CountDownLatch gate = fake.pause();
+        store.savePendingTask(CHAT, task("Купить молоко"));
+        assertTrue(fake.entered.await(2, TimeUnit.SECONDS), "flush did not start");
+
+        Thread other = Thread.ofVirtual().start(this::requestHandoff);
+        other.join(200);
+        assertTrue(other.isAlive(), "handoff did not wait for the flush in flight");
+
+        gate.countDown();
+        other.join(2_000);
+        assertFalse(other.isAlive());
+        assertFalse(fake.owners.containsKey(OWNER_KEY));
+        assertEquals("Купить молоко", redisTask().title());
+        assertEquals(0.0, lostWrites());
+    }
+
+    @Test
+    void leaseLeftByThisNodeIsTakenBackWithoutHandoff() {
+        store(Duration.ofHours(1), Duration.ofSeconds(5));
+        store.savePendingTask(CHAT, task("Купить молоко"));
+        String token = fake.owners.get(OWNER_KEY);
+        requestHandoff();
+
+        // аренда прежней сессии этой ноды ещё не истекла (например, сессию выбросил sweep)
+        fake.owners.put(OWNER_KEY, token);
+
+        assertTimeoutPreemptively(Duration.ofSeconds(1), () -> store.pendingTask(CHAT));
+        assertTrue(handoffRequests.isEmpty());
+        assertNotEquals(token, fake.owners.get(OWNER_KEY));
+    }
+
+    @Test
+    void bulkSendDoesNotLeaseOrCacheChat() {
+        store(Duration.ofHours(1), Duration.ofSeconds(5));
+        MessageMeta meta = new MessageMeta("mid-1", 7, 1L, MessageMarker.WELCOME, 0);
+
+        SendPriority.BULK.run(() -> store.saveLastMessage(CHAT, meta));
+        store.saveLastMessageAsync(CHAT + 1, meta).contextWrite(SendPriority.REMINDER.context()).block();
+
+        assertTrue(fake.owners.isEmpty(), "broadcast recipients must not be leased");
+        assertEquals(0.0, registry.get("bot.session.size").gauge().value());
+        verify(lastRepo).save(CHAT, meta);
+        verify(lastRepo).save(CHAT + 1, meta);
+    }
+
+    @Test
+    void bulkSendToOwnedChatUpdatesSessionInMemory() {
+        store(Duration.ofHours(1), Duration.ofSeconds(5));
+        store.savePendingTask(CHAT, task("Купить молоко"));
+        MessageMeta meta = new MessageMeta("mid-1", 7, 1L, MessageMarker.WELCOME, 0);
+
+        SendPriority.BULK.run(() -> store.saveLastMessage(CHAT, meta));
+
+        verify(lastRepo, never()).save(anyLong(), any());
+        assertEquals(meta, store.lastMessage(CHAT).orElseThrow());
+    }
+
+    @Test
+    void broadcastPageGoesToRedisInOneBatchExceptOwnedChats() {
+        store(Duration.ofHours(1), Duration.ofSeconds(5));
+        store.savePendingTask(CHAT, task("Купить молоко"));
+        MessageMeta owned = new MessageMeta("mid-1", 7, 1L, MessageMarker.WELCOME, 0);
+        MessageMeta other = new MessageMeta("mid-2", 8, 1L, MessageMarker.WELCOME, 0);
+
+        store.saveLastMessages(Map.of(CHAT, owned, 43L, other, 44L, other));
+
+        verify(lastRepo).saveAll(Map.of(43L, other, 44L, other));
+        verify(lastRepo, never()).save(anyLong(), any());
+        assertEquals(owned, store.lastMessage(CHAT).orElseThrow());
+        assertFalse(fake.owners.containsKey("bot:session-owner:43"));
+    }
+
+    private void store(Duration flushInterval, Duration handoffWait) {
+        StringRedisTemplate redis = mock(StringRedisTemplate.class);
+        when(redis.execute(any(RedisScript.class), anyList(), any(Object[].class))).thenAnswer(inv -> {
+            List<String> keys = inv.getArgument(1);
+            return fake.lease(keys.getFirst(), inv.getArgument(2), inv.getArgument(4), inv.getArgument(5));
+        });
+        when(redis.convertAndSend(any(), any())).thenAnswer(inv -> {
+            handoffRequests.add(inv.getArgument(1));
+            return 1L;
+        });
+
+        RedisMessageListenerContainer listeners = mock(RedisMessageListenerContainer.class);
+        store = new ChatSessionStore(redis, fake, lastRepo, taskRepo,
+                new PendingHabitRedisRepo(fake, new ObjectMapper().findAndRegisterModules(), new DraftCodecProps(null)),
+                null, null, listeners,
+                new SessionProps(true, false, 0, Duration.ofSeconds(30), flushInterval, handoffWait),
+                registry);
+
+        ArgumentCaptor<MessageListener> listener = ArgumentCaptor.forClass(MessageListener.class);
+        verify(listeners).addMessageListener(listener.capture(), any(Topic.class));
+        handoff = listener.getValue();
+    }
+
+    private void requestHandoff() {
+        handoff.onMessage(new DefaultMessage("bot:session-handoff".getBytes(StandardCharsets.UTF_8),
+                String.valueOf(CHAT).getBytes(StandardCharsets.UTF_8)), null);
+    }
+
+    private TaskDto redisTask() {
+        return taskRepo.fromFields(fake.load(CHAT)).orElseThrow();
+    }
+
+    private String redisVersion() {
+        return ChatSessionRedisRepo.str(fake.load(CHAT).get(ChatSessionRedisRepo.TASK_VERSION));
+    }
+
+    private double lostWrites() {
+        return registry.get("bot.session.lost-writes").counter().count();
+    }
+
+    private static TaskDto task(String title) {
+        return new TaskDto(null, title, "...", TaskStatus.UNCOMPLETED, Priority.LOW, null, null);
+    }
+
+    private static TaskDto rename(TaskDto prev, String title) {
+        return new TaskDto(prev.id(), title, prev.description(), prev.status(), prev.priority(), prev.deadline(), prev.completedAt());
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) throw new AssertionError("condition not met in 2 s");
+            Thread.onSpinWait();
+        }
+    }
+
+    /** Хеши чатов и аренды в памяти — те же правила, что у скриптов LEASE и UPDATE */
+    private static final class FakeRedis extends ChatSessionRedisRepo {
+
+        final Map<Long, Map<String, byte[]>> hashes = new ConcurrentHashMap<>();
+        final Map<String, String> owners = new ConcurrentHashMap<>();
+        volatile CountDownLatch gate;       // не null — пайплайн сброса ждёт его
+        volatile CountDownLatch entered;
+
+        FakeRedis() {
+            super(null);
+        }
+
+        CountDownLatch pause() {
+            entered = new CountDownLatch(1);
+            gate = new CountDownLatch(1);
+            return gate;
+        }
+
+        synchronized long lease(String key, String current, String fresh, String prefix) {
+            String cur = owners.get(key);
+            if (cur != null && cur.equals(current)) return 1;
+            if (cur == null || cur.startsWith(prefix)) {
+                owners.put(key, fresh);
+                return 2;
+            }
+            return 0;
+        }
+
+        /** Запись в обход владельца, как PendingTaskRedisRepo.update на другой ноде */
+        synchronized void writeDirect(long chatId, Map<String, byte[]> fields, String versionField) {
+            Map<String, byte[]> h = hashes.computeIfAbsent(chatId, k -> new ConcurrentHashMap<>());
+            h.putAll(fields);
+            h.put(versionField, utf8(String.valueOf(version(h, versionField) + 1)));
+        }
+
+        @Override
+        public synchronized Map<String, byte[]> load(long chatId) {
+            return Map.copyOf(hashes.getOrDefault(chatId, Map.of()));
+        }
+
+        @Override
+        public synchronized Map<String, byte[]> load(long chatId, String... fields) {
+            Map<String, byte[]> out = new HashMap<>();
+            for (String f : fields) {
+                byte[] v = hashes.getOrDefault(chatId, Map.of()).get(f);
+                if (v != null) out.put(f, v);
+            }
+            return out;
+        }
+
+        @Override
+        public boolean apply(Change change) {
+            return write(change);
+        }
+
+        @Override
+        public List<Boolean> applyAll(List<Change> changes) {
+            CountDownLatch g = gate;
+            if (g != null) {
+                entered.countDown();
+                try {
+                    g.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                gate = null;
+            }
+            List<Boolean> out = new ArrayList<>();
+            for (Change c : changes) out.add(write(c));
+            return out;
+        }
+
+        private synchronized boolean write(Change c) {
+            if (c.owner() != null && !c.owner().equals(owners.get(c.ownerKey()))) return false;
+            Map<String, byte[]> h = hashes.computeIfAbsent(c.chatId(), k -> new ConcurrentHashMap<>());
+            for (Map.Entry<String, Long> e : c.expect().entrySet()) {
+                if (version(h, e.getKey()) != e.getValue()) return false;
+            }
+            h.putAll(c.set());
+            c.del().forEach(h::remove);
+            for (String[] d : new String[][]{{TASK, TASK_VERSION}, {HABIT, HABIT_VERSION}}) {
+                boolean touched = c.set().containsKey(d[0]) || c.del().contains(d[0]);
+                if (touched && !c.set().containsKey(d[1])) {
+                    h.put(d[1], utf8(String.valueOf(version(h, d[1]) + 1)));
+                }
+            }
+            if (c.release()) owners.remove(c.ownerKey());
+            return true;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.smarttodo.app.bot.template;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smarttodo.app.bot.InlineKeyboardBuilder;
+import com.smarttodo.app.bot.Payload;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сборка тела экрана: как было (builder + Jackson на каждый клик) и через шаблоны.
+ * Запуск — см. раздел «Бенчмарки» в README.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageTemplatesBenchmark {
+
+    private static final int LIST_SIZE = 20;
+
+    private final ObjectMapper om = new ObjectMapper();
+    private final MessageTemplates templates = new MessageTemplates(om);
+
+    // ===== Статический экран: меню задач =====
+
+    @Benchmark
+    public byte[] staticScreenBuilder() throws Exception {
+        return om.writeValueAsBytes(InlineKeyboardBuilder.create()
+                .text("""
+                        📝 **Меню задач**
+
+                        Здесь ты можешь посмотреть задачи на сегодня, неделю,
+                        увидеть все незавершенные задачи и добавить новые.
+                        """)
+                .format("markdown")
+                .addCallbackButton("✅ Все незавершенные", Payload.TASKS_GET_ALL.key())
+                .addCallbackButton("📅 На сегодня",         Payload.TASKS_GET_TODAY.key())
+                .addCallbackButton("📆 На неделю",          Payload.TASKS_GET_WEEK.key())
+                .addCallbackButton("📆 На завтра",          Payload.TASKS_GET_TOMORROW.key())
+                .addCallbackButton("➕ Создать задачу",      Payload.TASKS_CREATE_NEW.key())
+                .addCallbackButton("🏠 Профиль",          Payload.HOME_PAGE.key())
+                .build());
+    }
+
+    @Benchmark
+    public byte[] staticScreenTemplate() {
+        return templates.taskMenu().json();
+    }
+
+    // ===== Динамический экран: предпросмотр задачи =====
+
+    @Benchmark
+    public byte[] previewFormatted() throws Exception {
+        return om.writeValueAsBytes(InlineKeyboardBuilder.create()
+                .text("""
+                        ✨ Предпросмотр задачи
+
+                        Название: %s
+                        Описание: %s
+                        Дэдлайн: %s
+
+                        Вы можете описать задачу текстом, поля выше заполнятся автоматически или заполнить содержимое с помощью кнопок.
+                        Обязательно укажите дату и время дэдлайна по задаче.
+                        Обработка текста занимает 10 - 30 секунд.
+                        Затем вы сможете с помощью кнопок отредактировать задачу.
+                        """.formatted("Купить молоко", "Зайти в магазин после работы", "20.10.2026 19:00"))
+                .format("markdown")
+                .addCallbackButton("Изменить название",     Payload.TASKS_CHANGE_TITLE.key())
+                .addCallbackButton("Изменить описание",     Payload.TASKS_CHANGE_DESCRIPTION.key())
+                .addCallbackButton("Изменить дэдлайн",      Payload.TASKS_CHANGE_DEADLINE.key())
+                .addCallbackButton("Подтвердить создание",  Payload.TASKS_CREATE_CONFIRM.key())
+                .addCallbackButton("🗓️ Меню привычек",        Payload.HABIT_MENU.key())
+                .addCallbackButton("📋 Меню задач",        Payload.TASK_MENU.key())
+                .addCallbackButton("🏠 Профиль",        Payload.HOME_PAGE.key())
+                .build());
+    }
+
+    @Benchmark
+    public byte[] previewTemplate() {
+        return templates.taskPreview("Купить молоко", "Зайти в магазин после работы", "20.10.2026 19:00").json();
+    }
+
+    // ===== Текст списка привычек =====
+
+    @Benchmark
+    public String listFormatted() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < LIST_SIZE; i++) {
+            sb.append("""
+                    %s **%s**
+                    Описание: %s
+                    Периодичность: %s
+                    Цель до: %s
+
+                    """.formatted("🟢", "Зарядка " + i, "_нет описания_", "Каждый день", "31.12.2026"));
+        }
+        return sb.toString();
+    }
+
+    @Benchmark
+    public String listTemplate() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < LIST_SIZE; i++) {
+            MessageTemplates.HABIT_ITEM.appendTo(sb, "🟢", "Зарядка " + i, "_нет описания_", "Каждый день", "31.12.2026");
+        }
+        return sb.toString();
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(MessageTemplatesBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,102 @@
+package com.smarttodo.app.bot.template;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smarttodo.app.bot.InlineKeyboardBuilder;
+import com.smarttodo.app.bot.Payload;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Шаблоны карточки привычки и профиля дают то же тело, что builder + Jackson на каждый клик.
+ */
+class MessageTemplatesTest {
+
+    private final ObjectMapper om = new ObjectMapper();
+    private final MessageTemplates templates = new MessageTemplates(om);
+
+    @Test
+    void habitTodayMatchesBuilder() throws Exception {
+        var expected = habitButtons(InlineKeyboardBuilder.create()
+                .text("""
+                        🔥 **Зарядка "утром"**
+                        Необходимо выполнить сегодня: да
+                        Выполнена: ✅
+                        Описание: 10 минут
+                        Периодичность: Каждый день
+                        Цель до: 01.01.2027
+                        Статус: В процессе
+                        """)
+                .format("markdown")
+                .addCallbackButton("Отметить невыполненной сегодня", Payload.HABITS_MARK_AS_UNCOMPLETED.key() + ":7")
+                .addCallbackButton("Отметить выполненной сегодня", Payload.HABITS_MARK_AS_COMPLETED.key() + ":7"))
+                .build();
+
+        var body = templates.habitToday("🔥", "Зарядка \"утром\"", "✅", "10 минут", "Каждый день", "01.01.2027", "В процессе", 7L);
+
+        assertEquals(om.valueToTree(expected), om.readTree(body.json()));
+    }
+
+    @Test
+    void habitNotForTodayHasNoMarkButtons() throws Exception {
+        var expected = habitButtons(InlineKeyboardBuilder.create()
+                .text("""
+                        🔥 **Зарядка**
+                        Необходимо выполнить сегодня: нет
+                        Описание: _Описание не задано_
+                        Периодичность: Каждую неделю
+                        Цель до: не задана
+                        Статус: Приостановлена
+                        """)
+                .format("markdown"))
+                .build();
+
+        var body = templates.habit("🔥", "Зарядка", "_Описание не задано_", "Каждую неделю", "не задана", "Приостановлена", 7L);
+
+        assertEquals(om.valueToTree(expected), om.readTree(body.json()));
+    }
+
+    @Test
+    void homePageMatchesFormatted() throws Exception {
+        var expected = InlineKeyboardBuilder.create()
+                .text("""
+                       👤 **Твой профиль**
+
+                       _Неделя: %s_
+
+                       **Задачи**📅
+                       • Всего: %d
+                       • Выполнено: %d
+                       • Просрочено: %d
+
+                       **Привычки**🌱
+                       • Всего: %d
+                       • Активных: %d
+                       • Соблюдено: %d
+                       • Средний прогресс: %.0f%%
+
+                       **Активность**📊
+                       • Дней с выполненными задачами: %d из 7
+                       """.formatted("12.10–18.10", 5L, 3L, 1L, 4, 2, 6L, 66.6, 3))
+                .format("markdown")
+                .addCallbackButton("📋 Меню задач",   "tasks-menu")
+                .addCallbackButton("🗓️ Меню привычек", "habits-menu")
+                .build();
+
+        var body = templates.homePage("12.10–18.10", 5, 3, 1, 4, 2, 6, Math.round(66.6), 3);
+
+        assertEquals(om.valueToTree(expected), om.readTree(body.json()));
+    }
+
+    private static InlineKeyboardBuilder habitButtons(InlineKeyboardBuilder builder) {
+        return builder
+                .addCallbackButton("Поставить статус: завершена", Payload.HABITS_SET_STATUS_ARCHIVED.key() + ":7")
+                .addCallbackButton("Поставить статус: в процессе", Payload.HABITS_SET_STATUS_IN_PROGRESS.key() + ":7")
+                .addCallbackButton("Поставить статус: приостановлена", Payload.HABITS_SET_STATUS_PAUSED.key() + ":7")
+                .addCallbackButton("Удалить привычку", Payload.HABITS_DELETE.key() + ":7")
+                .addCallbackButton("➕ Создать новую привычку", Payload.HABITS_CREATE_NEW.key())
+                .addCallbackButton("🗓️ Меню привычек", Payload.HABIT_MENU.key())
+                .addCallbackButton("📋 Меню задач", Payload.TASK_MENU.key())
+                .addCallbackButton("🏠 Профиль", Payload.HOME_PAGE.key());
+    }
+}
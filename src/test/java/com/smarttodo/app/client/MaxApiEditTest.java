@@ -0,0 +1,70 @@
+package com.smarttodo.app.client;
+
+import com.smarttodo.app.client.config.BreakerProps;
+import com.smarttodo.app.client.config.DispatchProps;
+import com.smarttodo.app.client.config.RateLimitProps;
+import com.smarttodo.app.client.config.RetryProps;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Правка сообщения расходует лимит своего чата, а не только глобальный;
+ * ожидание лимитера размечено тем же тегом class, что и очереди диспетчера.
+ */
+class MaxApiEditTest {
+
+    private static final Map<String, String> BODY = Map.of("text", "hi");
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final MaxApi api = api(new RateLimitProps(1_000, 1_000, 5, 1, 0, 0));
+
+    @Test
+    void editWaitsForChatLimit() {
+        edit(42L);
+        long started = System.nanoTime();
+        edit(42L);
+        long sameChat = System.nanoTime() - started;
+
+        started = System.nanoTime();
+        edit(43L);
+        long otherChat = System.nanoTime() - started;
+
+        assertTrue(sameChat >= Duration.ofMillis(150).toNanos(), "second edit in a chat waited " + sameChat + " ns");
+        assertTrue(otherChat < Duration.ofMillis(150).toNanos(), "edit in another chat waited " + otherChat + " ns");
+    }
+
+    @Test
+    void limiterWaitIsTaggedByClass() {
+        for (SendPriority priority : SendPriority.values()) {
+            assertNotNull(registry.find("max.api.rate-limit.wait").tag("class", priority.tag()).timer(), priority.tag());
+        }
+        assertNull(registry.find("max.api.rate-limit.wait").tagKeys("priority").timer());
+    }
+
+    private void edit(long chatId) {
+        api.editMessage(chatId, "mid-" + chatId, BODY).block(Duration.ofSeconds(5));
+    }
+
+    private MaxApi api(RateLimitProps props) {
+        WebClient client = WebClient.builder()
+                .exchangeFunction(req -> Mono.just(ClientResponse.create(HttpStatus.OK).build()))
+                .build();
+        MaxCallPolicy policy = new MaxCallPolicy(
+                new MaxCircuitBreaker(new BreakerProps(null, 0, 0, null, 0, null, 0), registry),
+                new RetryProps(0, null, 0, 0, 0),
+                registry);
+        return new MaxApi(client, new MaxRateLimiter(props, registry),
+                new OutboundDispatcher(new DispatchProps(0, null, null), registry), policy, props);
+    }
+}
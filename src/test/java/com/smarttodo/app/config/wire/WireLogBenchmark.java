@@ -0,0 +1,147 @@
+package com.smarttodo.app.config.wire;
+
+import ch.qos.logback.classic.Level;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.client.reactive.MockClientHttpRequest;
+import org.springframework.web.reactive.function.BodyInserter;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import org.springframework.web.reactive.function.client.ExchangeStrategies;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.http.codec.HttpMessageWriter;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Стоимость журнала HTTP-обмена на один запрос к MAX (сеть заменена заглушкой, тело запроса реально пишется).
+ * Аллокации смотреть с профилировщиком GC: {@code -prof gc}, метрика gc.alloc.rate.norm.
+ * Логгеры выключены — меряется работа фильтров, а не вывод в консоль.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WireLogBenchmark {
+
+    private static final byte[] RESPONSE = """
+            {"message":{"body":{"mid":"mid.000000000000000001","seq":115,"text":"Задача создана."},"timestamp":1700000000000}}"""
+            .getBytes(StandardCharsets.UTF_8);
+    private static final Map<String, Object> BODY = Map.of("text", "Введите название задачи:");
+
+    private WebClient legacy;
+    private WebClient off;
+    private WebClient sampled;
+    private WebClient everything;
+
+    @Setup
+    public void setup() {
+        for (String name : List.of("MaxApi", "wire.MAX")) {
+            ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(name)).setLevel(Level.OFF);
+        }
+        legacy = client().filter(legacyRequest()).filter(legacyResponse()).build();
+        off = client().apply(new WireLogger(new WireLogProps(false, 0, null, false, 0)).install("MAX")).build();
+        sampled = client().apply(new WireLogger(new WireLogProps(true, 0.01, Set.of(42L), true, 0)).install("MAX")).build();
+        everything = client().apply(new WireLogger(new WireLogProps(true, 1, null, true, 0)).install("MAX")).build();
+    }
+
+    @Benchmark
+    public String legacyFilters() {
+        return call(legacy);
+    }
+
+    @Benchmark
+    public String wireLogOff() {
+        return call(off);
+    }
+
+    @Benchmark
+    public String wireLogSampled() {
+        return call(sampled);
+    }
+
+    @Benchmark
+    public String wireLogEverything() {
+        return call(everything);
+    }
+
+    private static String call(WebClient client) {
+        return client.post()
+                .uri(b -> b.path("/messages").queryParam("chat_id", 7).build())
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(BODY)
+                .retrieve()
+                .bodyToMono(String.class)
+                .block();
+    }
+
+    private static WebClient.Builder client() {
+        ExchangeStrategies strategies = ExchangeStrategies.withDefaults();
+        ExchangeFunction stub = req -> {
+            MockClientHttpRequest wire = new MockClientHttpRequest(req.method(), req.url());
+            return req.body().insert(wire, new BodyInserter.Context() {
+                        public List<HttpMessageWriter<?>> messageWriters() { return strategies.messageWriters(); }
+                        public Optional<ServerHttpRequest> serverRequest() { return Optional.empty(); }
+                        public Map<String, Object> hints() { return Map.of(); }
+                    })
+                    .then(Mono.fromSupplier(() -> ClientResponse.create(HttpStatus.OK, strategies)
+                            .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                            .body(Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(RESPONSE)))
+                            .build()));
+        };
+        return WebClient.builder().baseUrl("http://max.local").exchangeFunction(stub);
+    }
+
+    // ===== Фильтры, которые раньше стояли в MaxConfig =====
+
+    private static ExchangeFilterFunction legacyRequest() {
+        return ExchangeFilterFunction.ofRequestProcessor(req -> {
+            StringBuilder sb = new StringBuilder();
+            sb.append("OUTBOUND ").append(req.method()).append(" ").append(req.url()).append('\n');
+            req.headers().forEach((n, v) -> sb.append("  ").append(n).append(": ").append(v).append('\n'));
+            return Mono.just(req)
+                    .flatMap(r -> r.body() == null ? Mono.just(req) : Mono.just(req))
+                    .doOnSuccess(x -> LoggerFactory.getLogger("MaxApi").info(sb.toString()));
+        });
+    }
+
+    private static ExchangeFilterFunction legacyResponse() {
+        return ExchangeFilterFunction.ofResponseProcessor(resp -> {
+            var log = LoggerFactory.getLogger("MaxApi");
+            log.info("OUTBOUND <== {} {}", resp.statusCode().value(), resp.statusCode());
+            return resp.bodyToMono(String.class)
+                    .defaultIfEmpty("")
+                    .flatMap(body -> {
+                        if (!body.isEmpty()) log.info("OUTBOUND response body:\n{}", body);
+                        return Mono.just(ClientResponse.create(resp.statusCode())
+                                .headers(h -> h.addAll(resp.headers().asHttpHeaders()))
+                                .body(body)
+                                .build());
+                    });
+        });
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(WireLogBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+}
@@ -0,0 +1,149 @@
+package com.smarttodo.app.repository;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Планы горячих запросов на схеме из миграций (db/migration) и заполненной базе:
+ * ни один не должен читать таблицу целиком. Postgres — встроенный, запросы — те же, что строят репозитории,
+ * со значениями вместо параметров.
+ */
+class QueryPlanTest {
+
+    private static final int USERS = 2_000;
+
+    private static EmbeddedPostgres postgres;
+    private static JdbcTemplate jdbc;
+    private static final ObjectMapper om = new ObjectMapper();
+
+    @BeforeAll
+    static void setUp() throws IOException {
+        postgres = EmbeddedPostgres.start();
+        DataSource ds = postgres.getPostgresDatabase();
+        Flyway.configure()
+                .dataSource(ds)
+                .configuration(Map.of("flyway.postgresql.transactional.lock", "false"))   // как в application.properties
+                .load()
+                .migrate();
+        jdbc = new JdbcTemplate(ds);
+        seed();
+        jdbc.execute("analyze");
+    }
+
+    @AfterAll
+    static void tearDown() throws IOException {
+        if (postgres != null) postgres.close();
+    }
+
+    /** По сотне задач и десятку привычек на чат; большая часть задач завершена, у привычек месяц отметок */
+    private static void seed() {
+        jdbc.update("""
+                insert into users (id, chat_id, created_at, display_name)
+                select g, g, now(), 'user ' || g from generate_series(1, ?) g""", USERS);
+        jdbc.update("""
+                insert into tasks (chat_id, user_id, title, deadline, status, priority, created_at)
+                select 1 + g % ?, 1 + g % ?, 'task ' || g,
+                       case when g % 10 = 0 then null else localtimestamp + (g % 120 - 60) * interval '1 day' end,
+                       case when g % 5 = 0 then 'UNCOMPLETED' when g % 7 = 0 then 'IN_PROGRESS' else 'COMPLETED' end,
+                       'LOW', now()
+                from generate_series(1, ?) g""", USERS, USERS, USERS * 100);
+        jdbc.update("""
+                insert into habits (chat_id, user_id, title, status, interval, priority, goal_date, created_at)
+                select 1 + g % ?, 1 + g % ?, 'habit ' || g,
+                       case when g % 3 = 0 then 'ARCHIVED' else 'IN_PROGRESS' end,
+                       'EVERY_DAY', 'LOW', current_date + g % 365, now()
+                from generate_series(1, ?) g""", USERS, USERS, USERS * 10);
+        jdbc.update("""
+                insert into habit_checkins (habit_id, day)
+                select h.id, current_date - d
+                from habits h, generate_series(0, 29) d""");
+        jdbc.update("""
+                insert into bot_outbox (chat_id, body, priority, status, attempts, available_at, created_at)
+                select 1 + g % ?, '{}', 'INTERACTIVE', case when g % 1000 = 0 then 'NEW' else 'SENT' end, 0, now(), now()
+                from generate_series(1, ?) g""", USERS, USERS * 25);
+    }
+
+    static Stream<Arguments> hotQueries() {
+        return Stream.of(
+                Arguments.of("tasks of the day (findAllByChatIdAndDeadlineBetween)", """
+                        select * from tasks
+                        where chat_id = 42 and deadline between localtimestamp and localtimestamp + interval '1 day'"""),
+                Arguments.of("open tasks of the week (findOpenByChatIdAndDeadlineBetween)", """
+                        select * from tasks
+                        where chat_id = 42 and status <> 'COMPLETED'
+                          and deadline between localtimestamp and localtimestamp + interval '7 days'"""),
+                Arguments.of("tasks by status (findAllByChatIdAndStatus)", """
+                        select * from tasks where chat_id = 42 and status = 'IN_PROGRESS'"""),
+                Arguments.of("open tasks page (findPageAfter)", """
+                        select * from tasks
+                        where chat_id = 42 and status in ('UNCOMPLETED', 'IN_PROGRESS') and deadline <= timestamp '9999-12-31 23:59'
+                          and (deadline > timestamp '0001-01-01 00:00' or (deadline = timestamp '0001-01-01 00:00' and id > 0))
+                        order by deadline, id
+                        limit 11"""),
+                Arguments.of("open tasks without deadline (DeadlineIsNullAndIdGreaterThan)", """
+                        select * from tasks
+                        where chat_id = 42 and status in ('UNCOMPLETED', 'IN_PROGRESS') and deadline is null and id > 0
+                        order by id
+                        limit 11"""),
+                Arguments.of("habit checkins of a period (findAllByHabit_IdAndDayBetween)", """
+                        select * from habit_checkins
+                        where habit_id = 42 and day between current_date - 6 and current_date"""),
+                Arguments.of("checkins of a habit page (findAllByHabit_IdInAndDayBetween)", """
+                        select * from habit_checkins
+                        where habit_id in (1, 2, 3, 4, 5, 6, 7, 8, 9, 10) and day between current_date - 6 and current_date"""),
+                Arguments.of("habits reaching their goal (findAllByStatusAndGoalDateLessThanEqual)", """
+                        select * from habits where status = 'IN_PROGRESS' and goal_date <= current_date"""),
+                Arguments.of("due habits page (findDueAfter)", """
+                        select * from habits
+                        where chat_id = 42 and status = 'IN_PROGRESS'
+                          and (goal_date is null or goal_date >= current_date)
+                          and (interval is null or interval in ('EVERY_DAY', 'EVERY_WEEK'))
+                          and id > 0
+                        order by id
+                        limit 11"""),
+                Arguments.of("habits by status (findAllByChatIdAndStatus)", """
+                        select * from habits where chat_id = 42 and status = 'IN_PROGRESS'"""),
+                Arguments.of("outbox batch (lockDue)", """
+                        select * from bot_outbox
+                        where status in ('NEW', 'SENDING') and available_at <= now()
+                        order by id
+                        limit 100
+                        for update skip locked""")
+        );
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("hotQueries")
+    void hotQueryUsesIndex(String name, String sql) throws IOException {
+        JsonNode plan = om.readTree(jdbc.queryForObject("explain (format json) " + sql, String.class)).get(0).get("Plan");
+        List<String> seqScans = new ArrayList<>();
+        collectSeqScans(plan, seqScans);
+        assertTrue(seqScans.isEmpty(), () -> name + ": sequential scan of " + seqScans + "\n" + plan.toPrettyString());
+    }
+
+    private static void collectSeqScans(JsonNode node, List<String> out) {
+        if ("Seq Scan".equals(node.path("Node Type").asText())) {
+            out.add(node.path("Relation Name").asText());
+        }
+        for (JsonNode child : node.path("Plans")) {
+            collectSeqScans(child, out);
+        }
+    }
+}
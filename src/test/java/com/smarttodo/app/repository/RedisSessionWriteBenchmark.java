@@ -0,0 +1,174 @@
+package com.smarttodo.app.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smarttodo.app.bot.MessageMarker;
+import com.smarttodo.app.dto.MessageMeta;
+import com.smarttodo.app.dto.TaskDto;
+import com.smarttodo.app.entity.Priority;
+import com.smarttodo.app.entity.TaskStatus;
+import com.smarttodo.app.repository.codec.DraftCodecProps;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnection;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Состояние чата в Redis: как было (три ключа; HMSET + EXPIRE, GET + DEL, по запросу на чат)
+ * и хеш чата {@link ChatSessionRedisRepo} (скрипт, один обмен на шаг, пайплайн),
+ * а также чтение последнего сообщения мимо и через локальную копию {@link LastMessageNearCache}.
+ * Нужен живой Redis: -Dredis.host / -Dredis.port, по умолчанию localhost:6379. Запуск — см. «Бенчмарки» в README.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RedisSessionWriteBenchmark {
+
+    private static final int CHATS = 1_000;
+
+    private LettuceConnectionFactory factory;
+    private StringRedisTemplate redis;
+    private ChatSessionRedisRepo chats;
+    private LastActionRedisRepo lastRepo;
+    private LastActionRedisRepo cachedLastRepo;
+    private LastMessageNearCache nearCache;
+    private PendingTaskRedisRepo taskRepo;
+
+    private final MessageMeta meta = new MessageMeta("mid-123456", 42, 1_700_000_000_000L, MessageMarker.CREATE_TASK, 987654321L);
+    private final Map<Long, MessageMeta> batch = new LinkedHashMap<>();
+    private TaskDto draft;
+    private ObjectMapper om;
+    private String draftJson;
+
+    @Setup
+    public void setUp() throws IOException {
+        factory = new LettuceConnectionFactory(new RedisStandaloneConfiguration(
+                System.getProperty("redis.host", "localhost"), Integer.getInteger("redis.port", 6379)));
+        factory.setPipeliningFlushPolicy(LettuceConnection.PipeliningFlushPolicy.flushOnClose()); // как в RedisConfig
+        factory.afterPropertiesSet();
+        factory.start();
+        redis = new StringRedisTemplate(factory);
+
+        om = new ObjectMapper().findAndRegisterModules();
+        chats = new ChatSessionRedisRepo(redis);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        lastRepo = new LastActionRedisRepo(chats, new LastMessageNearCache(factory, new NearCacheProps(false, 0), registry));
+        nearCache = new LastMessageNearCache(factory, new NearCacheProps(true, 0), registry);
+        cachedLastRepo = new LastActionRedisRepo(chats, nearCache);
+        taskRepo = new PendingTaskRedisRepo(chats, om, new DraftCodecProps(null));
+        draft = new TaskDto(null, "Купить молоко", "2 литра", TaskStatus.UNCOMPLETED, Priority.LOW,
+                LocalDateTime.of(2025, 1, 1, 19, 0), null);
+        draftJson = om.writeValueAsString(draft);
+
+        redis.opsForHash().putAll("bot:last-message:5", Map.of(
+                "mid", meta.mid(), "seq", String.valueOf(meta.seq()), "sentAt", String.valueOf(meta.sentAt()),
+                "marker", meta.marker().name(), "bodyHash", String.valueOf(meta.bodyHash())));
+        redis.opsForValue().set("bot:pending-task:5", draftJson, PendingTaskRedisRepo.TTL);
+        lastRepo.save(6, meta);
+        taskRepo.save(6, draft);
+
+        for (long chatId = 1; chatId <= CHATS; chatId++) {
+            batch.put(-chatId, meta);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        nearCache.destroy();
+        factory.destroy();
+    }
+
+    // ===== Последнее сообщение одного чата =====
+
+    @Benchmark
+    public Boolean lastMessageHmsetExpire() {
+        String k = "bot:last-message:1";
+        Map<String, String> map = new HashMap<>();
+        map.put("mid", meta.mid());
+        map.put("seq", String.valueOf(meta.seq()));
+        map.put("sentAt", String.valueOf(meta.sentAt()));
+        map.put("marker", meta.marker().name());
+        map.put("bodyHash", String.valueOf(meta.bodyHash()));
+        redis.boundHashOps(k).putAll(map);
+        return redis.expire(k, ChatSessionRedisRepo.TTL);
+    }
+
+    @Benchmark
+    public boolean lastMessageScript() {
+        return lastRepo.save(2, meta);
+    }
+
+    // ===== Чтение последнего сообщения активного чата =====
+
+    @Benchmark
+    public Optional<MessageMeta> lastMessageGet() {
+        return lastRepo.get(6);
+    }
+
+    @Benchmark
+    public Optional<MessageMeta> lastMessageGetNearCache() {
+        return cachedLastRepo.get(6);
+    }
+
+    // ===== Подтверждение черновика =====
+
+    @Benchmark
+    public TaskDto draftGetThenDelete() throws IOException {
+        String k = "bot:pending-task:3";
+        redis.opsForValue().set(k, draftJson, PendingTaskRedisRepo.TTL);
+        TaskDto task = om.readValue(redis.opsForValue().get(k), TaskDto.class);
+        redis.delete(k);
+        return task;
+    }
+
+    @Benchmark
+    public Optional<TaskDto> draftTake() {
+        taskRepo.save(4, draft);
+        return taskRepo.take(4);
+    }
+
+    // ===== Всё состояние чата: три ключа против одного хеша =====
+
+    @Benchmark
+    public Object[] loadThreeKeys() {
+        return new Object[]{
+                redis.opsForHash().entries("bot:last-message:5"),
+                redis.opsForValue().get("bot:pending-task:5"),
+                redis.opsForValue().get("bot:pending-habit:5")};
+    }
+
+    @Benchmark
+    public Map<String, byte[]> loadHash() {
+        return chats.load(6);
+    }
+
+    // ===== Последние сообщения CHATS чатов (время на один чат) =====
+
+    @Benchmark
+    @OperationsPerInvocation(CHATS)
+    public int batchOneByOne() {
+        int saved = 0;
+        for (Map.Entry<Long, MessageMeta> e : batch.entrySet()) {
+            if (lastRepo.save(e.getKey(), e.getValue())) saved++;
+        }
+        return saved;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CHATS)
+    public int batchPipelined() {
+        return lastRepo.saveAll(batch);
+    }
+}
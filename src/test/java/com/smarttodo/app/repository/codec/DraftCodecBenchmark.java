@@ -0,0 +1,95 @@
+package com.smarttodo.app.repository.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smarttodo.app.dto.HabitCheckinDto;
+import com.smarttodo.app.dto.TaskDto;
+import com.smarttodo.app.entity.HabitInterval;
+import com.smarttodo.app.entity.HabitStatus;
+import com.smarttodo.app.entity.Priority;
+import com.smarttodo.app.entity.TaskStatus;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Черновики задачи и привычки: прежний JSON против двоичного формата — кодирование и разбор.
+ * Размеры в байтах печатаются при старте. Запуск — см. «Бенчмарки» в README.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DraftCodecBenchmark {
+
+    private final TaskDto task = new TaskDto(null, "Купить молоко", "2 литра, обезжиренное", TaskStatus.UNCOMPLETED,
+            Priority.MEDIUM, LocalDateTime.of(2025, 1, 1, 19, 0), null);
+    private final HabitCheckinDto habit = new HabitCheckinDto(null, "Пробежка", "5 км в парке", HabitStatus.IN_PROGRESS,
+            HabitInterval.EVERY_WEEKDAY, Priority.HIGH, LocalDate.of(2025, 1, 1), LocalDate.of(2025, 6, 1), false, false);
+
+    private JsonDraftCodec<TaskDto> taskJson;
+    private JsonDraftCodec<HabitCheckinDto> habitJson;
+    private final TaskDraftCodec taskBinary = new TaskDraftCodec();
+    private final HabitDraftCodec habitBinary = new HabitDraftCodec();
+
+    private byte[] taskJsonBytes;
+    private byte[] taskBinaryBytes;
+    private byte[] habitJsonBytes;
+    private byte[] habitBinaryBytes;
+
+    @Setup
+    public void setUp() {
+        ObjectMapper om = new ObjectMapper().findAndRegisterModules();
+        taskJson = new JsonDraftCodec<>(om, TaskDto.class);
+        habitJson = new JsonDraftCodec<>(om, HabitCheckinDto.class);
+        taskJsonBytes = taskJson.encode(task);
+        taskBinaryBytes = taskBinary.encode(task);
+        habitJsonBytes = habitJson.encode(habit);
+        habitBinaryBytes = habitBinary.encode(habit);
+        System.out.printf("%nTaskDto: json=%d B, binary=%d B; HabitCheckinDto: json=%d B, binary=%d B%n",
+                taskJsonBytes.length, taskBinaryBytes.length, habitJsonBytes.length, habitBinaryBytes.length);
+    }
+
+    @Benchmark
+    public byte[] taskEncodeJson() {
+        return taskJson.encode(task);
+    }
+
+    @Benchmark
+    public byte[] taskEncodeBinary() {
+        return taskBinary.encode(task);
+    }
+
+    @Benchmark
+    public TaskDto taskDecodeJson() {
+        return taskJson.decode(taskJsonBytes);
+    }
+
+    @Benchmark
+    public TaskDto taskDecodeBinary() {
+        return taskBinary.decode(taskBinaryBytes);
+    }
+
+    @Benchmark
+    public byte[] habitEncodeJson() {
+        return habitJson.encode(habit);
+    }
+
+    @Benchmark
+    public byte[] habitEncodeBinary() {
+        return habitBinary.encode(habit);
+    }
+
+    @Benchmark
+    public HabitCheckinDto habitDecodeJson() {
+        return habitJson.decode(habitJsonBytes);
+    }
+
+    @Benchmark
+    public HabitCheckinDto habitDecodeBinary() {
+        return habitBinary.decode(habitBinaryBytes);
+    }
+}
@@ -0,0 +1,116 @@
+package com.smarttodo.app.repository.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smarttodo.app.dto.HabitCheckinDto;
+import com.smarttodo.app.dto.TaskDto;
+import com.smarttodo.app.entity.HabitInterval;
+import com.smarttodo.app.entity.HabitStatus;
+import com.smarttodo.app.entity.Priority;
+import com.smarttodo.app.entity.TaskStatus;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Черновики в Redis: двоичный формат читает то, что записал, отсутствующие поля остаются null,
+ * JSON прежнего формата читается в любом режиме, а чужие и обрезанные байты отвергаются IllegalArgumentException.
+ */
+class DraftCodecsTest {
+
+    private static final TaskDto FULL_TASK = new TaskDto(-42L, "Купить молоко 🥛", "2 литра", TaskStatus.IN_PROGRESS,
+            Priority.HIGH, LocalDateTime.of(2025, 1, 1, 19, 0, 5, 123_456_789), Instant.ofEpochSecond(1_700_000_000L, 42));
+    private static final TaskDto BARE_TASK = new TaskDto(null, "Позвонить", null, null, null, null, null);
+    private static final HabitCheckinDto FULL_HABIT = new HabitCheckinDto(7L, "Пробежка", "5 км", HabitStatus.COMPLETED,
+            HabitInterval.EVERY_SATURDAY, Priority.LOW, LocalDate.of(1969, 12, 31), LocalDate.of(2025, 6, 1), true, true);
+    private static final HabitCheckinDto BARE_HABIT = new HabitCheckinDto(null, "Чтение", null, null, null, null,
+            null, null, false, true);
+
+    private final ObjectMapper om = new ObjectMapper().findAndRegisterModules();
+    private final TaskDraftCodec taskBinary = new TaskDraftCodec();
+    private final HabitDraftCodec habitBinary = new HabitDraftCodec();
+    private final JsonDraftCodec<TaskDto> taskJson = new JsonDraftCodec<>(om, TaskDto.class);
+    private final JsonDraftCodec<HabitCheckinDto> habitJson = new JsonDraftCodec<>(om, HabitCheckinDto.class);
+
+    @Test
+    void binaryRoundTrip() {
+        assertEquals(FULL_TASK, taskBinary.decode(taskBinary.encode(FULL_TASK)));
+        assertEquals(BARE_TASK, taskBinary.decode(taskBinary.encode(BARE_TASK)));
+        assertEquals(FULL_HABIT, habitBinary.decode(habitBinary.encode(FULL_HABIT)));
+        assertEquals(BARE_HABIT, habitBinary.decode(habitBinary.encode(BARE_HABIT)));
+    }
+
+    @Test
+    void absentFieldsAreNotWritten() {
+        // версия, пустые флаги, длина заголовка и сам заголовок — больше ничего
+        byte[] bytes = taskBinary.encode(BARE_TASK);
+        int title = BARE_TASK.title().getBytes(StandardCharsets.UTF_8).length;
+        assertEquals(1, bytes[0]);
+        assertEquals(0, bytes[1]);
+        assertEquals(3 + title, bytes.length);
+
+        // у привычки во флагах только булево поле
+        byte[] habit = habitBinary.encode(BARE_HABIT);
+        assertTrue(habit.length < habitBinary.encode(FULL_HABIT).length);
+        assertEquals(BARE_HABIT, habitBinary.decode(habit));
+    }
+
+    @Test
+    void jsonWrittenBeforeSwitchIsReadInEitherFormat() {
+        DraftCodecs<TaskDto> tasks = new DraftCodecs<>(DraftFormat.BINARY, taskBinary, taskJson);
+        DraftCodecs<HabitCheckinDto> habits = new DraftCodecs<>(DraftFormat.BINARY, habitBinary, habitJson);
+        assertEquals(FULL_TASK, tasks.decode(taskJson.encode(FULL_TASK)));
+        assertEquals(BARE_TASK, tasks.decode(taskJson.encode(BARE_TASK)));
+        assertEquals(FULL_HABIT, habits.decode(habitJson.encode(FULL_HABIT)));
+
+        // откат на JSON: пишется JSON, двоичные черновики по-прежнему читаются
+        DraftCodecs<TaskDto> rolledBack = new DraftCodecs<>(DraftFormat.JSON, taskBinary, taskJson);
+        assertTrue(JsonDraftCodec.isJson(rolledBack.encode(FULL_TASK)));
+        assertEquals(FULL_TASK, rolledBack.decode(taskBinary.encode(FULL_TASK)));
+        assertEquals(FULL_TASK, rolledBack.decode(rolledBack.encode(FULL_TASK)));
+    }
+
+    @Test
+    void unknownVersionIsRejected() {
+        DraftCodecs<TaskDto> tasks = new DraftCodecs<>(DraftFormat.BINARY, taskBinary, taskJson);
+        byte[] bytes = taskBinary.encode(FULL_TASK);
+
+        bytes[0] = 2;
+        assertThrows(IllegalArgumentException.class, () -> tasks.decode(bytes));
+        bytes[0] = 0;
+        assertThrows(IllegalArgumentException.class, () -> tasks.decode(bytes));
+        assertThrows(IllegalArgumentException.class, () -> tasks.decode(new byte[0]));
+        assertThrows(IllegalArgumentException.class, () -> tasks.decode("{\"title\":".getBytes()));
+    }
+
+    @Test
+    void truncatedDraftIsRejected() {
+        byte[] task = taskBinary.encode(FULL_TASK);
+        for (int n = 1; n < task.length; n++) {
+            byte[] prefix = Arrays.copyOf(task, n);
+            assertThrows(IllegalArgumentException.class, () -> taskBinary.decode(prefix), "task prefix of " + n);
+        }
+        byte[] habit = habitBinary.encode(FULL_HABIT);
+        for (int n = 1; n < habit.length; n++) {
+            byte[] prefix = Arrays.copyOf(habit, n);
+            assertThrows(IllegalArgumentException.class, () -> habitBinary.decode(prefix), "habit prefix of " + n);
+        }
+    }
+
+    @Test
+    void unknownEnumCodeIsRejected() {
+        byte[] bytes = taskBinary.encode(new TaskDto(null, "t", null, TaskStatus.UNCOMPLETED, null, null, null));
+        // версия, флаги, длина и заголовок "t", затем код статуса (varint zigzag: 0 -> 0)
+        assertArrayEquals(new byte[]{1, 8, 2, 't', 0}, bytes);
+        bytes[4] = 2 * 3;   // код 3 — за концом таблицы
+        assertThrows(IllegalArgumentException.class, () -> taskBinary.decode(bytes));
+    }
+}
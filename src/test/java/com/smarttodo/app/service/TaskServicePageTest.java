@@ -0,0 +1,204 @@
+package com.smarttodo.app.service;
+
+import com.smarttodo.app.dto.ListPage;
+import com.smarttodo.app.dto.PageCursor;
+import com.smarttodo.app.dto.TaskDto;
+import com.smarttodo.app.entity.TaskEntity;
+import com.smarttodo.app.entity.TaskStatus;
+import com.smarttodo.app.entity.UserEntity;
+import com.smarttodo.app.repository.TaskRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Limit;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Keyset-страницы задач: переход вперёд со срочных задач в хвост без срока и обратно,
+ * границы FIRST и NO_KEY. Репозиторий — список в памяти с той же семантикой запросов, что и в TaskRepository.
+ */
+class TaskServicePageTest {
+
+    private static final long CHAT = 42L;
+    private static final int SIZE = 3;
+    private static final LocalDateTime NOON = LocalDate.now().atTime(12, 0);
+
+    private final List<TaskEntity> tasks = new ArrayList<>();
+    private final TaskService service = new TaskService(repository(), mock(UserService.class));
+
+    @Test
+    void allViewWalksForwardIntoUndatedTailAndBack() {
+        // пять задач со сроком (две — с одинаковым), три без срока, завершённая и чужая не показываются
+        task(1, NOON.plusDays(2), TaskStatus.UNCOMPLETED);
+        task(2, NOON.plusDays(1), TaskStatus.IN_PROGRESS);
+        task(3, NOON.plusDays(1), TaskStatus.UNCOMPLETED);
+        task(4, NOON.minusDays(3), TaskStatus.UNCOMPLETED);
+        task(5, NOON.plusDays(9), TaskStatus.UNCOMPLETED);
+        task(6, null, TaskStatus.UNCOMPLETED);
+        task(7, NOON, TaskStatus.COMPLETED);
+        task(8, null, TaskStatus.IN_PROGRESS);
+        task(9, null, TaskStatus.UNCOMPLETED);
+        tasks.add(entity(10, 7L, NOON, TaskStatus.UNCOMPLETED));
+
+        ListPage<TaskDto> first = page(PageCursor.FIRST);
+        assertEquals(List.of(4L, 2L, 3L), ids(first));
+        assertNull(first.prev());
+        assertEquals(PageCursor.after(key(NOON.plusDays(1)), 3), first.next());
+
+        ListPage<TaskDto> second = page(first.next());
+        assertEquals(List.of(1L, 5L, 6L), ids(second));      // граница срочных задач и хвоста без срока
+        assertEquals(PageCursor.before(key(NOON.plusDays(2)), 1), second.prev());
+        assertEquals(PageCursor.after(PageCursor.NO_KEY, 6), second.next());
+
+        ListPage<TaskDto> third = page(second.next());
+        assertEquals(List.of(8L, 9L), ids(third));
+        assertEquals(PageCursor.before(PageCursor.NO_KEY, 8), third.prev());
+        assertNull(third.next());
+
+        // назад из хвоста: сначала задачи без срока, потом со сроком
+        ListPage<TaskDto> back = page(third.prev());
+        assertEquals(ids(second), ids(back));
+        assertEquals(second.prev(), back.prev());
+        assertEquals(PageCursor.after(PageCursor.NO_KEY, 6), back.next());
+
+        ListPage<TaskDto> start = page(back.prev());
+        assertEquals(ids(first), ids(start));
+        assertNull(start.prev(), "first page reached backwards has no prev");
+        assertEquals(first.next(), start.next());
+    }
+
+    @Test
+    void backwardFromFirstUndatedTaskReachesDatedTasks() {
+        task(1, NOON, TaskStatus.UNCOMPLETED);
+        task(2, null, TaskStatus.UNCOMPLETED);
+        task(3, null, TaskStatus.UNCOMPLETED);
+
+        ListPage<TaskDto> back = page(PageCursor.before(PageCursor.NO_KEY, 2));
+        assertEquals(List.of(1L), ids(back));
+        assertNull(back.prev());
+        assertEquals(PageCursor.after(key(NOON), 1), back.next());
+    }
+
+    @Test
+    void onlyUndatedTasksArePagedFromFirst() {
+        for (long id = 1; id <= 4; id++) task(id, null, TaskStatus.UNCOMPLETED);
+
+        ListPage<TaskDto> first = page(PageCursor.FIRST);
+        assertEquals(List.of(1L, 2L, 3L), ids(first));
+        assertNull(first.prev());
+        assertEquals(PageCursor.after(PageCursor.NO_KEY, 3), first.next());
+
+        ListPage<TaskDto> second = page(first.next());
+        assertEquals(List.of(4L), ids(second));
+        assertNull(second.next());
+        assertEquals(List.of(1L, 2L, 3L), ids(page(second.prev())));
+    }
+
+    @Test
+    void datedViewHasNoUndatedTail() {
+        task(1, NOON, TaskStatus.COMPLETED);
+        task(2, NOON.plusHours(1), TaskStatus.UNCOMPLETED);
+        task(3, null, TaskStatus.UNCOMPLETED);
+        task(4, NOON.plusDays(1), TaskStatus.UNCOMPLETED);
+
+        ListPage<TaskDto> today = service.getTasksPage(CHAT, TaskService.TaskView.TODAY, PageCursor.FIRST, SIZE);
+        assertEquals(List.of(1L, 2L), ids(today));      // в дневных списках и завершённые
+        assertNull(today.prev());
+        assertNull(today.next());
+    }
+
+    @Test
+    void emptyListHasNoCursors() {
+        ListPage<TaskDto> page = page(PageCursor.FIRST);
+        assertTrue(page.isEmpty());
+        assertNull(page.prev());
+        assertNull(page.next());
+    }
+
+    private ListPage<TaskDto> page(PageCursor cursor) {
+        assertNotNull(cursor);
+        return service.getTasksPage(CHAT, TaskService.TaskView.ALL, cursor, SIZE);
+    }
+
+    private static List<Long> ids(ListPage<TaskDto> page) {
+        return page.items().stream().map(TaskDto::id).toList();
+    }
+
+    private static long key(LocalDateTime deadline) {
+        return deadline.toEpochSecond(ZoneOffset.UTC) * 1_000_000L + deadline.getNano() / 1_000;
+    }
+
+    private void task(long id, LocalDateTime deadline, TaskStatus status) {
+        tasks.add(entity(id, CHAT, deadline, status));
+    }
+
+    private static TaskEntity entity(long id, long chatId, LocalDateTime deadline, TaskStatus status) {
+        TaskEntity t = new TaskEntity(new UserEntity(), "task " + id, chatId);
+        t.setId(id);
+        t.setDeadline(deadline);
+        t.setStatus(status);
+        return t;
+    }
+
+    private static final Comparator<TaskEntity> BY_DEADLINE =
+            Comparator.comparing(TaskEntity::getDeadline).thenComparing(TaskEntity::getId);
+
+    /** Те же условия и порядок, что у запросов TaskRepository */
+    private TaskRepository repository() {
+        TaskRepository repo = mock(TaskRepository.class);
+        when(repo.findPageAfter(anyLong(), any(), any(), any(), anyLong(), any())).thenAnswer(inv -> {
+            LocalDateTime to = inv.getArgument(2), deadline = inv.getArgument(3);
+            long id = inv.getArgument(4);
+            return select(inv.getArgument(0), inv.getArgument(1), inv.getArgument(5),
+                    t -> t.getDeadline() != null && !t.getDeadline().isAfter(to)
+                            && (t.getDeadline().isAfter(deadline) || t.getDeadline().isEqual(deadline) && t.getId() > id),
+                    BY_DEADLINE);
+        });
+        when(repo.findPageBefore(anyLong(), any(), any(), any(), anyLong(), any())).thenAnswer(inv -> {
+            LocalDateTime from = inv.getArgument(2), deadline = inv.getArgument(3);
+            long id = inv.getArgument(4);
+            return select(inv.getArgument(0), inv.getArgument(1), inv.getArgument(5),
+                    t -> t.getDeadline() != null && !t.getDeadline().isBefore(from)
+                            && (t.getDeadline().isBefore(deadline) || t.getDeadline().isEqual(deadline) && t.getId() < id),
+                    BY_DEADLINE.reversed());
+        });
+        when(repo.findByChatIdAndStatusInAndDeadlineIsNullAndIdGreaterThanOrderByIdAsc(anyLong(), any(), anyLong(), any()))
+                .thenAnswer(inv -> {
+                    long id = inv.getArgument(2);
+                    return select(inv.getArgument(0), inv.getArgument(1), inv.getArgument(3),
+                            t -> t.getDeadline() == null && t.getId() > id, Comparator.comparing(TaskEntity::getId));
+                });
+        when(repo.findByChatIdAndStatusInAndDeadlineIsNullAndIdLessThanOrderByIdDesc(anyLong(), any(), anyLong(), any()))
+                .thenAnswer(inv -> {
+                    long id = inv.getArgument(2);
+                    return select(inv.getArgument(0), inv.getArgument(1), inv.getArgument(3),
+                            t -> t.getDeadline() == null && t.getId() < id, Comparator.comparing(TaskEntity::getId).reversed());
+                });
+        return repo;
+    }
+
+    private List<TaskEntity> select(Long chatId, Collection<TaskStatus> statuses, Limit limit,
+                                    Predicate<TaskEntity> where, Comparator<TaskEntity> order) {
+        return tasks.stream()
+                .filter(t -> t.getChatId().equals(chatId) && statuses.contains(t.getStatus()))
+                .filter(where)
+                .sorted(order)
+                .limit(limit.max())
+                .toList();
+    }
+}